@@ -113,7 +113,7 @@ public class ActiveLearningServiceImpl
         }
 
         Map<String, SuggestionDocumentGroup<SpanSuggestion>> recommendationsMap = predictions
-                .getPredictionsForWholeProject(SpanSuggestion.class, aLayer, documentService);
+                .getPredictionsForWholeProject(SpanSuggestion.class, aLayer);
 
         return recommendationsMap.values().stream() //
                 .flatMap(docMap -> docMap.stream()) //
@@ -151,9 +151,6 @@ public class ActiveLearningServiceImpl
             boolean filterSkippedRecommendation,
             List<SuggestionGroup<SpanSuggestion>> aSuggestionGroups)
     {
-        List<LearningRecord> records = learningHistoryService.listRecords(aUser.getUsername(),
-                aLayer);
-
         for (SuggestionGroup<SpanSuggestion> group : aSuggestionGroups) {
             for (SpanSuggestion s : group) {
                 // If a suggestion is already invisible, we don't need to check if it needs hiding.
@@ -165,20 +162,18 @@ public class ActiveLearningServiceImpl
                     continue;
                 }
 
-                records.stream()
-                        .filter(r -> r.getSourceDocument().getName().equals(s.getDocumentName())
-                                && r.getOffsetBegin() == s.getBegin()
-                                && r.getOffsetEnd() == s.getEnd()
-                                && s.labelEquals(r.getAnnotation()))
-                        .forEach(record -> {
-                            if (REJECTED.equals(record.getUserAction())) {
-                                s.hide(FLAG_REJECTED);
-                            }
-                            else if (filterSkippedRecommendation
-                                    && SKIPPED.equals(record.getUserAction())) {
-                                s.hide(FLAG_SKIPPED);
-                            }
-                        });
+                List<LearningRecord> records = learningHistoryService.findRecords(
+                        aUser.getUsername(), aLayer, s.getDocumentName(), s.getBegin(), s.getEnd(),
+                        s.getLabel());
+                for (LearningRecord record : records) {
+                    if (REJECTED.equals(record.getUserAction())) {
+                        s.hide(FLAG_REJECTED);
+                    }
+                    else if (filterSkippedRecommendation
+                            && SKIPPED.equals(record.getUserAction())) {
+                        s.hide(FLAG_SKIPPED);
+                    }
+                }
 
             }
         }
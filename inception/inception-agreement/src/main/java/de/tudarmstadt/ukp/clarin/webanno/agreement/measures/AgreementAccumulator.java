@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.agreement.measures;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import org.apache.uima.cas.CAS;
+
+/**
+ * Calculates agreement incrementally one document at a time. The accumulator does not retain the
+ * CASes it is given, so only the CASes of the document currently being added need to be held in
+ * memory.
+ * 
+ * @param <R>
+ *            the result type.
+ */
+public interface AgreementAccumulator<R extends Serializable>
+{
+    /**
+     * Adds the annotations of a document to the agreement calculation.
+     * 
+     * @param aCasByRater
+     *            the CASes of a single document by rater. Raters which have not worked on the
+     *            document may be mapped to {@code null} or be missing from the map.
+     */
+    void addDocument(Map<String, CAS> aCasByRater);
+
+    /**
+     * @return the agreement over all documents added so far.
+     */
+    R getResult();
+}
@@ -18,6 +18,7 @@
 package de.tudarmstadt.ukp.clarin.webanno.agreement.measures;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -29,6 +30,16 @@ public interface AgreementMeasure<R extends Serializable>
 {
     R getAgreement(Map<String, List<CAS>> aCasMap);
 
+    /**
+     * Creates an accumulator which calculates the agreement one document at a time. This avoids
+     * having to load the CASes of all documents at once.
+     * 
+     * @param aRaters
+     *            the raters between whom the agreement is calculated.
+     * @return the accumulator.
+     */
+    AgreementAccumulator<R> createAccumulator(Collection<String> aRaters);
+
     AnnotationFeature getFeature();
 
     DefaultAgreementTraits getTraits();
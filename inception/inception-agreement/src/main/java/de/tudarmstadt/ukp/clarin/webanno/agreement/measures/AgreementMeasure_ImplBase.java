@@ -18,6 +18,13 @@
 package de.tudarmstadt.ukp.clarin.webanno.agreement.measures;
 
 import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+
+import org.apache.uima.cas.CAS;
 
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
 
@@ -33,6 +40,28 @@ public abstract class AgreementMeasure_ImplBase<R extends Serializable, T extend
         traits = aTraits;
     }
 
+    @Override
+    public R getAgreement(Map<String, List<CAS>> aCasMap)
+    {
+        AgreementAccumulator<R> accumulator = createAccumulator(aCasMap.keySet());
+
+        int documentCount = aCasMap.values().stream() //
+                .filter(Objects::nonNull) //
+                .mapToInt(List::size) //
+                .max().orElse(0);
+        for (int i = 0; i < documentCount; i++) {
+            Map<String, CAS> casByRater = new LinkedHashMap<>();
+            for (Entry<String, List<CAS>> e : aCasMap.entrySet()) {
+                List<CAS> casses = e.getValue();
+                casByRater.put(e.getKey(),
+                        casses != null && i < casses.size() ? casses.get(i) : null);
+            }
+            accumulator.addDocument(casByRater);
+        }
+
+        return accumulator.getResult();
+    }
+
     @Override
     public AnnotationFeature getFeature()
     {
@@ -17,13 +17,14 @@
  */
 package de.tudarmstadt.ukp.clarin.webanno.agreement.measures.krippendorffalphaunitizing;
 
+import static java.util.Arrays.asList;
+
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.Feature;
@@ -35,6 +36,7 @@ import org.dkpro.statistics.agreement.unitizing.KrippendorffAlphaUnitizingAgreem
 import org.dkpro.statistics.agreement.unitizing.UnitizingAnnotationStudy;
 
 import de.tudarmstadt.ukp.clarin.webanno.agreement.PairwiseAnnotationResult;
+import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.AgreementAccumulator;
 import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.AgreementMeasure_ImplBase;
 import de.tudarmstadt.ukp.clarin.webanno.agreement.results.unitizing.UnitizingAgreementResult;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
@@ -56,100 +58,151 @@ public class KrippendorffAlphaUnitizingAgreementMeasure
     }
 
     @Override
-    public PairwiseAnnotationResult<UnitizingAgreementResult> getAgreement(
-            Map<String, List<CAS>> aCasMap)
+    public AgreementAccumulator<PairwiseAnnotationResult<UnitizingAgreementResult>> //
+            createAccumulator(Collection<String> aRaters)
     {
-        PairwiseAnnotationResult<UnitizingAgreementResult> result = new PairwiseAnnotationResult<>(
-                getFeature(), getTraits());
-        List<Entry<String, List<CAS>>> entryList = new ArrayList<>(aCasMap.entrySet());
-        for (int m = 0; m < entryList.size(); m++) {
-            for (int n = 0; n < entryList.size(); n++) {
-                // Triangle matrix mirrored
-                if (n < m) {
-                    Map<String, List<CAS>> pairwiseCasMap = new LinkedHashMap<>();
-                    pairwiseCasMap.put(entryList.get(m).getKey(), entryList.get(m).getValue());
-                    pairwiseCasMap.put(entryList.get(n).getKey(), entryList.get(n).getValue());
-                    UnitizingAgreementResult res = calculatePairAgreement(pairwiseCasMap);
-                    result.add(entryList.get(m).getKey(), entryList.get(n).getKey(), res);
-                }
-            }
+        return new PairwiseUnitizingAgreementAccumulator(aRaters);
+    }
+
+    /**
+     * A unit extracted from a CAS. Only the unit is retained, not the CAS it was extracted from.
+     */
+    private static final class Unit
+    {
+        private final int document;
+        private final int begin;
+        private final int length;
+        private final Object value;
+
+        public Unit(int aDocument, int aBegin, int aLength, Object aValue)
+        {
+            document = aDocument;
+            begin = aBegin;
+            length = aLength;
+            value = aValue;
         }
-        return result;
     }
 
-    public UnitizingAgreementResult calculatePairAgreement(Map<String, List<CAS>> aCasMap)
+    private class PairwiseUnitizingAgreementAccumulator
+        implements AgreementAccumulator<PairwiseAnnotationResult<UnitizingAgreementResult>>
     {
-        String typeName = getFeature().getLayer().getName();
-
-        // Calculate a character offset continuum over all CASses. We assume here that the documents
-        // all have the same size - since the users cannot change the document sizes, this should be
-        // an universally true assumption.
-        List<CAS> firstUserCasses = aCasMap.values().stream().findFirst().get();
-        int docCount = firstUserCasses.size();
-        int[] docSizes = new int[docCount];
-        Arrays.fill(docSizes, 0);
-        for (Entry<String, List<CAS>> set : aCasMap.entrySet()) {
-            int i = 0;
-            for (CAS cas : set.getValue()) {
-                if (cas != null) {
-                    assert docSizes[i] == 0 || docSizes[i] == cas.getDocumentText().length();
-
-                    docSizes[i] = cas.getDocumentText().length();
-                }
-                i++;
+        private final List<String> raters;
+        private final Map<String, List<Unit>> unitsByRater = new LinkedHashMap<>();
+        private final Map<String, BitSet> documentsByRater = new LinkedHashMap<>();
+        private final List<Integer> docSizes = new ArrayList<>();
+
+        public PairwiseUnitizingAgreementAccumulator(Collection<String> aRaters)
+        {
+            raters = new ArrayList<>(aRaters);
+            for (String rater : raters) {
+                unitsByRater.put(rater, new ArrayList<>());
+                documentsByRater.put(rater, new BitSet());
             }
         }
-        int continuumSize = Arrays.stream(docSizes).sum();
-
-        // Create a unitizing study for that continuum.
-        UnitizingAnnotationStudy study = new UnitizingAnnotationStudy(continuumSize);
-
-        // For each annotator, extract the feature values from all the annotator's CASses and add
-        // them to the unitizing study based on character offsets.
-        for (Entry<String, List<CAS>> set : aCasMap.entrySet()) {
-            int raterIdx = study.addRater(set.getKey());
-            int docOffset = 0;
-            int i = 0;
-            for (CAS cas : set.getValue()) {
+
+        @Override
+        public void addDocument(Map<String, CAS> aCasByRater)
+        {
+            String typeName = getFeature().getLayer().getName();
+            int docIndex = docSizes.size();
+
+            // We assume here that the documents all have the same size - since the users cannot
+            // change the document sizes, this should be an universally true assumption.
+            int docSize = 0;
+            for (String rater : raters) {
+                CAS cas = aCasByRater.get(rater);
+
                 // If a user has never worked on a source document, its CAS is null here - we
                 // skip it.
-                if (cas != null) {
-                    Type t = cas.getTypeSystem().getType(typeName);
-                    Feature f = t.getFeatureByBaseName(getFeature().getName());
-                    int currentDocOffset = docOffset;
-                    cas.select(t).map(fs -> (AnnotationFS) fs).forEach(fs -> {
-                        Object featureValue = FSUtil.getFeature(fs, f, Object.class);
-                        if (featureValue instanceof Collection) {
-                            for (Object value : (Collection<?>) featureValue) {
-                                study.addUnit(currentDocOffset + fs.getBegin(),
-                                        fs.getEnd() - fs.getBegin(), raterIdx, value);
-                            }
-                        }
-                        else {
-                            study.addUnit(currentDocOffset + fs.getBegin(),
-                                    fs.getEnd() - fs.getBegin(), raterIdx, featureValue);
-                        }
-                    });
+                if (cas == null) {
+                    continue;
                 }
 
-                docOffset += docSizes[i];
-                i++;
+                assert docSize == 0 || docSize == cas.getDocumentText().length();
+                docSize = cas.getDocumentText().length();
+                documentsByRater.get(rater).set(docIndex);
+
+                List<Unit> units = unitsByRater.get(rater);
+                Type t = cas.getTypeSystem().getType(typeName);
+                Feature f = t.getFeatureByBaseName(getFeature().getName());
+                cas.select(t).map(fs -> (AnnotationFS) fs).forEach(fs -> {
+                    Object featureValue = FSUtil.getFeature(fs, f, Object.class);
+                    if (featureValue instanceof Collection) {
+                        for (Object value : (Collection<?>) featureValue) {
+                            units.add(new Unit(docIndex, fs.getBegin(),
+                                    fs.getEnd() - fs.getBegin(), value));
+                        }
+                    }
+                    else {
+                        units.add(new Unit(docIndex, fs.getBegin(), fs.getEnd() - fs.getBegin(),
+                                featureValue));
+                    }
+                });
+            }
+
+            docSizes.add(docSize);
+        }
+
+        @Override
+        public PairwiseAnnotationResult<UnitizingAgreementResult> getResult()
+        {
+            PairwiseAnnotationResult<UnitizingAgreementResult> result = //
+                    new PairwiseAnnotationResult<>(getFeature(), getTraits());
+            for (int m = 0; m < raters.size(); m++) {
+                for (int n = 0; n < m; n++) {
+                    // Triangle matrix mirrored
+                    result.add(raters.get(m), raters.get(n),
+                            calculatePairAgreement(asList(raters.get(m), raters.get(n))));
+                }
             }
+            return result;
         }
 
-        UnitizingAgreementResult result = new UnitizingAgreementResult(typeName,
-                getFeature().getName(), study, new ArrayList<>(aCasMap.keySet()),
-                getTraits().isExcludeIncomplete());
+        private UnitizingAgreementResult calculatePairAgreement(List<String> aPair)
+        {
+            // Calculate a character offset continuum over all documents on which at least one of
+            // the two raters has worked.
+            BitSet documents = new BitSet();
+            for (String rater : aPair) {
+                documents.or(documentsByRater.get(rater));
+            }
+
+            int[] docOffsets = new int[docSizes.size()];
+            int continuumSize = 0;
+            for (int i = 0; i < docSizes.size(); i++) {
+                docOffsets[i] = continuumSize;
+                if (documents.get(i)) {
+                    continuumSize += docSizes.get(i);
+                }
+            }
 
-        IAgreementMeasure agreement = new KrippendorffAlphaUnitizingAgreement(study);
+            // Create a unitizing study for that continuum.
+            UnitizingAnnotationStudy study = new UnitizingAnnotationStudy(continuumSize);
 
-        if (result.getStudy().getUnitCount() > 0) {
-            result.setAgreement(agreement.calculateAgreement());
-        }
-        else {
-            result.setAgreement(Double.NaN);
-        }
+            // For each annotator, add the units extracted from the annotator's CASses to the
+            // unitizing study based on character offsets.
+            for (String rater : aPair) {
+                int raterIdx = study.addRater(rater);
+                for (Unit unit : unitsByRater.get(rater)) {
+                    study.addUnit(docOffsets[unit.document] + unit.begin, unit.length, raterIdx,
+                            unit.value);
+                }
+            }
+
+            UnitizingAgreementResult result = new UnitizingAgreementResult(
+                    getFeature().getLayer().getName(), getFeature().getName(), study,
+                    new ArrayList<>(aPair), getTraits().isExcludeIncomplete());
+
+            IAgreementMeasure agreement = new KrippendorffAlphaUnitizingAgreement(study);
 
-        return result;
+            if (result.getStudy().getUnitCount() > 0) {
+                result.setAgreement(agreement.calculateAgreement());
+            }
+            else {
+                result.setAgreement(Double.NaN);
+            }
+
+            return result;
+        }
     }
 }
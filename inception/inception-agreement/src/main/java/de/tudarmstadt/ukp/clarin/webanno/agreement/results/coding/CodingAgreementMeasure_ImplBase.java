@@ -17,48 +17,150 @@
  */
 package de.tudarmstadt.ukp.clarin.webanno.agreement.results.coding;
 
+import static de.tudarmstadt.ukp.clarin.webanno.agreement.AgreementUtils.makeCodingStudy;
+import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.getDiffAdapters;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toCollection;
+
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
+import java.util.stream.IntStream;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.uima.cas.CAS;
 
 import de.tudarmstadt.ukp.clarin.webanno.agreement.PairwiseAnnotationResult;
+import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.AgreementAccumulator;
 import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.AgreementMeasure_ImplBase;
 import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.DefaultAgreementTraits;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.api.DiffAdapter;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
+import de.tudarmstadt.ukp.clarin.webanno.model.Tag;
+import de.tudarmstadt.ukp.inception.schema.AnnotationSchemaService;
 
 public abstract class CodingAgreementMeasure_ImplBase<T extends DefaultAgreementTraits>
     extends AgreementMeasure_ImplBase<PairwiseAnnotationResult<CodingAgreementResult>, T>
 {
-    public CodingAgreementMeasure_ImplBase(AnnotationFeature aFeature, T aTraits)
+    private final AnnotationSchemaService annotationService;
+
+    public CodingAgreementMeasure_ImplBase(AnnotationFeature aFeature, T aTraits,
+            AnnotationSchemaService aAnnotationService)
     {
         super(aFeature, aTraits);
+        annotationService = aAnnotationService;
     }
 
     @Override
-    public PairwiseAnnotationResult<CodingAgreementResult> getAgreement(
-            Map<String, List<CAS>> aCasMap)
+    public AgreementAccumulator<PairwiseAnnotationResult<CodingAgreementResult>> createAccumulator(
+            Collection<String> aRaters)
+    {
+        return new PairwiseCodingAgreementAccumulator(aRaters);
+    }
+
+    public CodingAgreementResult calculatePairAgreement(Map<String, List<CAS>> aCasMap)
     {
-        PairwiseAnnotationResult<CodingAgreementResult> result = new PairwiseAnnotationResult<>(
-                getFeature(), getTraits());
-        List<Entry<String, List<CAS>>> entryList = new ArrayList<>(aCasMap.entrySet());
-        for (int m = 0; m < entryList.size(); m++) {
-            for (int n = 0; n < entryList.size(); n++) {
-                // Triangle matrix mirrored
-                if (n < m) {
-                    Map<String, List<CAS>> pairwiseCasMap = new LinkedHashMap<>();
-                    pairwiseCasMap.put(entryList.get(m).getKey(), entryList.get(m).getValue());
-                    pairwiseCasMap.put(entryList.get(n).getKey(), entryList.get(n).getValue());
-                    CodingAgreementResult res = calculatePairAgreement(pairwiseCasMap);
-                    result.add(entryList.get(m).getKey(), entryList.get(n).getKey(), res);
+        List<DiffAdapter> adapters = getDiffAdapters(annotationService,
+                asList(getFeature().getLayer()));
+
+        CasDiff diff = CasDiff.doDiff(adapters, getTraits().getLinkCompareBehavior(), aCasMap);
+
+        CodingAgreementResult result = makeCodingStudy(diff, getFeature().getLayer().getName(),
+                getFeature().getName(), getTagset(), isExcludeIncomplete(), aCasMap);
+        calculateAgreement(result);
+        return result;
+    }
+
+    /**
+     * @return whether positions which have not been annotated by all annotators are excluded from
+     *         the study.
+     */
+    protected abstract boolean isExcludeIncomplete();
+
+    /**
+     * Calculates the agreement on the study of the given result and stores it in the result.
+     * 
+     * @param aResult
+     *            the result.
+     */
+    protected abstract void calculateAgreement(CodingAgreementResult aResult);
+
+    private Set<String> getTagset()
+    {
+        return annotationService.listTags(getFeature().getTagset()).stream() //
+                .map(Tag::getName) //
+                .collect(toCollection(LinkedHashSet::new));
+    }
+
+    private class PairwiseCodingAgreementAccumulator
+        implements AgreementAccumulator<PairwiseAnnotationResult<CodingAgreementResult>>
+    {
+        private final List<DiffAdapter> adapters;
+        private final List<String> raters;
+        private final List<Pair<String, String>> pairs = new ArrayList<>();
+        private final List<CodingAgreementResultBuilder> builders = new ArrayList<>();
+
+        private int documentCount = 0;
+
+        public PairwiseCodingAgreementAccumulator(Collection<String> aRaters)
+        {
+            adapters = getDiffAdapters(annotationService, asList(getFeature().getLayer()));
+            raters = new ArrayList<>(aRaters);
+
+            Set<String> tagset = getTagset();
+            for (int m = 0; m < raters.size(); m++) {
+                for (int n = 0; n < m; n++) {
+                    // Triangle matrix mirrored
+                    pairs.add(Pair.of(raters.get(m), raters.get(n)));
+                    builders.add(new CodingAgreementResultBuilder(
+                            getFeature().getLayer().getName(), getFeature().getName(), tagset,
+                            asList(raters.get(m), raters.get(n)), isExcludeIncomplete(), true));
                 }
             }
         }
-        return result;
-    }
 
-    public abstract CodingAgreementResult calculatePairAgreement(Map<String, List<CAS>> aCasMap);
+        @Override
+        public void addDocument(Map<String, CAS> aCasByRater)
+        {
+            Map<String, List<CAS>> casMap = new LinkedHashMap<>();
+            for (String rater : raters) {
+                casMap.put(rater, asList(aCasByRater.get(rater)));
+            }
+
+            // Diff all raters at once and derive the pairwise results from the shared diff
+            // instead of diffing the CASes of every pair of raters again. Each document gets its
+            // own CAS ID, so the positions of different documents do not collide.
+            CasDiff diff = CasDiff.doDiff(adapters, getTraits().getLinkCompareBehavior(), casMap,
+                    documentCount);
+            documentCount++;
+
+            // The diff is no longer modified, so the pairs can be processed in parallel
+            IntStream.range(0, pairs.size()).parallel().forEach(i -> {
+                Pair<String, String> pair = pairs.get(i);
+                Map<String, List<CAS>> pairwiseCasMap = new LinkedHashMap<>();
+                pairwiseCasMap.put(pair.getKey(), casMap.get(pair.getKey()));
+                pairwiseCasMap.put(pair.getValue(), casMap.get(pair.getValue()));
+                CasDiff pairwiseDiff = diff.limitToCasGroups(pairwiseCasMap.keySet());
+                builders.get(i).add(pairwiseDiff, pairwiseCasMap);
+            });
+        }
+
+        @Override
+        public PairwiseAnnotationResult<CodingAgreementResult> getResult()
+        {
+            PairwiseAnnotationResult<CodingAgreementResult> result = new PairwiseAnnotationResult<>(
+                    getFeature(), getTraits());
+            for (int i = 0; i < pairs.size(); i++) {
+                CodingAgreementResult pairResult = builders.get(i).build();
+                calculateAgreement(pairResult);
+                result.add(pairs.get(i).getKey(), pairs.get(i).getValue(), pairResult);
+            }
+            return result;
+        }
+    }
 }
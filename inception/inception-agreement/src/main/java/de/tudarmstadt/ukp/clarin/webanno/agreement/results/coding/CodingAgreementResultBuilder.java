@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.agreement.results.coding;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.getFeature;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.uima.cas.ArrayFS;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.util.CasUtil;
+import org.apache.uima.fit.util.FSUtil;
+import org.dkpro.statistics.agreement.coding.CodingAnnotationStudy;
+
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.Configuration;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.ConfigurationSet;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.DiffResult;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.LinkCompareBehavior;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.api.Position;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.relation.RelationDiffAdapter;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.relation.RelationPosition;
+
+/**
+ * Collects the items of a coding study from one or more diffs. Each diff may cover a different set
+ * of documents (i.e. CAS IDs), so the study can be built one document at a time without having to
+ * keep the CASes of all documents in memory.
+ */
+public class CodingAgreementResultBuilder
+{
+    private final String type;
+    private final String feature;
+    private final List<String> casGroupIds;
+    private final List<String> users;
+    private final boolean excludeIncomplete;
+    private final boolean nullLabelsAsEmpty;
+
+    private final Map<Position, ConfigurationSet> positions = new TreeMap<>();
+    private final List<ConfigurationSet> completeSets = new ArrayList<>();
+    private final List<ConfigurationSet> setsWithDifferences = new ArrayList<>();
+    private final List<ConfigurationSet> incompleteSetsByPosition = new ArrayList<>();
+    private final List<ConfigurationSet> incompleteSetsByLabel = new ArrayList<>();
+    private final List<ConfigurationSet> pluralitySets = new ArrayList<>();
+    private final List<ConfigurationSet> irrelevantSets = new ArrayList<>();
+    private final CodingAnnotationStudy study;
+
+    public CodingAgreementResultBuilder(String aType, String aFeature, Set<String> aTagSet,
+            Collection<String> aUsers, boolean aExcludeIncomplete, boolean aNullLabelsAsEmpty)
+    {
+        type = aType;
+        feature = aFeature;
+        excludeIncomplete = aExcludeIncomplete;
+        nullLabelsAsEmpty = aNullLabelsAsEmpty;
+
+        casGroupIds = new ArrayList<>(aUsers);
+        users = new ArrayList<>(aUsers);
+        Collections.sort(users);
+
+        study = new CodingAnnotationStudy(users.size());
+        if (aTagSet != null) {
+            aTagSet.forEach(study::addCategory);
+        }
+    }
+
+    /**
+     * Adds the configuration sets of the given diff to the study.
+     * 
+     * @param aDiff
+     *            a diff over the CASes of the users of the study. The positions of the diff must not
+     *            overlap with positions previously added, i.e. each diff needs to cover different
+     *            documents and use different CAS IDs (cf. {@link CasDiff#getCasIdOffset()}).
+     * @param aCasMap
+     *            the CASes from which the diff has been calculated.
+     * @return the builder.
+     */
+    public CodingAgreementResultBuilder add(CasDiff aDiff, Map<String, List<CAS>> aCasMap)
+    {
+        for (Position p : aDiff.getPositions()) {
+            positions.put(p, aDiff.getConfigurationSet(p));
+        }
+
+        // Check if the feature we are looking at is a primitive feature or a link feature
+        // We do this by looking it up in the first available CAS. Mind that at this point all
+        // CASes should have exactly the same typesystem.
+        CAS someCas = findSomeCas(aCasMap);
+        if (someCas == null) {
+            // Well... there is NOTHING here!
+            // All positions are irrelevant
+            aDiff.getPositions().forEach(p -> irrelevantSets.add(aDiff.getConfigurationSet(p)));
+            return this;
+        }
+        TypeSystem ts = someCas.getTypeSystem();
+
+        // This happens in our test cases when we feed the process with uninitialized CASes.
+        // We should just do the right thing here which is: do nothing
+        if (ts.getType(type) == null) {
+            // All positions are irrelevant
+            aDiff.getPositions().forEach(p -> irrelevantSets.add(aDiff.getConfigurationSet(p)));
+            return this;
+        }
+
+        // Check that the feature really exists instead of just getting a NPE later
+        if (ts.getType(type).getFeatureByBaseName(feature) == null) {
+            throw new IllegalArgumentException(
+                    "Type [" + type + "] has no feature called [" + feature + "]");
+        }
+
+        boolean isPrimitiveFeature = ts.getType(type).getFeatureByBaseName(feature).getRange()
+                .isPrimitive();
+
+        nextPosition: for (Position p : aDiff.getPositions()) {
+            ConfigurationSet cfgSet = aDiff.getConfigurationSet(p);
+
+            // Only calculate agreement for the given layer
+            if (!cfgSet.getPosition().getType().equals(type)) {
+                // We don't even consider these as irrelevant, they are just filtered out
+                continue;
+            }
+
+            // If the feature on a position is set, then it is a subposition
+            boolean isSubPosition = p.getFeature() != null;
+
+            // Check if this position is irrelevant:
+            // - if we are looking for a primitive type and encounter a subposition
+            // - if we are looking for a non-primitive type and encounter a primary position
+            // this is an inverted XOR!
+            if (!(isPrimitiveFeature ^ isSubPosition)) {
+                irrelevantSets.add(cfgSet);
+                continue;
+            }
+
+            // Check if subposition is for the feature we are looking for or for a different
+            // feature
+            if (isSubPosition && !feature.equals(cfgSet.getPosition().getFeature())) {
+                irrelevantSets.add(cfgSet);
+                continue nextPosition;
+            }
+
+            // If non of the current users has made any annotation at this position, then skip it
+            if (users.stream().filter(u -> cfgSet.getCasGroupIds().contains(u)).count() == 0) {
+                irrelevantSets.add(cfgSet);
+                continue nextPosition;
+            }
+
+            Object[] values = new Object[users.size()];
+            int i = 0;
+            for (String user : users) {
+                // Set has to include all users, otherwise we cannot calculate the agreement for
+                // this configuration set.
+                if (!cfgSet.getCasGroupIds().contains(user)) {
+                    incompleteSetsByPosition.add(cfgSet);
+                    if (excludeIncomplete) {
+                        // Record as incomplete
+                        continue nextPosition;
+                    }
+                    else {
+                        // Record as missing value
+                        values[i] = null;
+                        i++;
+                        continue;
+                    }
+                }
+
+                // Make sure a single user didn't do multiple alternative annotations at a single
+                // position. So there is currently no support for calculating agreement on stacking
+                // annotations.
+                List<Configuration> cfgs = cfgSet.getConfigurations(user);
+                if (cfgs.size() > 1) {
+                    pluralitySets.add(cfgSet);
+                    continue nextPosition;
+                }
+
+                Configuration cfg = cfgs.get(0);
+
+                // Check if source and/or targets of a relation are stacked
+                if (cfg.getPosition() instanceof RelationPosition) {
+                    RelationPosition pos = (RelationPosition) cfg.getPosition();
+                    FeatureStructure arc = cfg.getFs(user,
+                            pos.getCasId() - aDiff.getCasIdOffset(), aCasMap);
+
+                    RelationDiffAdapter adapter = (RelationDiffAdapter) aDiff.getTypeAdapters()
+                            .get(pos.getType());
+
+                    // Check if the source of the relation is stacked
+                    AnnotationFS source = FSUtil.getFeature(arc, adapter.getSourceFeature(),
+                            AnnotationFS.class);
+                    List<AnnotationFS> sourceCandidates = CasUtil.selectAt(arc.getCAS(),
+                            source.getType(), source.getBegin(), source.getEnd());
+                    if (sourceCandidates.size() > 1) {
+                        pluralitySets.add(cfgSet);
+                        continue nextPosition;
+                    }
+
+                    // Check if the target of the relation is stacked
+                    AnnotationFS target = FSUtil.getFeature(arc, adapter.getTargetFeature(),
+                            AnnotationFS.class);
+                    List<AnnotationFS> targetCandidates = CasUtil.selectAt(arc.getCAS(),
+                            target.getType(), target.getBegin(), target.getEnd());
+                    if (targetCandidates.size() > 1) {
+                        pluralitySets.add(cfgSet);
+                        continue nextPosition;
+                    }
+                }
+
+                // Only calculate agreement for the given feature
+                FeatureStructure fs = cfg.getFs(user,
+                        cfg.getPosition().getCasId() - aDiff.getCasIdOffset(), aCasMap);
+
+                values[i] = extractValueForAgreement(fs, feature, cfg.getAID(user).index,
+                        cfg.getPosition().getLinkCompareBehavior());
+
+                // Consider empty/null feature values to be the same and do not exclude them from
+                // agreement calculation. The empty label is still a valid label.
+                if (nullLabelsAsEmpty && values[i] == null) {
+                    values[i] = "";
+                }
+
+                // "null" cannot be used in agreement calculations. We treat these as incomplete
+                if (values[i] == null) {
+                    incompleteSetsByLabel.add(cfgSet);
+                    if (excludeIncomplete) {
+                        continue nextPosition;
+                    }
+                }
+
+                i++;
+            }
+
+            if (ObjectUtils.notEqual(values[0], values[1])) {
+                setsWithDifferences.add(cfgSet);
+            }
+
+            // If the position feature is set (subposition), then it must match the feature we
+            // are calculating agreement over
+            assert cfgSet.getPosition().getFeature() == null
+                    || cfgSet.getPosition().getFeature().equals(feature);
+
+            completeSets.add(cfgSet);
+            study.addItemAsArray(values);
+        }
+
+        return this;
+    }
+
+    /**
+     * @return the result containing the study built from all diffs added so far.
+     */
+    public CodingAgreementResult build()
+    {
+        return new CodingAgreementResult(type, feature, new DiffResult(positions, casGroupIds),
+                study, users, completeSets, irrelevantSets, setsWithDifferences,
+                incompleteSetsByPosition, incompleteSetsByLabel, pluralitySets, excludeIncomplete);
+    }
+
+    private static CAS findSomeCas(Map<String, List<CAS>> aCasMap)
+    {
+        for (List<CAS> l : aCasMap.values()) {
+            if (l != null) {
+                for (CAS cas : l) {
+                    if (cas != null) {
+                        return cas;
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static Object extractValueForAgreement(FeatureStructure aFs, String aFeature,
+            int aLinkIndex, LinkCompareBehavior aLCB)
+    {
+        boolean isPrimitiveFeature = aFs.getType().getFeatureByBaseName(aFeature).getRange()
+                .isPrimitive();
+
+        // If the feature on a position is set, then it is a subposition
+        boolean isSubPosition = aLinkIndex != -1;
+
+        // BEGIN PARANOIA
+        assert aFs.getType().getFeatureByBaseName(aFeature).getRange()
+                .isPrimitive() == isPrimitiveFeature;
+        // primitive implies not subposition - if this is primitive and subposition, we
+        // should never have gotten here in the first place.
+        assert !isPrimitiveFeature || !isSubPosition;
+        // END PARANOIA
+
+        if (isPrimitiveFeature && !isSubPosition) {
+            // Primitive feature / primary position
+            return getFeature(aFs, aFeature);
+        }
+        else if (!isPrimitiveFeature && isSubPosition) {
+            // Link feature / sub-position
+            return extractLinkFeatureValueForAgreement(aFs, aFeature, aLinkIndex, aLCB);
+        }
+        else {
+            throw new IllegalStateException("Should never get here: primitive: "
+                    + aFs.getType().getFeatureByBaseName(aFeature).getRange().isPrimitive()
+                    + "; subpos: " + isSubPosition);
+        }
+    }
+
+    private static Object extractLinkFeatureValueForAgreement(FeatureStructure aFs, String aFeature,
+            int aLinkIndex, LinkCompareBehavior aLCB)
+    {
+        @SuppressWarnings("unchecked")
+        var links = (ArrayFS<FeatureStructure>) aFs
+                .getFeatureValue(aFs.getType().getFeatureByBaseName(aFeature));
+        FeatureStructure link = links.get(aLinkIndex);
+
+        switch (aLCB) {
+        case LINK_TARGET_AS_LABEL:
+            // FIXME The target feature name should be obtained from the feature
+            // definition!
+            AnnotationFS target = (AnnotationFS) link
+                    .getFeatureValue(link.getType().getFeatureByBaseName("target"));
+
+            return target.getBegin() + "-" + target.getEnd() + " [" + target.getCoveredText() + "]";
+        case LINK_ROLE_AS_LABEL:
+            // FIXME The role feature name should be obtained from the feature
+            // definition!
+            String role = link.getStringValue(link.getType().getFeatureByBaseName("role"));
+
+            return role;
+        default:
+            throw new IllegalStateException("Unknown link target comparison mode [" + aLCB + "]");
+        }
+    }
+}
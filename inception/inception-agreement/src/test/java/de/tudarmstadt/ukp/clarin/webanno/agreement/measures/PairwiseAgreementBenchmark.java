@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.agreement.measures;
+
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnchoringMode.SINGLE_TOKEN;
+import static de.tudarmstadt.ukp.clarin.webanno.model.OverlapMode.NO_OVERLAP;
+import static de.tudarmstadt.ukp.clarin.webanno.support.WebAnnoConst.SPAN_TYPE;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static org.apache.uima.cas.CAS.TYPE_NAME_STRING;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.tudarmstadt.ukp.clarin.webanno.agreement.PairwiseAnnotationResult;
+import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.cohenkappa.CohenKappaAgreementMeasure;
+import de.tudarmstadt.ukp.clarin.webanno.agreement.results.coding.CodingAgreementResult;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS;
+import de.tudarmstadt.ukp.inception.schema.AnnotationSchemaService;
+
+/**
+ * Compares calculating pairwise agreement from a single diff over all annotators to diffing the
+ * CASes of every pair of annotators separately with an increasing number of annotators. Run via
+ * {@link #main(String[])} from the IDE or after building the test classes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PairwiseAgreementBenchmark
+{
+    private static final String[] TAGS = { "NN", "VB", "JJ", "DT", "IN" };
+
+    private @Param({ "2", "5", "10", "20" }) int annotatorCount;
+    private @Param({ "1000" }) int tokenCount;
+
+    private CohenKappaAgreementMeasure measure;
+    private Map<String, List<CAS>> casMap;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        Project project = new Project();
+
+        AnnotationLayer layer = new AnnotationLayer(POS.class.getName(), POS.class.getSimpleName(),
+                SPAN_TYPE, project, false, SINGLE_TOKEN, NO_OVERLAP);
+        layer.setId(1l);
+
+        AnnotationFeature feature = new AnnotationFeature(project, layer, POS._FeatName_PosValue,
+                POS._FeatName_PosValue, TYPE_NAME_STRING);
+        feature.setId(1l);
+
+        AnnotationSchemaService annotationService = mock(AnnotationSchemaService.class);
+        when(annotationService.listSupportedFeatures(any(Project.class)))
+                .thenReturn(asList(feature));
+
+        measure = new CohenKappaAgreementMeasure(feature, new DefaultAgreementTraits(),
+                annotationService);
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < tokenCount; i++) {
+            text.append("token ");
+        }
+
+        // Each annotator labels most of the tokens and mostly agrees with the others
+        casMap = new LinkedHashMap<>();
+        for (int a = 0; a < annotatorCount; a++) {
+            Random rnd = new Random(a);
+            JCas jcas = JCasFactory.createText(text.toString());
+            for (int i = 0; i < tokenCount; i++) {
+                if (rnd.nextInt(10) == 0) {
+                    continue;
+                }
+
+                POS pos = new POS(jcas, i * 6, i * 6 + 5);
+                pos.setPosValue(rnd.nextInt(5) == 0 ? TAGS[rnd.nextInt(TAGS.length)]
+                        : TAGS[i % TAGS.length]);
+                pos.addToIndexes();
+            }
+            casMap.put("user" + a, asList(jcas.getCas()));
+        }
+    }
+
+    /**
+     * Diffs all annotators once and derives the pairwise results from the shared diff.
+     */
+    @Benchmark
+    public PairwiseAnnotationResult<CodingAgreementResult> sharedDiff()
+    {
+        return measure.getAgreement(casMap);
+    }
+
+    /**
+     * Diffs the CASes of every pair of annotators separately.
+     */
+    @Benchmark
+    public List<CodingAgreementResult> diffPerPair()
+    {
+        List<String> raters = new ArrayList<>(casMap.keySet());
+        List<CodingAgreementResult> results = new ArrayList<>();
+        for (int m = 0; m < raters.size(); m++) {
+            for (int n = 0; n < m; n++) {
+                Map<String, List<CAS>> pairwiseCasMap = new LinkedHashMap<>();
+                pairwiseCasMap.put(raters.get(m), casMap.get(raters.get(m)));
+                pairwiseCasMap.put(raters.get(n), casMap.get(raters.get(n)));
+                results.add(measure.calculatePairAgreement(pairwiseCasMap));
+            }
+        }
+        return results;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder() //
+                .include(PairwiseAgreementBenchmark.class.getSimpleName()) //
+                .build()).run();
+    }
+}
@@ -17,12 +17,15 @@
  */
 package de.tudarmstadt.ukp.inception.annotation.storage;
 
+import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.getRealCas;
 import static org.apache.commons.lang3.builder.ToStringStyle.SHORT_PREFIX_STYLE;
 
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.uima.cas.CAS;
 
+import de.tudarmstadt.ukp.clarin.webanno.support.uima.CasScopedCache;
+
 /**
  * Object representing the attempt to load a CAS, either containing a CAS or an exception if the
  * load failed.
@@ -32,9 +35,11 @@ public class CasHolder
     private final CasKey key;
 
     private CAS cas;
+    private CasScopedCache casScopedCache;
     private Exception exception;
     private boolean typeSystemOutdated;
     private boolean deleted;
+    private long size;
 
     public CasHolder(CasKey aKey)
     {
@@ -78,7 +83,13 @@ public class CasHolder
     {
         Validate.notNull(aCas, "CAS cannot be null");
 
+        if (cas == aCas) {
+            return;
+        }
+
         cas = aCas;
+        // Data derived from the CAS (e.g. indexes) is cached for as long as the holder is kept
+        casScopedCache = CasScopedCache.create(getRealCas(aCas));
     }
 
     public Exception getException()
@@ -111,6 +122,19 @@ public class CasHolder
         return deleted;
     }
 
+    /**
+     * @return the serialized size of the CAS in bytes or {@code 0} if it is not known.
+     */
+    public synchronized long getSize()
+    {
+        return size;
+    }
+
+    public synchronized void setSize(long aSize)
+    {
+        size = aSize;
+    }
+
     public static CasHolder of(CasKey aKey, SupplierThrowingException<CAS> aSupplier)
     {
         try {
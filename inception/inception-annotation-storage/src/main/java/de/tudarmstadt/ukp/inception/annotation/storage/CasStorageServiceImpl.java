@@ -29,7 +29,9 @@ import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.UNM
 import static de.tudarmstadt.ukp.inception.annotation.storage.CasStorageServiceImpl.RepairAndUpgradeFlags.ISOLATED_SESSION;
 import static java.lang.System.currentTimeMillis;
 import static java.util.Collections.newSetFromMap;
+import static java.util.Collections.synchronizedMap;
 import static java.util.Collections.synchronizedSet;
+import static java.util.stream.Collectors.toList;
 import static org.apache.commons.lang3.ArrayUtils.contains;
 
 import java.io.File;
@@ -37,14 +39,20 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.mutable.MutableBoolean;
 import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
 import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
 import org.apache.uima.UIMAException;
@@ -61,6 +69,7 @@ import org.springframework.util.ConcurrentReferenceHashMap;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
 
 import de.tudarmstadt.ukp.clarin.webanno.api.CasProvider;
@@ -97,15 +106,26 @@ public class CasStorageServiceImpl
     private final AnnotationSchemaService schemaService;
     private final CasStorageCacheProperties casStorageProperties;
 
+    private static final int WEIGHT_UNIT = 1024;
+
     private final int snapshotInterval = 1000;
     private final int warningThreshold = 50;
     private final AtomicLong lastExclusiveAccessPoolSnapshotUpdate = new AtomicLong();
     private final AtomicInteger lastExclusiveAccessPoolSnapshotSize = new AtomicInteger();
 
+    private final PooledCasHolderFactory exclusiveAccessPoolFactory;
     private final GenericKeyedObjectPool<CasKey, CasHolder> exclusiveAccessPool;
     private final Set<CasHolder> exclusiveAccessHolders = synchronizedSet(
             newSetFromMap(new WeakHashMap<>()));
     private final Cache<CasKey, CasHolder> sharedAccessCache;
+    // Serialized size of the CASes in the shared access cache per project - kept up-to-date when
+    // CASes are added to or removed from the cache to avoid scanning the cache
+    private final Map<Long, AtomicLong> sharedAccessCacheProjectWeights = new ConcurrentHashMap<>();
+    // CASes in the shared access cache per project in access order (least recently used first).
+    // Caffeine only records accesses asynchronously and not in strict LRU order, so we track the
+    // order ourselves to enforce the project quotas.
+    private final Map<Long, Map<CasKey, CasHolder>> sharedAccessCacheProjectAccessOrder = //
+            new ConcurrentHashMap<>();
 
     private final CasStorageDriver driver;
 
@@ -163,19 +183,64 @@ public class CasStorageServiceImpl
         config.setTestOnBorrow(true);
         config.setMaxWait(casStorageProperties.getCasBorrowWaitTimeout());
         // We do not have to set maxTotal because the default is already to have no limit (-1)
-        exclusiveAccessPool = new GenericKeyedObjectPool<>(new PooledCasHolderFactory(), config);
-
-        sharedAccessCache = Caffeine.newBuilder() //
-                .expireAfterAccess(casStorageProperties.getIdleCasEvictionDelay()) //
-                .maximumSize(casStorageProperties.getSharedCasCacheSize()) //
-                .recordStats() //
-                .build();
+        exclusiveAccessPoolFactory = new PooledCasHolderFactory();
+        exclusiveAccessPool = new GenericKeyedObjectPool<>(exclusiveAccessPoolFactory, config);
+
+        // The cache maintenance (in particular the eviction and thus the updating of the project
+        // weights) runs on the calling thread so that the weights are up-to-date when the call
+        // returns instead of being updated at some later point in a background thread.
+        if (isSharedAccessCacheWeighted()) {
+            // Large documents take up much more memory than small ones, so we limit the cache by
+            // the serialized size of the CASes instead of by the number of CASes
+            sharedAccessCache = Caffeine.newBuilder() //
+                    .expireAfterAccess(casStorageProperties.getIdleCasEvictionDelay()) //
+                    .maximumWeight(toWeight(casStorageProperties.getSharedCasCacheMemory()
+                            .toBytes())) //
+                    .weigher((CasKey key, CasHolder holder) -> toWeight(holder.getSize())) //
+                    .evictionListener((CasKey key, CasHolder holder,
+                            RemovalCause cause) -> removeFromSharedAccessCacheProject(holder)) //
+                    .executor(Runnable::run) //
+                    .recordStats() //
+                    .build();
+        }
+        else {
+            sharedAccessCache = Caffeine.newBuilder() //
+                    .expireAfterAccess(casStorageProperties.getIdleCasEvictionDelay()) //
+                    .maximumSize(casStorageProperties.getSharedCasCacheSize()) //
+                    .evictionListener((CasKey key, CasHolder holder,
+                            RemovalCause cause) -> removeFromSharedAccessCacheProject(holder)) //
+                    .executor(Runnable::run) //
+                    .recordStats() //
+                    .build();
+        }
 
         if (casDoctor == null) {
             log.info("CAS doctor not available - unable to check/repair CASes");
         }
 
-        log.info("CAS cache size: {} instances", casStorageProperties.getSharedCasCacheSize());
+        if (isSharedAccessCacheWeighted()) {
+            log.info("CAS cache size: {}MB serialized CAS data",
+                    casStorageProperties.getSharedCasCacheMemory().toMegabytes());
+        }
+        else {
+            log.info("CAS cache size: {} instances", casStorageProperties.getSharedCasCacheSize());
+        }
+    }
+
+    private boolean isSharedAccessCacheWeighted()
+    {
+        return casStorageProperties.getSharedCasCacheMemory() != null
+                && casStorageProperties.getSharedCasCacheMemory().toBytes() > 0;
+    }
+
+    /**
+     * Caffeine weights are integers, so we measure the serialized CAS size in kilobytes (rounded
+     * up). Every CAS weighs at least one unit.
+     */
+    private static int toWeight(long aBytes)
+    {
+        return (int) Math.min(Integer.MAX_VALUE,
+                Math.max(1, (aBytes + WEIGHT_UNIT - 1) / WEIGHT_UNIT));
     }
 
     public long getSharedAccessCacheSize()
@@ -183,9 +248,235 @@ public class CasStorageServiceImpl
         return sharedAccessCache.estimatedSize();
     }
 
-    public CacheStats getSharedAccessCacheStats()
+    /**
+     * @return the serialized size of the CASes in the shared access cache in bytes or {@code -1}
+     *         if the cache is not weighted by size.
+     */
+    public long getSharedAccessCacheWeight()
+    {
+        // Weights of new entries are only accounted for once pending cache maintenance has run, so
+        // this is an estimate - but forcing the maintenance here would slow down the cache
+        return sharedAccessCache.policy().eviction() //
+                .flatMap(eviction -> eviction.weightedSize().isPresent()
+                        ? Optional.of(eviction.weightedSize().getAsLong() * WEIGHT_UNIT)
+                        : Optional.empty()) //
+                .orElse(-1l);
+    }
+
+    /**
+     * Performs pending maintenance of the shared access cache, e.g. to obtain exact weights in
+     * tests.
+     */
+    void cleanUpSharedAccessCache()
+    {
+        sharedAccessCache.cleanUp();
+    }
+
+    /**
+     * @return the fill level of the shared access cache between 0 and 1.
+     */
+    public double getSharedAccessCacheUtilization()
+    {
+        if (isSharedAccessCacheWeighted()) {
+            return (double) getSharedAccessCacheWeight()
+                    / casStorageProperties.getSharedCasCacheMemory().toBytes();
+        }
+
+        long max = casStorageProperties.getSharedCasCacheSize();
+        if (max == 0) {
+            return 0;
+        }
+
+        return (double) getSharedAccessCacheSize() / max;
+    }
+
+    public SharedAccessCacheStats getSharedAccessCacheStats()
+    {
+        CacheStats stats = sharedAccessCache.stats();
+        long weight = getSharedAccessCacheWeight();
+        long evictionWeight = weight >= 0 ? stats.evictionWeight() * WEIGHT_UNIT
+                : stats.evictionWeight();
+        return new SharedAccessCacheStats(stats, getSharedAccessCacheSize(), weight,
+                evictionWeight);
+    }
+
+    /**
+     * @return the serialized size of the CASes in the shared access cache that belong to the
+     *         given project in bytes.
+     */
+    public long getSharedAccessCacheProjectWeight(long aProjectId)
+    {
+        var weight = sharedAccessCacheProjectWeights.get(aProjectId);
+        return weight != null ? weight.get() : 0;
+    }
+
+    private Map<CasKey, CasHolder> getSharedAccessCacheProjectAccessOrder(long aProjectId)
+    {
+        return sharedAccessCacheProjectAccessOrder.computeIfAbsent(aProjectId,
+                k -> synchronizedMap(new LinkedHashMap<>(16, 0.75f, true)));
+    }
+
+    private void addToSharedAccessCacheProject(CasHolder aHolder)
+    {
+        sharedAccessCacheProjectWeights
+                .computeIfAbsent(aHolder.getKey().getProjectId(), k -> new AtomicLong())
+                .addAndGet(aHolder.getSize());
+        getSharedAccessCacheProjectAccessOrder(aHolder.getKey().getProjectId())
+                .put(aHolder.getKey(), aHolder);
+    }
+
+    /**
+     * Marks the given CAS as the most recently used one of its project.
+     */
+    private void touchSharedAccessCacheProject(CasHolder aHolder)
+    {
+        // Getting an entry from an access-ordered map moves it to the end
+        getSharedAccessCacheProjectAccessOrder(aHolder.getKey().getProjectId())
+                .get(aHolder.getKey());
+    }
+
+    /**
+     * Called when a CAS is evicted from the shared access cache or explicitly removed via
+     * {@link #invalidateSharedAccessCache(CasKey)}.
+     */
+    private void removeFromSharedAccessCacheProject(CasHolder aHolder)
+    {
+        if (aHolder == null) {
+            return;
+        }
+
+        sharedAccessCacheProjectWeights
+                .computeIfAbsent(aHolder.getKey().getProjectId(), k -> new AtomicLong())
+                .addAndGet(-aHolder.getSize());
+        getSharedAccessCacheProjectAccessOrder(aHolder.getKey().getProjectId())
+                .remove(aHolder.getKey(), aHolder);
+    }
+
+    /**
+     * Removes the CAS from the shared access cache. All explicit removals must go through this
+     * method (and not through {@link Cache#invalidate}) to keep the project weights up-to-date.
+     */
+    private void invalidateSharedAccessCache(CasKey aKey)
+    {
+        sharedAccessCache.asMap().computeIfPresent(aKey, (key, holder) -> {
+            removeFromSharedAccessCacheProject(holder);
+            return null;
+        });
+    }
+
+    /**
+     * @return the serialized size of the CASes in the exclusive access pool in bytes. This
+     *         includes CASes which are currently in use.
+     */
+    public long getExclusiveAccessPoolWeight()
+    {
+        return exclusiveAccessPoolFactory.getTotalSize();
+    }
+
+    /**
+     * @return the serialized size of the CASes in the exclusive access pool that belong to the
+     *         given project in bytes. This includes CASes which are currently in use.
+     */
+    public long getExclusiveAccessPoolProjectWeight(long aProjectId)
+    {
+        return exclusiveAccessPoolFactory.getProjectSize(aProjectId);
+    }
+
+    private long getProjectCasCacheQuota()
+    {
+        return casStorageProperties.getProjectCasCacheMemory() != null
+                ? casStorageProperties.getProjectCasCacheMemory().toBytes()
+                : 0;
+    }
+
+    private long getExclusiveCasCacheBudget()
+    {
+        return casStorageProperties.getExclusiveCasCacheMemory() != null
+                ? casStorageProperties.getExclusiveCasCacheMemory().toBytes()
+                : 0;
+    }
+
+    /**
+     * Evicts the least recently used CASes of the given project from the shared access cache until
+     * the project fits into its quota again. The CAS identified by the given key is kept.
+     */
+    private void enforceSharedAccessCacheProjectQuota(CasKey aKey)
     {
-        return sharedAccessCache.stats();
+        long quota = getProjectCasCacheQuota();
+        if (quota <= 0) {
+            return;
+        }
+
+        long excess = getSharedAccessCacheProjectWeight(aKey.getProjectId()) - quota;
+        if (excess <= 0) {
+            return;
+        }
+
+        // The least recently used CASes come first. The entries are only visited until enough of
+        // them have been found. The CASes are removed from the cache only after releasing the lock
+        // on the access order because the removal updates the access order again.
+        var accessOrder = getSharedAccessCacheProjectAccessOrder(aKey.getProjectId());
+        var victims = new ArrayList<CasKey>();
+        synchronized (accessOrder) {
+            long remaining = excess;
+            for (var holder : accessOrder.values()) {
+                if (remaining <= 0) {
+                    break;
+                }
+
+                if (!holder.getKey().equals(aKey)) {
+                    victims.add(holder.getKey());
+                    remaining -= holder.getSize();
+                }
+            }
+        }
+
+        victims.forEach(this::invalidateSharedAccessCache);
+
+        log.debug("Shared access CAS cache: project [{}] exceeded its quota - evicted CASes",
+                aKey.getProjectId());
+    }
+
+    /**
+     * Returns the holder to the exclusive access pool and then drops idle CASes from the pool if
+     * the pool or the project of the holder exceeds its memory budget. CASes that are in use are
+     * never dropped.
+     */
+    private void returnToExclusiveAccessPool(CasKey aKey, CasHolder aHolder)
+    {
+        exclusiveAccessPool.returnObject(aKey, aHolder);
+
+        long quota = getProjectCasCacheQuota();
+        if (quota > 0 && exclusiveAccessPoolFactory.getProjectSize(aKey.getProjectId()) > quota) {
+            var projectKeys = new LinkedHashSet<CasKey>();
+            // Must use the forEach here because stream() is not synchronized!
+            exclusiveAccessHolders.forEach(h -> {
+                if (h.getKey().getProjectId() == aKey.getProjectId()
+                        && !h.getKey().equals(aKey)) {
+                    projectKeys.add(h.getKey());
+                }
+            });
+
+            for (CasKey key : projectKeys) {
+                if (exclusiveAccessPoolFactory.getProjectSize(aKey.getProjectId()) <= quota) {
+                    break;
+                }
+
+                // Only drops the CAS if it is idle
+                exclusiveAccessPool.clear(key);
+            }
+        }
+
+        long budget = getExclusiveCasCacheBudget();
+        while (budget > 0 && exclusiveAccessPoolFactory.getTotalSize() > budget
+                && exclusiveAccessPool.getNumIdle() > 0) {
+            long before = exclusiveAccessPoolFactory.getTotalSize();
+            exclusiveAccessPool.clearOldest();
+            if (exclusiveAccessPoolFactory.getTotalSize() == before) {
+                // Only CASes which do not have a size are idle
+                break;
+            }
+        }
     }
 
     @Override
@@ -255,7 +546,7 @@ public class CasStorageServiceImpl
 
             // Drop the CAS from the shared CAS it gets re-loaded on the next access - no effect if
             // the CAS is not present in the shared cache
-            sharedAccessCache.invalidate(new CasKey(aDocument, aUserName));
+            invalidateSharedAccessCache(new CasKey(aDocument, aUserName));
 
             session.getManagedState(aCas).ifPresent(SessionManagedCas::incrementWriteCount);
         }
@@ -348,6 +639,8 @@ public class CasStorageServiceImpl
                         }
 
                         holder.setCas(cas);
+                        exclusiveAccessPoolFactory.updateSize(holder,
+                                getSerializedCasSize(aDocument, aUsername));
 
                         // Hook up releasing of the CAS when CAS.release() is called via the
                         // CasStorageSession
@@ -378,7 +671,7 @@ public class CasStorageServiceImpl
                                 "CAS storage session [{}]: returning borrowed CAS [{}] for [{}]@{} after failure to load CAS",
                                 session.hashCode(), holder.getCasHashCode(), aUsername, aDocument);
                         try {
-                            exclusiveAccessPool.returnObject(key, holder);
+                            returnToExclusiveAccessPool(key, holder);
                             logExclusiveAccessHolders();
                         }
                         catch (Exception e1) {
@@ -401,14 +694,28 @@ public class CasStorageServiceImpl
                 try (WithExclusiveAccess access = new WithExclusiveAccess(aDocument, aUsername)) {
                     // Since we promise to only read the CAS, we don't have to worry about it being
                     // locked to a particular thread...
-                    casHolder = sharedAccessCache.get(new CasKey(aDocument, aUsername),
-                            (key) -> CasHolder.of(key,
-                                    () -> getRealCas(readOrCreateUnmanagedCas(aDocument, aUsername,
-                                            aSupplier, aUpgradeMode))));
-                    var size = getSharedAccessCacheSize();
-                    var max = casStorageProperties.getSharedCasCacheSize();
-                    if (size > (max * 0.9)) {
-                        log.warn("Shared access CAS cache is >= 90% full: {} / {}", size, max);
+                    var loaded = new MutableBoolean(false);
+                    casHolder = sharedAccessCache.get(new CasKey(aDocument, aUsername), (key) -> {
+                        CasHolder holder = CasHolder.of(key,
+                                () -> getRealCas(readOrCreateUnmanagedCas(aDocument, aUsername,
+                                        aSupplier, aUpgradeMode)));
+                        if (holder.getException() == null) {
+                            holder.setSize(getSerializedCasSize(aDocument, aUsername));
+                            addToSharedAccessCacheProject(holder);
+                        }
+                        loaded.setTrue();
+                        return holder;
+                    });
+                    if (loaded.isTrue()) {
+                        enforceSharedAccessCacheProjectQuota(casHolder.getKey());
+                    }
+                    else {
+                        touchSharedAccessCacheProject(casHolder);
+                    }
+                    var utilization = getSharedAccessCacheUtilization();
+                    if (utilization > 0.9) {
+                        log.warn("Shared access CAS cache is >= 90% full: {}%",
+                                Math.round(utilization * 100));
                     }
                 }
             }
@@ -496,7 +803,7 @@ public class CasStorageServiceImpl
         try {
             log.trace("Returning borrowed CAS [{}] for [{}]@[{}]({})", cas.hashCode(),
                     aKey.getUserId(), aKey.getDocumentName(), aKey.getDocumentId());
-            exclusiveAccessPool.returnObject(aKey, aHolder);
+            returnToExclusiveAccessPool(aKey, aHolder);
             logExclusiveAccessHolders();
         }
         catch (Exception e) {
@@ -533,6 +840,19 @@ public class CasStorageServiceImpl
         }
     }
 
+    private long getSerializedCasSize(SourceDocument aDocument, String aUsername)
+    {
+        try {
+            return driver.getCasMetadata(aDocument, aUsername).map(CasStorageMetadata::getSize)
+                    .orElse(0l);
+        }
+        catch (IOException e) {
+            log.warn("Unable to determine size of annotation document [{}] of user [{}]",
+                    aDocument, aUsername, e);
+            return 0;
+        }
+    }
+
     /**
      * Fetches the CAS for the given user/document combination either from the storage or by using
      * the given {@link CasProvider} if it does not yet exist in the storage.
@@ -612,7 +932,7 @@ public class CasStorageServiceImpl
             if (sharedCasHolder != null) {
                 sharedCasHolder.setDeleted(true);
             }
-            sharedAccessCache.invalidate(key);
+            invalidateSharedAccessCache(key);
 
             // Drop the CAS from the exclusive access pool. This is done my marking it as deleted
             // and then releasing it (returning it to the pool). Upon return, the deleted flag
@@ -847,6 +1167,7 @@ public class CasStorageServiceImpl
         implements AutoCloseable
     {
         private final CasKey key;
+        private final SourceDocument document;
         private CasHolder holder;
         private String documentName;
         private long documentId;
@@ -856,6 +1177,7 @@ public class CasStorageServiceImpl
             throws CasSessionException
         {
             key = new CasKey(aDocument, aUser);
+            document = aDocument;
             documentName = aDocument.getName();
             documentId = aDocument.getId();
             username = aUser;
@@ -912,6 +1234,8 @@ public class CasStorageServiceImpl
                         .setOwner(_cas -> returnBorrowedCas(_cas, getKey(), holder));
 
                 holder.setCas(aCas);
+                exclusiveAccessPoolFactory.updateSize(holder,
+                        getSerializedCasSize(document, username));
             }
             else {
                 CasStorageSession.get().getManagedState(documentId, username)
@@ -950,7 +1274,7 @@ public class CasStorageServiceImpl
         public void release()
         {
             if (holder != null) {
-                exclusiveAccessPool.returnObject(key, holder);
+                returnToExclusiveAccessPool(key, holder);
                 holder = null;
                 logExclusiveAccessHolders();
             }
@@ -965,7 +1289,7 @@ public class CasStorageServiceImpl
             if (holder != null) {
                 log.trace("Returning briefly borrowed CAS [{}]@[{}]({})", username, documentName,
                         documentId);
-                exclusiveAccessPool.returnObject(key, holder);
+                returnToExclusiveAccessPool(key, holder);
                 logExclusiveAccessHolders();
             }
         }
@@ -1050,8 +1374,10 @@ public class CasStorageServiceImpl
 
         // Drop all cached CASes from the updated project from the cache so the CASes get loaded
         // with an updated type system on next access
-        sharedAccessCache.asMap().keySet()
-                .removeIf(key -> Objects.equals(key.getProjectId(), aEvent.getProject().getId()));
+        sharedAccessCache.asMap().keySet().stream() //
+                .filter(key -> Objects.equals(key.getProjectId(), aEvent.getProject().getId())) //
+                .collect(toList()) //
+                .forEach(this::invalidateSharedAccessCache);
     }
 
     private void realWriteCas(SourceDocument aDocument, String aUserName, CAS aCas)
@@ -1060,5 +1386,21 @@ public class CasStorageServiceImpl
         analyze(aDocument.getProject(), aDocument.getName(), aDocument.getId(), aUserName, aCas);
 
         driver.writeCas(aDocument, aUserName, aCas);
+
+        // The size of the CAS has changed, so the size accounted for in the exclusive access pool
+        // must be updated. The CAS in the shared access cache has already been dropped.
+        CasKey key = new CasKey(aDocument, aUserName);
+        var holders = new ArrayList<CasHolder>();
+        // Must use the forEach here because stream() is not synchronized!
+        exclusiveAccessHolders.forEach(h -> {
+            if (Objects.equals(h.getKey(), key) && h.isCasSet()) {
+                holders.add(h);
+            }
+        });
+
+        if (!holders.isEmpty()) {
+            long size = getSerializedCasSize(aDocument, aUserName);
+            holders.forEach(h -> exclusiveAccessPoolFactory.updateSize(h, size));
+        }
     }
 }
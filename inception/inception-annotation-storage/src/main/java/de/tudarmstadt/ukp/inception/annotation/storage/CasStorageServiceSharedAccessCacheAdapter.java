@@ -116,14 +116,23 @@ public class CasStorageServiceSharedAccessCacheAdapter
     }
 
     @ManagedAttribute
-    public double getUtilizationRate()
+    public long getActiveWeight()
     {
-        long max = getMaxCount();
+        return casStorageService.getSharedAccessCacheWeight();
+    }
 
-        if (max == 0) {
-            return 0;
-        }
+    @ManagedAttribute
+    public long getMaxWeight()
+    {
+        // -1 if the cache is not limited by size, same as the weight
+        return casStorageProperties.getSharedCasCacheMemory() != null
+                ? casStorageProperties.getSharedCasCacheMemory().toBytes()
+                : -1;
+    }
 
-        return getActiveCount() / max;
+    @ManagedAttribute
+    public double getUtilizationRate()
+    {
+        return casStorageService.getSharedAccessCacheUtilization();
     }
 }
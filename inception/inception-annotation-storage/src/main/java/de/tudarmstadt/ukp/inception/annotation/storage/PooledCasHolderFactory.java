@@ -19,6 +19,10 @@ package de.tudarmstadt.ukp.inception.annotation.storage;
 
 import static org.apache.commons.pool2.PooledObjectState.RETURNING;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.commons.pool2.BaseKeyedPooledObjectFactory;
 import org.apache.commons.pool2.PooledObject;
 import org.apache.commons.pool2.impl.DefaultPooledObject;
@@ -26,12 +30,58 @@ import org.apache.commons.pool2.impl.DefaultPooledObject;
 public class PooledCasHolderFactory
     extends BaseKeyedPooledObjectFactory<CasKey, CasHolder>
 {
+    private final AtomicLong totalSize = new AtomicLong();
+    private final Map<Long, AtomicLong> projectSizes = new ConcurrentHashMap<>();
+
     @Override
     public CasHolder create(CasKey aKey) throws Exception
     {
         return new CasHolder(aKey);
     }
 
+    @Override
+    public void destroyObject(CasKey aKey, PooledObject<CasHolder> aP) throws Exception
+    {
+        updateSize(aP.getObject(), 0);
+    }
+
+    /**
+     * Sets the serialized size of the CAS in the given holder and updates the total size of the
+     * CASes managed by the pool accordingly.
+     */
+    public void updateSize(CasHolder aHolder, long aSize)
+    {
+        long delta;
+        synchronized (aHolder) {
+            delta = aSize - aHolder.getSize();
+            aHolder.setSize(aSize);
+        }
+
+        if (delta != 0) {
+            totalSize.addAndGet(delta);
+            projectSizes.computeIfAbsent(aHolder.getKey().getProjectId(), k -> new AtomicLong())
+                    .addAndGet(delta);
+        }
+    }
+
+    /**
+     * @return total serialized size of the CASes currently managed by the pool in bytes.
+     */
+    public long getTotalSize()
+    {
+        return totalSize.get();
+    }
+
+    /**
+     * @return total serialized size of the CASes of the given project currently managed by the
+     *         pool in bytes.
+     */
+    public long getProjectSize(long aProjectId)
+    {
+        var size = projectSizes.get(aProjectId);
+        return size != null ? size.get() : 0;
+    }
+
     @Override
     public PooledObject<CasHolder> wrap(CasHolder aCas)
     {
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.annotation.storage;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Snapshot of the statistics of the shared read-only CAS cache. In addition to the statistics
+ * recorded by the cache itself, this includes the live size and weight of the cache.
+ */
+public class SharedAccessCacheStats
+{
+    private final CacheStats stats;
+    private final long size;
+    private final long weight;
+    private final long evictionWeight;
+
+    public SharedAccessCacheStats(CacheStats aStats, long aSize, long aWeight,
+            long aEvictionWeight)
+    {
+        stats = aStats;
+        size = aSize;
+        weight = aWeight;
+        evictionWeight = aEvictionWeight;
+    }
+
+    public long hitCount()
+    {
+        return stats.hitCount();
+    }
+
+    public double hitRate()
+    {
+        return stats.hitRate();
+    }
+
+    public long missCount()
+    {
+        return stats.missCount();
+    }
+
+    public double missRate()
+    {
+        return stats.missRate();
+    }
+
+    public long requestCount()
+    {
+        return stats.requestCount();
+    }
+
+    public long loadSuccessCount()
+    {
+        return stats.loadSuccessCount();
+    }
+
+    public long loadFailureCount()
+    {
+        return stats.loadFailureCount();
+    }
+
+    public double loadFailureRate()
+    {
+        return stats.loadFailureRate();
+    }
+
+    public long totalLoadTime()
+    {
+        return stats.totalLoadTime();
+    }
+
+    public long evictionCount()
+    {
+        return stats.evictionCount();
+    }
+
+    /**
+     * @return the serialized size of the evicted CASes in bytes if the cache is weighted by size,
+     *         otherwise the number of evicted CASes.
+     */
+    public long evictionWeight()
+    {
+        return evictionWeight;
+    }
+
+    /**
+     * @return the number of CASes in the cache.
+     */
+    public long size()
+    {
+        return size;
+    }
+
+    /**
+     * @return the serialized size of the CASes in the cache in bytes or {@code -1} if the cache is
+     *         not weighted by size.
+     */
+    public long weight()
+    {
+        return weight;
+    }
+}
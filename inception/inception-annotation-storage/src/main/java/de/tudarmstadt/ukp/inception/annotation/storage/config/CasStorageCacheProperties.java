@@ -19,6 +19,8 @@ package de.tudarmstadt.ukp.inception.annotation.storage.config;
 
 import java.time.Duration;
 
+import org.springframework.util.unit.DataSize;
+
 public interface CasStorageCacheProperties
 {
     /**
@@ -37,4 +39,25 @@ public interface CasStorageCacheProperties
      * @return number of CAS instances that should be kept in memory for shared-read-only access.
      */
     long getSharedCasCacheSize();
+
+    /**
+     * @return total serialized size of the CAS instances that should be kept in memory for
+     *         shared-read-only access. If this is zero, the cache is bounded by
+     *         {@link #getSharedCasCacheSize()} instead.
+     */
+    DataSize getSharedCasCacheMemory();
+
+    /**
+     * @return total serialized size of the CAS instances that should be kept in memory for
+     *         exclusive access once they are no longer in use. CASes that are in use are never
+     *         evicted. If this is zero, idle CASes are only evicted after
+     *         {@link #getIdleCasEvictionDelay()}.
+     */
+    DataSize getExclusiveCasCacheMemory();
+
+    /**
+     * @return maximum total serialized size of the CAS instances of a single project in each of
+     *         the caches. If this is zero, there is no per-project limit.
+     */
+    DataSize getProjectCasCacheMemory();
 }
@@ -20,6 +20,7 @@ package de.tudarmstadt.ukp.inception.annotation.storage.config;
 import java.time.Duration;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
 /**
  * <p>
@@ -33,6 +34,9 @@ public class CasStorageCachePropertiesImpl
     private Duration idleCasEvictionDelay = Duration.ofMinutes(5);
     private Duration casBorrowWaitTimeout = Duration.ofMinutes(3);
     private long sharedCasCacheSize = getDefaultCasCacheSize();
+    private DataSize sharedCasCacheMemory = getDefaultCasCacheMemory();
+    private DataSize exclusiveCasCacheMemory = getDefaultCasCacheMemory();
+    private DataSize projectCasCacheMemory = DataSize.ofBytes(0);
 
     @Override
     public Duration getIdleCasEvictionDelay()
@@ -67,8 +71,50 @@ public class CasStorageCachePropertiesImpl
         sharedCasCacheSize = aSharedCasCacheSize;
     }
 
+    @Override
+    public DataSize getSharedCasCacheMemory()
+    {
+        return sharedCasCacheMemory;
+    }
+
+    public void setSharedCasCacheMemory(DataSize aSharedCasCacheMemory)
+    {
+        sharedCasCacheMemory = aSharedCasCacheMemory;
+    }
+
+    @Override
+    public DataSize getExclusiveCasCacheMemory()
+    {
+        return exclusiveCasCacheMemory;
+    }
+
+    public void setExclusiveCasCacheMemory(DataSize aExclusiveCasCacheMemory)
+    {
+        exclusiveCasCacheMemory = aExclusiveCasCacheMemory;
+    }
+
+    @Override
+    public DataSize getProjectCasCacheMemory()
+    {
+        return projectCasCacheMemory;
+    }
+
+    public void setProjectCasCacheMemory(DataSize aProjectCasCacheMemory)
+    {
+        projectCasCacheMemory = aProjectCasCacheMemory;
+    }
+
     private static final long MB = 1024 * 1024;
 
+    /**
+     * The serialized form of a CAS is considerably smaller than the CAS in memory, so we only
+     * allow for a fraction of the heap here.
+     */
+    public static DataSize getDefaultCasCacheMemory()
+    {
+        return DataSize.ofBytes(Runtime.getRuntime().maxMemory() / 20);
+    }
+
     public static long getDefaultCasCacheSize()
     {
         long maxMemory = Runtime.getRuntime().maxMemory();
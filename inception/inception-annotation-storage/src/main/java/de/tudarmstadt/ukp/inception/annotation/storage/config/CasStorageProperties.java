@@ -17,6 +17,10 @@
  */
 package de.tudarmstadt.ukp.inception.annotation.storage.config;
 
+import java.time.Duration;
+
+import org.springframework.util.unit.DataSize;
+
 public interface CasStorageProperties
 {
     boolean isTraceAccess();
@@ -24,4 +28,36 @@ public interface CasStorageProperties
     boolean isParanoidCasSerialization();
 
     boolean isCompressedCasSerialization();
+
+    /**
+     * @return time for which writes of a CAS are held in memory before being flushed to disk.
+     *         Repeated writes to the same CAS within this time are coalesced into a single write.
+     *         If the delay is zero or negative, CASes are written synchronously. Pending writes
+     *         are journaled and recovered on the next start if the application terminates before
+     *         flushing them.
+     */
+    Duration getWriteBehindDelay();
+
+    /**
+     * @return number of background threads used to flush CASes to disk in write-behind mode.
+     */
+    int getWriteBehindThreads();
+
+    /**
+     * @return whether changes to a CAS are written as deltas to a journal next to the CAS file
+     *         instead of rewriting the full CAS file every time.
+     */
+    boolean isDeltaCasSerialization();
+
+    /**
+     * @return size of the delta journal relative to the size of the CAS file at which the journal
+     *         is compacted into a new CAS file.
+     */
+    double getDeltaCompactionRatio();
+
+    /**
+     * @return maximum total size of the uncompressed CAS versions which the open delta journals
+     *         keep in memory. This memory is used in addition to the CAS caches.
+     */
+    DataSize getDeltaJournalCacheMemory();
 }
@@ -17,9 +17,12 @@
  */
 package de.tudarmstadt.ukp.inception.annotation.storage.config;
 
+import java.time.Duration;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.jmx.export.annotation.ManagedAttribute;
 import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.util.unit.DataSize;
 
 /**
  * <p>
@@ -34,6 +37,12 @@ public class CasStoragePropertiesImpl
     private boolean compressedCasSerialization = true;
     private boolean paranoidCasSerialization = false;
     private boolean traceAccess = false;
+    private Duration writeBehindDelay = Duration.ZERO;
+    private int writeBehindThreads = 2;
+    private boolean deltaCasSerialization = false;
+    private double deltaCompactionRatio = 0.5d;
+    private DataSize deltaJournalCacheMemory = CasStorageCachePropertiesImpl
+            .getDefaultCasCacheMemory();
 
     @ManagedAttribute
     public void setTraceAccess(boolean aTraceAccess)
@@ -71,4 +80,60 @@ public class CasStoragePropertiesImpl
     {
         return compressedCasSerialization;
     }
+
+    public void setWriteBehindDelay(Duration aWriteBehindDelay)
+    {
+        writeBehindDelay = aWriteBehindDelay;
+    }
+
+    @Override
+    public Duration getWriteBehindDelay()
+    {
+        return writeBehindDelay;
+    }
+
+    public void setWriteBehindThreads(int aWriteBehindThreads)
+    {
+        writeBehindThreads = aWriteBehindThreads;
+    }
+
+    @Override
+    public int getWriteBehindThreads()
+    {
+        return writeBehindThreads;
+    }
+
+    public void setDeltaCasSerialization(boolean aDeltaCasSerialization)
+    {
+        deltaCasSerialization = aDeltaCasSerialization;
+    }
+
+    @Override
+    @ManagedAttribute
+    public boolean isDeltaCasSerialization()
+    {
+        return deltaCasSerialization;
+    }
+
+    public void setDeltaCompactionRatio(double aDeltaCompactionRatio)
+    {
+        deltaCompactionRatio = aDeltaCompactionRatio;
+    }
+
+    @Override
+    public double getDeltaCompactionRatio()
+    {
+        return deltaCompactionRatio;
+    }
+
+    public void setDeltaJournalCacheMemory(DataSize aDeltaJournalCacheMemory)
+    {
+        deltaJournalCacheMemory = aDeltaJournalCacheMemory;
+    }
+
+    @Override
+    public DataSize getDeltaJournalCacheMemory()
+    {
+        return deltaJournalCacheMemory;
+    }
 }
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.annotation.storage.driver.filesystem;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Computes and applies binary deltas between two versions of a serialized CAS. The delta consists
+ * of instructions to copy ranges from the source version and of literal data which is not
+ * contained in the source version. Matching ranges are located by means of a rolling hash over
+ * fixed-size blocks of the source version.
+ */
+public final class BinaryDelta
+{
+    static final int BLOCK_SIZE = 64;
+
+    private static final byte OP_COPY = 0;
+    private static final byte OP_INSERT = 1;
+
+    private static final int HASH_MULTIPLIER = 0x01000193;
+    private static final int HASH_OUT_FACTOR;
+
+    static {
+        int factor = 1;
+        for (int i = 0; i < BLOCK_SIZE - 1; i++) {
+            factor *= HASH_MULTIPLIER;
+        }
+        HASH_OUT_FACTOR = factor;
+    }
+
+    private BinaryDelta()
+    {
+        // No instances
+    }
+
+    /**
+     * @param aSource
+     *            the source version.
+     * @param aTarget
+     *            the target version.
+     * @return a delta which turns the source version into the target version.
+     */
+    public static byte[] encode(byte[] aSource, byte[] aTarget)
+    {
+        Map<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK_SIZE <= aSource.length; i += BLOCK_SIZE) {
+            blocks.putIfAbsent(hash(aSource, i), i);
+        }
+
+        var bos = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bos)) {
+            int literalStart = 0;
+            int pos = 0;
+            int hash = aTarget.length >= BLOCK_SIZE ? hash(aTarget, 0) : 0;
+            while (pos + BLOCK_SIZE <= aTarget.length) {
+                Integer match = blocks.get(hash);
+                if (match != null && Arrays.equals(aSource, match, match + BLOCK_SIZE, aTarget,
+                        pos, pos + BLOCK_SIZE)) {
+                    // Extend the match backwards into the pending literal data...
+                    int sourceStart = match;
+                    int targetStart = pos;
+                    while (sourceStart > 0 && targetStart > literalStart
+                            && aSource[sourceStart - 1] == aTarget[targetStart - 1]) {
+                        sourceStart--;
+                        targetStart--;
+                    }
+
+                    // ... and forward as far as possible
+                    int sourceEnd = match + BLOCK_SIZE;
+                    int targetEnd = pos + BLOCK_SIZE;
+                    while (sourceEnd < aSource.length && targetEnd < aTarget.length
+                            && aSource[sourceEnd] == aTarget[targetEnd]) {
+                        sourceEnd++;
+                        targetEnd++;
+                    }
+
+                    writeInsert(out, aTarget, literalStart, targetStart);
+                    out.writeByte(OP_COPY);
+                    out.writeInt(sourceStart);
+                    out.writeInt(targetEnd - targetStart);
+
+                    pos = targetEnd;
+                    literalStart = targetEnd;
+                    if (pos + BLOCK_SIZE <= aTarget.length) {
+                        hash = hash(aTarget, pos);
+                    }
+                }
+                else {
+                    if (pos + BLOCK_SIZE < aTarget.length) {
+                        hash = (hash - (aTarget[pos] & 0xff) * HASH_OUT_FACTOR) * HASH_MULTIPLIER
+                                + (aTarget[pos + BLOCK_SIZE] & 0xff);
+                    }
+                    pos++;
+                }
+            }
+
+            writeInsert(out, aTarget, literalStart, aTarget.length);
+        }
+        catch (IOException e) {
+            // Cannot happen when writing to a byte array
+            throw new IllegalStateException(e);
+        }
+
+        return bos.toByteArray();
+    }
+
+    /**
+     * @param aSource
+     *            the source version.
+     * @param aDelta
+     *            a delta produced by {@link #encode}.
+     * @return the target version.
+     * @throws IOException
+     *             if the delta is invalid or does not match the source version.
+     */
+    public static byte[] apply(byte[] aSource, byte[] aDelta) throws IOException
+    {
+        var target = new ByteArrayOutputStream(aSource.length);
+        try (var in = new DataInputStream(new ByteArrayInputStream(aDelta))) {
+            while (true) {
+                int op;
+                try {
+                    op = in.readByte();
+                }
+                catch (EOFException e) {
+                    break;
+                }
+
+                switch (op) {
+                case OP_COPY: {
+                    int offset = in.readInt();
+                    int length = in.readInt();
+                    if (offset < 0 || length < 0 || offset + length > aSource.length) {
+                        throw new IOException("Delta refers to data outside the source version");
+                    }
+                    target.write(aSource, offset, length);
+                    break;
+                }
+                case OP_INSERT: {
+                    int length = in.readInt();
+                    if (length < 0) {
+                        throw new IOException("Delta contains invalid literal length");
+                    }
+                    byte[] literal = in.readNBytes(length);
+                    if (literal.length != length) {
+                        throw new IOException("Delta is truncated");
+                    }
+                    target.write(literal);
+                    break;
+                }
+                default:
+                    throw new IOException("Delta contains unknown operation [" + op + "]");
+                }
+            }
+        }
+
+        return target.toByteArray();
+    }
+
+    private static void writeInsert(DataOutputStream aOut, byte[] aData, int aBegin, int aEnd)
+        throws IOException
+    {
+        if (aEnd <= aBegin) {
+            return;
+        }
+
+        aOut.writeByte(OP_INSERT);
+        aOut.writeInt(aEnd - aBegin);
+        aOut.write(aData, aBegin, aEnd - aBegin);
+    }
+
+    private static int hash(byte[] aData, int aOffset)
+    {
+        int hash = 0;
+        for (int i = aOffset; i < aOffset + BLOCK_SIZE; i++) {
+            hash = hash * HASH_MULTIPLIER + (aData[i] & 0xff);
+        }
+        return hash;
+    }
+}
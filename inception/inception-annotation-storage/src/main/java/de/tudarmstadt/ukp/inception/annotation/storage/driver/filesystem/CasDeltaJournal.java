@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.annotation.storage.driver.filesystem;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Journal of binary deltas stored next to a CAS file. Each record in the journal contains the
+ * delta from the previous version of the CAS to the next version. The first record is relative to
+ * the CAS file. The journal header records the size and checksum of the CAS file it belongs to, so
+ * a journal which has been left over from an earlier CAS file is detected and ignored. Every record
+ * carries the checksum of the version it produces. A record which is incomplete or which does not
+ * produce the expected version (e.g. because the application crashed while appending to the
+ * journal) and any records following it are ignored.
+ * <p>
+ * Appending requires the latest version of the CAS, so an open journal should be kept and reused
+ * for subsequent appends instead of replaying the journal again. Use {@link #isCurrent(File)} to
+ * check if a kept journal still matches the files on disk.
+ */
+class CasDeltaJournal
+{
+    private static final Logger LOG = LoggerFactory.getLogger(CasDeltaJournal.class);
+
+    private static final int MAGIC = 0x43415344; // "CASD"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+    private static final int RECORD_HEADER_SIZE = 1 + 4 + 8 + 4;
+
+    private static final byte FLAG_COMPRESSED = 1;
+
+    private final File journalFile;
+    private final long baseLength;
+    private final long baseChecksum;
+    private byte[] currentVersion;
+    private long length;
+
+    private CasDeltaJournal(File aJournalFile, long aBaseLength, long aBaseChecksum,
+            byte[] aBaseVersion)
+    {
+        journalFile = aJournalFile;
+        baseLength = aBaseLength;
+        baseChecksum = aBaseChecksum;
+        currentVersion = aBaseVersion;
+    }
+
+    /**
+     * Reads the given CAS file and replays the journal on top of it (if there is one).
+     * 
+     * @param aJournalFile
+     *            the journal file.
+     * @param aCasFile
+     *            the CAS file the journal belongs to.
+     * @return the journal.
+     * @throws IOException
+     *             if the CAS file cannot be read.
+     */
+    static CasDeltaJournal open(File aJournalFile, File aCasFile) throws IOException
+    {
+        byte[] baseData = Files.readAllBytes(aCasFile.toPath());
+
+        var journal = new CasDeltaJournal(aJournalFile, baseData.length, checksum(baseData),
+                CasPersistenceUtils.uncompress(baseData));
+
+        if (aJournalFile.exists()) {
+            journal.replay();
+        }
+
+        return journal;
+    }
+
+    /**
+     * Checks if the journal still reflects the state of the files on disk, i.e. if neither the CAS
+     * file nor the journal file have been changed other than through this journal.
+     * 
+     * @param aCasFile
+     *            the CAS file the journal belongs to.
+     * @return whether the journal can still be used.
+     */
+    boolean isCurrent(File aCasFile)
+    {
+        if (aCasFile.length() != baseLength) {
+            return false;
+        }
+
+        if (length == 0) {
+            return !journalFile.exists();
+        }
+
+        return journalFile.length() == length;
+    }
+
+    /**
+     * @return the latest version of the serialized CAS (uncompressed).
+     */
+    byte[] getCurrentVersion()
+    {
+        return currentVersion;
+    }
+
+    /**
+     * @return the size of the valid part of the journal.
+     */
+    long getLength()
+    {
+        return length;
+    }
+
+    /**
+     * @return the size of the CAS file the journal belongs to.
+     */
+    long getBaseLength()
+    {
+        return baseLength;
+    }
+
+    /**
+     * Appends the delta from the current version to the given new version to the journal.
+     * 
+     * @param aNewVersion
+     *            the new version of the serialized CAS (uncompressed).
+     * @param aCompressed
+     *            whether to compress the delta.
+     * @param aMaxLength
+     *            the maximum size of the journal.
+     * @return whether the delta was appended. If the journal would exceed the maximum size, nothing
+     *         is written.
+     * @throws IOException
+     *             if the journal cannot be written.
+     */
+    boolean append(byte[] aNewVersion, boolean aCompressed, long aMaxLength) throws IOException
+    {
+        byte[] delta = BinaryDelta.encode(currentVersion, aNewVersion);
+        if (aCompressed) {
+            delta = Snappy.compress(delta);
+        }
+
+        var bos = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bos)) {
+            if (length == 0) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(baseLength);
+                out.writeLong(baseChecksum);
+            }
+            out.writeByte(aCompressed ? FLAG_COMPRESSED : 0);
+            out.writeInt(aNewVersion.length);
+            out.writeLong(checksum(aNewVersion));
+            out.writeInt(delta.length);
+            out.write(delta);
+        }
+
+        byte[] data = bos.toByteArray();
+        if (length + data.length > aMaxLength) {
+            return false;
+        }
+
+        // Any trailing data beyond the valid part of the journal is dropped
+        try (var channel = FileChannel.open(journalFile.toPath(), CREATE, WRITE)) {
+            channel.truncate(length);
+            channel.position(length);
+            var buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        length += data.length;
+        currentVersion = aNewVersion;
+        return true;
+    }
+
+    private void replay() throws IOException
+    {
+        try (var in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(journalFile.toPath())))) {
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                    LOG.warn("Ignoring delta journal [{}] with unknown format", journalFile);
+                    return;
+                }
+
+                if (in.readLong() != baseLength || in.readLong() != baseChecksum) {
+                    LOG.warn("Ignoring delta journal [{}] which does not match the CAS file",
+                            journalFile);
+                    return;
+                }
+            }
+            catch (EOFException e) {
+                LOG.warn("Ignoring incomplete delta journal [{}]", journalFile);
+                return;
+            }
+
+            length = HEADER_SIZE;
+            while (true) {
+                byte[] version;
+                try {
+                    int flags = in.read();
+                    if (flags == -1) {
+                        break;
+                    }
+
+                    int versionLength = in.readInt();
+                    long versionChecksum = in.readLong();
+                    byte[] delta = readFully(in, in.readInt());
+                    if ((flags & FLAG_COMPRESSED) != 0) {
+                        version = BinaryDelta.apply(currentVersion, Snappy.uncompress(delta));
+                    }
+                    else {
+                        version = BinaryDelta.apply(currentVersion, delta);
+                    }
+
+                    if (version.length != versionLength || checksum(version) != versionChecksum) {
+                        throw new IOException("Checksum mismatch");
+                    }
+
+                    length += RECORD_HEADER_SIZE + delta.length;
+                }
+                catch (IOException e) {
+                    LOG.warn("Ignoring incomplete or corrupt record at offset {} in delta journal "
+                            + "[{}]: {}", length, journalFile, e.getMessage());
+                    break;
+                }
+
+                currentVersion = version;
+            }
+        }
+    }
+
+    private static byte[] readFully(InputStream aIn, int aLength) throws IOException
+    {
+        if (aLength < 0) {
+            throw new IOException("Invalid record length");
+        }
+
+        byte[] data = aIn.readNBytes(aLength);
+        if (data.length != aLength) {
+            throw new EOFException();
+        }
+        return data;
+    }
+
+    private static long checksum(byte[] aData)
+    {
+        var crc = new CRC32();
+        crc.update(aData);
+        return crc.getValue();
+    }
+}
@@ -22,6 +22,8 @@ import static org.apache.uima.cas.impl.Serialization.deserializeCASComplete;
 import static org.apache.uima.cas.impl.Serialization.serializeCASComplete;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -105,6 +107,29 @@ public final class CasPersistenceUtils
         }
     }
 
+    /**
+     * Serializes the given CAS into a byte array using the same format as used for the files.
+     * 
+     * @param aCas
+     *            the CAS to serialize.
+     * @param aCompressed
+     *            whether to apply compression.
+     * @return the serialized CAS.
+     * @throws IOException
+     *             if the CAS cannot be serialized.
+     */
+    public static byte[] serializeCas(CAS aCas, boolean aCompressed) throws IOException
+    {
+        var bos = new ByteArrayOutputStream();
+        if (aCompressed) {
+            writeSnappyCompressed(bos, aCas);
+        }
+        else {
+            write(bos, aCas);
+        }
+        return bos.toByteArray();
+    }
+
     private static void write(OutputStream aOut, CAS aCas) throws IOException, FileNotFoundException
     {
         CASCompleteSerializer serializer = serializeCASComplete((CASImpl) getRealCas(aCas));
@@ -169,6 +194,18 @@ public final class CasPersistenceUtils
         }
     }
 
+    public static void readSerializedCas(CAS aCas, byte[] aData) throws IOException
+    {
+        CAS realCas = getRealCas(aCas);
+        // UIMA-6162 Workaround: synchronize CAS during de/serialization
+        synchronized (((CASImpl) realCas).getBaseCAS()) {
+            try (BufferedInputStream bis = new BufferedInputStream(
+                    new ByteArrayInputStream(aData))) {
+                readSerializedCas(realCas, maybeUncompress(bis));
+            }
+        }
+    }
+
     private static void readSerializedCas(CAS aCas, InputStream is) throws IOException
     {
         try (ObjectInputStream ois = new ObjectInputStream(is)) {
@@ -190,6 +227,24 @@ public final class CasPersistenceUtils
         }
     }
 
+    /**
+     * @param aData
+     *            serialized CAS data as produced by {@link #serializeCas}.
+     * @return the serialized CAS data, uncompressed if necessary.
+     * @throws IOException
+     *             if the data cannot be uncompressed.
+     */
+    public static byte[] uncompress(byte[] aData) throws IOException
+    {
+        if (!isSnappyStream(aData, aData.length)) {
+            return aData;
+        }
+
+        try (InputStream is = new SnappyFramedInputStream(new ByteArrayInputStream(aData))) {
+            return is.readAllBytes();
+        }
+    }
+
     private static InputStream maybeUncompress(BufferedInputStream bis) throws IOException
     {
         byte[] buf = new byte[32];
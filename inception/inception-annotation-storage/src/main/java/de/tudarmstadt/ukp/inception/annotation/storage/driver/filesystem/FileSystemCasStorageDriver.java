@@ -22,8 +22,15 @@ import static de.tudarmstadt.ukp.clarin.webanno.api.ProjectService.DOCUMENT_FOLD
 import static de.tudarmstadt.ukp.clarin.webanno.api.ProjectService.PROJECT_FOLDER;
 import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.setDocumentId;
 import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.Files.move;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.regex.Pattern.compile;
 import static java.util.regex.Pattern.quote;
 import static org.apache.commons.io.comparator.LastModifiedFileComparator.LASTMODIFIED_COMPARATOR;
@@ -35,24 +42,33 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.regex.Matcher;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.uima.UIMAException;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.fit.util.FSUtil;
 import org.apache.uima.jcas.cas.TOP;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
 
@@ -62,6 +78,7 @@ import de.tudarmstadt.ukp.clarin.webanno.api.config.RepositoryProperties;
 import de.tudarmstadt.ukp.clarin.webanno.api.type.CASMetadata;
 import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
 import de.tudarmstadt.ukp.clarin.webanno.support.wicket.WicketUtil;
+import de.tudarmstadt.ukp.inception.annotation.storage.CasKey;
 import de.tudarmstadt.ukp.inception.annotation.storage.CasMetadataUtils;
 import de.tudarmstadt.ukp.inception.annotation.storage.CasStorageMetadata;
 import de.tudarmstadt.ukp.inception.annotation.storage.config.CasStorageBackupProperties;
@@ -69,10 +86,20 @@ import de.tudarmstadt.ukp.inception.annotation.storage.config.CasStorageProperti
 import de.tudarmstadt.ukp.inception.annotation.storage.driver.CasStorageDriver;
 
 public class FileSystemCasStorageDriver
-    implements CasStorageDriver
+    implements CasStorageDriver, DisposableBean
 {
     public static final String SER_CAS_EXTENSION = ".ser";
     public static final String OLD_EXTENSION = ".old";
+    public static final String JOURNAL_EXTENSION = ".journal";
+    public static final String DELTA_EXTENSION = ".delta";
+
+    /**
+     * File in the repository folder listing the journal files of pending writes. They are recovered
+     * when the driver is next created.
+     */
+    public static final String JOURNAL_INDEX = "cas-write-behind" + JOURNAL_EXTENSION;
+
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofMinutes(1);
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -80,6 +107,10 @@ public class FileSystemCasStorageDriver
     private final CasStorageProperties casStorageProperties;
     private final CasStorageBackupProperties backupProperties;
     private final LoadingCache<File, InternalMetadata> metadataCache;
+    private final Cache<File, CasDeltaJournal> deltaJournalCache;
+    private final ScheduledThreadPoolExecutor writeBehindExecutor;
+    private final ConcurrentMap<CasKey, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+    private final Object journalIndexLock = new Object();
 
     public FileSystemCasStorageDriver(RepositoryProperties aRepositoryProperties,
             CasStorageBackupProperties aBackupProperties,
@@ -98,6 +129,39 @@ public class FileSystemCasStorageDriver
             metadataCache = null;
         }
 
+        // Keep the delta journals open so that appending to them does not require replaying them.
+        // A budget of 0 means that journals are replayed on every change.
+        deltaJournalCache = Caffeine.newBuilder() //
+                .maximumWeight(getDeltaJournalCacheMemory()) //
+                .weigher((File file, CasDeltaJournal journal) -> journal
+                        .getCurrentVersion().length) //
+                .expireAfterAccess(Duration.ofMinutes(10)) //
+                .build();
+
+        if (!casStorageProperties.getWriteBehindDelay().isNegative()
+                && !casStorageProperties.getWriteBehindDelay().isZero()) {
+            writeBehindExecutor = new ScheduledThreadPoolExecutor(
+                    Math.max(1, casStorageProperties.getWriteBehindThreads()),
+                    new BasicThreadFactory.Builder() //
+                            .daemon(false) //
+                            .namingPattern("cas-write-behind-%d") //
+                            .build());
+            writeBehindExecutor.setRemoveOnCancelPolicy(true);
+            // On shutdown, flushes which are not yet due are performed by destroy()
+            writeBehindExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+            log.info("CAS write-behind enabled - delay: {}ms  threads: {}",
+                    casStorageProperties.getWriteBehindDelay().toMillis(),
+                    writeBehindExecutor.getCorePoolSize());
+        }
+        else {
+            writeBehindExecutor = null;
+        }
+
+        if (casStorageProperties.isDeltaCasSerialization()) {
+            log.info("CAS delta serialization enabled - journal cache size: {}MB uncompressed "
+                    + "CAS data", getDeltaJournalCacheMemory() / (1024 * 1024));
+        }
+
         if (backupProperties.getInterval() > 0) {
             log.info("CAS backups enabled - interval: {}sec  max-backups: {}  max-age: {}sec",
                     backupProperties.getInterval(), backupProperties.getKeep().getNumber(),
@@ -106,6 +170,8 @@ public class FileSystemCasStorageDriver
         else {
             log.info("CAS backups disabled");
         }
+
+        recoverJournals();
     }
 
     @Override
@@ -138,6 +204,27 @@ public class FileSystemCasStorageDriver
             throw new IOException("Unable to create empty CAS", e);
         }
 
+        // If there is a write pending for the CAS, it is newer than the version on disk
+        Optional<PendingWriteSnapshot> pendingWrite = getPendingWrite(aDocument, aUser);
+        if (pendingWrite.isPresent()) {
+            try {
+                CasPersistenceUtils.readSerializedCas(cas, pendingWrite.get().data);
+                CasMetadataUtils.addOrUpdateCasMetadata(cas, pendingWrite.get().timestamp,
+                        aDocument, aUser);
+            }
+            catch (Exception e) {
+                throw new IOException("Annotation document of user [" + aUser
+                        + "] for source document " + aDocument + " in project ["
+                        + aDocument.getProject() + " cannot be read from pending write", e);
+            }
+
+            if (metadataCache != null) {
+                metadataCache.get(casFile).readSuccess();
+            }
+
+            return cas;
+        }
+
         if (!casFile.exists()) {
             throw new FileNotFoundException("Annotation document of user [" + aUser
                     + "] for source document " + aDocument + " not found in project ["
@@ -145,7 +232,13 @@ public class FileSystemCasStorageDriver
         }
 
         try {
-            CasPersistenceUtils.readSerializedCas(cas, casFile);
+            if (getDeltaJournalFile(casFile).exists()) {
+                CasPersistenceUtils.readSerializedCas(cas,
+                        openDeltaJournal(casFile).getCurrentVersion());
+            }
+            else {
+                CasPersistenceUtils.readSerializedCas(cas, casFile);
+            }
             // Add/update the CAS metadata
             CasMetadataUtils.addOrUpdateCasMetadata(cas, casFile.lastModified(), aDocument, aUser);
         }
@@ -165,14 +258,18 @@ public class FileSystemCasStorageDriver
     @Override
     public void writeCas(SourceDocument aDocument, String aUserName, CAS aCas) throws IOException
     {
+        // In paranoid mode, we always want the safeguards of the synchronous write
+        if (writeBehindExecutor != null && !casStorageProperties.isParanoidCasSerialization()) {
+            enqueueWrite(aDocument, aUserName, aCas);
+            return;
+        }
+
         long t0 = currentTimeMillis();
 
         log.debug("Preparing to update annotations for user [{}] on document {} " //
                 + "in project {}", aUserName, aDocument, aDocument.getProject());
 
-        File annotationFolder = getAnnotationFolder(aDocument);
-        File currentVersion = new File(annotationFolder, aUserName + SER_CAS_EXTENSION);
-        File oldVersion = new File(annotationFolder, aUserName + SER_CAS_EXTENSION + OLD_EXTENSION);
+        File currentVersion = getCasFile(aDocument, aUserName);
 
         if (metadataCache != null) {
             metadataCache.get(currentVersion).writeAttempt();
@@ -183,32 +280,171 @@ public class FileSystemCasStorageDriver
             failOnConcurrentModification(aCas, currentVersion, aDocument, aUserName, "writing");
         }
 
+        setDocumentId(aCas, aUserName);
+        if (!writeDelta(aDocument, aUserName, aCas, currentVersion)) {
+            // Now write the new version to "<username>.ser" or CURATION_USER.ser
+            commitCasFile(aDocument, aUserName, currentVersion, file -> {
+                if (casStorageProperties.isParanoidCasSerialization()) {
+                    CasPersistenceUtils.writeSerializedCasParanoid(aCas, file);
+                }
+                else if (casStorageProperties.isCompressedCasSerialization()) {
+                    CasPersistenceUtils.writeSerializedCasCompressed(aCas, file);
+                }
+                else {
+                    CasPersistenceUtils.writeSerializedCas(aCas, file);
+                }
+            });
+
+            // The new version of the CAS file includes all changes from the delta journal
+            deleteDeltaJournal(currentVersion);
+        }
+
+        // Update the timestamp in the CAS in case we attempt to save it a second time. This
+        // happens for example in an annotation replacement operation (change layer of existing
+        // annotation) which is implemented as a delete/create operation with an intermediate
+        // save.
+        long lastModified = currentVersion.lastModified();
+        CasMetadataUtils.addOrUpdateCasMetadata(aCas, lastModified, aDocument, aUserName);
+        if (metadataCache != null) {
+            metadataCache.get(currentVersion).writeSuccess(lastModified);
+        }
+
+        manageHistory(currentVersion, aDocument, aUserName);
+
+        long duration = currentTimeMillis() - t0;
+
+        if (log.isDebugEnabled()) {
+            log.debug("Updated annotations for user [{}] on document {} in project {} " //
+                    + "{} bytes in {}ms (file timestamp: {}, compression: {})", aUserName,
+                    aDocument, aDocument.getProject(), currentVersion.length(), duration,
+                    formatTimestamp(lastModified),
+                    casStorageProperties.isCompressedCasSerialization());
+        }
+
+        WicketUtil.serverTiming("realWriteCas", duration);
+    }
+
+    /**
+     * Appends the changes to the CAS to the delta journal next to the CAS file instead of rewriting
+     * the CAS file.
+     * 
+     * @return whether the changes have been written to the journal. If not, the CAS file needs to
+     *         be rewritten which also compacts the journal.
+     */
+    private boolean writeDelta(SourceDocument aDocument, String aUserName, CAS aCas,
+            File aCasFile)
+        throws IOException
+    {
+        if (!casStorageProperties.isDeltaCasSerialization()
+                || casStorageProperties.isParanoidCasSerialization() || !aCasFile.exists()) {
+            return false;
+        }
+
+        // History files are copies of the CAS file, so it must include all changes
+        if (isHistoryDue(aDocument, aUserName, currentTimeMillis())) {
+            return false;
+        }
+
+        CasDeltaJournal journal;
+        try {
+            journal = openDeltaJournal(aCasFile);
+        }
+        catch (IOException e) {
+            log.warn("Unable to read delta journal of [{}] - writing full CAS", aCasFile, e);
+            return false;
+        }
+
+        long maxLength = (long) (journal.getBaseLength()
+                * casStorageProperties.getDeltaCompactionRatio());
+        boolean appended;
+        try {
+            appended = journal.append(CasPersistenceUtils.serializeCas(aCas, false),
+                    casStorageProperties.isCompressedCasSerialization(), maxLength);
+        }
+        catch (IOException e) {
+            // We do not know how much of the record made it to disk
+            deltaJournalCache.invalidate(aCasFile);
+            throw e;
+        }
+
+        if (!appended) {
+            log.debug("Compacting delta journal of annotations for user [{}] on document {} in "
+                    + "project {}", aUserName, aDocument, aDocument.getProject());
+            return false;
+        }
+
+        // The timestamp of the CAS file serves as the version of the CAS
+        long timestamp = Math.max(currentTimeMillis(), aCasFile.lastModified() + 1);
+        if (!aCasFile.setLastModified(timestamp)) {
+            log.warn("Unable to set timestamp of [{}]", aCasFile);
+        }
+
+        return true;
+    }
+
+    private long getDeltaJournalCacheMemory()
+    {
+        return casStorageProperties.getDeltaJournalCacheMemory() != null
+                ? Math.max(0, casStorageProperties.getDeltaJournalCacheMemory().toBytes())
+                : 0;
+    }
+
+    private static File getDeltaJournalFile(File aCasFile)
+    {
+        return new File(aCasFile.getPath() + DELTA_EXTENSION);
+    }
+
+    /**
+     * Returns the open delta journal of the given CAS file. The journal is only read and replayed
+     * if it is not already open or if the files have been changed on disk since.
+     */
+    private CasDeltaJournal openDeltaJournal(File aCasFile) throws IOException
+    {
+        CasDeltaJournal journal = deltaJournalCache.getIfPresent(aCasFile);
+        if (journal != null && journal.isCurrent(aCasFile)) {
+            return journal;
+        }
+
+        journal = CasDeltaJournal.open(getDeltaJournalFile(aCasFile), aCasFile);
+        deltaJournalCache.put(aCasFile, journal);
+        return journal;
+    }
+
+    private void deleteDeltaJournal(File aCasFile) throws IOException
+    {
+        deltaJournalCache.invalidate(aCasFile);
+        File deltaJournal = getDeltaJournalFile(aCasFile);
+        if (deltaJournal.exists()) {
+            FileUtils.forceDelete(deltaJournal);
+        }
+    }
+
+    /**
+     * Replaces the given CAS file with a new version produced by the given writer. The current
+     * version is first moved aside and restored if writing the new version fails.
+     */
+    private void commitCasFile(SourceDocument aDocument, String aUserName, File aCurrentVersion,
+            CasFileWriter aWriter)
+        throws IOException
+    {
+        File oldVersion = new File(aCurrentVersion.getPath() + OLD_EXTENSION);
+
         // Save current version
         try {
             // Make a backup of the current version of the file before overwriting
-            if (currentVersion.exists()) {
-                move(currentVersion.toPath(), oldVersion.toPath());
+            if (aCurrentVersion.exists()) {
+                move(aCurrentVersion.toPath(), oldVersion.toPath());
             }
 
-            // Now write the new version to "<username>.ser" or CURATION_USER.ser
-            setDocumentId(aCas, aUserName);
-            if (casStorageProperties.isParanoidCasSerialization()) {
-                CasPersistenceUtils.writeSerializedCasParanoid(aCas, currentVersion);
-            }
-            else if (casStorageProperties.isCompressedCasSerialization()) {
-                CasPersistenceUtils.writeSerializedCasCompressed(aCas, currentVersion);
-            }
-            else {
-                CasPersistenceUtils.writeSerializedCas(aCas, currentVersion);
-            }
+            aWriter.write(aCurrentVersion);
         }
         catch (Exception e) {
-            log.error("There was an error while trying to write the CAS to [" + currentVersion
+            log.error("There was an error while trying to write the CAS to [" + aCurrentVersion
                     + "] - additional messages follow.");
             // If this is the first version, there is no old version, so do not restore anything
             if (!oldVersion.exists()) {
                 log.warn("There is no old version to restore - leaving the current version which "
-                        + "may be corrupt: [{}]", currentVersion);
+                        + "may be corrupt: [{}]", aCurrentVersion);
                 // Now abort anyway
                 throw e;
             }
@@ -217,7 +453,7 @@ public class FileSystemCasStorageDriver
                     + "project {} due exception when trying to write new " + "annotations: [{}]",
                     aUserName, aDocument, aDocument.getProject(), oldVersion);
             try {
-                move(oldVersion.toPath(), currentVersion.toPath(), REPLACE_EXISTING);
+                move(oldVersion.toPath(), aCurrentVersion.toPath(), REPLACE_EXISTING);
             }
             catch (Exception ex) {
                 log.error("Unable to restore previous annotations: [{}]", oldVersion, ex);
@@ -227,7 +463,7 @@ public class FileSystemCasStorageDriver
             throw e;
         }
 
-        if (oldVersion.exists() && (currentVersion.length() < (oldVersion.length()
+        if (oldVersion.exists() && (aCurrentVersion.length() < (oldVersion.length()
                 * (casStorageProperties.isCompressedCasSerialization() ? 0.95d : 1.0d)))) {
             // If compression is enabled, then it is not so uncommon that the file size may also
             // become smaller at times, so we allow a bit of slip
@@ -235,39 +471,430 @@ public class FileSystemCasStorageDriver
                     "Annotations shrunk for user [{}] on document {} in project "
                             + "{}: {} -> {} bytes ({} bytes removed)",
                     aUserName, aDocument, aDocument.getProject(), oldVersion.length(),
-                    currentVersion.length(), currentVersion.length() - oldVersion.length());
+                    aCurrentVersion.length(), aCurrentVersion.length() - oldVersion.length());
         }
 
         // If the saving was successful, we delete the old version
         if (oldVersion.exists()) {
             FileUtils.forceDelete(oldVersion);
         }
+    }
+
+    /**
+     * Serializes the CAS into memory and schedules it to be flushed to disk later. If there is
+     * already a pending write for the CAS, it is replaced and no additional flush is scheduled. The
+     * pending version is also written to a journal file next to the CAS file from which it is
+     * recovered on the next start if the application terminates before the flush.
+     */
+    private void enqueueWrite(SourceDocument aDocument, String aUserName, CAS aCas)
+        throws IOException
+    {
+        long t0 = currentTimeMillis();
+
+        CasKey key = new CasKey(aDocument, aUserName);
+        File casFile = getCasFile(aDocument, aUserName);
 
-        // Update the timestamp in the CAS in case we attempt to save it a second time. This
-        // happens for example in an annotation replacement operation (change layer of existing
-        // annotation) which is implemented as a delete/create operation with an intermediate
-        // save.
-        long lastModified = currentVersion.lastModified();
-        CasMetadataUtils.addOrUpdateCasMetadata(aCas, lastModified, aDocument, aUserName);
         if (metadataCache != null) {
-            metadataCache.get(currentVersion).writeSuccess(lastModified);
+            metadataCache.get(casFile).writeAttempt();
         }
 
-        manageHistory(currentVersion, aDocument, aUserName);
+        // Check if there was a concurrent change to the pending version or the file on disk
+        if (pendingWrites.containsKey(key) || casFile.exists()) {
+            failOnConcurrentModification(aCas, casFile, aDocument, aUserName, "writing");
+        }
+
+        setDocumentId(aCas, aUserName);
+        byte[] data = CasPersistenceUtils.serializeCas(aCas,
+                casStorageProperties.isCompressedCasSerialization());
+
+        long timestamp;
+        while (true) {
+            PendingWrite pendingWrite = pendingWrites.computeIfAbsent(key,
+                    k -> new PendingWrite(aDocument, aUserName, casFile));
+            synchronized (pendingWrite) {
+                // The pending write may have been flushed and dropped from the map concurrently
+                if (pendingWrite.discarded) {
+                    continue;
+                }
+
+                // The timestamp serves as the version of the CAS - make sure it always increases
+                timestamp = Math.max(currentTimeMillis(),
+                        Math.max(pendingWrite.timestamp, casFile.lastModified()) + 1);
+
+                try {
+                    writeJournal(pendingWrite, data, timestamp);
+                }
+                catch (IOException e) {
+                    // If this was the first version of the pending write, there is nothing to
+                    // flush - so we drop it again
+                    if (pendingWrite.data == null) {
+                        pendingWrite.discarded = true;
+                        deleteJournal(pendingWrite);
+                        pendingWrites.remove(key, pendingWrite);
+                    }
+                    throw e;
+                }
+
+                pendingWrite.data = data;
+                pendingWrite.timestamp = timestamp;
+
+                if (!pendingWrite.flushScheduled) {
+                    pendingWrite.flushScheduled = true;
+                    writeBehindExecutor.schedule(() -> flush(key, pendingWrite),
+                            casStorageProperties.getWriteBehindDelay().toMillis(), MILLISECONDS);
+                }
+            }
+            break;
+        }
+
+        CasMetadataUtils.addOrUpdateCasMetadata(aCas, timestamp, aDocument, aUserName);
+        if (metadataCache != null) {
+            metadataCache.get(casFile).writeSuccess(timestamp);
+        }
 
         long duration = currentTimeMillis() - t0;
 
         if (log.isDebugEnabled()) {
-            log.debug("Updated annotations for user [{}] on document {} in project {} " //
-                    + "{} bytes in {}ms (file timestamp: {}, compression: {})", aUserName,
-                    aDocument, aDocument.getProject(), currentVersion.length(), duration,
-                    formatTimestamp(lastModified),
+            log.debug("Enqueued annotations for user [{}] on document {} in project {} " //
+                    + "{} bytes in {}ms (timestamp: {}, compression: {})", aUserName, aDocument,
+                    aDocument.getProject(), data.length, duration, formatTimestamp(timestamp),
                     casStorageProperties.isCompressedCasSerialization());
         }
 
         WicketUtil.serverTiming("realWriteCas", duration);
     }
 
+    private void flush(CasKey aKey, PendingWrite aPendingWrite)
+    {
+        try {
+            flushPendingWrite(aKey, aPendingWrite);
+        }
+        catch (Exception e) {
+            log.error("Unable to flush annotations for user [{}] on document {} in project {} "
+                    + "- retrying later", aPendingWrite.user, aPendingWrite.document,
+                    aPendingWrite.document.getProject(), e);
+
+            synchronized (aPendingWrite) {
+                if (!aPendingWrite.discarded && !aPendingWrite.flushScheduled
+                        && !writeBehindExecutor.isShutdown()) {
+                    aPendingWrite.flushScheduled = true;
+                    writeBehindExecutor.schedule(() -> flush(aKey, aPendingWrite),
+                            casStorageProperties.getWriteBehindDelay().toMillis(), MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    private void flushPendingWrite(CasKey aKey, PendingWrite aPendingWrite) throws IOException
+    {
+        // Only one thread at a time may write a given CAS file
+        synchronized (aPendingWrite.flushLock) {
+            long t0 = currentTimeMillis();
+
+            byte[] data;
+            long timestamp;
+            synchronized (aPendingWrite) {
+                if (aPendingWrite.discarded) {
+                    return;
+                }
+
+                data = aPendingWrite.data;
+                timestamp = aPendingWrite.timestamp;
+                aPendingWrite.flushScheduled = false;
+            }
+
+            File currentVersion = aPendingWrite.file;
+            commitCasFile(aPendingWrite.document, aPendingWrite.user, currentVersion,
+                    file -> writeFile(file, data));
+            deleteDeltaJournal(currentVersion);
+
+            // Align the file timestamp with the version that has already been handed out via the
+            // CAS metadata
+            if (!currentVersion.setLastModified(timestamp)) {
+                log.warn("Unable to set timestamp of [{}]", currentVersion);
+            }
+
+            // If there was no further write in the meantime, we are done with this CAS
+            synchronized (aPendingWrite) {
+                if (aPendingWrite.timestamp == timestamp) {
+                    aPendingWrite.discarded = true;
+                    aPendingWrite.data = null;
+                    deleteJournal(aPendingWrite);
+                    pendingWrites.remove(aKey, aPendingWrite);
+                }
+            }
+            pruneJournalIndex();
+
+            manageHistory(currentVersion, aPendingWrite.document, aPendingWrite.user);
+
+            if (log.isDebugEnabled()) {
+                log.debug("Flushed annotations for user [{}] on document {} in project {} " //
+                        + "{} bytes in {}ms (file timestamp: {})", aPendingWrite.user,
+                        aPendingWrite.document, aPendingWrite.document.getProject(), data.length,
+                        currentTimeMillis() - t0, formatTimestamp(timestamp));
+            }
+        }
+    }
+
+    /**
+     * Immediately flushes a pending write for the given CAS (if there is one).
+     */
+    private void flushPendingWrite(SourceDocument aDocument, String aUser) throws IOException
+    {
+        CasKey key = new CasKey(aDocument, aUser);
+        PendingWrite pendingWrite = pendingWrites.get(key);
+        if (pendingWrite != null) {
+            flushPendingWrite(key, pendingWrite);
+        }
+    }
+
+    /**
+     * Drops a pending write for the given CAS (if there is one) without writing it to disk. If the
+     * pending write is just being flushed, this method waits for the flush to complete, so the
+     * caller can safely delete or replace the CAS file afterwards.
+     * 
+     * @return whether there was a pending write.
+     */
+    private boolean discardPendingWrite(SourceDocument aDocument, String aUser)
+    {
+        PendingWrite pendingWrite = pendingWrites.remove(new CasKey(aDocument, aUser));
+        if (pendingWrite == null) {
+            return false;
+        }
+
+        synchronized (pendingWrite) {
+            pendingWrite.discarded = true;
+            pendingWrite.data = null;
+            deleteJournal(pendingWrite);
+        }
+
+        // Wait for a flush that has already started before the write was discarded
+        synchronized (pendingWrite.flushLock) {
+            // Nothing to do
+        }
+
+        pruneJournalIndex();
+
+        return true;
+    }
+
+    private Optional<PendingWriteSnapshot> getPendingWrite(SourceDocument aDocument, String aUser)
+    {
+        if (pendingWrites.isEmpty()) {
+            return Optional.empty();
+        }
+
+        PendingWrite pendingWrite = pendingWrites.get(new CasKey(aDocument, aUser));
+        if (pendingWrite == null) {
+            return Optional.empty();
+        }
+
+        synchronized (pendingWrite) {
+            if (pendingWrite.discarded) {
+                return Optional.empty();
+            }
+
+            return Optional.of(new PendingWriteSnapshot(pendingWrite.data, pendingWrite.timestamp,
+                    pendingWrite.file));
+        }
+    }
+
+    /**
+     * Flushes all pending writes on shutdown. Flushes which are already running are allowed to
+     * complete. If a CAS cannot be written, it remains in its journal file next to the CAS file
+     * from which it is recovered on the next start.
+     */
+    @Override
+    public void destroy()
+    {
+        if (writeBehindExecutor == null) {
+            return;
+        }
+
+        // Do not interrupt running flushes - interrupting NIO writes closes the channel and
+        // leaves a partially written file
+        writeBehindExecutor.shutdown();
+        try {
+            if (!writeBehindExecutor.awaitTermination(SHUTDOWN_TIMEOUT.toMillis(),
+                    MILLISECONDS)) {
+                log.warn("CAS write-behind flushes did not complete within {}ms",
+                        SHUTDOWN_TIMEOUT.toMillis());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!pendingWrites.isEmpty()) {
+            log.info("Flushing {} pending CAS writes", pendingWrites.size());
+        }
+
+        for (var entry : pendingWrites.entrySet()) {
+            PendingWrite pendingWrite = entry.getValue();
+            try {
+                flushPendingWrite(entry.getKey(), pendingWrite);
+            }
+            catch (Exception e) {
+                log.error("Unable to flush annotations for user [{}] on document {} in project "
+                        + "{} - annotations are recovered from the journal on the next start",
+                        pendingWrite.user, pendingWrite.document,
+                        pendingWrite.document.getProject(), e);
+            }
+        }
+    }
+
+    private static File getJournalFile(File aCasFile)
+    {
+        return new File(aCasFile.getPath() + JOURNAL_EXTENSION);
+    }
+
+    /**
+     * Writes the given version of a pending write to its journal file. The journal is first
+     * written to a temporary file which is synced to disk and then moved into place, so a crash
+     * while writing does not leave a partial journal. When the journal is written for the first
+     * time, it is registered in the journal index.
+     */
+    private void writeJournal(PendingWrite aPendingWrite, byte[] aData, long aTimestamp)
+        throws IOException
+    {
+        File journal = getJournalFile(aPendingWrite.file);
+        File tempJournal = new File(journal.getPath() + ".tmp");
+        FileUtils.forceMkdir(journal.getParentFile());
+        try (FileChannel channel = FileChannel.open(tempJournal.toPath(), CREATE, WRITE,
+                TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(aData));
+            channel.force(true);
+        }
+        tempJournal.setLastModified(aTimestamp);
+        move(tempJournal.toPath(), journal.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+
+        if (aPendingWrite.journalRegistered) {
+            return;
+        }
+
+        synchronized (journalIndexLock) {
+            byte[] entry = (aPendingWrite.file.getAbsolutePath() + "\n").getBytes(UTF_8);
+            try (FileChannel channel = FileChannel.open(getJournalIndexFile().toPath(), CREATE,
+                    WRITE, APPEND)) {
+                channel.write(ByteBuffer.wrap(entry));
+                channel.force(true);
+            }
+        }
+        aPendingWrite.journalRegistered = true;
+    }
+
+    private void deleteJournal(PendingWrite aPendingWrite)
+    {
+        File journal = getJournalFile(aPendingWrite.file);
+        try {
+            Files.deleteIfExists(journal.toPath());
+        }
+        catch (IOException e) {
+            // The journal is recovered on the next start which is harmless because it contains
+            // the same version that has been flushed
+            log.warn("Unable to delete journal [{}]", journal, e);
+        }
+    }
+
+    /**
+     * Deletes the journal index once there are no more pending writes. Otherwise, the index would
+     * grow with every write until the next start.
+     */
+    private void pruneJournalIndex()
+    {
+        if (!pendingWrites.isEmpty()) {
+            return;
+        }
+
+        synchronized (journalIndexLock) {
+            // Pending writes register their journals while holding the lock, so if there are
+            // still no pending writes, all journals listed in the index have been deleted
+            if (!pendingWrites.isEmpty()) {
+                return;
+            }
+
+            try {
+                Files.deleteIfExists(getJournalIndexFile().toPath());
+            }
+            catch (IOException e) {
+                log.warn("Unable to delete journal index [{}]", getJournalIndexFile(), e);
+            }
+        }
+    }
+
+    private File getJournalIndexFile()
+    {
+        return new File(repositoryProperties.getPath(), JOURNAL_INDEX);
+    }
+
+    /**
+     * Recovers the journal files listed in the journal index. This happens once when the driver is
+     * created, so the CAS files need not be checked for journals on every access. Journals which
+     * cannot be recovered remain in the index and are retried on the next start.
+     */
+    private void recoverJournals()
+    {
+        File index = getJournalIndexFile();
+        if (!index.exists()) {
+            return;
+        }
+
+        try {
+            List<String> failed = new ArrayList<>();
+            for (String casFile : Files.readAllLines(index.toPath(), UTF_8)) {
+                if (!casFile.isBlank() && !recoverJournal(new File(casFile))) {
+                    failed.add(casFile);
+                }
+            }
+
+            if (failed.isEmpty()) {
+                Files.delete(index.toPath());
+            }
+            else {
+                Files.write(index.toPath(), failed, UTF_8, TRUNCATE_EXISTING);
+            }
+        }
+        catch (IOException e) {
+            log.error("Unable to recover annotations from journal index [{}]", index, e);
+        }
+    }
+
+    /**
+     * If a journal file exists for the given CAS file, it contains a version of the CAS that has not
+     * been flushed before the application terminated. It supersedes the CAS file and is moved into
+     * its place.
+     * 
+     * @return whether there is no journal left to recover.
+     */
+    private boolean recoverJournal(File aCasFile)
+    {
+        File journal = getJournalFile(aCasFile);
+        if (!journal.exists()) {
+            return true;
+        }
+
+        try {
+            long timestamp = journal.lastModified();
+            move(journal.toPath(), aCasFile.toPath(), REPLACE_EXISTING);
+            aCasFile.setLastModified(timestamp);
+            deleteDeltaJournal(aCasFile);
+            log.info("Recovered annotations from journal [{}]", journal);
+            return true;
+        }
+        catch (IOException e) {
+            log.error("Unable to recover annotations from journal [{}]", journal, e);
+            return false;
+        }
+    }
+
+    private static void writeFile(File aFile, byte[] aData) throws IOException
+    {
+        FileUtils.forceMkdir(aFile.getParentFile());
+        try (OutputStream os = Files.newOutputStream(aFile.toPath())) {
+            os.write(aData);
+        }
+    }
+
     /**
      * @param aDocument
      *            the document of interest.
@@ -297,27 +924,19 @@ public class FileSystemCasStorageDriver
             return;
         }
 
+        // History files are copies of the CAS file which does not include the changes from the
+        // delta journal - so we wait until the journal has been compacted
+        if (getDeltaJournalFile(aCurrentVersion).exists()) {
+            return;
+        }
+
         File annotationFolder = getAnnotationFolder(aDocument);
 
         // Determine the reference point in time based on the current version
         long now = aCurrentVersion.lastModified();
 
         // Get all history files for the current user
-        File[] history = annotationFolder.listFiles(new FileFilter()
-        {
-            private final Matcher matcher = compile(quote(aUserName) + "\\.ser\\.[0-9]+\\.bak")
-                    .matcher("");
-
-            @Override
-            public boolean accept(File aFile)
-            {
-                // Check if the filename matches the pattern given above.
-                return matcher.reset(aFile.getName()).matches();
-            }
-        });
-
-        // Sort the files (oldest one first)
-        Arrays.sort(history, LASTMODIFIED_COMPARATOR);
+        File[] history = listHistory(annotationFolder, aUserName);
 
         // Check if we need to make a new history file
         boolean historyFileCreated = false;
@@ -383,6 +1002,45 @@ public class FileSystemCasStorageDriver
         }
     }
 
+    private boolean isHistoryDue(SourceDocument aDocument, String aUserName, long aNow)
+        throws IOException
+    {
+        if (backupProperties.getInterval() <= 0) {
+            return false;
+        }
+
+        File[] history = listHistory(getAnnotationFolder(aDocument), aUserName);
+        if (history.length == 0) {
+            return true;
+        }
+
+        File latestHistory = history[history.length - 1];
+        return latestHistory.lastModified() + (backupProperties.getInterval() * 1000) < aNow;
+    }
+
+    /**
+     * @return all history files for the given user sorted by age (oldest one first).
+     */
+    private File[] listHistory(File aAnnotationFolder, String aUserName)
+    {
+        File[] history = aAnnotationFolder.listFiles(new FileFilter()
+        {
+            private final Matcher matcher = compile(quote(aUserName) + "\\.ser\\.[0-9]+\\.bak")
+                    .matcher("");
+
+            @Override
+            public boolean accept(File aFile)
+            {
+                // Check if the filename matches the pattern given above.
+                return matcher.reset(aFile.getName()).matches();
+            }
+        });
+
+        // Sort the files (oldest one first)
+        Arrays.sort(history, LASTMODIFIED_COMPARATOR);
+        return history;
+    }
+
     // Public for testing
     public File getCasFile(SourceDocument aDocument, String aUser) throws IOException
     {
@@ -399,7 +1057,15 @@ public class FileSystemCasStorageDriver
         Validate.notNull(aDocument, "Source document must be specified");
         Validate.notBlank(aUser, "User must be specified");
 
-        try (InputStream is = Files.newInputStream(getCasFile(aDocument, aUser).toPath())) {
+        flushPendingWrite(aDocument, aUser);
+
+        File casFile = getCasFile(aDocument, aUser);
+        if (getDeltaJournalFile(casFile).exists()) {
+            aStream.write(openDeltaJournal(casFile).getCurrentVersion());
+            return;
+        }
+
+        try (InputStream is = Files.newInputStream(casFile.toPath())) {
             IOUtils.copyLarge(is, aStream);
         }
     }
@@ -411,9 +1077,13 @@ public class FileSystemCasStorageDriver
         Validate.notNull(aDocument, "Source document must be specified");
         Validate.notBlank(aUser, "User must be specified");
 
-        try (OutputStream os = Files.newOutputStream(getCasFile(aDocument, aUser).toPath())) {
+        discardPendingWrite(aDocument, aUser);
+
+        File casFile = getCasFile(aDocument, aUser);
+        try (OutputStream os = Files.newOutputStream(casFile.toPath())) {
             IOUtils.copyLarge(aStream, os);
         }
+        deleteDeltaJournal(casFile);
     }
 
     private File getCasFile(long aProjectId, long aDocumentId, String aUser) throws IOException
@@ -428,25 +1098,36 @@ public class FileSystemCasStorageDriver
         if (metadataCache != null) {
             metadataCache.invalidate(casFile);
         }
-        return casFile.delete();
+        boolean pendingWriteDiscarded = discardPendingWrite(aDocument, aUser);
+        deltaJournalCache.invalidate(casFile);
+        getDeltaJournalFile(casFile).delete();
+        return casFile.delete() || pendingWriteDiscarded;
     }
 
     @Override
     public boolean existsCas(SourceDocument aDocument, String aUser) throws IOException
     {
-        return getCasFile(aDocument, aUser).exists();
+        return getPendingWrite(aDocument, aUser).isPresent()
+                || getCasFile(aDocument, aUser).exists();
     }
 
     @Override
     public Optional<CasStorageMetadata> getCasMetadata(SourceDocument aDocument, String aUser)
         throws IOException
     {
+        Optional<PendingWriteSnapshot> pendingWrite = getPendingWrite(aDocument, aUser);
+        if (pendingWrite.isPresent()) {
+            return Optional.of(new Metadata(pendingWrite.get().file, pendingWrite.get().timestamp,
+                    pendingWrite.get().data.length));
+        }
+
         File casFile = getCasFile(aDocument, aUser);
         if (!casFile.exists()) {
             return Optional.empty();
         }
         else {
-            return Optional.of(new Metadata(casFile));
+            return Optional.of(new Metadata(casFile, casFile.lastModified(),
+                    casFile.length() + getDeltaJournalFile(casFile).length()));
         }
     }
 
@@ -457,11 +1138,14 @@ public class FileSystemCasStorageDriver
     {
         File casFile = getCasFile(aDocument, aUser);
 
-        if (!casFile.exists()) {
+        // If there is a pending write, its timestamp takes precedence over the one on disk
+        Optional<PendingWriteSnapshot> pendingWrite = getPendingWrite(aDocument, aUser);
+        if (pendingWrite.isEmpty() && !casFile.exists()) {
             return Optional.empty();
         }
 
-        long diskLastModified = casFile.lastModified();
+        long diskLastModified = pendingWrite.map(PendingWriteSnapshot::getTimestamp)
+                .orElseGet(casFile::lastModified);
         if (diskLastModified != aExpectedTimeStamp) {
             StringBuilder lastWriteMsg = new StringBuilder();
             if (metadataCache != null) {
@@ -559,6 +1243,55 @@ public class FileSystemCasStorageDriver
         }
     }
 
+    @FunctionalInterface
+    private interface CasFileWriter
+    {
+        void write(File aFile) throws IOException;
+    }
+
+    /**
+     * A serialized CAS waiting to be flushed to disk. All fields except the {@link #flushLock} are
+     * guarded by the monitor of the instance.
+     */
+    private static class PendingWrite
+    {
+        private final Object flushLock = new Object();
+        private final SourceDocument document;
+        private final String user;
+        private final File file;
+        private byte[] data;
+        private long timestamp;
+        private boolean flushScheduled;
+        private boolean discarded;
+        private boolean journalRegistered;
+
+        private PendingWrite(SourceDocument aDocument, String aUser, File aFile)
+        {
+            document = aDocument;
+            user = aUser;
+            file = aFile;
+        }
+    }
+
+    private static class PendingWriteSnapshot
+    {
+        private final byte[] data;
+        private final long timestamp;
+        private final File file;
+
+        private PendingWriteSnapshot(byte[] aData, long aTimestamp, File aFile)
+        {
+            data = aData;
+            timestamp = aTimestamp;
+            file = aFile;
+        }
+
+        private long getTimestamp()
+        {
+            return timestamp;
+        }
+    }
+
     public static class Metadata
         implements CasStorageMetadata
     {
@@ -568,8 +1301,13 @@ public class FileSystemCasStorageDriver
 
         public Metadata(File aFile)
         {
-            timestamp = aFile.lastModified();
-            size = aFile.length();
+            this(aFile, aFile.lastModified(), aFile.length());
+        }
+
+        public Metadata(File aFile, long aTimestamp, long aSize)
+        {
+            timestamp = aTimestamp;
+            size = aSize;
             path = aFile.getAbsolutePath();
         }
 
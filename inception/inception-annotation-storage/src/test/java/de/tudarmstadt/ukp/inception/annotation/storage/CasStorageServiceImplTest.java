@@ -28,7 +28,10 @@ import static de.tudarmstadt.ukp.clarin.webanno.support.WebAnnoConst.INITIAL_CAS
 import static de.tudarmstadt.ukp.inception.annotation.storage.CasMetadataUtils.getInternalTypeSystem;
 import static de.tudarmstadt.ukp.inception.annotation.storage.CasStorageSession.openNested;
 import static java.lang.Thread.sleep;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
+import static org.apache.commons.io.FileUtils.writeByteArrayToFile;
+import static org.apache.commons.io.FileUtils.writeLines;
 import static org.apache.commons.lang3.StringUtils.repeat;
 import static org.apache.uima.fit.factory.CasFactory.createCas;
 import static org.apache.uima.fit.factory.TypeSystemDescriptionFactory.createTypeSystemDescription;
@@ -37,10 +40,12 @@ import static org.apache.uima.util.CasCreationUtils.mergeTypeSystems;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.reflect.Proxy;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
@@ -61,6 +66,7 @@ import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
+import org.springframework.util.unit.DataSize;
 
 import de.tudarmstadt.ukp.clarin.webanno.api.CasProvider;
 import de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasSessionException;
@@ -73,6 +79,7 @@ import de.tudarmstadt.ukp.clarin.webanno.support.logging.Logging;
 import de.tudarmstadt.ukp.inception.annotation.storage.config.CasStorageBackupProperties;
 import de.tudarmstadt.ukp.inception.annotation.storage.config.CasStorageCachePropertiesImpl;
 import de.tudarmstadt.ukp.inception.annotation.storage.config.CasStoragePropertiesImpl;
+import de.tudarmstadt.ukp.inception.annotation.storage.driver.filesystem.CasPersistenceUtils;
 import de.tudarmstadt.ukp.inception.annotation.storage.driver.filesystem.FileSystemCasStorageDriver;
 
 public class CasStorageServiceImplTest
@@ -294,6 +301,364 @@ public class CasStorageServiceImplTest
         }
     }
 
+    @Test
+    public void testWriteBehindServesPendingWriteAndFlushesOnShutdown() throws Exception
+    {
+        var casStorageProperties = new CasStoragePropertiesImpl();
+        casStorageProperties.setWriteBehindDelay(Duration.ofHours(1));
+        driver = new FileSystemCasStorageDriver(repositoryProperties,
+                new CasStorageBackupProperties(), casStorageProperties);
+        sut = new CasStorageServiceImpl(driver, new CasStorageCachePropertiesImpl(), null, null);
+
+        SourceDocument doc = makeSourceDocument(7l, 7l, "test");
+        String user = "test";
+        File casFile = driver.getCasFile(doc, user);
+
+        try (CasStorageSession session = openNested(true)) {
+            CAS cas = createCasFile(doc, user, "This is a test").getCas();
+            cas.setDocumentLanguage("de");
+            sut.writeCas(doc, cas, user);
+            cas.setDocumentLanguage("fr");
+            sut.writeCas(doc, cas, user);
+        }
+
+        assertThat(casFile).as("Writes are held back in memory").doesNotExist();
+        assertThat(new File(casFile.getPath() + FileSystemCasStorageDriver.JOURNAL_EXTENSION))
+                .as("Pending write is journaled").exists();
+
+        long timestamp;
+        try (CasStorageSession session = openNested(true)) {
+            assertThat(sut.existsCas(doc, user)).isTrue();
+            timestamp = sut.getCasTimestamp(doc, user).get();
+
+            CAS cas = sut.readCas(doc, user, UNMANAGED_NON_INITIALIZING_ACCESS);
+            assertThat(cas.getDocumentLanguage()).isEqualTo("fr");
+        }
+
+        driver.destroy();
+
+        assertThat(casFile).as("Pending writes are flushed on shutdown").exists();
+        assertThat(new File(casFile.getPath() + FileSystemCasStorageDriver.JOURNAL_EXTENSION))
+                .as("Journal is deleted after the flush").doesNotExist();
+        assertThat(new File(testFolder, FileSystemCasStorageDriver.JOURNAL_INDEX))
+                .as("Journal index is deleted when there are no more pending writes")
+                .doesNotExist();
+        assertThat(casFile.lastModified()).isEqualTo(timestamp);
+        try (CasStorageSession session = openNested(true)) {
+            assertThat(sut.getCasTimestamp(doc, user).get()).isEqualTo(timestamp);
+        }
+    }
+
+    @Test
+    public void testWriteBehindDoesNotResurrectDeletedCas() throws Exception
+    {
+        var casStorageProperties = new CasStoragePropertiesImpl();
+        casStorageProperties.setWriteBehindDelay(Duration.ofHours(1));
+        driver = new FileSystemCasStorageDriver(repositoryProperties,
+                new CasStorageBackupProperties(), casStorageProperties);
+        sut = new CasStorageServiceImpl(driver, new CasStorageCachePropertiesImpl(), null, null);
+
+        SourceDocument doc = makeSourceDocument(9l, 9l, "test");
+        String user = "test";
+        File casFile = driver.getCasFile(doc, user);
+
+        try (CasStorageSession session = openNested(true)) {
+            CAS cas = createCasFile(doc, user, "This is a test").getCas();
+            cas.setDocumentLanguage("de");
+            sut.writeCas(doc, cas, user);
+        }
+
+        assertThat(driver.deleteCas(doc, user)).isTrue();
+        assertThat(casFile).doesNotExist();
+
+        driver.destroy();
+
+        assertThat(casFile).as("Discarded write is not flushed on shutdown").doesNotExist();
+    }
+
+    @Test
+    public void testPendingWriteIsRecoveredAfterCrash() throws Exception
+    {
+        var casStorageProperties = new CasStoragePropertiesImpl();
+        casStorageProperties.setWriteBehindDelay(Duration.ofHours(1));
+        var crashingDriver = new FileSystemCasStorageDriver(repositoryProperties,
+                new CasStorageBackupProperties(), casStorageProperties);
+        sut = new CasStorageServiceImpl(crashingDriver, new CasStorageCachePropertiesImpl(), null,
+                null);
+
+        SourceDocument doc = makeSourceDocument(11l, 11l, "test");
+        String user = "test";
+        File casFile = crashingDriver.getCasFile(doc, user);
+
+        try (CasStorageSession session = openNested(true)) {
+            CAS cas = createCasFile(doc, user, "This is a test").getCas();
+            cas.setDocumentLanguage("fr");
+            sut.writeCas(doc, cas, user);
+        }
+
+        assertThat(casFile).as("Writes are held back in memory").doesNotExist();
+
+        // Simulate a crash by starting a new driver without shutting down the old one
+        driver = new FileSystemCasStorageDriver(repositoryProperties,
+                new CasStorageBackupProperties(), new CasStoragePropertiesImpl());
+        sut = new CasStorageServiceImpl(driver, new CasStorageCachePropertiesImpl(), null, null);
+
+        try {
+            assertThat(casFile).as("Pending write has been recovered from the journal").exists();
+            try (CasStorageSession session = openNested(true)) {
+                CAS cas = sut.readCas(doc, user, UNMANAGED_NON_INITIALIZING_ACCESS);
+                assertThat(cas.getDocumentLanguage()).isEqualTo("fr");
+            }
+        }
+        finally {
+            crashingDriver.destroy();
+        }
+    }
+
+    @Test
+    public void testJournalIsRecoveredOnStartup() throws Exception
+    {
+        SourceDocument doc = makeSourceDocument(10l, 10l, "test");
+        String user = "test";
+        File casFile = driver.getCasFile(doc, user);
+        File journalFile = new File(
+                casFile.getPath() + FileSystemCasStorageDriver.JOURNAL_EXTENSION);
+        File journalIndex = new File(testFolder, FileSystemCasStorageDriver.JOURNAL_INDEX);
+
+        try (CasStorageSession session = openNested(true)) {
+            CAS cas = createCasFile(doc, user, "This is a test").getCas();
+            cas.setDocumentLanguage("fr");
+            writeByteArrayToFile(journalFile, CasPersistenceUtils.serializeCas(cas, true));
+            writeLines(journalIndex, UTF_8.name(), asList(casFile.getAbsolutePath()));
+        }
+
+        driver = new FileSystemCasStorageDriver(repositoryProperties,
+                new CasStorageBackupProperties(), new CasStoragePropertiesImpl());
+        sut = new CasStorageServiceImpl(driver, new CasStorageCachePropertiesImpl(), null, null);
+
+        assertThat(journalFile).as("Journal has been moved into place").doesNotExist();
+        assertThat(journalIndex).as("Journal index has been processed").doesNotExist();
+        try (CasStorageSession session = openNested(true)) {
+            CAS cas = sut.readCas(doc, user, UNMANAGED_NON_INITIALIZING_ACCESS);
+            assertThat(cas.getDocumentLanguage()).isEqualTo("fr");
+        }
+    }
+
+    @Test
+    public void testDeltaSerializationWritesJournalAndCompactsIt() throws Exception
+    {
+        var casStorageProperties = new CasStoragePropertiesImpl();
+        casStorageProperties.setDeltaCasSerialization(true);
+        driver = new FileSystemCasStorageDriver(repositoryProperties,
+                new CasStorageBackupProperties(), casStorageProperties);
+        sut = new CasStorageServiceImpl(driver, new CasStorageCachePropertiesImpl(), null, null);
+
+        SourceDocument doc = makeSourceDocument(8l, 8l, "test");
+        String user = "test";
+        File casFile = driver.getCasFile(doc, user);
+        File journalFile = new File(casFile.getPath() + FileSystemCasStorageDriver.DELTA_EXTENSION);
+
+        long casFileSize;
+        try (CasStorageSession session = openNested(true)) {
+            CAS cas = createCasFile(doc, user, repeat("This is a test. ", 1000))
+                    .getCas();
+            casFileSize = casFile.length();
+            cas.setDocumentLanguage("de");
+            sut.writeCas(doc, cas, user);
+        }
+
+        assertThat(journalFile).as("Changes are written to the journal").exists();
+        assertThat(casFile).hasSize(casFileSize);
+
+        try (CasStorageSession session = openNested(true)) {
+            CAS cas = sut.readCas(doc, user, UNMANAGED_NON_INITIALIZING_ACCESS);
+            assertThat(cas.getDocumentLanguage()).isEqualTo("de");
+            assertThat(sut.getCasTimestamp(doc, user).get()).isEqualTo(casFile.lastModified());
+
+            var exported = new ByteArrayOutputStream();
+            sut.exportCas(doc, user, exported);
+            CAS exportedCas = createCas();
+            CasPersistenceUtils.readSerializedCas(exportedCas, exported.toByteArray());
+            assertThat(exportedCas.getDocumentLanguage()).isEqualTo("de");
+        }
+
+        casStorageProperties.setDeltaCompactionRatio(0.0d);
+        try (CasStorageSession session = openNested(true)) {
+            CAS cas = sut.readCas(doc, user, EXCLUSIVE_WRITE_ACCESS);
+            cas.setDocumentLanguage("fr");
+            sut.writeCas(doc, cas, user);
+        }
+
+        assertThat(journalFile).as("Journal is compacted into the CAS file").doesNotExist();
+        try (CasStorageSession session = openNested(true)) {
+            CAS cas = sut.readCas(doc, user, UNMANAGED_NON_INITIALIZING_ACCESS);
+            assertThat(cas.getDocumentLanguage()).isEqualTo("fr");
+        }
+    }
+
+    @Test
+    public void testSuccessiveDeltasCanBeReplayedAfterRestart() throws Exception
+    {
+        var casStorageProperties = new CasStoragePropertiesImpl();
+        casStorageProperties.setDeltaCasSerialization(true);
+        driver = new FileSystemCasStorageDriver(repositoryProperties,
+                new CasStorageBackupProperties(), casStorageProperties);
+        sut = new CasStorageServiceImpl(driver, new CasStorageCachePropertiesImpl(), null, null);
+
+        SourceDocument doc = makeSourceDocument(9l, 9l, "test");
+        String user = "test";
+        File casFile = driver.getCasFile(doc, user);
+        File journalFile = new File(casFile.getPath() + FileSystemCasStorageDriver.DELTA_EXTENSION);
+
+        try (CasStorageSession session = openNested(true)) {
+            createCasFile(doc, user, repeat("This is a test. ", 1000));
+        }
+
+        long journalSize = 0;
+        for (String language : asList("de", "fr", "it")) {
+            try (CasStorageSession session = openNested(true)) {
+                CAS cas = sut.readCas(doc, user, EXCLUSIVE_WRITE_ACCESS);
+                cas.setDocumentLanguage(language);
+                sut.writeCas(doc, cas, user);
+            }
+
+            assertThat(journalFile.length()).as("Delta is appended to the journal")
+                    .isGreaterThan(journalSize);
+            journalSize = journalFile.length();
+        }
+
+        // A new driver does not know the journal yet and has to replay it
+        driver.destroy();
+        driver = new FileSystemCasStorageDriver(repositoryProperties,
+                new CasStorageBackupProperties(), casStorageProperties);
+        sut = new CasStorageServiceImpl(driver, new CasStorageCachePropertiesImpl(), null, null);
+
+        try (CasStorageSession session = openNested(true)) {
+            CAS cas = sut.readCas(doc, user, UNMANAGED_NON_INITIALIZING_ACCESS);
+            assertThat(cas.getDocumentLanguage()).isEqualTo("it");
+        }
+    }
+
+    @Test
+    public void testSharedAccessCacheIsWeightedBySerializedSize() throws Exception
+    {
+        var cacheProperties = new CasStorageCachePropertiesImpl();
+        cacheProperties.setSharedCasCacheMemory(DataSize.ofMegabytes(1));
+        sut = new CasStorageServiceImpl(driver, cacheProperties, null, null);
+
+        SourceDocument doc = makeSourceDocument(9l, 9l, "test");
+        String user = "test";
+        try (CasStorageSession session = openNested(true)) {
+            createCasFile(doc, user, repeat("This is a test. ", 1000));
+        }
+
+        try (CasStorageSession session = openNested(true)) {
+            sut.readCas(doc, user, SHARED_READ_ONLY_ACCESS);
+        }
+
+        long casFileSize = driver.getCasFile(doc, user).length();
+        sut.cleanUpSharedAccessCache();
+        assertThat(sut.getSharedAccessCacheSize()).isEqualTo(1);
+        assertThat(sut.getSharedAccessCacheWeight()) //
+                .isGreaterThanOrEqualTo(casFileSize) //
+                .isLessThan(casFileSize + 1024);
+        assertThat(sut.getSharedAccessCacheUtilization()) //
+                .isEqualTo((double) sut.getSharedAccessCacheWeight()
+                        / DataSize.ofMegabytes(1).toBytes());
+    }
+
+    @Test
+    public void testCacheBudgetsAndProjectQuotasAreEnforced() throws Exception
+    {
+        String user = "test";
+        var docs = asList(makeSourceDocument(10l, 10l, "test"),
+                makeSourceDocument(10l, 11l, "test"), makeSourceDocument(10l, 12l, "test"),
+                makeSourceDocument(11l, 13l, "test"));
+        try (CasStorageSession session = openNested(true)) {
+            for (var doc : docs) {
+                createCasFile(doc, user, repeat("This is a test. ", 1000));
+            }
+        }
+        long casFileSize = driver.getCasFile(docs.get(0), user).length();
+
+        var cacheProperties = new CasStorageCachePropertiesImpl();
+        cacheProperties.setProjectCasCacheMemory(DataSize.ofBytes(casFileSize * 2));
+        cacheProperties.setExclusiveCasCacheMemory(DataSize.ofBytes(casFileSize * 3));
+        sut = new CasStorageServiceImpl(driver, cacheProperties, null, null);
+
+        for (var doc : docs) {
+            try (CasStorageSession session = openNested(true)) {
+                sut.readCas(doc, user, SHARED_READ_ONLY_ACCESS);
+            }
+        }
+
+        assertThat(sut.getSharedAccessCacheProjectWeight(10l)) //
+                .as("Project quota limits shared CASes of the large project") //
+                .isEqualTo(casFileSize * 2);
+        assertThat(sut.getSharedAccessCacheProjectWeight(11l)) //
+                .as("Other projects are not affected") //
+                .isEqualTo(casFileSize);
+        assertThat(sut.getSharedAccessCacheStats().size()).isEqualTo(3);
+        assertThat(sut.getSharedAccessCacheStats().missCount()).isEqualTo(4);
+
+        for (var doc : docs) {
+            try (CasStorageSession session = openNested(true)) {
+                sut.readCas(doc, user, EXCLUSIVE_WRITE_ACCESS);
+            }
+        }
+
+        assertThat(sut.getExclusiveAccessPoolProjectWeight(10l)) //
+                .isLessThanOrEqualTo(casFileSize * 2);
+        assertThat(sut.getExclusiveAccessPoolWeight()) //
+                .isLessThanOrEqualTo(casFileSize * 3);
+    }
+
+    @Test
+    public void testProjectQuotaEvictsLeastRecentlyUsedCas() throws Exception
+    {
+        String user = "test";
+        var docs = asList(makeSourceDocument(12l, 14l, "test"),
+                makeSourceDocument(12l, 15l, "test"), makeSourceDocument(12l, 16l, "test"));
+        try (CasStorageSession session = openNested(true)) {
+            for (var doc : docs) {
+                createCasFile(doc, user, repeat("This is a test. ", 1000));
+            }
+        }
+        long casFileSize = driver.getCasFile(docs.get(0), user).length();
+
+        var cacheProperties = new CasStorageCachePropertiesImpl();
+        cacheProperties.setProjectCasCacheMemory(DataSize.ofBytes(casFileSize * 2));
+        sut = new CasStorageServiceImpl(driver, cacheProperties, null, null);
+
+        for (var doc : asList(docs.get(0), docs.get(1), docs.get(0), docs.get(2))) {
+            try (CasStorageSession session = openNested(true)) {
+                sut.readCas(doc, user, SHARED_READ_ONLY_ACCESS);
+            }
+        }
+
+        assertThat(sut.getSharedAccessCacheProjectWeight(12l)).isEqualTo(casFileSize * 2);
+
+        try (CasStorageSession session = openNested(true)) {
+            sut.readCas(docs.get(0), user, SHARED_READ_ONLY_ACCESS);
+            assertThat(sut.getSharedAccessCacheStats().hitCount()) //
+                    .as("Recently used CAS is kept") //
+                    .isEqualTo(2);
+            sut.readCas(docs.get(1), user, SHARED_READ_ONLY_ACCESS);
+            assertThat(sut.getSharedAccessCacheStats().missCount()) //
+                    .as("Least recently used CAS has been evicted") //
+                    .isEqualTo(4);
+        }
+
+        try (CasStorageSession session = openNested(true)) {
+            CAS cas = sut.readCas(docs.get(1), user, EXCLUSIVE_WRITE_ACCESS);
+            sut.writeCas(docs.get(1), cas, user);
+        }
+
+        assertThat(sut.getSharedAccessCacheProjectWeight(12l)) //
+                .as("Written CAS is no longer accounted for in the shared access cache") //
+                .isEqualTo(casFileSize);
+    }
+
     @Test
     public void testHighConcurrencyIncludingDeletion() throws Exception
     {
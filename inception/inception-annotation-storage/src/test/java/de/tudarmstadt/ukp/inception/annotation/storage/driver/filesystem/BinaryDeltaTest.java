@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.annotation.storage.driver.filesystem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.junit.jupiter.api.Test;
+
+public class BinaryDeltaTest
+{
+    private final Random rnd = new Random(42);
+
+    @Test
+    void thatIdenticalVersionsProduceSmallDelta() throws Exception
+    {
+        byte[] source = randomBytes(100_000);
+
+        byte[] delta = BinaryDelta.encode(source, source);
+
+        assertThat(delta.length).isLessThan(16);
+        assertThat(BinaryDelta.apply(source, delta)).isEqualTo(source);
+    }
+
+    @Test
+    void thatInsertionsAndDeletionsAreEncodedCompactly() throws Exception
+    {
+        byte[] source = randomBytes(100_000);
+
+        byte[] target = ArrayUtils.addAll(Arrays.copyOfRange(source, 0, 30_000),
+                randomBytes(100));
+        target = ArrayUtils.addAll(target, Arrays.copyOfRange(source, 30_500, 100_000));
+
+        byte[] delta = BinaryDelta.encode(source, target);
+
+        assertThat(delta.length).isLessThan(200);
+        assertThat(BinaryDelta.apply(source, delta)).isEqualTo(target);
+    }
+
+    @Test
+    void thatUnrelatedAndShortVersionsRoundTrip() throws Exception
+    {
+        byte[] source = randomBytes(1_000);
+
+        for (byte[] target : new byte[][] { randomBytes(5_000), randomBytes(10), new byte[0] }) {
+            assertThat(BinaryDelta.apply(source, BinaryDelta.encode(source, target)))
+                    .isEqualTo(target);
+            assertThat(BinaryDelta.apply(target, BinaryDelta.encode(target, source)))
+                    .isEqualTo(source);
+        }
+    }
+
+    @Test
+    void thatDeltaForOtherSourceIsRejected()
+    {
+        byte[] source = randomBytes(10_000);
+        byte[] delta = BinaryDelta.encode(source, randomBytes(100));
+
+        byte[] truncatedDelta = Arrays.copyOf(delta, delta.length - 1);
+        assertThatExceptionOfType(IOException.class)
+                .isThrownBy(() -> BinaryDelta.apply(source, truncatedDelta));
+
+        byte[] copyDelta = BinaryDelta.encode(source, source);
+        assertThatExceptionOfType(IOException.class)
+                .isThrownBy(() -> BinaryDelta.apply(randomBytes(100), copyDelta));
+    }
+
+    private byte[] randomBytes(int aLength)
+    {
+        byte[] data = new byte[aLength];
+        rnd.nextBytes(data);
+        return data;
+    }
+}
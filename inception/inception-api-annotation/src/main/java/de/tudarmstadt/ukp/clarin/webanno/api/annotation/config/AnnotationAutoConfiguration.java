@@ -26,8 +26,10 @@ import de.tudarmstadt.ukp.clarin.webanno.api.annotation.rendering.FocusMarkerRen
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.rendering.LabelRenderer;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.rendering.PreRenderer;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.rendering.PreRendererImpl;
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.rendering.RenderCacheInvalidator;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.rendering.RenderNotificationRenderStep;
 import de.tudarmstadt.ukp.inception.rendering.coloring.ColoringService;
+import de.tudarmstadt.ukp.inception.rendering.pipeline.RenderingPipeline;
 import de.tudarmstadt.ukp.inception.schema.AnnotationSchemaService;
 import de.tudarmstadt.ukp.inception.schema.layer.LayerSupportRegistry;
 
@@ -71,4 +73,10 @@ public class AnnotationAutoConfiguration
     {
         return new FocusMarkerRenderer();
     }
+
+    @Bean
+    public RenderCacheInvalidator renderCacheInvalidator(RenderingPipeline aRenderingPipeline)
+    {
+        return new RenderCacheInvalidator(aRenderingPipeline);
+    }
 }
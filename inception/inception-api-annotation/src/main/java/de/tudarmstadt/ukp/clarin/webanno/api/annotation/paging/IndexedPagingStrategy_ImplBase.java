@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.api.annotation.paging;
+
+import java.util.List;
+import java.util.Optional;
+
+import javax.annotation.Nullable;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Type;
+
+import de.tudarmstadt.ukp.inception.rendering.paging.Unit;
+
+/**
+ * Base class for paging strategies which compute their units once per CAS and answer all unit
+ * queries from a cached {@link PagingUnitIndex}.
+ */
+public abstract class IndexedPagingStrategy_ImplBase
+    extends PagingStrategy_ImplBase
+{
+    private static final long serialVersionUID = -5468370563735346178L;
+
+    /**
+     * Collects the units of the given CAS. Units must be added in order of their begin offset.
+     *
+     * @param aCas
+     *            the CAS.
+     * @param aBuilder
+     *            the builder to add the units to.
+     */
+    protected abstract void collectUnits(CAS aCas, PagingUnitIndex.Builder aBuilder);
+
+    /**
+     * @param aCas
+     *            the CAS.
+     * @return the annotation type from which the units are derived or {@code null} if the units
+     *         depend only on the document text. Changes to annotations of this type cause the units
+     *         to be collected anew.
+     */
+    protected abstract @Nullable Type getUnitSourceType(CAS aCas);
+
+    /**
+     * @return a key identifying the units produced by this strategy. Strategies with parameters
+     *         affecting the units need to include these parameters in the key.
+     */
+    protected Object getUnitIndexKey()
+    {
+        return getClass();
+    }
+
+    protected PagingUnitIndex getUnitIndex(CAS aCas)
+    {
+        return PagingUnitIndex.of(aCas, getUnitIndexKey(), getUnitSourceType(aCas),
+                this::collectUnits);
+    }
+
+    @Override
+    public List<Unit> units(CAS aCas, int aFirstIndex, int aLastIndex)
+    {
+        return getUnitIndex(aCas).units(aFirstIndex, aLastIndex);
+    }
+
+    @Override
+    public int unitCount(CAS aCas)
+    {
+        return getUnitIndex(aCas).size();
+    }
+
+    @Override
+    public Unit unitAtIndex(CAS aCas, int aIndex)
+    {
+        PagingUnitIndex index = getUnitIndex(aCas);
+        return index.unit(Math.max(1, Math.min(index.size(), aIndex)));
+    }
+
+    @Override
+    public List<Unit> unitsStartingAtOffset(CAS aCas, int aOffset, int aCount)
+    {
+        return getUnitIndex(aCas).unitsStartingAtOffset(aOffset, aCount);
+    }
+
+    @Override
+    public Optional<Unit> unitAtOffset(CAS aCas, int aOffset)
+    {
+        return getUnitIndex(aCas).unitAtOffset(aOffset);
+    }
+}
@@ -17,12 +17,8 @@
  */
 package de.tudarmstadt.ukp.clarin.webanno.api.annotation.paging;
 
-import static org.apache.commons.lang3.StringUtils.splitPreserveAllTokens;
-
-import java.util.ArrayList;
-import java.util.List;
-
 import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Type;
 import org.apache.wicket.Component;
 import org.apache.wicket.Page;
 import org.apache.wicket.markup.html.basic.Label;
@@ -30,32 +26,39 @@ import org.apache.wicket.model.IModel;
 
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.page.AnnotationPageBase;
 import de.tudarmstadt.ukp.inception.rendering.editorstate.AnnotatorState;
-import de.tudarmstadt.ukp.inception.rendering.paging.Unit;
 
 public class LineOrientedPagingStrategy
-    extends PagingStrategy_ImplBase
+    extends IndexedPagingStrategy_ImplBase
 {
     private static final long serialVersionUID = -991967885210129525L;
 
     @Override
-    public List<Unit> units(CAS aCas, int aFirstIndex, int aLastIndex)
+    protected void collectUnits(CAS aCas, PagingUnitIndex.Builder aBuilder)
     {
-        // We need to preserve all tokens so we can add a +1 for the line breaks of empty lines.
-        String[] lines = splitPreserveAllTokens(aCas.getDocumentText(), '\n');
+        String text = aCas.getDocumentText();
 
-        List<Unit> units = new ArrayList<>();
-        int beginOffset = 0;
-        for (int i = 0; i < Math.min(lines.length, aLastIndex); i++) {
-
-            if (i >= aFirstIndex) {
-                units.add(new Unit(i + 1, beginOffset, beginOffset + lines[i].length()));
-            }
+        if (text.isEmpty()) {
+            return;
+        }
 
-            // The +1 below accounts for the line break which is not included in the token
-            beginOffset += lines[i].length() + 1;
+        // Every line break ends a line, including empty lines. The text after the last line
+        // break always forms a line, even if it is empty.
+        int beginOffset = 0;
+        int lineBreak = text.indexOf('\n');
+        while (lineBreak > -1) {
+            aBuilder.add(beginOffset, lineBreak);
+            // The +1 below accounts for the line break which is not included in the line
+            beginOffset = lineBreak + 1;
+            lineBreak = text.indexOf('\n', beginOffset);
         }
+        aBuilder.add(beginOffset, text.length());
+    }
 
-        return units;
+    @Override
+    protected Type getUnitSourceType(CAS aCas)
+    {
+        // Lines depend only on the document text
+        return null;
     }
 
     @Override
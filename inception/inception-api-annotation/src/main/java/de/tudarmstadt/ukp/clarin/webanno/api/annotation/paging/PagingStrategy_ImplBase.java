@@ -19,7 +19,6 @@ package de.tudarmstadt.ukp.clarin.webanno.api.annotation.paging;
 
 import static org.apache.wicket.event.Broadcast.BREADTH;
 
-import java.util.List;
 import java.util.Optional;
 
 import org.apache.uima.cas.CAS;
@@ -49,19 +48,14 @@ public abstract class PagingStrategy_ImplBase
             break;
         }
         case CENTERED: {
-            List<Unit> units = units(aCas);
-
             // Find the unit containing the given offset
-            Unit unit = units.stream() //
-                    .filter(u -> u.getBegin() <= aOffset && aOffset <= u.getEnd()) //
-                    .findFirst() //
+            Unit unit = unitAtOffset(aCas, aOffset) //
                     .orElseThrow(() -> new IllegalArgumentException(
                             "No unit contains character offset [" + aOffset + "]"));
 
             // How many rows to display before the unit such that the unit is centered?
             int rowsInPageBeforeUnit = aState.getPreferences().getWindowSize() / 2;
-            // The -1 below is because unit.getIndex() is 1-based
-            Unit firstUnit = units.get(Math.max(0, unit.getIndex() - rowsInPageBeforeUnit - 1));
+            Unit firstUnit = unitAtIndex(aCas, unit.getIndex() - rowsInPageBeforeUnit);
 
             aState.setPageBegin(aCas, firstUnit.getBegin());
             aState.setFocusUnitIndex(unit.getIndex());
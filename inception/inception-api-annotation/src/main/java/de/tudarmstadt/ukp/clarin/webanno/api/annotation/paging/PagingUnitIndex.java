@@ -0,0 +1,293 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.api.annotation.paging;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.getRealCas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+import javax.annotation.Nullable;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.impl.LowLevelIterator;
+
+import de.tudarmstadt.ukp.clarin.webanno.support.uima.CasScopedCache;
+import de.tudarmstadt.ukp.inception.rendering.paging.Unit;
+
+/**
+ * Index over the paging units of a CAS. The unit boundaries are stored as sorted offset arrays such
+ * that units can be looked up by their index in constant time and by character offset in
+ * {@code O(log n)}.
+ * <p>
+ * The indexes are built on demand and cached per key (usually identifying the paging strategy and
+ * its parameters) in the {@link CasScopedCache} of the CAS, so they go away together with the CAS
+ * holder. CASes without such a cache are not cached at all. A cached index is re-built when the
+ * document text has been replaced or when annotations of the type the units are derived from (e.g.
+ * tokens or sentences) have been added, removed or moved since it was built.
+ */
+public final class PagingUnitIndex
+{
+    private final String text;
+    private final LowLevelIterator<?> stamp;
+    private final int[] begins;
+    private final int[] ends;
+    private final String[] ids;
+
+    private PagingUnitIndex(String aText, LowLevelIterator<?> aStamp, Builder aBuilder)
+    {
+        text = aText;
+        stamp = aStamp;
+        begins = Arrays.copyOf(aBuilder.begins, aBuilder.size);
+        ends = Arrays.copyOf(aBuilder.ends, aBuilder.size);
+        ids = aBuilder.ids != null ? Arrays.copyOf(aBuilder.ids, aBuilder.size) : null;
+    }
+
+    /**
+     * Obtains the unit index for the given key in the given CAS. If there is a cached index which
+     * is still up-to-date, it is re-used. Otherwise, the units are collected anew and cached.
+     *
+     * @param aCas
+     *            the CAS.
+     * @param aKey
+     *            the key identifying the kind of units (e.g. the paging strategy and its
+     *            parameters).
+     * @param aType
+     *            the annotation type from which the units are derived or {@code null} if the units
+     *            depend only on the document text.
+     * @param aCollector
+     *            collects the units from the CAS. Units must be added in order of their begin
+     *            offset.
+     * @return the unit index.
+     */
+    public static PagingUnitIndex of(CAS aCas, Object aKey, @Nullable Type aType,
+            BiConsumer<CAS, Builder> aCollector)
+    {
+        CAS cas = getRealCas(aCas);
+        Map<Object, PagingUnitIndex> indexes = CasScopedCache.get(cas, PagingUnitIndex.class,
+                key -> new ConcurrentHashMap<>());
+        return indexes.compute(aKey, (key, index) -> index != null && index.isValid(cas, aType)
+                ? index
+                : build(cas, aType, aCollector));
+    }
+
+    private static PagingUnitIndex build(CAS aCas, Type aType, BiConsumer<CAS, Builder> aCollector)
+    {
+        // The iterator is retained to tell us when the annotation index of the type has been
+        // modified.
+        LowLevelIterator<?> stamp = null;
+        if (aType != null) {
+            FSIterator<?> iterator = aCas.getAnnotationIndex(aType).iterator();
+            if (iterator instanceof LowLevelIterator) {
+                stamp = (LowLevelIterator<?>) iterator;
+            }
+        }
+
+        Builder builder = new Builder();
+        aCollector.accept(aCas, builder);
+        return new PagingUnitIndex(aCas.getDocumentText(), stamp, builder);
+    }
+
+    private boolean isValid(CAS aCas, Type aType)
+    {
+        // The CAS keeps the string it was given as document text, so if the text has been
+        // replaced, we get a different string instance here
+        if (text != aCas.getDocumentText()) {
+            return false;
+        }
+
+        if (aType == null) {
+            return true;
+        }
+
+        return stamp != null && !stamp.isIndexesHaveBeenUpdated();
+    }
+
+    /**
+     * @return the number of units.
+     */
+    public int size()
+    {
+        return begins.length;
+    }
+
+    /**
+     * @param aIndex
+     *            the index of the unit (1-based).
+     * @return the unit with the given index.
+     */
+    public Unit unit(int aIndex)
+    {
+        int i = aIndex - 1;
+        return new Unit(ids != null ? ids[i] : null, aIndex, begins[i], ends[i]);
+    }
+
+    /**
+     * @param aFirstIndex
+     *            index of the first unit to be returned (1-based).
+     * @param aLastIndex
+     *            index of the last unit to be returned (1-based, inclusive).
+     * @return the units in the given index range capped to the units available.
+     */
+    public List<Unit> units(int aFirstIndex, int aLastIndex)
+    {
+        int first = Math.max(1, aFirstIndex);
+        int last = Math.min(size(), aLastIndex);
+
+        List<Unit> units = new ArrayList<>(Math.max(0, last - first + 1));
+        for (int i = first; i <= last; i++) {
+            units.add(unit(i));
+        }
+        return units;
+    }
+
+    /**
+     * @param aOffset
+     *            a character offset.
+     * @param aCount
+     *            the maximum number of units to return.
+     * @return the units starting at or after the given offset.
+     */
+    public List<Unit> unitsStartingAtOffset(int aOffset, int aCount)
+    {
+        // The +1 below is because the unit index is 1-based
+        int first = lowerBound(aOffset) + 1;
+        return units(first, (int) Math.min(Integer.MAX_VALUE, (long) first + aCount - 1));
+    }
+
+    /**
+     * @param aOffset
+     *            a character offset.
+     * @return the first unit containing the given offset (begin and end inclusive).
+     */
+    public Optional<Unit> unitAtOffset(int aOffset)
+    {
+        // Last unit starting at or before the offset
+        int i = upperBound(aOffset) - 1;
+
+        if (i < 0 || ends[i] < aOffset) {
+            return Optional.empty();
+        }
+
+        // If units touch (e.g. sentences without whitespace in between), prefer the earlier unit
+        while (i > 0 && begins[i - 1] <= aOffset && aOffset <= ends[i - 1]) {
+            i--;
+        }
+
+        // The +1 below is because the unit index is 1-based
+        return Optional.of(unit(i + 1));
+    }
+
+    /**
+     * @return the position of the first unit starting at or after the given offset.
+     */
+    private int lowerBound(int aOffset)
+    {
+        int lo = 0;
+        int hi = begins.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (begins[mid] < aOffset) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return the position of the first unit starting after the given offset.
+     */
+    private int upperBound(int aOffset)
+    {
+        int lo = 0;
+        int hi = begins.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (begins[mid] <= aOffset) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Collects the unit boundaries while building a {@link PagingUnitIndex}.
+     */
+    public static final class Builder
+    {
+        private int[] begins = new int[64];
+        private int[] ends = new int[64];
+        private String[] ids;
+        private int size;
+
+        private Builder()
+        {
+            // Only created by the index
+        }
+
+        /**
+         * @return the number of units added so far.
+         */
+        public int size()
+        {
+            return size;
+        }
+
+        public Builder add(int aBegin, int aEnd)
+        {
+            return add(null, aBegin, aEnd);
+        }
+
+        public Builder add(@Nullable String aId, int aBegin, int aEnd)
+        {
+            if (size == begins.length) {
+                begins = Arrays.copyOf(begins, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                if (ids != null) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                }
+            }
+
+            // Unit IDs are rare, so we only allocate space for them when we encounter one
+            if (aId != null && ids == null) {
+                ids = new String[begins.length];
+            }
+
+            begins[size] = aBegin;
+            ends[size] = aEnd;
+            if (ids != null) {
+                ids[size] = aId;
+            }
+            size++;
+            return this;
+        }
+    }
+}
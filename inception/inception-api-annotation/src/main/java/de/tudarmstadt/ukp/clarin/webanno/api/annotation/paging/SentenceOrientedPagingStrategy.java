@@ -19,10 +19,8 @@ package de.tudarmstadt.ukp.clarin.webanno.api.annotation.paging;
 
 import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.selectSentences;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Type;
 import org.apache.uima.cas.text.AnnotationFS;
 import org.apache.uima.fit.util.CasUtil;
 import org.apache.uima.fit.util.FSUtil;
@@ -34,40 +32,34 @@ import org.apache.wicket.model.IModel;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.page.AnnotationPageBase;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.inception.rendering.editorstate.AnnotatorState;
-import de.tudarmstadt.ukp.inception.rendering.paging.Unit;
 
 public class SentenceOrientedPagingStrategy
-    extends PagingStrategy_ImplBase
+    extends IndexedPagingStrategy_ImplBase
 {
     private static final long serialVersionUID = -3983123604003839467L;
 
     @Override
-    public List<Unit> units(CAS aCas, int aFirstIndex, int aLastIndex)
+    protected void collectUnits(CAS aCas, PagingUnitIndex.Builder aBuilder)
     {
-        List<Unit> units = new ArrayList<>();
-        int i = 1;
         for (AnnotationFS sentence : selectSentences(aCas)) {
-            if (i > aLastIndex) {
-                break;
-            }
-
-            if (i >= aFirstIndex) {
-                units.add(toUnit(i, sentence));
-            }
-
-            i++;
+            aBuilder.add(getSentenceId(sentence), sentence.getBegin(), sentence.getEnd());
         }
-        return units;
+    }
+
+    @Override
+    protected Type getUnitSourceType(CAS aCas)
+    {
+        return CasUtil.getType(aCas, Sentence.class);
     }
 
     @Override
     public int unitCount(CAS aCas)
     {
-        // This is way faster than the default implementation which first materializes all units
-        return aCas.getAnnotationIndex(CasUtil.getType(aCas, Sentence.class)).size();
+        // This is way faster than building the unit index if it is not available yet
+        return aCas.getAnnotationIndex(getUnitSourceType(aCas)).size();
     }
 
-    private Unit toUnit(int aIndex, AnnotationFS aSentence)
+    private String getSentenceId(AnnotationFS aSentence)
     {
         // If there is a sentence ID, then make it accessible to the user via a sentence-level
         // comment.
@@ -78,7 +70,7 @@ public class SentenceOrientedPagingStrategy
         catch (IllegalArgumentException e) {
             // Ignore if there is no "id" feature on the sentence
         }
-        return new Unit(sentId, aIndex, aSentence.getBegin(), aSentence.getEnd());
+        return sentId;
     }
 
     @Override
@@ -17,26 +17,25 @@
  */
 package de.tudarmstadt.ukp.clarin.webanno.api.annotation.paging;
 
+import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.selectTokens;
 import static java.lang.String.format;
-
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import static java.util.Arrays.asList;
 
 import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Type;
 import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.util.CasUtil;
 import org.apache.wicket.Component;
 import org.apache.wicket.Page;
 import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.model.IModel;
 
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.page.AnnotationPageBase;
-import de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import de.tudarmstadt.ukp.inception.rendering.editorstate.AnnotatorState;
-import de.tudarmstadt.ukp.inception.rendering.paging.Unit;
 
 public class TokenWrappingPagingStrategy
-    extends PagingStrategy_ImplBase
+    extends IndexedPagingStrategy_ImplBase
 {
     private static final long serialVersionUID = -3983123604003839467L;
 
@@ -48,31 +47,38 @@ public class TokenWrappingPagingStrategy
     }
 
     @Override
-    public List<Unit> units(CAS aCas, int aFirstIndex, int aLastIndex)
+    protected Object getUnitIndexKey()
+    {
+        return asList(getClass(), maxLineLength);
+    }
+
+    @Override
+    protected Type getUnitSourceType(CAS aCas)
     {
-        Iterator<AnnotationFS> tokenIterator = WebAnnoCasUtil.selectTokens(aCas).iterator();
+        return CasUtil.getType(aCas, Token.class);
+    }
 
-        List<Unit> units = new ArrayList<>();
+    @Override
+    protected void collectUnits(CAS aCas, PagingUnitIndex.Builder aBuilder)
+    {
+        String text = aCas.getDocumentText();
 
         int currentUnitStart = 0;
         int currentUnitEnd = 0;
-        while (tokenIterator.hasNext()) {
-            AnnotationFS currentToken = tokenIterator.next();
-
+        for (AnnotationFS currentToken : selectTokens(aCas)) {
             if (currentToken.getBegin() < currentUnitEnd) {
                 throw new IllegalStateException(format(
                         "Unable to render: Token at [%d-%d] illegally overlaps with previous token ending at [%d].",
                         currentToken.getBegin(), currentToken.getEnd(), currentUnitEnd));
             }
 
-            String gap = aCas.getDocumentText().substring(currentUnitEnd, currentToken.getBegin());
-            int gapStart = currentUnitEnd;
-            int lineBreakIndex = gap.indexOf("\n");
-            while (lineBreakIndex > -1) {
-                currentUnitEnd = gapStart + lineBreakIndex;
-                units.add(new Unit(units.size() + 1, currentUnitStart, currentUnitEnd));
+            // Every line break in the gap before the token ends the current unit
+            int lineBreak = text.indexOf('\n', currentUnitEnd);
+            while (lineBreak > -1 && lineBreak < currentToken.getBegin()) {
+                currentUnitEnd = lineBreak;
+                aBuilder.add(currentUnitStart, currentUnitEnd);
                 currentUnitStart = currentUnitEnd + 1; // +1 because of the line break character
-                lineBreakIndex = gap.indexOf("\n", lineBreakIndex + 1);
+                lineBreak = text.indexOf('\n', currentUnitStart);
             }
 
             boolean unitNonEmpty = (currentUnitEnd - currentUnitStart) > 0;
@@ -81,7 +87,7 @@ public class TokenWrappingPagingStrategy
 
             // If the unit is full, finish the unit and start a new one
             if (unitFull) {
-                units.add(new Unit(units.size() + 1, currentUnitStart, currentUnitEnd));
+                aBuilder.add(currentUnitStart, currentUnitEnd);
                 currentUnitStart = -1;
             }
 
@@ -93,10 +99,8 @@ public class TokenWrappingPagingStrategy
         }
 
         if (currentUnitEnd - currentUnitStart > 0) {
-            units.add(new Unit(units.size() + 1, currentUnitStart, currentUnitEnd));
+            aBuilder.add(currentUnitStart, currentUnitEnd);
         }
-
-        return units;
     }
 
     @Override
@@ -90,6 +90,13 @@ public class PreRendererImpl
         return ID;
     }
 
+    @Override
+    public boolean isCacheable()
+    {
+        // The layers are rendered only from the CAS in the given window
+        return true;
+    }
+
     @Override
     public void render(VDocument aResponse, RenderRequest aRequest)
     {
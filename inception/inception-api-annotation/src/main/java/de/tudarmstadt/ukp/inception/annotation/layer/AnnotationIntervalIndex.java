@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.annotation.layer;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.getRealCas;
+import static java.util.stream.Collectors.toCollection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.impl.LowLevelIterator;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.cas.text.AnnotationPredicates;
+import org.apache.uima.jcas.tcas.Annotation;
+
+import de.tudarmstadt.ukp.clarin.webanno.support.uima.CasScopedCache;
+
+/**
+ * Interval index over the annotations of a given type in a CAS. The annotations are kept in the
+ * order of the annotation index (i.e. sorted by their begin offset) along with a tree storing the
+ * maximum end offset of the annotations in each sub-range. Annotations overlapping a given window
+ * are found in {@code O(log n + k)} (times {@code log n} per hit in the worst case) instead of
+ * having to iterate over all annotations starting before the window.
+ * <p>
+ * The indexes are built on demand and cached per CAS and type in the {@link CasScopedCache} of the
+ * CAS, so they are dropped together with the CAS. A cached index is re-built when annotations of the
+ * type have been added, removed or moved in the CAS since it was built.
+ */
+public final class AnnotationIntervalIndex
+{
+    private final LowLevelIterator<?> stamp;
+    private final AnnotationFS[] annotations;
+    private final int[] begins;
+    private final int[] ends;
+    private final int[] maxEnds;
+    private final int leafOffset;
+
+    private AnnotationIntervalIndex(LowLevelIterator<?> aStamp, List<AnnotationFS> aAnnotations)
+    {
+        stamp = aStamp;
+        annotations = aAnnotations.toArray(AnnotationFS[]::new);
+        begins = new int[annotations.length];
+        ends = new int[annotations.length];
+
+        int leaves = 1;
+        while (leaves < annotations.length) {
+            leaves <<= 1;
+        }
+        leafOffset = leaves;
+        maxEnds = new int[2 * leaves];
+        Arrays.fill(maxEnds, Integer.MIN_VALUE);
+
+        for (int i = 0; i < annotations.length; i++) {
+            begins[i] = annotations[i].getBegin();
+            ends[i] = annotations[i].getEnd();
+            maxEnds[leafOffset + i] = ends[i];
+        }
+
+        for (int node = leafOffset - 1; node > 0; node--) {
+            maxEnds[node] = Math.max(maxEnds[2 * node], maxEnds[2 * node + 1]);
+        }
+    }
+
+    /**
+     * Obtains the interval index for the given type in the given CAS. If there is a cached index
+     * which is still up-to-date, it is re-used. Otherwise, a new index is built and cached.
+     *
+     * @param aCas
+     *            the CAS.
+     * @param aType
+     *            the annotation type.
+     * @return the interval index.
+     */
+    public static AnnotationIntervalIndex of(CAS aCas, Type aType)
+    {
+        CAS cas = getRealCas(aCas);
+        Map<Type, AnnotationIntervalIndex> indexes = CasScopedCache.get(cas,
+                AnnotationIntervalIndex.class, key -> new ConcurrentHashMap<>());
+        return indexes.compute(aType,
+                (type, index) -> index != null && index.isValid() ? index : build(cas, type));
+    }
+
+    private static AnnotationIntervalIndex build(CAS aCas, Type aType)
+    {
+        // The iterator is retained to tell us when the annotation index of the type has been
+        // modified.
+        FSIterator<AnnotationFS> iterator = aCas.<AnnotationFS> getAnnotationIndex(aType)
+                .iterator();
+        LowLevelIterator<?> stamp = iterator instanceof LowLevelIterator
+                ? (LowLevelIterator<?>) iterator
+                : null;
+
+        // Use the same order as a regular selection of the type
+        List<AnnotationFS> annotations = aCas.<Annotation> select(aType)
+                .collect(toCollection(ArrayList::new));
+        return new AnnotationIntervalIndex(stamp, annotations);
+    }
+
+    private boolean isValid()
+    {
+        return stamp != null && !stamp.isIndexesHaveBeenUpdated();
+    }
+
+    /**
+     * @return the number of annotations in the index.
+     */
+    public int size()
+    {
+        return annotations.length;
+    }
+
+    /**
+     * Selects all annotations overlapping the given window in the order of the annotation index.
+     *
+     * @param aBegin
+     *            the window begin offset.
+     * @param aEnd
+     *            the window end offset.
+     * @return the overlapping annotations.
+     * @see AnnotationPredicates#overlapping(AnnotationFS, int, int)
+     */
+    public List<AnnotationFS> selectOverlapping(int aBegin, int aEnd)
+    {
+        List<AnnotationFS> result = new ArrayList<>();
+        // Candidates start at latest at the end of the window and end earliest at its beginning
+        int limit = upperBound(aEnd);
+        collect(1, 0, leafOffset, limit, aBegin, aEnd, result);
+        return result;
+    }
+
+    /**
+     * Selects all annotations covered by the given window in the order of the annotation index.
+     *
+     * @param aBegin
+     *            the window begin offset.
+     * @param aEnd
+     *            the window end offset.
+     * @return the covered annotations.
+     * @see AnnotationPredicates#coveredBy(AnnotationFS, int, int)
+     */
+    public List<AnnotationFS> selectCovered(int aBegin, int aEnd)
+    {
+        List<AnnotationFS> result = new ArrayList<>();
+        int limit = upperBound(aEnd);
+        for (int i = lowerBound(aBegin); i < limit; i++) {
+            if (AnnotationPredicates.coveredBy(begins[i], ends[i], aBegin, aEnd)) {
+                result.add(annotations[i]);
+            }
+        }
+        return result;
+    }
+
+    private void collect(int aNode, int aNodeBegin, int aNodeEnd, int aLimit, int aBegin,
+            int aEnd, List<AnnotationFS> aResult)
+    {
+        if (aNodeBegin >= aLimit || maxEnds[aNode] < aBegin) {
+            return;
+        }
+
+        if (aNode >= leafOffset) {
+            int i = aNode - leafOffset;
+            if (AnnotationPredicates.overlapping(begins[i], ends[i], aBegin, aEnd)) {
+                aResult.add(annotations[i]);
+            }
+            return;
+        }
+
+        int middle = (aNodeBegin + aNodeEnd) >>> 1;
+        collect(2 * aNode, aNodeBegin, middle, aLimit, aBegin, aEnd, aResult);
+        collect(2 * aNode + 1, middle, aNodeEnd, aLimit, aBegin, aEnd, aResult);
+    }
+
+    /**
+     * @return the position of the first annotation starting at or after the given offset.
+     */
+    private int lowerBound(int aOffset)
+    {
+        int lo = 0;
+        int hi = begins.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (begins[mid] < aOffset) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @return the position of the first annotation starting after the given offset.
+     */
+    private int upperBound(int aOffset)
+    {
+        int lo = 0;
+        int hi = begins.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (begins[mid] <= aOffset) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -42,6 +42,7 @@ import org.springframework.core.annotation.AnnotationAwareOrderComparator;
 
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.rendering.Renderer_ImplBase;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
+import de.tudarmstadt.ukp.inception.annotation.layer.AnnotationIntervalIndex;
 import de.tudarmstadt.ukp.inception.annotation.layer.span.SpanLayerBehavior;
 import de.tudarmstadt.ukp.inception.rendering.vmodel.VArc;
 import de.tudarmstadt.ukp.inception.rendering.vmodel.VDocument;
@@ -59,6 +60,7 @@ public class ChainRenderer
     private final List<SpanLayerBehavior> behaviors;
 
     private Type chainType;
+    private Type linkType;
     private Feature chainFirst;
 
     public ChainRenderer(ChainAdapter aTypeAdapter, LayerSupportRegistry aLayerSupportRegistry,
@@ -81,8 +83,9 @@ public class ChainRenderer
     {
         ChainAdapter typeAdapter = getTypeAdapter();
         chainType = aTypeSystem.getType(typeAdapter.getChainTypeName());
+        linkType = aTypeSystem.getType(typeAdapter.getAnnotationTypeName());
 
-        if (chainType == null) {
+        if (chainType == null || linkType == null) {
             // If the types are not defined, then we do not need to try and render them because the
             // CAS does not contain any instances of them
             return false;
@@ -127,9 +130,16 @@ public class ChainRenderer
         // Sorted index mapping annotations to the corresponding rendered spans
         Map<AnnotationFS, VSpan> annoToSpanIdx = new HashMap<>();
 
+        // Once all the links visible in the window have been rendered, we do not need to walk the
+        // remaining chains anymore
+        int remainingLinks = AnnotationIntervalIndex.of(aCas, linkType)
+                .selectOverlapping(aWindowBegin, aWindowEnd).size();
+
         int colorIndex = 0;
         // Iterate over the chains
-        List<AnnotationFS> annotations = selectAnnotationsInWindow(aCas, aWindowBegin, aWindowEnd);
+        List<AnnotationFS> annotations = remainingLinks > 0
+                ? selectAnnotationsInWindow(aCas, aWindowBegin, aWindowEnd)
+                : emptyList();
         for (FeatureStructure chainFs : annotations) {
             AnnotationFS linkFs = (AnnotationFS) chainFs.getFeatureValue(chainFirst);
             AnnotationFS prevLinkFs = null;
@@ -153,6 +163,8 @@ public class ChainRenderer
                     continue; // Go to next link
                 }
 
+                remainingLinks--;
+
                 String bratTypeName = typeAdapter.getEncodedTypeName();
 
                 // Render span
@@ -205,6 +217,10 @@ public class ChainRenderer
             // window because we would like the chain color to be independent of visibility. In
             // particular the color of a chain should not change when switching pages/scrolling.
             colorIndex++;
+
+            if (remainingLinks <= 0) {
+                break;
+            }
         }
 
         for (SpanLayerBehavior behavior : behaviors) {
@@ -20,7 +20,6 @@ package de.tudarmstadt.ukp.inception.annotation.layer.relation;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Comparator.comparingInt;
-import static org.apache.uima.fit.util.CasUtil.selectCovered;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -50,6 +49,7 @@ import org.springframework.core.annotation.AnnotationAwareOrderComparator;
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.rendering.Renderer_ImplBase;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
 import de.tudarmstadt.ukp.clarin.webanno.support.uima.ICasUtil;
+import de.tudarmstadt.ukp.inception.annotation.layer.AnnotationIntervalIndex;
 import de.tudarmstadt.ukp.inception.rendering.vmodel.VArc;
 import de.tudarmstadt.ukp.inception.rendering.vmodel.VComment;
 import de.tudarmstadt.ukp.inception.rendering.vmodel.VCommentType;
@@ -121,7 +121,7 @@ public class RelationRenderer
     @Override
     public List<AnnotationFS> selectAnnotationsInWindow(CAS aCas, int aWindowBegin, int aWindowEnd)
     {
-        return selectCovered(aCas, type, aWindowBegin, aWindowEnd);
+        return AnnotationIntervalIndex.of(aCas, type).selectCovered(aWindowBegin, aWindowEnd);
     }
 
     @Override
@@ -336,7 +336,7 @@ public class RelationRenderer
         RelationAdapter typeAdapter = getTypeAdapter();
         Map<Integer, Set<Integer>> relations = new ConcurrentHashMap<>();
 
-        for (AnnotationFS fs : selectCovered(aCas, type, aWindowBegin, aWindowEnd)) {
+        for (AnnotationFS fs : selectAnnotationsInWindow(aCas, aWindowBegin, aWindowEnd)) {
             FeatureStructure dependentFs = getGovernorFs(fs);
             FeatureStructure governorFs = getDependentFs(fs);
 
@@ -26,6 +26,7 @@ import org.apache.uima.fit.factory.JCasFactory;
 import org.apache.uima.jcas.JCas;
 import org.junit.jupiter.api.Test;
 
+import de.tudarmstadt.ukp.clarin.webanno.support.uima.CasScopedCache;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
 import de.tudarmstadt.ukp.inception.rendering.paging.Unit;
 
@@ -113,4 +114,89 @@ public class TokenWrappingPagingStrategyTest
                         tuple(24, 35, "aaa aaa aaa"), //
                         tuple(36, 39, "aaa"));
     }
+
+    @Test
+    public void thatOffsetLookupsWork() throws Exception
+    {
+        TokenWrappingPagingStrategy sut = new TokenWrappingPagingStrategy(11);
+
+        JCas jcas = JCasFactory.createJCas();
+        JCasBuilder builder = new JCasBuilder(jcas);
+        for (int n = 0; n < 10; n++) {
+            builder.add(StringUtils.repeat("a", 3), Token.class);
+            builder.add(" ");
+        }
+        builder.close();
+
+        assertThat(sut.unitCount(jcas.getCas())).isEqualTo(4);
+        assertThat(sut.unitAtOffset(jcas.getCas(), 13)).get() //
+                .extracting(Unit::getIndex, Unit::getBegin, Unit::getEnd) //
+                .containsExactly(2, 12, 23);
+        assertThat(sut.unitAtOffset(jcas.getCas(), 39)).get() //
+                .extracting(Unit::getIndex).isEqualTo(4);
+        assertThat(sut.unitAtOffset(jcas.getCas(), 40)).isEmpty();
+        assertThat(sut.unitsStartingAtOffset(jcas.getCas(), 1, 2)) //
+                .extracting(Unit::getIndex, Unit::getBegin) //
+                .containsExactly(tuple(2, 12), tuple(3, 24));
+        assertThat(sut.units(jcas.getCas(), 2, 3)) //
+                .extracting(Unit::getIndex) //
+                .containsExactly(2, 3);
+        assertThat(sut.unitAtIndex(jcas.getCas(), 10)) //
+                .extracting(Unit::getIndex).isEqualTo(4);
+    }
+
+    @Test
+    public void thatUnitsAreUpdatedWhenTokensChange() throws Exception
+    {
+        TokenWrappingPagingStrategy sut = new TokenWrappingPagingStrategy(11);
+
+        JCas jcas = JCasFactory.createJCas();
+        JCasBuilder builder = new JCasBuilder(jcas);
+        builder.add("aaa", Token.class);
+        builder.add(" ");
+        Token lastToken = builder.add("bbbbbbbbbbb", Token.class);
+        builder.close();
+
+        assertThat(sut.units(jcas.getCas())) //
+                .extracting(Unit::getBegin, Unit::getEnd) //
+                .containsExactly(tuple(0, 3), tuple(4, 15));
+
+        lastToken.removeFromIndexes();
+        new Token(jcas, 4, 7).addToIndexes();
+
+        assertThat(sut.units(jcas.getCas())) //
+                .extracting(Unit::getBegin, Unit::getEnd) //
+                .containsExactly(tuple(0, 7));
+
+        // A strategy with different parameters must not see the units of the first one
+        assertThat(new TokenWrappingPagingStrategy(3).units(jcas.getCas())) //
+                .extracting(Unit::getBegin, Unit::getEnd) //
+                .containsExactly(tuple(0, 3), tuple(4, 7));
+    }
+
+    @Test
+    public void thatUnitIndexIsCachedInCasScopedCache() throws Exception
+    {
+        TokenWrappingPagingStrategy sut = new TokenWrappingPagingStrategy(11);
+
+        JCas jcas = JCasFactory.createJCas();
+        JCasBuilder builder = new JCasBuilder(jcas);
+        builder.add("aaa", Token.class);
+        builder.add(" ");
+        builder.add("bbb");
+        builder.close();
+
+        // Without a cache, the index is built on every access
+        PagingUnitIndex uncached = sut.getUnitIndex(jcas.getCas());
+        assertThat(sut.getUnitIndex(jcas.getCas())).isNotSameAs(uncached);
+
+        CasScopedCache casScopedCache = CasScopedCache.create(jcas.getCas());
+        PagingUnitIndex cached = sut.getUnitIndex(jcas.getCas());
+        assertThat(sut.getUnitIndex(jcas.getCas())).isSameAs(cached);
+
+        new Token(jcas, 4, 7).addToIndexes();
+        assertThat(sut.getUnitIndex(jcas.getCas())).isNotSameAs(cached);
+
+        casScopedCache.clear();
+    }
 }
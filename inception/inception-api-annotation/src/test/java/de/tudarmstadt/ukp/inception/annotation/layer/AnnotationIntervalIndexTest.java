@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.annotation.layer;
+
+import static java.util.stream.Collectors.toList;
+import static org.apache.uima.fit.util.CasUtil.getType;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationPredicates;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.tudarmstadt.ukp.clarin.webanno.support.uima.CasScopedCache;
+import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
+import de.tudarmstadt.ukp.dkpro.core.api.ner.type.Organization;
+
+public class AnnotationIntervalIndexTest
+{
+    private JCas jcas;
+    private CAS cas;
+    private CasScopedCache casScopedCache;
+    private Type neType;
+
+    @BeforeEach
+    public void setup() throws Exception
+    {
+        jcas = JCasFactory.createJCas();
+        cas = jcas.getCas();
+        casScopedCache = CasScopedCache.create(cas);
+        neType = getType(cas, NamedEntity.class);
+    }
+
+    @Test
+    public void thatSelectionsMatchAnnotationIndex()
+    {
+        Random rnd = new Random(1);
+        int length = 1000;
+        jcas.setDocumentText(StringUtils.repeat("a", length));
+
+        for (int i = 0; i < 500; i++) {
+            int begin = rnd.nextInt(length);
+            // Mostly short annotations, some zero-width and some very long ones
+            int end = Math.min(length, begin + (i % 50 == 0 ? rnd.nextInt(length) : rnd.nextInt(5)));
+            // Include a subtype to make sure subtypes are indexed as well
+            var ne = i % 3 == 0 ? new Organization(jcas, begin, end)
+                    : new NamedEntity(jcas, begin, end);
+            ne.addToIndexes();
+        }
+
+        var sut = AnnotationIntervalIndex.of(cas, neType);
+
+        for (int i = 0; i < 200; i++) {
+            int windowBegin = rnd.nextInt(length);
+            int windowEnd = Math.min(length, windowBegin + rnd.nextInt(100));
+
+            List<Annotation> expectedOverlapping = cas.<Annotation> select(neType)
+                    .filter(ann -> AnnotationPredicates.overlapping(ann, windowBegin, windowEnd))
+                    .collect(toList());
+            List<Annotation> expectedCovered = cas.<Annotation> select(neType)
+                    .coveredBy(windowBegin, windowEnd).asList();
+
+            assertThat(sut.selectOverlapping(windowBegin, windowEnd))
+                    .as("Overlapping [%d-%d]", windowBegin, windowEnd)
+                    .containsExactlyElementsOf(expectedOverlapping);
+            assertThat(sut.selectCovered(windowBegin, windowEnd))
+                    .as("Covered [%d-%d]", windowBegin, windowEnd)
+                    .containsExactlyElementsOf(expectedCovered);
+        }
+    }
+
+    @Test
+    public void thatIndexIsReusedWhileAnnotationsAreUnchanged()
+    {
+        jcas.setDocumentText("This is a test.");
+        new NamedEntity(jcas, 0, 4).addToIndexes();
+
+        var index = AnnotationIntervalIndex.of(cas, neType);
+
+        assertThat(AnnotationIntervalIndex.of(cas, neType)).isSameAs(index);
+    }
+
+    @Test
+    public void thatIndexIsNotCachedWithoutCasScopedCache() throws Exception
+    {
+        JCas otherJCas = JCasFactory.createJCas();
+        otherJCas.setDocumentText("This is a test.");
+        new NamedEntity(otherJCas, 0, 4).addToIndexes();
+        CAS otherCas = otherJCas.getCas();
+
+        var index = AnnotationIntervalIndex.of(otherCas, neType);
+
+        assertThat(AnnotationIntervalIndex.of(otherCas, neType)).isNotSameAs(index);
+        assertThat(index.selectOverlapping(0, 4)).hasSize(1);
+    }
+
+    @Test
+    public void thatIndexIsDroppedWhenCasScopedCacheIsCleared()
+    {
+        jcas.setDocumentText("This is a test.");
+        new NamedEntity(jcas, 0, 4).addToIndexes();
+
+        var index = AnnotationIntervalIndex.of(cas, neType);
+        casScopedCache.clear();
+
+        assertThat(AnnotationIntervalIndex.of(cas, neType)).isNotSameAs(index);
+    }
+
+    @Test
+    public void thatIndexIsRebuiltAfterAnnotationsChange()
+    {
+        jcas.setDocumentText("This is a test.");
+        var ne = new NamedEntity(jcas, 0, 4);
+        ne.addToIndexes();
+
+        assertThat(AnnotationIntervalIndex.of(cas, neType).selectOverlapping(10, 14)).isEmpty();
+
+        // Moving the annotation
+        ne.removeFromIndexes();
+        ne.setBegin(10);
+        ne.setEnd(14);
+        ne.addToIndexes();
+        assertThat(AnnotationIntervalIndex.of(cas, neType).selectOverlapping(10, 14))
+                .containsExactly(ne);
+
+        // Adding an annotation
+        var ne2 = new Organization(jcas, 5, 7);
+        ne2.addToIndexes();
+        assertThat(AnnotationIntervalIndex.of(cas, neType).selectOverlapping(0, 15))
+                .containsExactly(ne2, ne);
+
+        // Removing an annotation
+        ne.removeFromIndexes();
+        assertThat(AnnotationIntervalIndex.of(cas, neType).selectOverlapping(0, 15))
+                .containsExactly(ne2);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.annotation.layer.span;
+
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnchoringMode.TOKENS;
+import static de.tudarmstadt.ukp.clarin.webanno.model.OverlapMode.ANY_OVERLAP;
+import static de.tudarmstadt.ukp.clarin.webanno.support.WebAnnoConst.SPAN_TYPE;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.stream.Collectors.toList;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.cas.text.AnnotationPredicates;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.CasUtil;
+import org.apache.uima.jcas.JCas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
+import de.tudarmstadt.ukp.inception.annotation.layer.behaviors.LayerSupportRegistryImpl;
+import de.tudarmstadt.ukp.inception.rendering.vmodel.VDocument;
+import de.tudarmstadt.ukp.inception.schema.feature.FeatureSupportRegistry;
+import de.tudarmstadt.ukp.inception.schema.layer.LayerSupportRegistry;
+
+/**
+ * Renders the last page of a very large document with a span annotation on every word. Compares
+ * the interval index used by the {@link SpanRenderer} to the previous linear selection of all
+ * annotations starting before the end of the window. Run via {@link #main(String[])} from the IDE
+ * or after building the test classes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpanRendererBenchmark
+{
+    private static final int PAGE_SIZE = 5_000;
+
+    private @Param({ "2000000" }) int documentLength;
+
+    private CAS cas;
+    private SpanRenderer intervalIndexRenderer;
+    private SpanRenderer linearSelectionRenderer;
+    private int windowBegin;
+    private int windowEnd;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < documentLength) {
+            text.append("word ");
+        }
+
+        JCas jcas = JCasFactory.createJCas();
+        jcas.setDocumentText(text.toString());
+        for (int i = 0; i + 4 <= text.length(); i += 5) {
+            new NamedEntity(jcas, i, i + 4).addToIndexes();
+        }
+        cas = jcas.getCas();
+
+        windowEnd = text.length();
+        windowBegin = windowEnd - PAGE_SIZE;
+
+        Project project = new Project();
+        project.setId(1l);
+        AnnotationLayer neLayer = new AnnotationLayer(NamedEntity.class.getName(), "NE", SPAN_TYPE,
+                project, true, TOKENS, ANY_OVERLAP);
+        neLayer.setId(1l);
+
+        FeatureSupportRegistry featureSupportRegistry = mock(FeatureSupportRegistry.class);
+        LayerSupportRegistry layerSupportRegistry = new LayerSupportRegistryImpl(asList());
+        SpanAdapter adapter = new SpanAdapter(layerSupportRegistry, featureSupportRegistry, null,
+                neLayer, () -> asList(), asList());
+
+        intervalIndexRenderer = new SpanRenderer(adapter, layerSupportRegistry,
+                featureSupportRegistry, asList());
+        linearSelectionRenderer = new SpanRenderer(adapter, layerSupportRegistry,
+                featureSupportRegistry, asList())
+        {
+            @Override
+            public List<AnnotationFS> selectAnnotationsInWindow(CAS aCas, int aWindowBegin,
+                    int aWindowEnd)
+            {
+                return aCas.select(CasUtil.getType(aCas, NamedEntity.class))
+                        .coveredBy(0, aWindowEnd).includeAnnotationsWithEndBeyondBounds()
+                        .map(fs -> (AnnotationFS) fs)
+                        .filter(ann -> AnnotationPredicates.overlapping(ann, aWindowBegin,
+                                aWindowEnd))
+                        .collect(toList());
+            }
+        };
+    }
+
+    @Benchmark
+    public VDocument renderLastPageWithLinearSelection()
+    {
+        return renderLastPage(linearSelectionRenderer);
+    }
+
+    @Benchmark
+    public VDocument renderLastPageWithIntervalIndex()
+    {
+        return renderLastPage(intervalIndexRenderer);
+    }
+
+    private VDocument renderLastPage(SpanRenderer aRenderer)
+    {
+        VDocument vdoc = new VDocument();
+        vdoc.setWindowBegin(windowBegin);
+        vdoc.setWindowEnd(windowEnd);
+        aRenderer.render(cas, asList(), vdoc, windowBegin, windowEnd);
+        return vdoc;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder() //
+                .include(SpanRendererBenchmark.class.getSimpleName()) //
+                .build()).run();
+    }
+}
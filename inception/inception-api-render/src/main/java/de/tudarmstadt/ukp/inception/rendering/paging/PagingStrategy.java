@@ -22,6 +22,7 @@ import static java.util.stream.Collectors.toList;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.Optional;
 
 import org.apache.uima.cas.CAS;
 import org.apache.wicket.Component;
@@ -109,6 +110,20 @@ public interface PagingStrategy
                 .collect(toList());
     }
 
+    /**
+     * @param aCas
+     *            CAS currently being edited
+     * @param aOffset
+     *            a character offset
+     * @return the first unit containing the given offset (begin and end inclusive).
+     */
+    default Optional<Unit> unitAtOffset(CAS aCas, int aOffset)
+    {
+        return units(aCas).stream() //
+                .filter(unit -> unit.getBegin() <= aOffset && aOffset <= unit.getEnd()) //
+                .findFirst();
+    }
+
     /**
      * @param aState
      *            annotator state
@@ -37,5 +37,18 @@ public interface RenderStep
         return true;
     }
 
+    /**
+     * @return whether the results of this step may be cached and re-used for subsequent requests
+     *         as long as the CAS, the window, the visible layers and whether the text is included
+     *         remain the same. A cacheable step must not depend on anything else (e.g. the
+     *         selection or the user preferences). Only the results of the cacheable steps at the
+     *         start of the pipeline can be re-used - every step following a non-cacheable step is
+     *         always run.
+     */
+    default boolean isCacheable()
+    {
+        return false;
+    }
+
     void render(VDocument aVdoc, RenderRequest aRequest);
 }
@@ -17,10 +17,27 @@
  */
 package de.tudarmstadt.ukp.inception.rendering.pipeline;
 
+import org.apache.uima.cas.CAS;
+
 import de.tudarmstadt.ukp.inception.rendering.request.RenderRequest;
 import de.tudarmstadt.ukp.inception.rendering.vmodel.VDocument;
 
 public interface RenderingPipeline
 {
     VDocument render(RenderRequest aRequest);
+
+    /**
+     * Discards any cached render results for the given CAS. This needs to be called when the CAS
+     * has been modified in a way which does not affect its indexes, e.g. when a feature value has
+     * been changed.
+     * 
+     * @param aCas
+     *            the CAS.
+     */
+    void invalidateCache(CAS aCas);
+
+    /**
+     * Discards all cached render results, e.g. because the layer configuration has changed.
+     */
+    void invalidateCache();
 }
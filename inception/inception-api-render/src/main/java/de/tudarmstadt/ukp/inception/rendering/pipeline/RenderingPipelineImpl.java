@@ -19,7 +19,21 @@ package de.tudarmstadt.ukp.inception.rendering.pipeline;
 
 import static de.tudarmstadt.ukp.clarin.webanno.support.wicket.WicketUtil.serverTiming;
 import static java.lang.System.currentTimeMillis;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.impl.LowLevelIterator;
+
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
+import de.tudarmstadt.ukp.clarin.webanno.support.uima.CasScopedCache;
 import de.tudarmstadt.ukp.inception.rendering.config.RenderingAutoConfig;
 import de.tudarmstadt.ukp.inception.rendering.request.RenderRequest;
 import de.tudarmstadt.ukp.inception.rendering.vmodel.VDocument;
@@ -28,12 +42,30 @@ import de.tudarmstadt.ukp.inception.rendering.vmodel.VDocument;
  * <p>
  * This class is exposed as a Spring Component via {@link RenderingAutoConfig#renderingPipeline}.
  * </p>
+ * <p>
+ * The results of the {@link RenderStep#isCacheable() cacheable} steps at the start of the pipeline
+ * are cached per CAS, window, visible layers and text inclusion. As long as the annotations in the
+ * CAS have not been added, removed or moved and the cache has not been explicitly invalidated, the
+ * cached results are re-used and only the remaining steps are run.
+ * </p>
+ * <p>
+ * The cached results are kept in the {@link CasScopedCache} of the CAS, so they go away together
+ * with the CAS holder. CASes without such a cache are always rendered from scratch. Every request
+ * served from the cache receives a {@link VDocument#VDocument(VDocument) deep copy} of the cached
+ * result, so the remaining steps can modify the visual objects without affecting other requests.
+ * </p>
  */
 public class RenderingPipelineImpl
     implements RenderingPipeline
 {
+    private static final int MAX_CACHED_RENDERS_PER_CAS = 8;
+
     private final RenderStepExtensionPoint renderStepExtensionPoint;
 
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
     public RenderingPipelineImpl(RenderStepExtensionPoint aRenderStepExtensionPoint)
     {
         renderStepExtensionPoint = aRenderStepExtensionPoint;
@@ -42,15 +74,144 @@ public class RenderingPipelineImpl
     @Override
     public VDocument render(RenderRequest aRequest)
     {
-        VDocument vdoc = new VDocument();
+        List<RenderStep> steps = renderStepExtensionPoint.getExtensions(aRequest);
+
+        int cacheableSteps = 0;
+        while (cacheableSteps < steps.size() && steps.get(cacheableSteps).isCacheable()) {
+            cacheableSteps++;
+        }
 
-        for (RenderStep step : renderStepExtensionPoint.getExtensions(aRequest)) {
-            long start = currentTimeMillis();
-            step.render(vdoc, aRequest);
-            serverTiming("Rendering", "Rendering (" + step.getId() + ")",
+        VDocument vdoc;
+        int firstStep;
+        if (cacheableSteps > 0 && aRequest.getCas() != null) {
+            vdoc = renderCached(aRequest, steps.subList(0, cacheableSteps));
+            firstStep = cacheableSteps;
+        }
+        else {
+            vdoc = new VDocument();
+            firstStep = 0;
+        }
+
+        for (RenderStep step : steps.subList(firstStep, steps.size())) {
+            runStep(step, vdoc, aRequest);
+        }
+
+        return vdoc;
+    }
+
+    private VDocument renderCached(RenderRequest aRequest, List<RenderStep> aSteps)
+    {
+        long start = currentTimeMillis();
+
+        CAS cas = aRequest.getCas();
+        List<Object> key = cacheKey(aRequest, aSteps);
+        Map<List<Object>, CachedRender> renders = renders(cas);
+
+        CachedRender cached = renders.get(key);
+        if (cached != null && cached.isValid(generation.get())) {
+            long hits = cacheHits.incrementAndGet();
+            serverTiming("RenderCache", "Render cache hit (" + hitRate(hits) + ")",
                     currentTimeMillis() - start);
+            // The cached document must not be modified by the remaining steps
+            return new VDocument(cached.vdoc);
+        }
+
+        // If the annotations have changed, none of the renders cached for the CAS is valid anymore
+        if (cached != null) {
+            renders.clear();
+        }
+
+        // The generation and the iterator are obtained before rendering so that any change or
+        // invalidation happening during or after the rendering makes the cached result invalid
+        long gen = generation.get();
+        FSIterator<?> iterator = cas.getAnnotationIndex().iterator();
+        LowLevelIterator<?> stamp = iterator instanceof LowLevelIterator
+                ? (LowLevelIterator<?>) iterator
+                : null;
+
+        VDocument vdoc = new VDocument();
+        for (RenderStep step : aSteps) {
+            runStep(step, vdoc, aRequest);
+        }
+
+        if (stamp != null) {
+            renders.put(key, new CachedRender(gen, stamp, new VDocument(vdoc)));
         }
 
+        cacheMisses.incrementAndGet();
+        serverTiming("RenderCache", "Render cache miss (" + hitRate(cacheHits.get()) + ")",
+                currentTimeMillis() - start);
         return vdoc;
     }
+
+    private static Map<List<Object>, CachedRender> renders(CAS aCas)
+    {
+        return CasScopedCache.get(aCas, RenderingPipelineImpl.class,
+                k -> Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true)
+                {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(
+                            Map.Entry<List<Object>, CachedRender> aEldest)
+                    {
+                        return size() > MAX_CACHED_RENDERS_PER_CAS;
+                    }
+                }));
+    }
+
+    private void runStep(RenderStep aStep, VDocument aVdoc, RenderRequest aRequest)
+    {
+        long start = currentTimeMillis();
+        aStep.render(aVdoc, aRequest);
+        serverTiming("Rendering", "Rendering (" + aStep.getId() + ")", currentTimeMillis() - start);
+    }
+
+    private String hitRate(long aHits)
+    {
+        long total = aHits + cacheMisses.get();
+        return String.format("hit rate %d%% of %d", total > 0 ? (aHits * 100) / total : 0, total);
+    }
+
+    private static List<Object> cacheKey(RenderRequest aRequest, List<RenderStep> aSteps)
+    {
+        List<Long> visibleLayers = aRequest.getVisibleLayers() != null
+                ? aRequest.getVisibleLayers().stream().map(AnnotationLayer::getId).collect(toList())
+                : null;
+        List<String> steps = aSteps.stream().map(RenderStep::getId).collect(toList());
+        return asList(aRequest.getWindowBeginOffset(), aRequest.getWindowEndOffset(),
+                aRequest.isIncludeText(), visibleLayers, steps);
+    }
+
+    @Override
+    public void invalidateCache(CAS aCas)
+    {
+        renders(aCas).clear();
+    }
+
+    @Override
+    public void invalidateCache()
+    {
+        // Renders cached for other CASes are dropped lazily when they are next accessed
+        generation.incrementAndGet();
+    }
+
+    private static final class CachedRender
+    {
+        private final long generation;
+        private final LowLevelIterator<?> stamp;
+        private final VDocument vdoc;
+
+        private CachedRender(long aGeneration, LowLevelIterator<?> aStamp, VDocument aVdoc)
+        {
+            generation = aGeneration;
+            stamp = aStamp;
+            vdoc = aVdoc;
+        }
+
+        private boolean isValid(long aGeneration)
+        {
+            return generation == aGeneration && !stamp.isIndexesHaveBeenUpdated();
+        }
+    }
 }
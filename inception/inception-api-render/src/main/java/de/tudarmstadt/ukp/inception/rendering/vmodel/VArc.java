@@ -95,6 +95,19 @@ public class VArc
         target = aTarget;
     }
 
+    /**
+     * Creates a copy of the given arc.
+     * 
+     * @param aOther
+     *            the arc to copy.
+     */
+    public VArc(VArc aOther)
+    {
+        super(aOther);
+        source = aOther.source;
+        target = aOther.target;
+    }
+
     public void setSource(VID aSource)
     {
         source = aSource;
@@ -25,6 +25,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -56,6 +57,33 @@ public class VDocument
         // Nothing to do
     }
 
+    /**
+     * Creates a copy of the given document. The spans and arcs are copied as well, so they can be
+     * modified (e.g. their color or label hints) without affecting the original. Comments and
+     * markers are immutable and are shared with the original.
+     * 
+     * @param aOther
+     *            the document to copy.
+     */
+    public VDocument(VDocument aOther)
+    {
+        Map<VObject, VObject> copies = new IdentityHashMap<>();
+        aOther.arcs.forEach((vid, arc) -> arcs.put(vid,
+                (VArc) copies.computeIfAbsent(arc, a -> new VArc((VArc) a))));
+        aOther.spans.forEach((vid, span) -> spans.put(vid,
+                (VSpan) copies.computeIfAbsent(span, s -> new VSpan((VSpan) s))));
+        aOther.arcsByLayer.entries().forEach(e -> arcsByLayer.put(e.getKey(),
+                (VArc) copies.computeIfAbsent(e.getValue(), a -> new VArc((VArc) a))));
+        aOther.spansByLayer.entries().forEach(e -> spansByLayer.put(e.getKey(),
+                (VSpan) copies.computeIfAbsent(e.getValue(), s -> new VSpan((VSpan) s))));
+        comments.putAll(aOther.comments);
+        annotationLayers.putAll(aOther.annotationLayers);
+        markers.addAll(aOther.markers);
+        windowBegin = aOther.windowBegin;
+        windowEnd = aOther.windowEnd;
+        text = aOther.text;
+    }
+
     public void setWindowBegin(int aWindowBegin)
     {
         windowBegin = aWindowBegin;
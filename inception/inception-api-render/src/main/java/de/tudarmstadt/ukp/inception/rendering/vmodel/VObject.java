@@ -20,6 +20,7 @@ package de.tudarmstadt.ukp.inception.rendering.vmodel;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -56,6 +57,26 @@ public abstract class VObject
         equivalenceSet = aEquivalenceSet;
     }
 
+    /**
+     * Creates a copy of the given object. The features and lazy details are copied such that they
+     * can be modified without affecting the original.
+     * 
+     * @param aOther
+     *            the object to copy.
+     */
+    protected VObject(VObject aOther)
+    {
+        layer = aOther.layer;
+        vid = aOther.vid;
+        type = aOther.type;
+        features = new LinkedHashMap<>(aOther.features);
+        equivalenceSet = aOther.equivalenceSet;
+        lazyDetails = new ArrayList<>(aOther.lazyDetails);
+        color = aOther.color;
+        label = aOther.label;
+        actionButtons = aOther.actionButtons;
+    }
+
     public VID getVid()
     {
         return vid;
@@ -91,6 +91,18 @@ public class VSpan
         ranges = aOffsets != null ? aOffsets : new ArrayList<>();
     }
 
+    /**
+     * Creates a copy of the given span.
+     * 
+     * @param aOther
+     *            the span to copy.
+     */
+    public VSpan(VSpan aOther)
+    {
+        super(aOther);
+        ranges = new ArrayList<>(aOther.ranges);
+    }
+
     public List<VRange> getOffsets()
     {
         return ranges;
@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.rendering.pipeline;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
+import de.tudarmstadt.ukp.clarin.webanno.support.uima.CasScopedCache;
+import de.tudarmstadt.ukp.inception.rendering.request.RenderRequest;
+import de.tudarmstadt.ukp.inception.rendering.vmodel.VDocument;
+import de.tudarmstadt.ukp.inception.rendering.vmodel.VID;
+import de.tudarmstadt.ukp.inception.rendering.vmodel.VRange;
+import de.tudarmstadt.ukp.inception.rendering.vmodel.VSpan;
+import de.tudarmstadt.ukp.inception.rendering.vmodel.VTextMarker;
+
+public class RenderingPipelineImplTest
+{
+    private CAS cas;
+    private CasScopedCache casScopedCache;
+    private CountingRenderStep structureStep;
+    private CountingRenderStep focusStep;
+    private RenderingPipelineImpl sut;
+
+    @BeforeEach
+    public void setup() throws Exception
+    {
+        cas = CasCreationUtils.createCas((TypeSystemDescription) null, null, null);
+        cas.setDocumentText("This is a test.");
+        casScopedCache = CasScopedCache.create(cas);
+
+        structureStep = new CountingRenderStep("structure", true);
+        focusStep = new CountingRenderStep("focus", false);
+
+        RenderStepExtensionPointImpl extensionPoint = new RenderStepExtensionPointImpl(
+                asList(structureStep, focusStep));
+        extensionPoint.init();
+
+        sut = new RenderingPipelineImpl(extensionPoint);
+    }
+
+    @Test
+    public void thatCacheableStepsAreReused()
+    {
+        VDocument vdoc1 = sut.render(request(0, 10));
+        VDocument vdoc2 = sut.render(request(0, 10));
+
+        assertThat(structureStep.count).hasValue(1);
+        assertThat(focusStep.count).hasValue(2);
+
+        // The non-cacheable steps must not leak into the cached results
+        assertThat(vdoc1.getMarkers()).hasSize(2);
+        assertThat(vdoc2.getMarkers()).hasSize(2);
+    }
+
+    @Test
+    public void thatCacheIsKeyedByWindow()
+    {
+        sut.render(request(0, 10));
+        sut.render(request(5, 15));
+        sut.render(request(0, 10));
+
+        assertThat(structureStep.count).hasValue(2);
+        assertThat(focusStep.count).hasValue(3);
+    }
+
+    @Test
+    public void thatCacheIsInvalidatedWhenAnnotationsChange()
+    {
+        sut.render(request(0, 10));
+
+        cas.addFsToIndexes(cas.createAnnotation(cas.getAnnotationType(), 0, 4));
+        sut.render(request(0, 10));
+
+        assertThat(structureStep.count).hasValue(2);
+    }
+
+    @Test
+    public void thatCacheCanBeInvalidatedExplicitly()
+    {
+        sut.render(request(0, 10));
+
+        sut.invalidateCache(cas);
+        sut.render(request(0, 10));
+
+        assertThat(structureStep.count).hasValue(2);
+    }
+
+    @Test
+    public void thatAllCachesCanBeInvalidated()
+    {
+        sut.render(request(0, 10));
+
+        sut.invalidateCache();
+        sut.render(request(0, 10));
+        sut.render(request(0, 10));
+
+        assertThat(structureStep.count).hasValue(2);
+    }
+
+    @Test
+    public void thatNothingIsCachedWithoutCasScopedCache() throws Exception
+    {
+        cas = CasCreationUtils.createCas((TypeSystemDescription) null, null, null);
+        cas.setDocumentText("This is a test.");
+
+        sut.render(request(0, 10));
+        sut.render(request(0, 10));
+
+        assertThat(structureStep.count).hasValue(2);
+    }
+
+    @Test
+    public void thatCachedObjectsAreNotSharedBetweenRequests()
+    {
+        VDocument vdoc1 = sut.render(request(0, 10));
+        VSpan span1 = vdoc1.spans().iterator().next();
+        span1.setColorHint("red");
+        span1.setLabelHint("changed");
+        span1.getFeatures().put("value", "changed");
+
+        VDocument vdoc2 = sut.render(request(0, 10));
+        VSpan span2 = vdoc2.spans().iterator().next();
+
+        assertThat(structureStep.count).hasValue(1);
+        assertThat(span2).isNotSameAs(span1);
+        assertThat(vdoc2.spans(LAYER.getId())).containsExactly(span2);
+        assertThat(span2.getColorHint()).isNull();
+        assertThat(span2.getLabelHint()).isNull();
+        assertThat(span2.getFeatures()).containsEntry("value", "structure");
+    }
+
+    private RenderRequest request(int aBegin, int aEnd)
+    {
+        return RenderRequest.builder() //
+                .withCas(cas) //
+                .withWindow(aBegin, aEnd) //
+                .withVisibleLayers(emptyList()) //
+                .build();
+    }
+
+    private static final AnnotationLayer LAYER;
+
+    static {
+        LAYER = new AnnotationLayer();
+        LAYER.setId(1L);
+    }
+
+    private static class CountingRenderStep
+        implements RenderStep
+    {
+        private final String id;
+        private final boolean cacheable;
+        private final AtomicInteger count = new AtomicInteger();
+
+        public CountingRenderStep(String aId, boolean aCacheable)
+        {
+            id = aId;
+            cacheable = aCacheable;
+        }
+
+        @Override
+        public String getId()
+        {
+            return id;
+        }
+
+        @Override
+        public boolean isCacheable()
+        {
+            return cacheable;
+        }
+
+        @Override
+        public void render(VDocument aVdoc, RenderRequest aRequest)
+        {
+            count.incrementAndGet();
+            aVdoc.add(new VTextMarker(id, new VRange(aRequest.getWindowBeginOffset(),
+                    aRequest.getWindowEndOffset())));
+            if (cacheable) {
+                Map<String, String> features = new LinkedHashMap<>();
+                features.put("value", id);
+                aVdoc.add(new VSpan(LAYER, new VID(count.get()), "span",
+                        new VRange(aRequest.getWindowBeginOffset(), aRequest.getWindowEndOffset()),
+                        features));
+            }
+        }
+    }
+}
@@ -45,6 +45,10 @@ import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
@@ -60,24 +64,36 @@ import org.apache.uima.fit.util.FSUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.api.DiffAdapter;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.api.DiffAdapter_ImplBase;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.api.Position;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.internal.AID;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.relation.RelationDiffAdapter;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.relation.RelationPosition;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.span.SpanDiffAdapter;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.span.SpanPosition;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.clarin.webanno.support.uima.ICasUtil;
 import de.tudarmstadt.ukp.inception.annotation.layer.relation.RelationAdapter;
 import de.tudarmstadt.ukp.inception.schema.AnnotationSchemaService;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 
 public class CasDiff
 {
     private final static Logger LOG = LoggerFactory.getLogger(CasDiff.class);
 
+    /**
+     * Pool on which whole-document diffs are parallelized. The diff is called from request threads
+     * as well as from background tasks, so it uses a small dedicated pool instead of the common
+     * pool to avoid starving other users of the common pool and to bound the number of threads
+     * working on diffs at the same time.
+     */
+    private static final ForkJoinPool DIFF_POOL = new ForkJoinPool(
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())),
+            new DiffWorkerThreadFactory(), null, false);
+
     private Map<String, List<CAS>> cases = new LinkedHashMap<>();
 
     private final Map<Position, ConfigurationSet> configSets = new TreeMap<>();
@@ -86,12 +102,16 @@ public class CasDiff
 
     private int end;
 
-    private final Map<String, DiffAdapter> diffAdapters = new HashMap<>();
+    private final Map<String, DiffAdapter> diffAdapters = new ConcurrentHashMap<>();
 
     private final LinkCompareBehavior linkCompareBehavior;
 
     private boolean recurseIntoLinkFeatures = false;
 
+    private int casIdOffset = 0;
+
+    private boolean parallel = false;
+
     private CasDiff(int aBegin, int aEnd, Iterable<? extends DiffAdapter> aAdapters,
             LinkCompareBehavior aLinkCompareBehavior)
     {
@@ -171,6 +191,47 @@ public class CasDiff
     public static CasDiff doDiff(Iterable<? extends DiffAdapter> aAdapters,
             LinkCompareBehavior aLinkCompareBehavior, Map<String, List<CAS>> aCasMap, int aBegin,
             int aEnd)
+    {
+        return doDiff(aAdapters, aLinkCompareBehavior, aCasMap, aBegin, aEnd, 0);
+    }
+
+    /**
+     * Calculate the differences between CASes. The CAS IDs of the positions start at the given
+     * offset instead of at zero, i.e. the first CAS in each of the CAS lists has the CAS ID
+     * {@code aCasIdOffset}. This allows calculating separate diffs e.g. for different documents
+     * whose positions do not collide without having to pad the CAS lists.
+     * 
+     * @param aAdapters
+     *            a set of diff adapters how the diff algorithm should handle different features
+     * @param aLinkCompareBehavior
+     *            the link comparison mode
+     * @param aCasMap
+     *            a set of CASes, each associated with an ID
+     * @param aCasIdOffset
+     *            the CAS ID of the first CAS in the CAS lists.
+     * @return a diff result.
+     */
+    public static CasDiff doDiff(Iterable<? extends DiffAdapter> aAdapters,
+            LinkCompareBehavior aLinkCompareBehavior, Map<String, List<CAS>> aCasMap,
+            int aCasIdOffset)
+    {
+        return doDiff(aAdapters, aLinkCompareBehavior, aCasMap, -1, -1, aCasIdOffset);
+    }
+
+    private static CasDiff doDiff(Iterable<? extends DiffAdapter> aAdapters,
+            LinkCompareBehavior aLinkCompareBehavior, Map<String, List<CAS>> aCasMap, int aBegin,
+            int aEnd, int aCasIdOffset)
+    {
+        // Diffs limited to a window are cheap and typically calculated while rendering, so they
+        // are not worth the overhead of handing them off to the pool.
+        boolean parallel = aBegin == -1 && aEnd == -1;
+        return doDiff(aAdapters, aLinkCompareBehavior, aCasMap, aBegin, aEnd, aCasIdOffset,
+                parallel);
+    }
+
+    static CasDiff doDiff(Iterable<? extends DiffAdapter> aAdapters,
+            LinkCompareBehavior aLinkCompareBehavior, Map<String, List<CAS>> aCasMap, int aBegin,
+            int aEnd, int aCasIdOffset, boolean aParallel)
     {
         if (aCasMap.isEmpty()) {
             return new CasDiff(0, 0, aAdapters, aLinkCompareBehavior);
@@ -186,15 +247,36 @@ public class CasDiff
         sanityCheck(aCasMap);
 
         CasDiff diff = new CasDiff(aBegin, aEnd, aAdapters, aLinkCompareBehavior);
+        diff.casIdOffset = aCasIdOffset;
 
-        for (Entry<String, List<CAS>> e : aCasMap.entrySet()) {
-            int casId = 0;
-            for (CAS cas : e.getValue()) {
-                for (DiffAdapter adapter : aAdapters) {
-                    // null elements in the list can occur if a user has never worked on a CAS
-                    diff.addCas(e.getKey(), casId, cas != null ? cas : null, adapter.getType());
+        Set<String> types = new LinkedHashSet<>();
+        for (DiffAdapter adapter : aAdapters) {
+            types.add(adapter.getType());
+        }
+
+        if (!types.isEmpty()) {
+            // Register all CASes up front - the configurations refer to their annotations via
+            // the CAS lists while the diff is being calculated.
+            for (Entry<String, List<CAS>> e : aCasMap.entrySet()) {
+                diff.cases.put(e.getKey(), new ArrayList<>(e.getValue()));
+            }
+
+            // Positions of different types never match, so the types can be processed
+            // independently of each other. Parallel streams started from within the pool run on
+            // the pool as well.
+            List<List<ConfigurationSet>> configSetsByType;
+            if (aParallel && (types.size() > 1 || aCasMap.size() > 1)) {
+                diff.parallel = true;
+                configSetsByType = DIFF_POOL.submit(() -> diff.diffTypes(types)).join();
+            }
+            else {
+                configSetsByType = diff.diffTypes(types);
+            }
+
+            for (List<ConfigurationSet> typeConfigSets : configSetsByType) {
+                for (ConfigurationSet configSet : typeConfigSets) {
+                    diff.configSets.put(configSet.position, configSet);
                 }
-                casId++;
             }
         }
 
@@ -248,13 +330,10 @@ public class CasDiff
 
     private DiffAdapter getAdapter(String aType)
     {
-        DiffAdapter adapter = diffAdapters.get(aType);
-        if (adapter == null) {
-            LOG.warn("No diff adapter for type [" + aType + "] -- treating as without features");
-            adapter = new SpanDiffAdapter(aType, emptySet());
-            diffAdapters.put(aType, adapter);
-        }
-        return adapter;
+        return diffAdapters.computeIfAbsent(aType, type -> {
+            LOG.warn("No diff adapter for type [" + type + "] -- treating as without features");
+            return new SpanDiffAdapter(type, emptySet());
+        });
     }
 
     public Map<String, DiffAdapter> getTypeAdapters()
@@ -268,116 +347,196 @@ public class CasDiff
     }
 
     /**
-     * CASes are added to the diff one after another, building the diff iteratively. A CAS can be
-     * added multiple times for different types. Make sure a CAS is not added twice with the same
-     * type!
+     * @return the CAS ID of the first CAS in the CAS lists. To look up the CAS of a position in the
+     *         CAS lists, the offset needs to be subtracted from the CAS ID of the position.
+     */
+    public int getCasIdOffset()
+    {
+        return casIdOffset;
+    }
+
+    private List<List<ConfigurationSet>> diffTypes(Set<String> aTypes)
+    {
+        Stream<String> types = parallel ? aTypes.parallelStream() : aTypes.stream();
+        return types.map(this::diffType).collect(toList());
+    }
+
+    /**
+     * Calculates the configuration sets for the given type over all CASes. Positions of different
+     * CASes never match, so the CASes are processed one after another. For each of them, the
+     * positions are first collected from all CAS groups, in parallel if enabled. They are then sorted by their
+     * offsets and positions which are equal end up next to each other, so they can be merged into
+     * configuration sets without having to look them up in a map.
      * 
-     * @param aCasGroupId
-     *            the ID of the CAS group to add.
-     * @param aCas
-     *            the CAS itself.
      * @param aType
      *            the type on which to calculate the diff.
+     * @return the configuration sets.
      */
-    private void addCas(String aCasGroupId, int aCasId, CAS aCas, String aType)
+    private List<ConfigurationSet> diffType(String aType)
     {
-        // Remember that we have already seen this CAS.
-        List<CAS> casList = cases.get(aCasGroupId);
-        if (casList == null) {
-            casList = new ArrayList<>();
-            cases.put(aCasGroupId, casList);
-        }
+        DiffAdapter adapter = getAdapter(aType);
 
-        // Avoid adding same CAS twice in cases where we add multiple types from a CAS. If the
-        // current CAS ID is greater than the size of the current CAS list, then we did not add
-        // it yet. Before, we checked whether the casList already contained the current CAS, but
-        // that failed when we had multiple "null" CASes.
-        if ((casList.size() - 1) < aCasId) {
-            casList.add(aCas);
-        }
-        assert (casList.size() - 1) == aCasId : "Expected CAS ID [" + (casList.size() - 1)
-                + "] but was [" + aCasId + "]";
+        int casCount = cases.values().stream().mapToInt(List::size).max().orElse(0);
 
-        // null elements in the list can occur if a user has never worked on a CAS
-        // We add these to the internal list above, but then we bail out here.
-        if (aCas == null) {
-            LOG.debug("CAS group [" + aCasGroupId + "] does not contain a CAS at index [" + aCasId
-                    + "].");
-            return;
+        List<ConfigurationSet> typeConfigSets = new ArrayList<>();
+        for (int casId = 0; casId < casCount; casId++) {
+            int currentCasId = casId;
+            Set<Entry<String, List<CAS>>> casGroups = cases.entrySet();
+            List<List<PositionedAnnotation>> annotationsByCasGroup = (parallel
+                    ? casGroups.parallelStream()
+                    : casGroups.stream()) //
+                    .map(e -> collectPositions(e.getKey(), casIdOffset + currentCasId,
+                            currentCasId < e.getValue().size() ? e.getValue().get(currentCasId)
+                                    : null,
+                            aType, adapter)) //
+                    .collect(toList());
+
+            List<PositionedAnnotation> annotations = new ArrayList<>();
+            annotationsByCasGroup.forEach(annotations::addAll);
+
+            typeConfigSets.addAll(mergeConfigurationSets(annotations));
         }
 
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("Processing CAS group [" + aCasGroupId + "] CAS [" + aCasId + "].");
+        return typeConfigSets;
+    }
 
-            String collectionId = null;
-            String documentId = null;
-            try {
-                FeatureStructure dmd = WebAnnoCasUtil.getDocumentMetadata(aCas);
-                collectionId = FSUtil.getFeature(dmd, "collectionId", String.class);
-                documentId = FSUtil.getFeature(dmd, "documentId", String.class);
-                LOG.debug("User [" + collectionId + "] - Document [" + documentId + "]");
-            }
-            catch (IllegalArgumentException e) {
-                // We use this information only for debugging - so we can ignore if the information
-                // is missing.
-            }
+    /**
+     * Collects the positions of all annotations of the given type in a CAS. If the diff is limited
+     * to a window, only the annotations within the window are visited.
+     * 
+     * @param aCasGroupId
+     *            the ID of the CAS group.
+     * @param aCasId
+     *            the ID of the CAS, i.e. its index within the CAS group plus the CAS ID offset.
+     * @param aCas
+     *            the CAS itself.
+     * @param aType
+     *            the type on which to calculate the diff.
+     * @param aAdapter
+     *            the diff adapter for the type.
+     * @return the annotations together with their positions in the order of the annotation index.
+     */
+    private List<PositionedAnnotation> collectPositions(String aCasGroupId, int aCasId, CAS aCas,
+            String aType, DiffAdapter aAdapter)
+    {
+        // null elements in the list can occur if a user has never worked on a CAS
+        if (aCas == null) {
+            LOG.debug("CAS group [{}] does not contain a CAS at index [{}].", aCasGroupId, aCasId);
+            return emptyList();
         }
 
         Type type = aCas.getTypeSystem().getType(aType);
         if (type == null) {
-            LOG.debug("CAS group [" + aCasGroupId + "] CAS [" + aCasId
-                    + "] contains no annotations of type [" + aType + "]");
-            return;
+            LOG.debug("CAS group [{}] CAS [{}] contains no annotations of type [{}]", aCasGroupId,
+                    aCasId, aType);
+            return emptyList();
         }
 
-        DiffAdapter adapter = getAdapter(aType);
-
         Collection<AnnotationFS> annotations;
         if (begin == -1 && end == -1) {
             annotations = select(aCas, type);
         }
         else {
-            annotations = adapter.selectAnnotationsInWindow(aCas, begin, end);
+            annotations = aAdapter.selectAnnotationsInWindow(aCas, begin, end);
         }
 
-        if (annotations.isEmpty()) {
-            LOG.debug("CAS group [" + aCasGroupId + "] CAS [" + aCasId
-                    + "] contains no annotations of type [" + aType + "]");
-            return;
-        }
+        LOG.debug("CAS group [{}] CAS [{}] contains [{}] annotations of type [{}]", aCasGroupId,
+                aCasId, annotations.size(), aType);
 
-        LOG.debug("CAS group [" + aCasGroupId + "] CAS [" + aCasId + "] contains ["
-                + annotations.size() + "] annotations of type [" + aType + "]");
+        List<PositionedAnnotation> positions = new ArrayList<>();
+        for (AnnotationFS fs : annotations) {
+            positions.add(new PositionedAnnotation(aAdapter.getPosition(aCasId, fs), aCasGroupId,
+                    fs));
 
-        int posBefore = configSets.keySet().size();
-        LOG.debug("Positions before: [{}]", posBefore);
+            // Generate secondary positions for multi-link features
+            for (Position pos : aAdapter.generateSubPositions(aCasId, fs, linkCompareBehavior)) {
+                positions.add(new PositionedAnnotation(pos, aCasGroupId, fs));
+            }
+        }
 
-        for (AnnotationFS fs : annotations) {
-            List<Position> positions = new ArrayList<>();
+        return positions;
+    }
 
-            // Get/create configuration set at the current position
-            positions.add(adapter.getPosition(aCasId, fs));
+    /**
+     * Merges the given annotations into configuration sets. The annotations are merged in the
+     * given order, so the configurations of a set are ordered by CAS group.
+     * 
+     * @param aAnnotations
+     *            the annotations of a single type and CAS ID.
+     * @return the configuration sets.
+     */
+    private List<ConfigurationSet> mergeConfigurationSets(List<PositionedAnnotation> aAnnotations)
+    {
+        int[] order = new int[aAnnotations.size()];
+        long[] offsets = new long[aAnnotations.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            offsets[i] = offsetKey(aAnnotations.get(i).position);
+        }
+
+        // Comparing the primitive offsets first avoids most of the comparisons of the positions.
+        // Merge sort is stable, so equal positions remain in the order of their CAS groups.
+        IntArrays.mergeSort(order, (a, b) -> {
+            int cmp = Long.compare(offsets[a], offsets[b]);
+            return cmp != 0 ? cmp
+                    : aAnnotations.get(a).position.compareTo(aAnnotations.get(b).position);
+        });
+
+        List<ConfigurationSet> sets = new ArrayList<>();
+        ConfigurationSet configSet = null;
+        for (int i : order) {
+            PositionedAnnotation ann = aAnnotations.get(i);
+
+            if (configSet == null || configSet.position.compareTo(ann.position) != 0) {
+                configSet = new ConfigurationSet(ann.position);
+                sets.add(configSet);
+            }
 
-            // Generate secondary positions for multi-link features
-            positions.addAll(adapter.generateSubPositions(aCasId, fs, linkCompareBehavior));
+            assert ann.position.getClass() == configSet.position.getClass() : "Position type "
+                    + "mismatch [" + ann.position.getClass() + "] vs ["
+                    + configSet.position.getClass() + "]";
 
-            for (Position pos : positions) {
-                ConfigurationSet configSet = configSets.get(pos);
-                if (configSet == null) {
-                    configSet = new ConfigurationSet(pos);
-                    configSets.put(pos, configSet);
-                }
+            // Merge FS into current set
+            addConfiguration(configSet, ann.casGroupId, ann.fs);
+        }
 
-                assert pos.getClass() == configSet.position.getClass() : "Position type mismatch ["
-                        + pos.getClass() + "] vs [" + configSet.position.getClass() + "]";
+        return sets;
+    }
 
-                // Merge FS into current set
-                addConfiguration(configSet, aCasGroupId, fs);
-            }
+    /**
+     * @return a key which is equal for equal positions and which sorts positions primarily by their
+     *         offsets.
+     */
+    private static long offsetKey(Position aPosition)
+    {
+        if (aPosition instanceof SpanPosition) {
+            SpanPosition pos = (SpanPosition) aPosition;
+            return ((long) pos.getBegin() << 32) | (pos.getEnd() & 0xFFFFFFFFL);
+        }
+
+        if (aPosition instanceof RelationPosition) {
+            RelationPosition pos = (RelationPosition) aPosition;
+            return ((long) pos.getSourceBegin() << 32) | (pos.getTargetBegin() & 0xFFFFFFFFL);
         }
 
-        LOG.debug("Positions after: [{}] (delta: {})", configSets.keySet().size(),
-                (configSets.keySet().size() - posBefore));
+        return 0;
+    }
+
+    /**
+     * An annotation together with one of its positions.
+     */
+    private static class PositionedAnnotation
+    {
+        private final Position position;
+        private final String casGroupId;
+        private final AnnotationFS fs;
+
+        public PositionedAnnotation(Position aPosition, String aCasGroupId, AnnotationFS aFs)
+        {
+            position = aPosition;
+            casGroupId = aCasGroupId;
+            fs = aFs;
+        }
     }
 
     private void addConfiguration(ConfigurationSet aSet, String aCasGroupId, FeatureStructure aFS)
@@ -391,7 +550,7 @@ public class CasDiff
             Configuration configuration = null;
             for (Configuration cfg : aSet.getConfigurations()) {
                 // Handle main positions
-                if (equalsFS(cfg.getRepresentative(cases), aFS)) {
+                if (equalsFS(cfg.getRepresentative(cases, casIdOffset), aFS)) {
                     configuration = cfg;
                     break;
                 }
@@ -437,7 +596,7 @@ public class CasDiff
                             link.getType().getFeatureByBaseName(decl.getTargetFeature()));
 
                     cfgLoop: for (Configuration cfg : aSet.configurations) {
-                        FeatureStructure repFS = cfg.getRepresentative(cases);
+                        FeatureStructure repFS = cfg.getRepresentative(cases, casIdOffset);
                         AID repAID = cfg.getRepresentativeAID();
                         FeatureStructure repLink = FSUtil.getFeature(repFS,
                                 repFS.getType().getFeatureByBaseName(decl.getName()), ArrayFS.class)
@@ -465,7 +624,7 @@ public class CasDiff
                             link.getType().getFeatureByBaseName(decl.getRoleFeature()));
 
                     cfgLoop: for (Configuration cfg : aSet.configurations) {
-                        FeatureStructure repFS = cfg.getRepresentative(cases);
+                        FeatureStructure repFS = cfg.getRepresentative(cases, casIdOffset);
                         AID repAID = cfg.getRepresentativeAID();
                         FeatureStructure repLink = FSUtil.getFeature(repFS,
                                 repFS.getType().getFeatureByBaseName(decl.getName()), ArrayFS.class)
@@ -585,6 +744,26 @@ public class CasDiff
         {
             return position;
         }
+
+        private ConfigurationSet limitToCasGroups(Collection<String> aCasGroupIds)
+        {
+            ConfigurationSet limited = new ConfigurationSet(position);
+
+            for (String casGroupId : casGroupIds) {
+                if (aCasGroupIds.contains(casGroupId)) {
+                    limited.casGroupIds.add(casGroupId);
+                }
+            }
+
+            for (Configuration cfg : configurations) {
+                Configuration limitedCfg = cfg.limitToCasGroups(aCasGroupIds);
+                if (!limitedCfg.fsAddresses.isEmpty()) {
+                    limited.configurations.add(limitedCfg);
+                }
+            }
+
+            return limited;
+        }
     }
 
     public Collection<Position> getPositions()
@@ -592,6 +771,39 @@ public class CasDiff
         return configSets.keySet();
     }
 
+    /**
+     * Limits the diff to the given CAS groups. The returned diff contains only the positions which
+     * have been observed in at least one of the given CAS groups and only the configurations
+     * recorded for these CAS groups. This is equivalent to diffing only the CASes of the given
+     * groups, but it does not need to compare the annotations again. E.g. pairwise agreement can be
+     * calculated this way from a single diff over all annotators.
+     * 
+     * @param aCasGroupIds
+     *            the IDs of the CAS groups to retain.
+     * @return the limited diff.
+     */
+    public CasDiff limitToCasGroups(Collection<String> aCasGroupIds)
+    {
+        CasDiff limited = new CasDiff(begin, end, diffAdapters.values(), linkCompareBehavior);
+        limited.recurseIntoLinkFeatures = recurseIntoLinkFeatures;
+        limited.casIdOffset = casIdOffset;
+
+        for (Entry<String, List<CAS>> e : cases.entrySet()) {
+            if (aCasGroupIds.contains(e.getKey())) {
+                limited.cases.put(e.getKey(), e.getValue());
+            }
+        }
+
+        for (ConfigurationSet cfgSet : configSets.values()) {
+            ConfigurationSet limitedSet = cfgSet.limitToCasGroups(aCasGroupIds);
+            if (!limitedSet.casGroupIds.isEmpty()) {
+                limited.configSets.put(cfgSet.position, limitedSet);
+            }
+        }
+
+        return limited;
+    }
+
     /**
      * @param aPosition
      *            a position.
@@ -834,10 +1046,10 @@ public class CasDiff
         private final Map<String, AID> fsAddresses = new TreeMap<>();
 
         /**
-         * Flag indicating that there is at least once CAS group containing more than one annotation
-         * at this position - i.e. a stacked annotation.
+         * The CAS groups containing more than one annotation at this position - i.e. a stacked
+         * annotation.
          */
-        private boolean stacked = false;
+        private final Set<String> stackedCasGroupIds = new HashSet<>();
 
         public String getRepresentativeCasGroupId()
         {
@@ -861,7 +1073,7 @@ public class CasDiff
 
         public boolean isStacked()
         {
-            return stacked;
+            return !stackedCasGroupIds.isEmpty();
         }
 
         /**
@@ -872,10 +1084,26 @@ public class CasDiff
         {
             AID old = fsAddresses.put(aCasGroupId, aAID);
             if (old != null) {
-                stacked = true;
+                stackedCasGroupIds.add(aCasGroupId);
             }
         }
 
+        private Configuration limitToCasGroups(Collection<String> aCasGroupIds)
+        {
+            Configuration limited = new Configuration(position);
+
+            for (Entry<String, AID> e : fsAddresses.entrySet()) {
+                if (aCasGroupIds.contains(e.getKey())) {
+                    limited.fsAddresses.put(e.getKey(), e.getValue());
+                    if (stackedCasGroupIds.contains(e.getKey())) {
+                        limited.stackedCasGroupIds.add(e.getKey());
+                    }
+                }
+            }
+
+            return limited;
+        }
+
         private void add(String aCasGroupId, FeatureStructure aFS)
         {
             add(aCasGroupId, new AID(ICasUtil.getAddr(aFS)));
@@ -893,9 +1121,24 @@ public class CasDiff
         }
 
         public FeatureStructure getRepresentative(Map<String, List<CAS>> aCasMap)
+        {
+            return getRepresentative(aCasMap, 0);
+        }
+
+        /**
+         * @param aCasMap
+         *            the CASes from which the diff has been calculated.
+         * @param aCasIdOffset
+         *            the CAS ID of the first CAS in the CAS lists (cf.
+         *            {@link CasDiff#getCasIdOffset()}).
+         * @return the feature structure of the first CAS group in this configuration.
+         */
+        public FeatureStructure getRepresentative(Map<String, List<CAS>> aCasMap,
+                int aCasIdOffset)
         {
             Entry<String, AID> e = fsAddresses.entrySet().iterator().next();
-            return ICasUtil.selectFsByAddr(aCasMap.get(e.getKey()).get(position.getCasId()),
+            return ICasUtil.selectFsByAddr(
+                    aCasMap.get(e.getKey()).get(position.getCasId() - aCasIdOffset),
                     e.getValue().addr);
         }
 
@@ -991,8 +1234,22 @@ public class CasDiff
 
         private DiffResult(CasDiff aDiff)
         {
-            data = Collections.unmodifiableMap(aDiff.configSets);
-            casGroupIds = new LinkedHashSet<>(aDiff.cases.keySet());
+            this(aDiff.configSets, aDiff.cases.keySet());
+        }
+
+        /**
+         * Creates a diff result from configuration sets which may have been collected from several
+         * diffs, e.g. from one diff per document.
+         * 
+         * @param aData
+         *            the configuration sets by position.
+         * @param aCasGroupIds
+         *            the IDs of the CAS groups which have been diffed.
+         */
+        public DiffResult(Map<Position, ConfigurationSet> aData, Collection<String> aCasGroupIds)
+        {
+            data = Collections.unmodifiableMap(aData);
+            casGroupIds = new LinkedHashSet<>(aCasGroupIds);
         }
 
         public Set<String> getCasGroupIds()
@@ -1355,4 +1612,25 @@ public class CasDiff
     // {
     // cases = new HashMap<>(aCases);
     // }
+
+    private static class DiffWorkerThreadFactory
+        implements ForkJoinPool.ForkJoinWorkerThreadFactory
+    {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool aPool)
+        {
+            ForkJoinWorkerThread thread = new ForkJoinWorkerThread(aPool)
+            {
+                // Constructor is protected
+            };
+            thread.setName("casdiff-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            // The worker threads are created lazily from whichever thread submits a diff, so
+            // make sure they do not hold on to the class loader of that thread.
+            thread.setContextClassLoader(CasDiff.class.getClassLoader());
+            return thread;
+        }
+    }
 }
@@ -20,7 +20,6 @@ package de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.relation;
 import static de.tudarmstadt.ukp.clarin.webanno.support.WebAnnoConst.FEAT_REL_SOURCE;
 import static de.tudarmstadt.ukp.clarin.webanno.support.WebAnnoConst.FEAT_REL_TARGET;
 import static java.util.Arrays.asList;
-import static org.apache.uima.fit.util.CasUtil.selectCovered;
 
 import java.util.HashSet;
 import java.util.List;
@@ -38,6 +37,7 @@ import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.LinkCompareBehavior;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.api.DiffAdapter_ImplBase;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.api.Position;
 import de.tudarmstadt.ukp.dkpro.core.api.syntax.type.dependency.Dependency;
+import de.tudarmstadt.ukp.inception.annotation.layer.AnnotationIntervalIndex;
 
 public class RelationDiffAdapter
     extends DiffAdapter_ImplBase
@@ -76,7 +76,8 @@ public class RelationDiffAdapter
     @Override
     public List<AnnotationFS> selectAnnotationsInWindow(CAS aCas, int aWindowBegin, int aWindowEnd)
     {
-        return selectCovered(aCas, CasUtil.getType(aCas, getType()), aWindowBegin, aWindowEnd);
+        return AnnotationIntervalIndex.of(aCas, CasUtil.getType(aCas, getType()))
+                .selectCovered(aWindowBegin, aWindowEnd);
     }
 
     @Override
@@ -18,7 +18,6 @@
 package de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.span;
 
 import static java.util.Arrays.asList;
-import static java.util.stream.Collectors.toList;
 
 import java.util.HashSet;
 import java.util.List;
@@ -27,7 +26,7 @@ import java.util.Set;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.FeatureStructure;
 import org.apache.uima.cas.text.AnnotationFS;
-import org.apache.uima.cas.text.AnnotationPredicates;
+import org.apache.uima.fit.util.CasUtil;
 import org.apache.uima.fit.util.FSUtil;
 
 import de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil;
@@ -38,6 +37,7 @@ import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS;
 import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.tudarmstadt.ukp.inception.annotation.layer.AnnotationIntervalIndex;
 import de.tudarmstadt.ukp.inception.annotation.layer.span.SpanRenderer;
 
 public class SpanDiffAdapter
@@ -71,10 +71,8 @@ public class SpanDiffAdapter
     @Override
     public List<AnnotationFS> selectAnnotationsInWindow(CAS aCas, int aWindowBegin, int aWindowEnd)
     {
-        return aCas.select(getType()).coveredBy(0, aWindowEnd)
-                .includeAnnotationsWithEndBeyondBounds().map(fs -> (AnnotationFS) fs)
-                .filter(ann -> AnnotationPredicates.overlapping(ann, aWindowBegin, aWindowEnd))
-                .collect(toList());
+        return AnnotationIntervalIndex.of(aCas, CasUtil.getType(aCas, getType()))
+                .selectOverlapping(aWindowBegin, aWindowEnd);
     }
 
     @Override
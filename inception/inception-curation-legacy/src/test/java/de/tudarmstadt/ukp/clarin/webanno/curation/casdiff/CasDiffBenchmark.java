@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.curation.casdiff;
+
+import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.LinkCompareBehavior.LINK_TARGET_AS_LABEL;
+import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.span.SpanDiffAdapter.NER_DIFF_ADAPTER;
+import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.span.SpanDiffAdapter.POS_DIFF_ADAPTER;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.api.DiffAdapter;
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS;
+import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
+
+/**
+ * Diffs a generated corpus of 10 annotators with 5000 annotations each (50k annotations in total)
+ * over the whole document as well as within a window as used when rendering the curation view.
+ * Run via {@link #main(String[])} from the IDE or after building the test classes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CasDiffBenchmark
+{
+    private static final String[] TAGS = { "NN", "VB", "JJ", "DT", "IN" };
+    private static final String[] ENTITIES = { "PER", "LOC", "ORG", "MISC" };
+
+    private @Param({ "10" }) int annotatorCount;
+    private @Param({ "2500" }) int tokenCount;
+    private @Param({ "1000" }) int windowSize;
+
+    private List<DiffAdapter> adapters = asList(POS_DIFF_ADAPTER, NER_DIFF_ADAPTER);
+    private Map<String, List<CAS>> casMap;
+    private int windowBegin;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < tokenCount; i++) {
+            text.append("token ");
+        }
+
+        windowBegin = (text.length() - windowSize) / 2;
+
+        // Each annotator labels every token with a part-of-speech tag and one named entity per
+        // token, mostly agreeing with the others
+        casMap = new LinkedHashMap<>();
+        for (int a = 0; a < annotatorCount; a++) {
+            Random rnd = new Random(a);
+            JCas jcas = JCasFactory.createText(text.toString());
+            for (int i = 0; i < tokenCount; i++) {
+                POS pos = new POS(jcas, i * 6, i * 6 + 5);
+                pos.setPosValue(rnd.nextInt(5) == 0 ? TAGS[rnd.nextInt(TAGS.length)]
+                        : TAGS[i % TAGS.length]);
+                pos.addToIndexes();
+
+                int length = rnd.nextInt(10) == 0 ? 2 : 1;
+                NamedEntity ne = new NamedEntity(jcas, i * 6,
+                        Math.min(i + length, tokenCount) * 6 - 1);
+                ne.setValue(rnd.nextInt(5) == 0 ? ENTITIES[rnd.nextInt(ENTITIES.length)]
+                        : ENTITIES[i % ENTITIES.length]);
+                ne.addToIndexes();
+            }
+            casMap.put("user" + a, asList(jcas.getCas()));
+        }
+    }
+
+    @Benchmark
+    public CasDiff fullDiff()
+    {
+        return CasDiff.doDiff(adapters, LINK_TARGET_AS_LABEL, casMap);
+    }
+
+    @Benchmark
+    public CasDiff windowDiff()
+    {
+        return CasDiff.doDiff(adapters, LINK_TARGET_AS_LABEL, casMap, windowBegin,
+                windowBegin + windowSize);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder() //
+                .include(CasDiffBenchmark.class.getSimpleName()) //
+                .build()).run();
+    }
+}
@@ -27,13 +27,16 @@ import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CurationTestUti
 import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.LinkCompareBehavior.LINK_ROLE_AS_LABEL;
 import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.LinkCompareBehavior.LINK_TARGET_AS_LABEL;
 import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.relation.RelationDiffAdapter.DEPENDENCY_DIFF_ADAPTER;
+import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.span.SpanDiffAdapter.NER_DIFF_ADAPTER;
 import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.span.SpanDiffAdapter.POS_DIFF_ADAPTER;
 import static de.tudarmstadt.ukp.clarin.webanno.support.uima.AnnotationBuilder.buildAnnotation;
 import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
 import static org.apache.uima.fit.factory.CasFactory.createText;
 import static org.apache.uima.fit.factory.JCasFactory.createJCas;
 import static org.apache.uima.fit.util.JCasUtil.select;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.util.ArrayList;
@@ -54,8 +57,10 @@ import org.apache.uima.resource.metadata.TypeSystemDescription;
 import org.apache.uima.util.CasCreationUtils;
 import org.junit.jupiter.api.Test;
 
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.Configuration;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.DiffResult;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.api.DiffAdapter;
+import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.api.Position;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.relation.RelationDiffAdapter;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.span.SpanDiffAdapter;
 import de.tudarmstadt.ukp.clarin.webanno.support.WebAnnoConst;
@@ -456,6 +461,193 @@ public class CasDiffTest
         // assertEquals(1, agreement.getPluralitySets().size());
     }
 
+    @Test
+    public void limitToCasGroupsTest() throws Exception
+    {
+        var cas1 = createText("This is a test.");
+        buildAnnotation(cas1, POS.class).at(0, 4) //
+                .withFeature("PosValue", "DT") //
+                .buildAndAddToIndexes();
+
+        var cas2 = createText("This is a test.");
+        buildAnnotation(cas2, POS.class).at(0, 4) //
+                .withFeature("PosValue", "NN") //
+                .buildAndAddToIndexes();
+
+        var cas3 = createText("This is a test.");
+        buildAnnotation(cas3, POS.class).at(0, 4) //
+                .withFeature("PosValue", "DT") //
+                .buildAndAddToIndexes();
+        buildAnnotation(cas3, POS.class).at(5, 7) //
+                .withFeature("PosValue", "VBZ") //
+                .buildAndAddToIndexes();
+
+        var casByUser = new LinkedHashMap<String, List<CAS>>();
+        casByUser.put("user1", asList(cas1));
+        casByUser.put("user2", asList(cas2));
+        casByUser.put("user3", asList(cas3));
+
+        CasDiff diff = doDiff(asList(POS_DIFF_ADAPTER), LINK_TARGET_AS_LABEL, casByUser);
+
+        DiffResult result12 = diff.limitToCasGroups(asList("user1", "user2")).toResult();
+        assertThat(result12.getCasGroupIds()).containsExactly("user1", "user2");
+        assertThat(result12.size()).isEqualTo(1);
+        assertThat(result12.getDifferingConfigurationSets()).hasSize(1);
+        assertThat(result12.getIncompleteConfigurationSets()).isEmpty();
+
+        DiffResult result13 = diff.limitToCasGroups(asList("user1", "user3")).toResult();
+        assertThat(result13.getCasGroupIds()).containsExactly("user1", "user3");
+        assertThat(result13.size()).isEqualTo(2);
+        assertThat(result13.getDifferingConfigurationSets()).isEmpty();
+        assertThat(result13.getIncompleteConfigurationSets()).hasSize(1);
+
+        // The limited diff must be the same as the diff over only the given CAS groups
+        var casByUser13 = new LinkedHashMap<String, List<CAS>>();
+        casByUser13.put("user1", asList(cas1));
+        casByUser13.put("user3", asList(cas3));
+        DiffResult expected13 = doDiff(asList(POS_DIFF_ADAPTER), LINK_TARGET_AS_LABEL, casByUser13)
+                .toResult();
+        assertThat(result13.getPositions()).hasSameSizeAs(expected13.getPositions());
+        for (var pos : expected13.getPositions()) {
+            assertThat(result13.getConfigurationSet(pos)).isNotNull();
+            assertThat(result13.getConfigurationSet(pos).getCasGroupIds())
+                    .containsExactlyElementsOf(expected13.getConfigurationSet(pos).getCasGroupIds());
+            assertThat(result13.getConfigurationSet(pos).getConfigurations()).hasSameSizeAs(
+                    expected13.getConfigurationSet(pos).getConfigurations());
+        }
+    }
+
+    @Test
+    public void casIdOffsetTest() throws Exception
+    {
+        var cas1 = createText("This is a test.");
+        buildAnnotation(cas1, POS.class).at(0, 4) //
+                .withFeature("PosValue", "DT") //
+                .buildAndAddToIndexes();
+
+        var cas2 = createText("This is a test.");
+        buildAnnotation(cas2, POS.class).at(0, 4) //
+                .withFeature("PosValue", "NN") //
+                .buildAndAddToIndexes();
+
+        var casByUser = new LinkedHashMap<String, List<CAS>>();
+        casByUser.put("user1", asList(cas1));
+        casByUser.put("user2", asList(cas2));
+
+        CasDiff diff = doDiff(asList(POS_DIFF_ADAPTER), LINK_TARGET_AS_LABEL, casByUser, 3);
+
+        assertThat(diff.getCasIdOffset()).isEqualTo(3);
+        assertThat(diff.getPositions()).extracting(Position::getCasId).containsExactly(3);
+        assertThat(diff.limitToCasGroups(asList("user1")).getCasIdOffset()).isEqualTo(3);
+
+        // Apart from the CAS IDs, the result is the same as without the offset
+        DiffResult result = diff.toResult();
+        DiffResult expected = doDiff(asList(POS_DIFF_ADAPTER), LINK_TARGET_AS_LABEL, casByUser)
+                .toResult();
+        assertThat(result.size()).isEqualTo(expected.size());
+        assertThat(result.getDifferingConfigurationSets())
+                .hasSameSizeAs(expected.getDifferingConfigurationSets());
+
+        // The CASes are found by subtracting the offset from the CAS ID of the positions
+        var cfgSet = result.getConfigurationSets().iterator().next();
+        var cfg = cfgSet.getConfigurations("user2").get(0);
+        assertThat(cfg.getFs("user2", cfgSet.getPosition().getCasId() - diff.getCasIdOffset(),
+                casByUser)).extracting(fs -> FSUtil.getFeature(fs, "PosValue", String.class))
+                        .isEqualTo("NN");
+    }
+
+    @Test
+    public void parallelDiffTest() throws Exception
+    {
+        var casByUser = new LinkedHashMap<String, List<CAS>>();
+        for (int user = 0; user < 3; user++) {
+            casByUser.put("user" + user, asList(makeParallelDiffTestCas(user, 0).getCas(),
+                    makeParallelDiffTestCas(user, 1).getCas()));
+        }
+
+        var linkAdapter = new SpanDiffAdapter(HOST_TYPE);
+        linkAdapter.addLinkFeature("links", "role", "target");
+        List<DiffAdapter> adapters = asList(POS_DIFF_ADAPTER, NER_DIFF_ADAPTER,
+                DEPENDENCY_DIFF_ADAPTER, linkAdapter);
+
+        CasDiff parallel = doDiff(adapters, LINK_TARGET_AS_LABEL, casByUser, -1, -1, 0, true);
+        CasDiff sequential = doDiff(adapters, LINK_TARGET_AS_LABEL, casByUser, -1, -1, 0, false);
+
+        // Make sure the test data actually covers stacked annotations and link positions
+        assertThat(sequential.getPositions()) //
+                .extracting(Position::getCasId) //
+                .containsOnly(0, 1);
+        assertThat(sequential.getPositions()) //
+                .filteredOn(pos -> pos.getFeature() != null) //
+                .isNotEmpty();
+        assertThat(sequential.toResult().getConfigurationSets()) //
+                .filteredOn(cfgSet -> cfgSet.getConfigurations("user1").stream()
+                        .anyMatch(Configuration::isStacked)) //
+                .isNotEmpty();
+
+        // Positions do not implement equals, but their string representation covers all their
+        // properties
+        assertThat(parallel.getPositions()).map(Position::toString)
+                .containsExactlyElementsOf(sequential.getPositions().stream()
+                        .map(Position::toString).collect(toList()));
+        for (var pos : sequential.getPositions()) {
+            var expected = sequential.getConfigurationSet(pos);
+            var actual = parallel.getConfigurationSet(pos);
+            assertThat(actual.getCasGroupIds()).as("%s", pos)
+                    .isEqualTo(expected.getCasGroupIds());
+            assertThat(actual.getConfigurations()).as("%s", pos)
+                    .hasSameSizeAs(expected.getConfigurations());
+            for (var user : casByUser.keySet()) {
+                assertThat(actual.getConfigurations(user)) //
+                        .as("%s %s", pos, user) //
+                        .extracting(Configuration::isStacked, Configuration::toString)
+                        .containsExactlyElementsOf(expected.getConfigurations(user).stream()
+                                .map(cfg -> tuple(cfg.isStacked(), cfg.toString())) //
+                                .collect(toList()));
+            }
+        }
+    }
+
+    private static JCas makeParallelDiffTestCas(int aUser, int aDocument) throws Exception
+    {
+        JCas jcas = createJCas(createMultiLinkWithRoleTestTypeSystem());
+        TokenBuilder<Token, Sentence> tb = new TokenBuilder<>(Token.class, Sentence.class);
+        tb.buildTokens(jcas, "John likes Mary and Bob .");
+
+        List<Token> tokens = new ArrayList<>(select(jcas, Token.class));
+        for (Token token : tokens) {
+            POS pos = new POS(jcas, token.getBegin(), token.getEnd());
+            pos.setPosValue(aUser == 2 && token.getBegin() == 5 ? "NN" : "VB" + aDocument);
+            pos.addToIndexes();
+        }
+
+        NamedEntity per = new NamedEntity(jcas, 0, 4);
+        per.setValue("PER");
+        per.addToIndexes();
+        if (aUser == 1) {
+            // Stacked annotation
+            NamedEntity stacked = new NamedEntity(jcas, 0, 4);
+            stacked.setValue("PER");
+            stacked.addToIndexes();
+        }
+        NamedEntity other = new NamedEntity(jcas, 11, 15);
+        other.setValue(aUser == 0 ? "LOC" : "PER");
+        other.addToIndexes();
+
+        Dependency dep = new Dependency(jcas, 0, 4);
+        dep.setGovernor(tokens.get(1));
+        dep.setDependent(tokens.get(0));
+        dep.setDependencyType(aUser == 2 ? "obj" : "nsubj");
+        dep.addToIndexes();
+
+        if (aUser != 1) {
+            makeLinkHostFS(jcas, 5, 10, makeLinkFS(jcas, "agent", 0, 4),
+                    makeLinkFS(jcas, aUser == 0 ? "patient" : "theme", 11, 15));
+        }
+
+        return jcas;
+    }
+
     @Test
     public void multiValueStringFeatureDifferenceTest() throws Exception
     {
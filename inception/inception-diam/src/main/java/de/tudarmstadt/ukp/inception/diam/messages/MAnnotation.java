@@ -17,6 +17,9 @@
  */
 package de.tudarmstadt.ukp.inception.diam.messages;
 
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 
@@ -59,4 +62,21 @@ public abstract class MAnnotation
     {
         return label;
     }
+
+    @Override
+    public boolean equals(final Object other)
+    {
+        if (other == null || !getClass().equals(other.getClass())) {
+            return false;
+        }
+        MAnnotation castOther = (MAnnotation) other;
+        return new EqualsBuilder().append(vid, castOther.vid).append(color, castOther.color)
+                .append(label, castOther.label).isEquals();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return new HashCodeBuilder().append(vid).append(color).append(label).toHashCode();
+    }
 }
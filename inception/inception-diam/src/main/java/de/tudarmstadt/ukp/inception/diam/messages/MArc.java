@@ -17,6 +17,9 @@
  */
 package de.tudarmstadt.ukp.inception.diam.messages;
 
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
@@ -55,4 +58,22 @@ public class MArc
     {
         return target;
     }
+
+    @Override
+    public boolean equals(final Object other)
+    {
+        if (!super.equals(other)) {
+            return false;
+        }
+        MArc castOther = (MArc) other;
+        return new EqualsBuilder().append(source, castOther.source)
+                .append(target, castOther.target).isEquals();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return new HashCodeBuilder().appendSuper(super.hashCode()).append(source).append(target)
+                .toHashCode();
+    }
 }
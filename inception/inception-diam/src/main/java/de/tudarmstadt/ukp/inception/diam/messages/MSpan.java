@@ -17,6 +17,9 @@
  */
 package de.tudarmstadt.ukp.inception.diam.messages;
 
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
@@ -55,4 +58,22 @@ public class MSpan
     {
         return end;
     }
+
+    @Override
+    public boolean equals(final Object other)
+    {
+        if (!super.equals(other)) {
+            return false;
+        }
+        MSpan castOther = (MSpan) other;
+        return new EqualsBuilder().append(begin, castOther.begin).append(end, castOther.end)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return new HashCodeBuilder().appendSuper(super.hashCode()).append(begin).append(end)
+                .toHashCode();
+    }
 }
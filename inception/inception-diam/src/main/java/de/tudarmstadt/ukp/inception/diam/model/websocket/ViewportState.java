@@ -19,21 +19,47 @@ package de.tudarmstadt.ukp.inception.diam.model.websocket;
 
 import static java.util.Collections.newSetFromMap;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.tuple.Pair;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import de.tudarmstadt.ukp.clarin.webanno.support.JSONUtil;
+import de.tudarmstadt.ukp.inception.diam.messages.MAnnotation;
+import de.tudarmstadt.ukp.inception.diam.messages.MArc;
+import de.tudarmstadt.ukp.inception.diam.messages.MSpan;
+import de.tudarmstadt.ukp.inception.diam.messages.MViewportInit;
+import de.tudarmstadt.ukp.inception.rendering.vmodel.VID;
+
+/**
+ * State of a viewport as last sent to its subscribers. The state is kept as the annotations in the
+ * order in which the subscribers have them, so updates can be sent as JSON patches against the
+ * last state without having to keep the last message as a JSON tree.
+ */
 public class ViewportState
 {
+    private static final String PATH_TEXT = "/text";
+    private static final String PATH_SPANS = "/spans";
+    private static final String PATH_ARCS = "/arcs";
+
     private final ViewportDefinition vpd;
 
     private final Set<Pair<String, String>> subscriberSessionIds = newSetFromMap(
             new ConcurrentHashMap<>());
 
-    private JsonNode json;
+    private String text;
+    private final Map<VID, MSpan> spans = new LinkedHashMap<>();
+    private final Map<VID, MArc> arcs = new LinkedHashMap<>();
 
     public ViewportState(ViewportDefinition aVpd)
     {
@@ -45,14 +71,91 @@ public class ViewportState
         return vpd;
     }
 
-    public synchronized void setJson(JsonNode aJson)
+    /**
+     * Replaces the state with the full state which has been sent to a (new) subscriber.
+     * 
+     * @param aState
+     *            the full state.
+     */
+    public synchronized void init(MViewportInit aState)
+    {
+        text = aState.getText();
+        spans.clear();
+        aState.getSpans().forEach(span -> spans.put(span.getVid(), span));
+        arcs.clear();
+        aState.getArcs().forEach(arc -> arcs.put(arc.getVid(), arc));
+    }
+
+    /**
+     * Updates the state and returns the changes as a JSON patch against the previous state.
+     * 
+     * @param aState
+     *            the new state.
+     * @return the JSON patch. If nothing changed, the patch is empty.
+     */
+    public synchronized ArrayNode update(MViewportInit aState)
+    {
+        ArrayNode patch = JsonNodeFactory.instance.arrayNode();
+
+        if (!Objects.equals(text, aState.getText())) {
+            patch.add(operation("replace", PATH_TEXT,
+                    JsonNodeFactory.instance.textNode(aState.getText())));
+            text = aState.getText();
+        }
+
+        update(patch, PATH_SPANS, spans, aState.getSpans());
+        update(patch, PATH_ARCS, arcs, aState.getArcs());
+
+        return patch;
+    }
+
+    private static <T extends MAnnotation> void update(ArrayNode aPatch, String aPath,
+            Map<VID, T> aOld, List<T> aNew)
+    {
+        Map<VID, T> newAnnotations = new LinkedHashMap<>();
+        aNew.forEach(ann -> newAnnotations.put(ann.getVid(), ann));
+
+        // Remove annotations which are gone - back to front so the positions remain valid
+        List<VID> oldVids = new ArrayList<>(aOld.keySet());
+        for (int i = oldVids.size() - 1; i >= 0; i--) {
+            if (!newAnnotations.containsKey(oldVids.get(i))) {
+                aPatch.add(operation("remove", aPath + "/" + i, null));
+                aOld.remove(oldVids.get(i));
+            }
+        }
+
+        // Replace changed annotations in place
+        int i = 0;
+        for (var entry : aOld.entrySet()) {
+            T newAnnotation = newAnnotations.remove(entry.getKey());
+            if (!entry.getValue().equals(newAnnotation)) {
+                aPatch.add(operation("replace", aPath + "/" + i, toJson(newAnnotation)));
+                entry.setValue(newAnnotation);
+            }
+            i++;
+        }
+
+        // Append new annotations
+        for (T newAnnotation : newAnnotations.values()) {
+            aPatch.add(operation("add", aPath + "/-", toJson(newAnnotation)));
+            aOld.put(newAnnotation.getVid(), newAnnotation);
+        }
+    }
+
+    private static JsonNode toJson(Object aValue)
     {
-        json = aJson;
+        return JSONUtil.getObjectMapper().valueToTree(aValue);
     }
 
-    public synchronized JsonNode getJson()
+    private static ObjectNode operation(String aOp, String aPath, JsonNode aValue)
     {
-        return json;
+        ObjectNode operation = JsonNodeFactory.instance.objectNode();
+        operation.put("op", aOp);
+        operation.put("path", aPath);
+        if (aValue != null) {
+            operation.set("value", aValue);
+        }
+        return operation;
     }
 
     public void removeSubscriber(String aId)
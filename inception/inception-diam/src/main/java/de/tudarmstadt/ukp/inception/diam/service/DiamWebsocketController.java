@@ -26,12 +26,18 @@ import static de.tudarmstadt.ukp.inception.websocket.config.WebSocketConstants.T
 import static de.tudarmstadt.ukp.inception.websocket.config.WebSocketConstants.TOPIC_ELEMENT_PROJECT;
 import static de.tudarmstadt.ukp.inception.websocket.config.WebSocketConstants.TOPIC_ELEMENT_USER;
 import static java.lang.Integer.MAX_VALUE;
+import static java.util.Comparator.comparingInt;
 import static java.util.stream.Collectors.toList;
+import static org.apache.uima.cas.text.AnnotationPredicates.overlapping;
 
 import java.io.IOException;
 import java.security.Principal;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
 
 import javax.persistence.NoResultException;
 
@@ -54,7 +60,7 @@ import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.flipkart.zjsonpatch.JsonDiff;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
 
@@ -71,12 +77,17 @@ import de.tudarmstadt.ukp.clarin.webanno.security.UserDao;
 import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
 import de.tudarmstadt.ukp.clarin.webanno.support.JSONUtil;
 import de.tudarmstadt.ukp.inception.annotation.storage.CasStorageSession;
+import de.tudarmstadt.ukp.inception.diam.messages.MArc;
+import de.tudarmstadt.ukp.inception.diam.messages.MSpan;
 import de.tudarmstadt.ukp.inception.diam.messages.MViewportInit;
 import de.tudarmstadt.ukp.inception.diam.messages.MViewportUpdate;
 import de.tudarmstadt.ukp.inception.diam.model.websocket.ViewportDefinition;
 import de.tudarmstadt.ukp.inception.diam.model.websocket.ViewportState;
 import de.tudarmstadt.ukp.inception.rendering.request.RenderRequest;
 import de.tudarmstadt.ukp.inception.rendering.vmodel.VDocument;
+import de.tudarmstadt.ukp.inception.rendering.vmodel.VID;
+import de.tudarmstadt.ukp.inception.rendering.vmodel.VRange;
+import de.tudarmstadt.ukp.inception.rendering.vmodel.VSpan;
 import de.tudarmstadt.ukp.inception.schema.AnnotationSchemaService;
 
 /**
@@ -212,10 +223,10 @@ public class DiamWebsocketController
 
             VDocument vdoc = render(project, aDocumentId, aUser, aViewportBegin, aViewportEnd);
 
-            JsonNode newJson = JSONUtil.getObjectMapper().valueToTree(new MViewportInit(vdoc));
-            vps.setJson(newJson);
+            MViewportInit init = new MViewportInit(vdoc);
+            vps.init(init);
 
-            return newJson;
+            return JSONUtil.getObjectMapper().valueToTree(init);
         }
         finally {
             MDC.remove(KEY_REPOSITORY_PATH);
@@ -262,15 +273,24 @@ public class DiamWebsocketController
         User user = userRepository.get(aUser);
         CAS cas = documentService.readAnnotationCas(doc, aUser);
 
-        List<AnnotationLayer> layers = schemaService.listSupportedLayers(aProject).stream()
+        return render(doc, user, cas, listRenderedLayers(aProject), aViewportBegin, aViewportEnd);
+    }
+
+    private List<AnnotationLayer> listRenderedLayers(Project aProject)
+    {
+        return schemaService.listSupportedLayers(aProject).stream() //
                 .filter(AnnotationLayer::isEnabled) //
                 .collect(toList());
+    }
 
+    private VDocument render(SourceDocument aDocument, User aUser, CAS aCas,
+            List<AnnotationLayer> aLayers, int aViewportBegin, int aViewportEnd)
+    {
         RenderRequest request = RenderRequest.builder() //
-                .withDocument(doc, user) //
+                .withDocument(aDocument, aUser) //
                 .withWindow(aViewportBegin, aViewportEnd) //
-                .withCas(cas) //
-                .withVisibleLayers(layers) //
+                .withCas(aCas) //
+                .withVisibleLayers(aLayers) //
                 .build();
 
         VDocument vdoc = new VDocument();
@@ -285,53 +305,124 @@ public class DiamWebsocketController
 
     private void sendUpdate(AnnotationDocument aDoc)
     {
+        // We do not know which part of the document has changed, so we re-render all viewports
+        // but only notify those in which something has actually changed
         sendUpdate(aDoc.getProject().getId(), aDoc.getDocument().getId(), aDoc.getUser(), 0,
-                MAX_VALUE);
+                MAX_VALUE, false);
     }
 
     void sendUpdate(AnnotationDocument aDoc, int aUpdateBegin, int aUpdateEnd)
     {
         sendUpdate(aDoc.getProject().getId(), aDoc.getDocument().getId(), aDoc.getUser(),
-                aUpdateBegin, aUpdateEnd);
+                aUpdateBegin, aUpdateEnd, true);
     }
 
     private void sendUpdate(long aProjectId, long aDocumentId, String aUser, int aUpdateBegin,
-            int aUpdateEnd)
+            int aUpdateEnd, boolean aSendEmptyUpdates)
     {
-        activeViewports.asMap().entrySet().stream() //
+        List<ViewportState> viewports = activeViewports.asMap().entrySet().stream() //
                 .filter(e -> e.getKey().matches(aDocumentId, aUser, aUpdateBegin, aUpdateEnd)) //
-                .forEach(e -> sendUpdate(e.getKey(), e.getValue(), aProjectId, aDocumentId, aUser,
-                        aUpdateBegin, aUpdateEnd));
-    }
+                .map(Entry::getValue) //
+                .sorted(comparingInt(vps -> vps.getViewportDefinition().getBegin())) //
+                .collect(toList());
 
-    private void sendUpdate(ViewportDefinition vpd, ViewportState vps, long aProjectId,
-            long aDocumentId, String aUser, int aUpdateBegin, int aUpdateEnd)
-    {
-        // MDC.put(KEY_REPOSITORY_PATH, repositoryProperties.getPath().toString());
+        if (viewports.isEmpty()) {
+            return;
+        }
 
         try (CasStorageSession session = CasStorageSession.openNested()) {
-            Project project = projectService.getProject(vpd.getProjectId());
-            VDocument vdoc = render(project, vpd.getDocumentId(), vpd.getUser(), vpd.getBegin(),
-                    vpd.getEnd());
-
-            MViewportInit fullRender = new MViewportInit(vdoc);
-
-            JsonNode newJson = JSONUtil.getObjectMapper().valueToTree(fullRender);
-
-            JsonNode diff = JsonDiff.asJson(vps.getJson(), newJson);
-
-            vps.setJson(newJson);
-
-            msgTemplate.convertAndSend("/topic" + vpd.getTopic(),
-                    new MViewportUpdate(aUpdateBegin, aUpdateEnd, diff));
+            Project project = projectService.getProject(aProjectId);
+            SourceDocument doc = documentService.getSourceDocument(aProjectId, aDocumentId);
+            User user = userRepository.get(aUser);
+            CAS cas = documentService.readAnnotationCas(doc, aUser);
+            List<AnnotationLayer> layers = listRenderedLayers(project);
+
+            // Overlapping viewports of the same document and user share a single render
+            for (List<ViewportState> group : groupOverlappingViewports(viewports)) {
+                int begin = group.get(0).getViewportDefinition().getBegin();
+                int end = group.stream() //
+                        .mapToInt(vps -> vps.getViewportDefinition().getEnd()) //
+                        .max().getAsInt();
+                VDocument vdoc = render(doc, user, cas, layers, begin, end);
+
+                for (ViewportState vps : group) {
+                    ViewportDefinition vpd = vps.getViewportDefinition();
+                    MViewportInit state = group.size() == 1 ? new MViewportInit(vdoc)
+                            : sliceViewport(vdoc, vpd);
+
+                    ArrayNode patch = vps.update(state);
+                    if (patch.isEmpty() && !aSendEmptyUpdates) {
+                        continue;
+                    }
+
+                    msgTemplate.convertAndSend("/topic" + vpd.getTopic(),
+                            new MViewportUpdate(aUpdateBegin, aUpdateEnd, patch));
+                }
+            }
         }
         catch (Exception ex) {
             log.error("Unable to render update", ex);
         }
+    }
+
+    /**
+     * @param aViewports
+     *            viewports sorted by their begin offset.
+     * @return groups of viewports which overlap each other.
+     */
+    private static List<List<ViewportState>> groupOverlappingViewports(
+            List<ViewportState> aViewports)
+    {
+        List<List<ViewportState>> groups = new ArrayList<>();
+        List<ViewportState> group = null;
+        int groupEnd = -1;
+        for (ViewportState vps : aViewports) {
+            ViewportDefinition vpd = vps.getViewportDefinition();
+            if (group == null || vpd.getBegin() > groupEnd) {
+                group = new ArrayList<>();
+                groups.add(group);
+            }
+            group.add(vps);
+            groupEnd = Math.max(groupEnd, vpd.getEnd());
+        }
+        return groups;
+    }
+
+    /**
+     * Extracts the state of the given viewport from a render covering a larger window.
+     */
+    private static MViewportInit sliceViewport(VDocument aVDocument, ViewportDefinition aVpd)
+    {
+        int offset = aVDocument.getWindowBegin();
+        int begin = Math.max(aVpd.getBegin(), aVDocument.getWindowBegin());
+        int end = Math.max(begin, Math.min(aVpd.getEnd(), aVDocument.getWindowEnd()));
+        String text = aVDocument.getText().substring(begin - offset, end - offset);
+
+        List<MSpan> spans = new ArrayList<>();
+        Set<VID> spanVids = new HashSet<>();
+        for (VSpan vspan : aVDocument.getSpans().values()) {
+            VRange range = vspan.getRanges().get(0);
+            int spanBegin = range.getBegin() + offset;
+            int spanEnd = range.getEnd() + offset;
+            if (!overlapping(spanBegin, spanEnd, begin, end)) {
+                continue;
+            }
+
+            MSpan span = new MSpan(vspan);
+            spans.add(new MSpan(span.getVid(), span.getColor(), span.getLabel(),
+                    Math.max(spanBegin, begin) - begin, Math.min(spanEnd, end) - begin));
+            spanVids.add(span.getVid());
+        }
+
+        // Arcs have no offsets of their own - they are included in every viewport which contains
+        // one of their endpoints
+        List<MArc> arcs = aVDocument.getArcs().values().stream() //
+                .filter(arc -> spanVids.contains(arc.getSource())
+                        || spanVids.contains(arc.getTarget())) //
+                .map(MArc::new) //
+                .collect(toList());
 
-        // finally {
-        // MDC.remove(KEY_REPOSITORY_PATH);
-        // }
+        return new MViewportInit(text, arcs, spans);
     }
 
     private Project getProject(long aProjectId) throws AccessDeniedException
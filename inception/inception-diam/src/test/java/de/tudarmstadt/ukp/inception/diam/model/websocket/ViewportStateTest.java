@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.diam.model.websocket;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import de.tudarmstadt.ukp.inception.diam.messages.MArc;
+import de.tudarmstadt.ukp.inception.diam.messages.MSpan;
+import de.tudarmstadt.ukp.inception.diam.messages.MViewportInit;
+import de.tudarmstadt.ukp.inception.rendering.vmodel.VID;
+
+class ViewportStateTest
+{
+    private ViewportState sut;
+
+    @BeforeEach
+    void setup()
+    {
+        sut = new ViewportState(new ViewportDefinition(1, 1, "user", 0, 10));
+    }
+
+    @Test
+    void thatUnchangedStateProducesEmptyPatch()
+    {
+        sut.init(new MViewportInit("text", emptyList(), asList(span(1, 0, 4))));
+
+        assertThat(sut.update(new MViewportInit("text", emptyList(), asList(span(1, 0, 4)))))
+                .isEmpty();
+    }
+
+    @Test
+    void thatChangesProduceRemoveReplaceAndAddOperations()
+    {
+        sut.init(new MViewportInit("text", asList(arc(10, 1, 2)),
+                asList(span(1, 0, 1), span(2, 1, 2), span(3, 2, 3))));
+
+        var patch = sut.update(new MViewportInit("text", asList(arc(10, 1, 3)),
+                asList(span(4, 3, 4), span(3, 2, 4), span(1, 0, 1))));
+
+        assertThat(operations(patch)).containsExactly( //
+                "remove /spans/1", //
+                "replace /spans/1", //
+                "add /spans/-", //
+                "replace /arcs/0");
+
+        // Applying the same state again does not change anything
+        assertThat(sut.update(new MViewportInit("text", asList(arc(10, 1, 3)),
+                asList(span(4, 3, 4), span(3, 2, 4), span(1, 0, 1))))).isEmpty();
+    }
+
+    @Test
+    void thatTextChangeProducesReplaceOperation()
+    {
+        sut.init(new MViewportInit("text", emptyList(), emptyList()));
+
+        var patch = sut.update(new MViewportInit("other", emptyList(), emptyList()));
+
+        assertThat(operations(patch)).containsExactly("replace /text");
+        assertThat(patch.get(0).get("value").asText()).isEqualTo("other");
+    }
+
+    private static List<String> operations(JsonNode aPatch)
+    {
+        List<String> operations = new ArrayList<>();
+        aPatch.forEach(op -> operations.add(op.get("op").asText() + " " + op.get("path").asText()));
+        return operations;
+    }
+
+    private static MSpan span(int aId, int aBegin, int aEnd)
+    {
+        return new MSpan(new VID(aId), null, "label", aBegin, aEnd);
+    }
+
+    private static MArc arc(int aId, int aSource, int aTarget)
+    {
+        return new MArc(new VID(aId), null, "label", new VID(aSource), new VID(aTarget));
+    }
+}
@@ -20,6 +20,8 @@ package de.tudarmstadt.ukp.inception.recommendation.imls.external.v1;
 import static de.tudarmstadt.ukp.clarin.webanno.support.WebAnnoConst.RELATION_TYPE;
 import static de.tudarmstadt.ukp.clarin.webanno.support.WebAnnoConst.SPAN_TYPE;
 
+import java.net.http.HttpClient;
+
 import org.apache.wicket.model.IModel;
 
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
@@ -29,6 +31,8 @@ import de.tudarmstadt.ukp.inception.recommendation.api.recommender.Recommendatio
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngineFactoryImplBase;
 import de.tudarmstadt.ukp.inception.recommendation.imls.external.v1.config.ExternalRecommenderAutoConfiguration;
 import de.tudarmstadt.ukp.inception.recommendation.imls.external.v1.config.ExternalRecommenderProperties;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.ExternalRecommenderV2;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.TypeSystemRegistry;
 
 /**
  * <p>
@@ -45,9 +49,18 @@ public class ExternalRecommenderFactory
 
     private final ExternalRecommenderProperties properties;
 
+    // The binary protocol shares the client (and thus its connections) and the knowledge about
+    // which type systems have already been registered with which remote recommender
+    private final HttpClient binaryProtocolClient;
+    private final TypeSystemRegistry typeSystemRegistry;
+
     public ExternalRecommenderFactory(ExternalRecommenderProperties aProperties)
     {
         properties = aProperties;
+        binaryProtocolClient = HttpClient.newBuilder() //
+                .connectTimeout(properties.getConnectTimeout()) //
+                .build();
+        typeSystemRegistry = new TypeSystemRegistry(binaryProtocolClient, properties);
     }
 
     @Override
@@ -60,6 +73,12 @@ public class ExternalRecommenderFactory
     public RecommendationEngine build(Recommender aRecommender)
     {
         ExternalRecommenderTraits traits = readTraits(aRecommender);
+
+        if (traits.isBinaryProtocol()) {
+            return new ExternalRecommenderV2(properties, aRecommender, traits,
+                    binaryProtocolClient, typeSystemRegistry);
+        }
+
         return new ExternalRecommender(properties, aRecommender, traits);
     }
 
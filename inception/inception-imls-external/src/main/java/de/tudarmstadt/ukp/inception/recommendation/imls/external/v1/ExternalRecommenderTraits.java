@@ -29,6 +29,7 @@ public class ExternalRecommenderTraits
 
     private String remoteUrl;
     private boolean trainable;
+    private boolean binaryProtocol;
 
     public String getRemoteUrl()
     {
@@ -49,4 +50,14 @@ public class ExternalRecommenderTraits
     {
         trainable = aTrainable;
     }
+
+    public boolean isBinaryProtocol()
+    {
+        return binaryProtocol;
+    }
+
+    public void setBinaryProtocol(boolean aBinaryProtocol)
+    {
+        binaryProtocol = aBinaryProtocol;
+    }
 }
@@ -76,6 +76,8 @@ public class ExternalRecommenderTraitsEditor
 
         getTrainingStatesChoice().add(visibleWhen(() -> trainable.getModelObject() == true));
 
+        form.add(new CheckBox("binaryProtocol").setOutputMarkupId(true));
+
         add(form);
     }
 }
@@ -24,4 +24,9 @@ public interface ExternalRecommenderProperties
     Duration getConnectTimeout();
 
     Duration getReadTimeout();
+
+    /**
+     * @return whether requests using the binary protocol should be compressed using gzip.
+     */
+    boolean isCompressRequests();
 }
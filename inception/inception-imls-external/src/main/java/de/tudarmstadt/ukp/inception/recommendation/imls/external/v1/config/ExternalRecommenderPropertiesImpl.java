@@ -34,6 +34,7 @@ public class ExternalRecommenderPropertiesImpl
 {
     private Duration connectTimeout = Duration.of(30, SECONDS);
     private Duration readTimeout = Duration.of(30, SECONDS);
+    private boolean compressRequests = false;
 
     @Override
     public Duration getConnectTimeout()
@@ -57,4 +58,15 @@ public class ExternalRecommenderPropertiesImpl
         readTimeout = aReadTimeout;
     }
 
+    @Override
+    public boolean isCompressRequests()
+    {
+        return compressRequests;
+    }
+
+    public void setCompressRequests(boolean aCompressRequests)
+    {
+        compressRequests = aCompressRequests;
+    }
+
 }
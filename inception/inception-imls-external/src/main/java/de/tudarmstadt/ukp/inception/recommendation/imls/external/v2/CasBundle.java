@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external.v2;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.tudarmstadt.ukp.clarin.webanno.support.JSONUtil;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.messages.RequestHeader;
+
+/**
+ * Body of a binary request. The body consists of the length-prefixed JSON {@link RequestHeader}
+ * followed by the number of CASes and the length-prefixed CASes in UIMA compressed binary form
+ * (form 6). The CASes do not contain the type system - the type system is referred to by its hash
+ * in the header.
+ */
+public class CasBundle
+{
+    private final RequestHeader header;
+    private final List<byte[]> casses;
+
+    public CasBundle(RequestHeader aHeader, List<byte[]> aCasses)
+    {
+        header = aHeader;
+        casses = aCasses;
+    }
+
+    public RequestHeader getHeader()
+    {
+        return header;
+    }
+
+    public List<byte[]> getCasses()
+    {
+        return casses;
+    }
+
+    public void write(OutputStream aOutput) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(aOutput);
+        writeBytes(out, JSONUtil.toJsonString(header).getBytes(UTF_8));
+        out.writeInt(casses.size());
+        for (byte[] cas : casses) {
+            writeBytes(out, cas);
+        }
+        out.flush();
+    }
+
+    public static CasBundle read(InputStream aInput) throws IOException
+    {
+        DataInputStream in = new DataInputStream(aInput);
+        RequestHeader header = JSONUtil.fromJsonString(RequestHeader.class,
+                new String(readBytes(in), UTF_8));
+        int count = in.readInt();
+        List<byte[]> casses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            casses.add(readBytes(in));
+        }
+        return new CasBundle(header, casses);
+    }
+
+    private static void writeBytes(DataOutputStream aOut, byte[] aBytes) throws IOException
+    {
+        aOut.writeInt(aBytes.length);
+        aOut.write(aBytes);
+    }
+
+    private static byte[] readBytes(DataInputStream aIn) throws IOException
+    {
+        byte[] bytes = new byte[aIn.readInt()];
+        aIn.readFully(bytes);
+        return bytes;
+    }
+}
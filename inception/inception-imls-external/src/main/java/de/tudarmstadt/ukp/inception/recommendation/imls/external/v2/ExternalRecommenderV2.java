@@ -0,0 +1,500 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external.v2;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.getRealCas;
+import static de.tudarmstadt.ukp.clarin.webanno.support.WebAnnoConst.FEAT_REL_SOURCE;
+import static de.tudarmstadt.ukp.clarin.webanno.support.WebAnnoConst.FEAT_REL_TARGET;
+import static de.tudarmstadt.ukp.clarin.webanno.support.WebAnnoConst.RELATION_TYPE;
+import static de.tudarmstadt.ukp.inception.recommendation.api.recommender.TrainingCapability.TRAINING_NOT_SUPPORTED;
+import static de.tudarmstadt.ukp.inception.recommendation.api.recommender.TrainingCapability.TRAINING_REQUIRED;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.v1.ExternalRecommender.KEY_TRAINING_COMPLETE;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+import static org.apache.commons.lang3.StringUtils.appendIfMissing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.impl.Serialization;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.util.CasUtil;
+import org.apache.uima.fit.util.JCasUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.type.CASMetadata;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
+import de.tudarmstadt.ukp.clarin.webanno.support.JSONUtil;
+import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.DataSplitter;
+import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.EvaluationResult;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.BatchPredictionSupport;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.PredictionUnit;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngine;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationException;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.TrainingCapability;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.v1.ExternalRecommenderTraits;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.v1.config.ExternalRecommenderProperties;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.v1.model.Metadata;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.messages.DocumentInfo;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.messages.PredictedAnnotation;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.messages.PredictionResponse;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.messages.RequestHeader;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.messages.Span;
+import de.tudarmstadt.ukp.inception.rendering.model.Range;
+
+/**
+ * Recommender using the binary version 2 of the external recommender protocol. In contrast to the
+ * JSON/XMI-based version 1, the type system is registered only once with the remote recommender
+ * and is afterwards referred to by its hash, the CASes are sent in UIMA compressed binary form
+ * and the remote recommender only returns the predicted annotations instead of a full CAS. Several
+ * documents can be sent in a single prediction request.
+ */
+public class ExternalRecommenderV2
+    extends RecommendationEngine
+    implements BatchPredictionSupport
+{
+    public static final String PATH_TYPE_SYSTEMS = "v2/typesystems/";
+    public static final String PATH_TRAIN = "v2/train";
+    public static final String PATH_PREDICT = "v2/predict";
+
+    public static final String CONTENT_TYPE_CAS_BUNDLE = "application/vnd.inception.cas-bundle";
+    public static final String CONTENT_ENCODING_GZIP = "gzip";
+
+    static final int HTTP_BAD_REQUEST = 400;
+    static final int HTTP_PRECONDITION_FAILED = 412;
+    static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExternalRecommenderV2.class);
+
+    private final ExternalRecommenderProperties properties;
+    private final ExternalRecommenderTraits traits;
+    private final HttpClient client;
+    private final TypeSystemRegistry typeSystemRegistry;
+
+    public ExternalRecommenderV2(ExternalRecommenderProperties aProperties,
+            Recommender aRecommender, ExternalRecommenderTraits aTraits, HttpClient aClient,
+            TypeSystemRegistry aTypeSystemRegistry)
+    {
+        super(aRecommender);
+
+        properties = aProperties;
+        traits = aTraits;
+        client = aClient;
+        typeSystemRegistry = aTypeSystemRegistry;
+    }
+
+    @Override
+    public boolean isReadyForPrediction(RecommenderContext aContext)
+    {
+        if (traits.isTrainable()) {
+            return aContext.get(KEY_TRAINING_COMPLETE).orElse(false);
+        }
+        else {
+            return true;
+        }
+    }
+
+    @Override
+    public void train(RecommenderContext aContext, List<CAS> aCasses) throws RecommendationException
+    {
+        // We assume that the type system for all CAS are the same - cf. ExternalRecommender
+        CAS firstCas = aCasses.get(0);
+        URI baseUri = getBaseUri();
+        TypeSystem typeSystem = firstCas.getTypeSystem();
+        String hash = typeSystemRegistry.getHash(typeSystem);
+
+        // Register the type system (if necessary) while we serialize the CASes
+        CompletableFuture<Void> registration = typeSystemRegistry.register(baseUri, typeSystem,
+                hash);
+
+        List<DocumentInfo> documents = new ArrayList<>();
+        List<byte[]> casses = new ArrayList<>();
+        for (CAS cas : aCasses) {
+            documents.add(buildDocumentInfo(cas, 0, cas.getDocumentText().length()));
+            casses.add(serializeCas(cas));
+        }
+
+        RequestHeader header = buildHeader(firstCas, hash, documents);
+        HttpResponse<InputStream> response = await(send(baseUri, PATH_TRAIN, typeSystem, hash,
+                registration, encode(new CasBundle(header, casses))));
+
+        try (InputStream body = response.body()) {
+            if (response.statusCode() == HTTP_TOO_MANY_REQUESTS) {
+                LOG.info("External recommender is already training");
+            }
+            else if (response.statusCode() >= HTTP_BAD_REQUEST) {
+                throw new RecommendationException(
+                        format("Request was not successful: [%d] - [%s]", response.statusCode(),
+                                IOUtils.toString(body, UTF_8)));
+            }
+        }
+        catch (IOException e) {
+            throw new RecommendationException("Error while reading response", e);
+        }
+
+        aContext.put(KEY_TRAINING_COMPLETE, true);
+    }
+
+    @Override
+    public Range predict(RecommenderContext aContext, CAS aCas, int aBegin, int aEnd)
+        throws RecommendationException
+    {
+        return predict(aContext, List.of(new PredictionUnit(aCas, aBegin, aEnd))).get(0);
+    }
+
+    @Override
+    public List<Range> predict(RecommenderContext aContext, List<PredictionUnit> aUnits)
+        throws RecommendationException
+    {
+        URI baseUri = getBaseUri();
+
+        // All CASes sent in a single request must share the same type system
+        Map<TypeSystem, List<PredictionUnit>> unitsByTypeSystem = new LinkedHashMap<>();
+        for (PredictionUnit unit : aUnits) {
+            unitsByTypeSystem.computeIfAbsent(unit.getCas().getTypeSystem(),
+                    key -> new ArrayList<>()).add(unit);
+        }
+
+        // Send all requests before waiting for any of the responses
+        List<CompletableFuture<HttpResponse<InputStream>>> responses = new ArrayList<>();
+        for (var entry : unitsByTypeSystem.entrySet()) {
+            TypeSystem typeSystem = entry.getKey();
+            String hash = typeSystemRegistry.getHash(typeSystem);
+
+            // Register the type system (if necessary) while we serialize the CASes
+            CompletableFuture<Void> registration = typeSystemRegistry.register(baseUri,
+                    typeSystem, hash);
+
+            List<DocumentInfo> documents = new ArrayList<>();
+            List<byte[]> casses = new ArrayList<>();
+            for (PredictionUnit unit : entry.getValue()) {
+                documents.add(buildDocumentInfo(unit.getCas(), unit.getBegin(), unit.getEnd()));
+                casses.add(serializeCas(unit.getCas()));
+            }
+
+            RequestHeader header = buildHeader(entry.getValue().get(0).getCas(), hash,
+                    documents);
+            responses.add(send(baseUri, PATH_PREDICT, typeSystem, hash, registration,
+                    encode(new CasBundle(header, casses))));
+        }
+
+        int i = 0;
+        for (List<PredictionUnit> units : unitsByTypeSystem.values()) {
+            PredictionResponse predictionResponse = readPredictionResponse(
+                    await(responses.get(i)));
+            i++;
+
+            if (predictionResponse.getAnnotations() == null) {
+                continue;
+            }
+
+            for (int n = 0; n < units.size(); n++) {
+                int documentIndex = n;
+                PredictionUnit unit = units.get(n);
+                addPredictions(unit.getCas(), predictionResponse.getAnnotations().stream() //
+                        .filter(a -> a.getDocument() == documentIndex) //
+                        .collect(toList()), unit.getBegin(), unit.getEnd());
+            }
+        }
+
+        return aUnits.stream() //
+                .map(unit -> new Range(unit.getBegin(), unit.getEnd())) //
+                .collect(toList());
+    }
+
+    private PredictionResponse readPredictionResponse(HttpResponse<InputStream> aResponse)
+        throws RecommendationException
+    {
+        try (InputStream body = aResponse.body()) {
+            // If the response indicates that the request was not successful,
+            // then it does not make sense to go on and try to decode the predictions
+            if (aResponse.statusCode() >= HTTP_BAD_REQUEST) {
+                throw new RecommendationException(
+                        format("Request was not successful: [%d] - [%s]",
+                                aResponse.statusCode(), IOUtils.toString(body, UTF_8)));
+            }
+
+            return JSONUtil.fromJsonStream(PredictionResponse.class, body);
+        }
+        catch (IOException e) {
+            throw new RecommendationException("Error while deserializing prediction response!",
+                    e);
+        }
+    }
+
+    private void addPredictions(CAS aCas, List<PredictedAnnotation> aPredictions, int aBegin,
+            int aEnd)
+    {
+        Type predictedType = getPredictedType(aCas);
+        Feature predictedFeature = getPredictedFeature(aCas);
+        Feature isPredictionFeature = getIsPredictionFeature(aCas);
+        Feature scoreFeature = getScoreFeature(aCas);
+        Feature scoreExplanationFeature = getScoreExplanationFeature(aCas);
+        boolean isRelation = RELATION_TYPE.equals(recommender.getLayer().getType());
+
+        for (PredictedAnnotation prediction : aPredictions) {
+            // The remote recommender should only predict within the requested window, but we
+            // better make sure
+            if (prediction.getBegin() < aBegin || prediction.getEnd() > aEnd) {
+                continue;
+            }
+
+            AnnotationFS governor = null;
+            AnnotationFS dependent = null;
+            if (isRelation) {
+                governor = selectAttached(aCas, prediction.getGovernor());
+                dependent = selectAttached(aCas, prediction.getDependent());
+                if (governor == null || dependent == null) {
+                    LOG.debug("Ignoring predicted relation with unknown endpoints at [{}-{}]",
+                            prediction.getBegin(), prediction.getEnd());
+                    continue;
+                }
+            }
+
+            AnnotationFS annotation = aCas.createAnnotation(predictedType, prediction.getBegin(),
+                    prediction.getEnd());
+            if (isRelation) {
+                annotation.setFeatureValue(predictedType.getFeatureByBaseName(FEAT_REL_SOURCE),
+                        governor);
+                annotation.setFeatureValue(predictedType.getFeatureByBaseName(FEAT_REL_TARGET),
+                        dependent);
+            }
+
+            if (predictedFeature != null && prediction.getLabel() != null) {
+                annotation.setFeatureValueFromString(predictedFeature, prediction.getLabel());
+            }
+            annotation.setDoubleValue(scoreFeature, prediction.getScore());
+            if (prediction.getExplanation() != null) {
+                annotation.setStringValue(scoreExplanationFeature, prediction.getExplanation());
+            }
+            annotation.setBooleanValue(isPredictionFeature, true);
+            aCas.addFsToIndexes(annotation);
+        }
+    }
+
+    private AnnotationFS selectAttached(CAS aCas, Span aSpan)
+    {
+        if (aSpan == null) {
+            return null;
+        }
+
+        Type attachType = CasUtil.getType(aCas, recommender.getLayer().getAttachType().getName());
+        return CasUtil.selectAt(aCas, attachType, aSpan.getBegin(), aSpan.getEnd()).stream() //
+                .findFirst() //
+                .orElse(null);
+    }
+
+    private CompletableFuture<HttpResponse<InputStream>> send(URI aBaseUri, String aPath,
+            TypeSystem aTypeSystem, String aHash, CompletableFuture<Void> aRegistration,
+            byte[] aBody)
+    {
+        HttpRequest request = newRequest(properties, aBaseUri.resolve(aPath),
+                CONTENT_TYPE_CAS_BUNDLE).POST(bodyPublisher(properties, aBody)).build();
+
+        // The request is sent as soon as the type system is known to the remote recommender
+        return aRegistration
+                .thenCompose(v -> client.sendAsync(request, BodyHandlers.ofInputStream()))
+                .thenCompose(response -> {
+                    if (response.statusCode() != HTTP_PRECONDITION_FAILED) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+
+                    // The remote recommender does not know the type system (anymore), e.g.
+                    // because it has been restarted. Register the type system again and retry.
+                    LOG.debug("Remote recommender does not know type system [{}] - registering "
+                            + "again", aHash);
+                    IOUtils.closeQuietly(response.body());
+                    typeSystemRegistry.unregister(aBaseUri, aHash);
+                    return typeSystemRegistry.register(aBaseUri, aTypeSystem, aHash).thenCompose(
+                            v -> client.sendAsync(request, BodyHandlers.ofInputStream()));
+                });
+    }
+
+    private <T> T await(CompletableFuture<T> aFuture) throws RecommendationException
+    {
+        try {
+            return aFuture.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RecommendationException("Interrupted while waiting for response", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RecommendationException) {
+                throw (RecommendationException) e.getCause();
+            }
+            throw new RecommendationException(
+                    "Error while sending request: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    static HttpRequest.Builder newRequest(ExternalRecommenderProperties aProperties, URI aUri,
+            String aContentType)
+    {
+        HttpRequest.Builder builder = HttpRequest.newBuilder() //
+                .uri(aUri) //
+                .header(HttpHeaders.CONTENT_TYPE, aContentType) //
+                .timeout(aProperties.getReadTimeout());
+
+        if (aProperties.isCompressRequests()) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, CONTENT_ENCODING_GZIP);
+        }
+
+        return builder;
+    }
+
+    static HttpRequest.BodyPublisher bodyPublisher(ExternalRecommenderProperties aProperties,
+            byte[] aBody)
+    {
+        if (!aProperties.isCompressRequests()) {
+            return BodyPublishers.ofByteArray(aBody);
+        }
+
+        try (var buffer = new ByteArrayOutputStream()) {
+            try (var out = new GZIPOutputStream(buffer)) {
+                out.write(aBody);
+            }
+            return BodyPublishers.ofByteArray(buffer.toByteArray());
+        }
+        catch (IOException e) {
+            // Cannot really happen when writing to a byte array
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private URI getBaseUri()
+    {
+        return URI.create(appendIfMissing(traits.getRemoteUrl(), "/"));
+    }
+
+    private byte[] encode(CasBundle aBundle) throws RecommendationException
+    {
+        try (var out = new ByteArrayOutputStream()) {
+            aBundle.write(out);
+            return out.toByteArray();
+        }
+        catch (IOException e) {
+            throw new RecommendationException("Error while encoding request!", e);
+        }
+    }
+
+    private byte[] serializeCas(CAS aCas) throws RecommendationException
+    {
+        try (var out = new ByteArrayOutputStream()) {
+            Serialization.serializeWithCompression(getRealCas(aCas), out);
+            return out.toByteArray();
+        }
+        catch (IOException e) {
+            throw new RecommendationException("Error while serializing CAS!", e);
+        }
+    }
+
+    private RequestHeader buildHeader(CAS aCas, String aTypeSystemHash,
+            List<DocumentInfo> aDocuments)
+        throws RecommendationException
+    {
+        RequestHeader header = new RequestHeader();
+        header.setTypeSystem(aTypeSystemHash);
+        header.setMetadata(buildMetadata(aCas));
+        header.setDocuments(aDocuments);
+        return header;
+    }
+
+    private DocumentInfo buildDocumentInfo(CAS aCas, int aBegin, int aEnd)
+        throws RecommendationException
+    {
+        CASMetadata casMetadata = getCasMetadata(aCas);
+        DocumentInfo document = new DocumentInfo();
+        document.setDocumentId(casMetadata.getSourceDocumentId());
+        document.setUserId(casMetadata.getUsername());
+        document.setBegin(aBegin);
+        document.setEnd(aEnd);
+        return document;
+    }
+
+    private CASMetadata getCasMetadata(CAS aCas) throws RecommendationException
+    {
+        try {
+            return JCasUtil.selectSingle(aCas.getJCas(), CASMetadata.class);
+        }
+        catch (CASException | IllegalArgumentException e) {
+            throw new RecommendationException("Error while reading CAS metadata!", e);
+        }
+    }
+
+    private Metadata buildMetadata(CAS aCas) throws RecommendationException
+    {
+        CASMetadata casMetadata = getCasMetadata(aCas);
+        AnnotationLayer layer = recommender.getLayer();
+        return new Metadata(layer.getName(), recommender.getFeature().getName(),
+                casMetadata.getProjectId(), layer.getAnchoringMode().getId(),
+                layer.isCrossSentence());
+    }
+
+    @Override
+    public int estimateSampleCount(List<CAS> aCasses)
+    {
+        return -1;
+    }
+
+    @Override
+    public EvaluationResult evaluate(List<CAS> aCasses, DataSplitter aDataSplitter)
+    {
+        EvaluationResult result = new EvaluationResult();
+        result.setEvaluationSkipped(true);
+        result.setErrorMsg("ExternalRecommender does not support evaluation.");
+        return result;
+    }
+
+    @Override
+    public TrainingCapability getTrainingCapability()
+    {
+        if (traits.isTrainable()) {
+            // We need to get at least one training CAS because we need to extract the type system
+            return TRAINING_REQUIRED;
+        }
+        else {
+            return TRAINING_NOT_SUPPORTED;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external.v2;
+
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.ExternalRecommenderV2.HTTP_BAD_REQUEST;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.ExternalRecommenderV2.PATH_TYPE_SYSTEMS;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.ExternalRecommenderV2.bodyPublisher;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.ExternalRecommenderV2.newRequest;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.synchronizedMap;
+import static java.util.concurrent.CompletableFuture.failedFuture;
+import static org.springframework.http.MediaType.APPLICATION_XML_VALUE;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.uima.cas.CASRuntimeException;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.util.TypeSystemUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationException;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.v1.config.ExternalRecommenderProperties;
+
+/**
+ * Keeps track of the type systems which have been registered with remote recommenders. A type
+ * system is sent to a remote recommender only once and is subsequently referred to by its hash.
+ */
+public class TypeSystemRegistry
+{
+    private static final Logger LOG = LoggerFactory.getLogger(TypeSystemRegistry.class);
+
+    private final HttpClient client;
+    private final ExternalRecommenderProperties properties;
+
+    // Type systems are shared by all CASes of a project which have been upgraded to the current
+    // project type system, so caching the hashes per type system instance is sufficient.
+    private final Map<TypeSystem, String> hashes = synchronizedMap(new WeakHashMap<>());
+    private final ConcurrentMap<String, CompletableFuture<Void>> registrations;
+
+    public TypeSystemRegistry(HttpClient aClient, ExternalRecommenderProperties aProperties)
+    {
+        client = aClient;
+        properties = aProperties;
+        registrations = new ConcurrentHashMap<>();
+    }
+
+    public String getHash(TypeSystem aTypeSystem) throws RecommendationException
+    {
+        String hash = hashes.get(aTypeSystem);
+        if (hash == null) {
+            hash = sha256(serializeTypeSystem(aTypeSystem));
+            hashes.put(aTypeSystem, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Registers the given type system with the remote recommender unless this has already been
+     * done. The method does not block - the returned future completes once the remote recommender
+     * knows the type system.
+     */
+    public CompletableFuture<Void> register(URI aBaseUri, TypeSystem aTypeSystem, String aHash)
+    {
+        String key = aBaseUri + PATH_TYPE_SYSTEMS + aHash;
+
+        CompletableFuture<Void> registration = new CompletableFuture<>();
+        CompletableFuture<Void> existingRegistration = registrations.putIfAbsent(key, registration);
+        if (existingRegistration != null) {
+            return existingRegistration;
+        }
+
+        upload(URI.create(key), aTypeSystem).whenComplete((v, e) -> {
+            if (e != null) {
+                // Permit another attempt on the next request
+                registrations.remove(key, registration);
+                registration.completeExceptionally(e);
+            }
+            else {
+                registration.complete(null);
+            }
+        });
+
+        return registration;
+    }
+
+    /**
+     * Forgets that the given type system has been registered with the remote recommender, e.g.
+     * because the remote recommender has been restarted and no longer knows it.
+     */
+    public void unregister(URI aBaseUri, String aHash)
+    {
+        registrations.remove(aBaseUri + PATH_TYPE_SYSTEMS + aHash);
+    }
+
+    private CompletableFuture<Void> upload(URI aUri, TypeSystem aTypeSystem)
+    {
+        byte[] body;
+        try {
+            body = serializeTypeSystem(aTypeSystem).getBytes(UTF_8);
+        }
+        catch (RecommendationException e) {
+            return failedFuture(e);
+        }
+
+        LOG.debug("Registering type system at [{}]", aUri);
+
+        var request = newRequest(properties, aUri, APPLICATION_XML_VALUE)
+                .PUT(bodyPublisher(properties, body)).build();
+
+        return client.sendAsync(request, BodyHandlers.ofString(UTF_8)).thenCompose(response -> {
+            if (response.statusCode() >= HTTP_BAD_REQUEST) {
+                return failedFuture(new RecommendationException(
+                        format("Unable to register type system: [%d] - [%s]",
+                                response.statusCode(), response.body())));
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    private static String serializeTypeSystem(TypeSystem aTypeSystem)
+        throws RecommendationException
+    {
+        try (StringWriter out = new StringWriter()) {
+            TypeSystemUtil.typeSystem2TypeSystemDescription(aTypeSystem).toXML(out);
+            return out.toString();
+        }
+        catch (CASRuntimeException | SAXException | IOException e) {
+            throw new RecommendationException("Coud not serialize type system", e);
+        }
+    }
+
+    private static String sha256(String aValue)
+    {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(aValue.getBytes(UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(format("%02x", b));
+            }
+            return sb.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
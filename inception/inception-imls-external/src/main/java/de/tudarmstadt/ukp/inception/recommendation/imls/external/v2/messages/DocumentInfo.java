@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.messages;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class DocumentInfo
+{
+    @JsonProperty("documentId")
+    private long documentId;
+
+    @JsonProperty("userId")
+    private String userId;
+
+    /**
+     * Begin of the window in which annotations should be predicted.
+     */
+    @JsonProperty("begin")
+    private int begin;
+
+    /**
+     * End of the window in which annotations should be predicted.
+     */
+    @JsonProperty("end")
+    private int end;
+
+    public long getDocumentId()
+    {
+        return documentId;
+    }
+
+    public void setDocumentId(long aDocumentId)
+    {
+        documentId = aDocumentId;
+    }
+
+    public String getUserId()
+    {
+        return userId;
+    }
+
+    public void setUserId(String aUserId)
+    {
+        userId = aUserId;
+    }
+
+    public int getBegin()
+    {
+        return begin;
+    }
+
+    public void setBegin(int aBegin)
+    {
+        begin = aBegin;
+    }
+
+    public int getEnd()
+    {
+        return end;
+    }
+
+    public void setEnd(int aEnd)
+    {
+        end = aEnd;
+    }
+}
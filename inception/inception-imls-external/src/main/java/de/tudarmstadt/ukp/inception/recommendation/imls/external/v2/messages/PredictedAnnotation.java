@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.messages;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class PredictedAnnotation
+{
+    /**
+     * Index of the document in the request to which the annotation belongs.
+     */
+    @JsonProperty("document")
+    private int document;
+
+    @JsonProperty("begin")
+    private int begin;
+
+    @JsonProperty("end")
+    private int end;
+
+    @JsonProperty("label")
+    private String label;
+
+    @JsonProperty("score")
+    private double score;
+
+    @JsonProperty("explanation")
+    private String explanation;
+
+    /**
+     * Offsets of the governor if a relation is predicted.
+     */
+    @JsonProperty("governor")
+    private Span governor;
+
+    /**
+     * Offsets of the dependent if a relation is predicted.
+     */
+    @JsonProperty("dependent")
+    private Span dependent;
+
+    public int getDocument()
+    {
+        return document;
+    }
+
+    public void setDocument(int aDocument)
+    {
+        document = aDocument;
+    }
+
+    public int getBegin()
+    {
+        return begin;
+    }
+
+    public void setBegin(int aBegin)
+    {
+        begin = aBegin;
+    }
+
+    public int getEnd()
+    {
+        return end;
+    }
+
+    public void setEnd(int aEnd)
+    {
+        end = aEnd;
+    }
+
+    public String getLabel()
+    {
+        return label;
+    }
+
+    public void setLabel(String aLabel)
+    {
+        label = aLabel;
+    }
+
+    public double getScore()
+    {
+        return score;
+    }
+
+    public void setScore(double aScore)
+    {
+        score = aScore;
+    }
+
+    public String getExplanation()
+    {
+        return explanation;
+    }
+
+    public void setExplanation(String aExplanation)
+    {
+        explanation = aExplanation;
+    }
+
+    public Span getGovernor()
+    {
+        return governor;
+    }
+
+    public void setGovernor(Span aGovernor)
+    {
+        governor = aGovernor;
+    }
+
+    public Span getDependent()
+    {
+        return dependent;
+    }
+
+    public void setDependent(Span aDependent)
+    {
+        dependent = aDependent;
+    }
+}
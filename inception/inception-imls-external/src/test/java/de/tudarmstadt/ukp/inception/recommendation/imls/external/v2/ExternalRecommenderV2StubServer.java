@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external.v2;
+
+import static de.tudarmstadt.ukp.inception.recommendation.api.RecommendationService.FEATURE_NAME_IS_PREDICTION;
+import static de.tudarmstadt.ukp.inception.recommendation.api.RecommendationService.FEATURE_NAME_SCORE_EXPLANATION_SUFFIX;
+import static de.tudarmstadt.ukp.inception.recommendation.api.RecommendationService.FEATURE_NAME_SCORE_SUFFIX;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.ExternalRecommenderV2.CONTENT_ENCODING_GZIP;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.ExternalRecommenderV2.PATH_PREDICT;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.ExternalRecommenderV2.PATH_TRAIN;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.ExternalRecommenderV2.PATH_TYPE_SYSTEMS;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.impl.Serialization;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.fit.util.CasUtil;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.apache.uima.util.XMLInputSource;
+import org.springframework.http.HttpHeaders;
+
+import de.tudarmstadt.ukp.clarin.webanno.support.JSONUtil;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.messages.DocumentInfo;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.messages.PredictedAnnotation;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.messages.PredictionResponse;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.StringMatchingRecommender;
+import de.tudarmstadt.ukp.inception.recommendation.imls.stringmatch.span.StringMatchingRecommenderTraits;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Local stub of a remote recommender speaking the binary protocol. It is backed by a
+ * {@link StringMatchingRecommender}.
+ */
+public class ExternalRecommenderV2StubServer
+    implements AutoCloseable
+{
+    private final Recommender recommender;
+    private final RecommenderContext context;
+    private final StringMatchingRecommender recommendationEngine;
+    private final MockWebServer server;
+    private final Map<String, TypeSystemDescription> typeSystems;
+    private final List<String> requestPaths;
+    private final List<DocumentInfo> predictionRequests;
+
+    public ExternalRecommenderV2StubServer(Recommender aRecommender) throws IOException
+    {
+        recommender = aRecommender;
+        context = new RecommenderContext();
+        recommendationEngine = new StringMatchingRecommender(recommender,
+                new StringMatchingRecommenderTraits());
+        typeSystems = new ConcurrentHashMap<>();
+        requestPaths = new CopyOnWriteArrayList<>();
+        predictionRequests = new CopyOnWriteArrayList<>();
+
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher()
+        {
+            @Override
+            public MockResponse dispatch(RecordedRequest aRequest)
+            {
+                try {
+                    return handle(aRequest);
+                }
+                catch (Exception e) {
+                    return new MockResponse().setResponseCode(500).setBody(e.toString());
+                }
+            }
+        });
+        server.start();
+    }
+
+    public String getUrl()
+    {
+        return server.url("/").toString();
+    }
+
+    public List<String> getRequestPaths()
+    {
+        return requestPaths;
+    }
+
+    public List<DocumentInfo> getPredictionRequests()
+    {
+        return predictionRequests;
+    }
+
+    /**
+     * Simulates a restart of the remote recommender after which it no longer knows any type
+     * systems.
+     */
+    public void forgetTypeSystems()
+    {
+        typeSystems.clear();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        server.shutdown();
+    }
+
+    private MockResponse handle(RecordedRequest aRequest) throws Exception
+    {
+        String path = aRequest.getPath().substring(1);
+        requestPaths.add(path);
+
+        if (path.startsWith(PATH_TYPE_SYSTEMS)) {
+            try (InputStream body = getBody(aRequest)) {
+                typeSystems.put(path.substring(PATH_TYPE_SYSTEMS.length()),
+                        UIMAFramework.getXMLParser()
+                                .parseTypeSystemDescription(new XMLInputSource(body, null)));
+            }
+            return new MockResponse().setResponseCode(204);
+        }
+
+        CasBundle bundle;
+        try (InputStream body = getBody(aRequest)) {
+            bundle = CasBundle.read(body);
+        }
+
+        TypeSystemDescription tsd = typeSystems.get(bundle.getHeader().getTypeSystem());
+        if (tsd == null) {
+            return new MockResponse().setResponseCode(412);
+        }
+
+        List<CAS> casses = new ArrayList<>();
+        for (byte[] data : bundle.getCasses()) {
+            CAS cas = CasCreationUtils.createCas(tsd, null, null);
+            Serialization.deserializeCAS(cas, new ByteArrayInputStream(data));
+            casses.add(cas);
+        }
+
+        if (PATH_TRAIN.equals(path)) {
+            recommendationEngine.train(context, casses);
+            return new MockResponse().setResponseCode(204);
+        }
+
+        if (PATH_PREDICT.equals(path)) {
+            List<PredictedAnnotation> annotations = new ArrayList<>();
+            for (int i = 0; i < casses.size(); i++) {
+                DocumentInfo document = bundle.getHeader().getDocuments().get(i);
+                predictionRequests.add(document);
+                annotations.addAll(
+                        predict(casses.get(i), i, document.getBegin(), document.getEnd()));
+            }
+            PredictionResponse response = new PredictionResponse();
+            response.setAnnotations(annotations);
+            return new MockResponse().setResponseCode(200)
+                    .setBody(JSONUtil.toJsonString(response));
+        }
+
+        return new MockResponse().setResponseCode(404);
+    }
+
+    private List<PredictedAnnotation> predict(CAS aCas, int aDocument, int aBegin, int aEnd)
+        throws Exception
+    {
+        String featureName = recommender.getFeature().getName();
+        Type predictedType = CasUtil.getType(aCas, recommender.getLayer().getName());
+        Feature labelFeature = predictedType.getFeatureByBaseName(featureName);
+        Feature scoreFeature = predictedType
+                .getFeatureByBaseName(featureName + FEATURE_NAME_SCORE_SUFFIX);
+        Feature explanationFeature = predictedType
+                .getFeatureByBaseName(featureName + FEATURE_NAME_SCORE_EXPLANATION_SUFFIX);
+        Feature isPredictionFeature = predictedType
+                .getFeatureByBaseName(FEATURE_NAME_IS_PREDICTION);
+
+        // Only work on real annotations, not on predictions
+        for (AnnotationFS fs : CasUtil.select(aCas, predictedType)) {
+            if (fs.getBooleanValue(isPredictionFeature)) {
+                aCas.removeFsFromIndexes(fs);
+            }
+        }
+
+        recommendationEngine.predict(context, aCas, aBegin, aEnd);
+
+        List<PredictedAnnotation> annotations = new ArrayList<>();
+        for (AnnotationFS fs : CasUtil.selectCovered(aCas, predictedType, aBegin, aEnd)) {
+            if (!fs.getBooleanValue(isPredictionFeature)) {
+                continue;
+            }
+
+            PredictedAnnotation annotation = new PredictedAnnotation();
+            annotation.setDocument(aDocument);
+            annotation.setBegin(fs.getBegin());
+            annotation.setEnd(fs.getEnd());
+            annotation.setLabel(fs.getFeatureValueAsString(labelFeature));
+            annotation.setScore(fs.getDoubleValue(scoreFeature));
+            annotation.setExplanation(fs.getStringValue(explanationFeature));
+            annotations.add(annotation);
+        }
+
+        return annotations;
+    }
+
+    private InputStream getBody(RecordedRequest aRequest) throws IOException
+    {
+        InputStream body = aRequest.getBody().inputStream();
+        if (CONTENT_ENCODING_GZIP.equals(aRequest.getHeader(HttpHeaders.CONTENT_ENCODING))) {
+            return new GZIPInputStream(body);
+        }
+        return body;
+    }
+}
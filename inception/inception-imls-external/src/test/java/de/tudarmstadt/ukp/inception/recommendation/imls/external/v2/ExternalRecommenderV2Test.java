@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.imls.external.v2;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.EXCLUSIVE_WRITE_ACCESS;
+import static de.tudarmstadt.ukp.clarin.webanno.support.WebAnnoConst.SPAN_TYPE;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.ExternalRecommenderV2.PATH_PREDICT;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.ExternalRecommenderV2.PATH_TRAIN;
+import static de.tudarmstadt.ukp.inception.recommendation.imls.external.v2.ExternalRecommenderV2.PATH_TYPE_SYSTEMS;
+import static de.tudarmstadt.ukp.inception.support.test.recommendation.RecommenderTestHelper.getPredictions;
+import static java.util.Arrays.asList;
+import static org.apache.uima.fit.factory.TypeSystemDescriptionFactory.createTypeSystemDescription;
+import static org.apache.uima.util.CasCreationUtils.mergeTypeSystems;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.net.http.HttpClient;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.type.CASMetadata;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnchoringMode;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
+import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.tudarmstadt.ukp.inception.annotation.storage.CasMetadataUtils;
+import de.tudarmstadt.ukp.inception.annotation.storage.CasStorageSession;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.PredictionUnit;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.v1.ExternalRecommenderTraits;
+import de.tudarmstadt.ukp.inception.recommendation.imls.external.v1.config.ExternalRecommenderPropertiesImpl;
+import de.tudarmstadt.ukp.inception.support.test.recommendation.RecommenderTestHelper;
+
+public class ExternalRecommenderV2Test
+{
+    private static final String TRAINING_TEXT = "John Smith lives in Berlin .";
+    private static final String PREDICTION_TEXT = "Berlin is big . John Smith likes Berlin .";
+
+    private CasStorageSession casStorageSession;
+    private ExternalRecommenderPropertiesImpl properties;
+    private ExternalRecommenderTraits traits;
+    private Recommender recommender;
+    private RecommenderContext context;
+    private ExternalRecommenderV2StubServer server;
+    private HttpClient client;
+    private TypeSystemRegistry typeSystemRegistry;
+    private ExternalRecommenderV2 sut;
+
+    @BeforeEach
+    public void setUp() throws Exception
+    {
+        casStorageSession = CasStorageSession.open();
+        recommender = buildRecommender();
+        context = new RecommenderContext();
+        server = new ExternalRecommenderV2StubServer(recommender);
+
+        properties = new ExternalRecommenderPropertiesImpl();
+        traits = new ExternalRecommenderTraits();
+        traits.setRemoteUrl(server.getUrl());
+        traits.setTrainable(true);
+        traits.setBinaryProtocol(true);
+
+        // Like in the factory, the client and the registry are shared between engine instances
+        client = HttpClient.newBuilder().connectTimeout(properties.getConnectTimeout()).build();
+        typeSystemRegistry = new TypeSystemRegistry(client, properties);
+        sut = buildSut();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception
+    {
+        casStorageSession.close();
+        server.close();
+    }
+
+    @Test
+    public void thatPredictingWorks() throws Exception
+    {
+        sut.train(context, asList(buildTrainingCas()));
+        assertThat(sut.isReadyForPrediction(context)).isTrue();
+
+        CAS cas = buildPredictionCas();
+        sut.predict(context, cas);
+
+        assertThat(getPredictions(cas, NamedEntity.class)) //
+                .extracting(NamedEntity::getCoveredText, NamedEntity::getValue) //
+                .containsExactlyInAnyOrder( //
+                        tuple("Berlin", "LOC"), //
+                        tuple("John Smith", "PER"), //
+                        tuple("Berlin", "LOC"));
+    }
+
+    @Test
+    public void thatOnlyThePredictionWindowIsPredicted() throws Exception
+    {
+        sut.train(context, asList(buildTrainingCas()));
+
+        CAS cas = buildPredictionCas();
+        int begin = PREDICTION_TEXT.indexOf("John");
+        int end = PREDICTION_TEXT.length();
+        sut.predict(context, cas, begin, end);
+
+        assertThat(server.getPredictionRequests()) //
+                .extracting("begin", "end") //
+                .containsExactly(tuple(begin, end));
+        assertThat(getPredictions(cas, NamedEntity.class)) //
+                .extracting(NamedEntity::getCoveredText) //
+                .containsExactlyInAnyOrder("John Smith", "Berlin");
+        assertThat(getPredictions(cas, NamedEntity.class)) //
+                .allSatisfy(ne -> assertThat(ne.getBegin()).isGreaterThanOrEqualTo(begin));
+    }
+
+    @Test
+    public void thatTypeSystemIsRegisteredOnlyOnce() throws Exception
+    {
+        CAS trainingCas = buildTrainingCas();
+        sut.train(context, asList(trainingCas));
+        sut.train(context, asList(trainingCas));
+        sut.predict(context, buildPredictionCas());
+        sut.predict(context, buildPredictionCas());
+
+        // A new engine instance is created for every training/prediction run
+        sut = buildSut();
+        sut.predict(context, buildPredictionCas());
+
+        assertThat(server.getRequestPaths()) //
+                .filteredOn(path -> path.startsWith(PATH_TYPE_SYSTEMS)) //
+                .hasSize(1);
+        assertThat(server.getRequestPaths()) //
+                .filteredOn(path -> !path.startsWith(PATH_TYPE_SYSTEMS)) //
+                .containsExactly(PATH_TRAIN, PATH_TRAIN, PATH_PREDICT, PATH_PREDICT,
+                        PATH_PREDICT);
+    }
+
+    @Test
+    public void thatTypeSystemIsRegisteredAgainIfUnknownToRemote() throws Exception
+    {
+        sut.train(context, asList(buildTrainingCas()));
+
+        server.forgetTypeSystems();
+
+        CAS cas = buildPredictionCas();
+        sut.predict(context, cas);
+
+        assertThat(server.getRequestPaths()) //
+                .filteredOn(path -> path.startsWith(PATH_TYPE_SYSTEMS)) //
+                .hasSize(2);
+        assertThat(getPredictions(cas, NamedEntity.class)).hasSize(3);
+    }
+
+    @Test
+    public void thatCompressedRequestsWork() throws Exception
+    {
+        properties.setCompressRequests(true);
+        sut = buildSut();
+
+        sut.train(context, asList(buildTrainingCas()));
+
+        CAS cas = buildPredictionCas();
+        sut.predict(context, cas);
+
+        assertThat(getPredictions(cas, NamedEntity.class)).hasSize(3);
+    }
+
+    @Test
+    public void thatBatchPredictionUsesSingleRequest() throws Exception
+    {
+        sut.train(context, asList(buildTrainingCas()));
+
+        CAS cas1 = buildPredictionCas();
+        String text2 = "Mary knows John Smith .";
+        CAS cas2 = buildCas(text2, 2).getCas();
+        int begin2 = text2.indexOf("John");
+        sut.predict(context, asList(new PredictionUnit(cas1, 0, PREDICTION_TEXT.length()),
+                new PredictionUnit(cas2, begin2, text2.length())));
+
+        assertThat(server.getRequestPaths()) //
+                .filteredOn(PATH_PREDICT::equals) //
+                .hasSize(1);
+        assertThat(server.getPredictionRequests()) //
+                .extracting("begin", "end") //
+                .containsExactly(tuple(0, PREDICTION_TEXT.length()),
+                        tuple(begin2, text2.length()));
+        assertThat(getPredictions(cas1, NamedEntity.class)) //
+                .extracting(NamedEntity::getCoveredText) //
+                .containsExactlyInAnyOrder("Berlin", "John Smith", "Berlin");
+        assertThat(getPredictions(cas2, NamedEntity.class)) //
+                .extracting(NamedEntity::getCoveredText, NamedEntity::getValue) //
+                .containsExactly(tuple("John Smith", "PER"));
+    }
+
+    private ExternalRecommenderV2 buildSut()
+    {
+        return new ExternalRecommenderV2(properties, recommender, traits, client,
+                typeSystemRegistry);
+    }
+
+    private CAS buildTrainingCas() throws Exception
+    {
+        JCas jcas = buildCas(TRAINING_TEXT, 0);
+        addNamedEntity(jcas, TRAINING_TEXT, "John Smith", "PER");
+        addNamedEntity(jcas, TRAINING_TEXT, "Berlin", "LOC");
+        return jcas.getCas();
+    }
+
+    private CAS buildPredictionCas() throws Exception
+    {
+        return buildCas(PREDICTION_TEXT, 1).getCas();
+    }
+
+    private JCas buildCas(String aText, long aDocumentId) throws Exception
+    {
+        JCas jcas = JCasFactory.createJCas(mergeTypeSystems(asList(createTypeSystemDescription(),
+                CasMetadataUtils.getInternalTypeSystem())));
+        jcas.setDocumentText(aText);
+
+        int sentenceBegin = 0;
+        int offset = 0;
+        for (String token : aText.split(" ")) {
+            new Token(jcas, offset, offset + token.length()).addToIndexes();
+            if (token.equals(".")) {
+                new Sentence(jcas, sentenceBegin, offset + token.length()).addToIndexes();
+                sentenceBegin = offset + token.length() + 1;
+            }
+            offset += token.length() + 1;
+        }
+
+        CASMetadata cmd = new CASMetadata(jcas);
+        cmd.setUsername("test_user");
+        cmd.setProjectId(42L);
+        cmd.setSourceDocumentId(aDocumentId);
+        cmd.addToIndexes();
+
+        casStorageSession.add("cas" + aDocumentId, EXCLUSIVE_WRITE_ACCESS, jcas.getCas());
+        RecommenderTestHelper.addScoreFeature(jcas.getCas(), NamedEntity.class, "value");
+
+        return jcas;
+    }
+
+    private void addNamedEntity(JCas aJCas, String aText, String aCoveredText, String aValue)
+    {
+        int begin = aText.indexOf(aCoveredText);
+        NamedEntity ne = new NamedEntity(aJCas, begin, begin + aCoveredText.length());
+        ne.setValue(aValue);
+        ne.addToIndexes();
+    }
+
+    private static Recommender buildRecommender()
+    {
+        AnnotationLayer layer = new AnnotationLayer();
+        layer.setName(NamedEntity.class.getName());
+        layer.setType(SPAN_TYPE);
+        layer.setCrossSentence(false);
+        layer.setAnchoringMode(AnchoringMode.TOKENS);
+
+        AnnotationFeature feature = new AnnotationFeature();
+        feature.setName("value");
+
+        Recommender recommender = new Recommender();
+        recommender.setLayer(layer);
+        recommender.setFeature(feature);
+        recommender.setMaxRecommendations(3);
+
+        return recommender;
+    }
+}
@@ -44,6 +44,7 @@ import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.DataSplitter;
 import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.EvaluationResult;
 import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.LabelPair;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.IncrementalTrainingSupport;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngine;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationException;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
@@ -64,6 +65,7 @@ import opennlp.tools.util.TrainingParameters;
 
 public class OpenNlpNerRecommender
     extends RecommendationEngine
+    implements IncrementalTrainingSupport<NameSample>
 {
     public static final Key<TokenNameFinderModel> KEY_MODEL = new Key<>("opennlp_ner_model");
     private static final Logger LOG = LoggerFactory.getLogger(OpenNlpNerRecommender.class);
@@ -91,7 +93,37 @@ public class OpenNlpNerRecommender
     @Override
     public void train(RecommenderContext aContext, List<CAS> aCasses) throws RecommendationException
     {
-        List<NameSample> nameSamples = extractNameSamples(aCasses);
+        trainOnSamples(aContext, extractNameSamples(aCasses));
+    }
+
+    @Override
+    public List<NameSample> extractTrainingSamples(CAS aCas)
+    {
+        List<NameSample> nameSamples = new ArrayList<>();
+        extractNameSamples(aCas, nameSamples);
+        return nameSamples;
+    }
+
+    @Override
+    public long estimateSampleSize(NameSample aSample)
+    {
+        // Object headers and references of the sample, the token strings and the name spans
+        long size = 64;
+        for (String token : aSample.getSentence()) {
+            size += 48 + 2l * token.length();
+        }
+        size += 32l * aSample.getNames().length;
+        return size;
+    }
+
+    @Override
+    public void trainOnSamples(RecommenderContext aContext, List<NameSample> aSamples)
+        throws RecommendationException
+    {
+        List<NameSample> nameSamples = aSamples;
+        if (nameSamples.size() > traits.getTrainingSetSizeLimit()) {
+            nameSamples = nameSamples.subList(0, traits.getTrainingSetSizeLimit());
+        }
 
         if (nameSamples.size() < 2) {
             aContext.warn("Not enough training data: [%d] items", nameSamples.size());
@@ -311,30 +343,45 @@ public class OpenNlpNerRecommender
     {
         List<NameSample> nameSamples = new ArrayList<>();
 
-        casses: for (CAS cas : aCasses) {
-            Type sampleUnitType = getType(cas, SAMPLE_UNIT);
-            Type tokenType = getType(cas, Token.class);
+        for (CAS cas : aCasses) {
+            if (!extractNameSamples(cas, nameSamples)) {
+                break;
+            }
+        }
 
-            for (AnnotationFS sampleUnit : cas.<Annotation> select(sampleUnitType)) {
-                if (nameSamples.size() >= traits.getTrainingSetSizeLimit()) {
-                    break casses;
-                }
+        return nameSamples;
+    }
 
-                if (isBlank(sampleUnit.getCoveredText())) {
-                    continue;
-                }
+    /**
+     * Adds the name samples from the given CAS to the given list until the training set size limit
+     * is reached.
+     * 
+     * @return {@code false} if the training set size limit has been reached.
+     */
+    private boolean extractNameSamples(CAS aCas, List<NameSample> aNameSamples)
+    {
+        Type sampleUnitType = getType(aCas, SAMPLE_UNIT);
+        Type tokenType = getType(aCas, Token.class);
 
-                Collection<Annotation> tokens = cas.<Annotation> select(tokenType)
-                        .coveredBy(sampleUnit).asList();
+        for (AnnotationFS sampleUnit : aCas.<Annotation> select(sampleUnitType)) {
+            if (aNameSamples.size() >= traits.getTrainingSetSizeLimit()) {
+                return false;
+            }
 
-                NameSample nameSample = createNameSample(cas, sampleUnit, tokens);
-                if (nameSample.getNames().length > 0) {
-                    nameSamples.add(nameSample);
-                }
+            if (isBlank(sampleUnit.getCoveredText())) {
+                continue;
+            }
+
+            Collection<Annotation> tokens = aCas.<Annotation> select(tokenType)
+                    .coveredBy(sampleUnit).asList();
+
+            NameSample nameSample = createNameSample(aCas, sampleUnit, tokens);
+            if (nameSample.getNames().length > 0) {
+                aNameSamples.add(nameSample);
             }
         }
 
-        return nameSamples;
+        return true;
     }
 
     private NameSample createNameSample(CAS aCas, AnnotationFS aSampleUnit,
@@ -24,6 +24,7 @@ import static java.util.Arrays.asList;
 import static java.util.Comparator.comparingInt;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isEmpty;
+import static org.apache.commons.lang3.StringUtils.length;
 import static org.apache.uima.fit.util.CasUtil.getType;
 import static org.apache.uima.fit.util.CasUtil.select;
 import static org.apache.uima.fit.util.CasUtil.selectCovered;
@@ -58,6 +59,7 @@ import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.DataSplitter;
 import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.EvaluationResult;
 import de.tudarmstadt.ukp.inception.recommendation.api.evaluation.LabelPair;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.IncrementalTrainingSupport;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngine;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationException;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
@@ -71,6 +73,7 @@ import de.tudarmstadt.ukp.inception.rendering.model.Range;
 
 public class StringMatchingRecommender
     extends RecommendationEngine
+    implements IncrementalTrainingSupport<GazeteerEntry>
 {
     public static final Key<Trie<DictEntry>> KEY_MODEL = new Key<>("model");
 
@@ -149,6 +152,49 @@ public class StringMatchingRecommender
 
     @Override
     public void train(RecommenderContext aContext, List<CAS> aCasses) throws RecommendationException
+    {
+        List<GazeteerEntry> samples = new ArrayList<>();
+        for (CAS cas : aCasses) {
+            samples.addAll(extractTrainingSamples(cas));
+        }
+
+        trainOnSamples(aContext, samples);
+    }
+
+    @Override
+    public List<GazeteerEntry> extractTrainingSamples(CAS aCas)
+    {
+        Type predictedType = getPredictedType(aCas);
+        Feature predictedFeature = getPredictedFeature(aCas);
+        boolean isStringMultiValue = CAS.TYPE_NAME_STRING_ARRAY
+                .equals(predictedFeature.getRange().getName());
+
+        List<GazeteerEntry> samples = new ArrayList<>();
+        for (AnnotationFS ann : select(aCas, predictedType)) {
+            if (isStringMultiValue) {
+                for (String label : FSUtil.getFeature(ann, predictedFeature, String[].class)) {
+                    samples.add(new GazeteerEntry(ann.getCoveredText(), label));
+                }
+            }
+            else {
+                samples.add(new GazeteerEntry(ann.getCoveredText(),
+                        ann.getFeatureValueAsString(predictedFeature)));
+            }
+        }
+
+        return samples;
+    }
+
+    @Override
+    public long estimateSampleSize(GazeteerEntry aSample)
+    {
+        // Object headers and references of the entry and its strings
+        return 96 + 2l * (length(aSample.text) + length(aSample.label));
+    }
+
+    @Override
+    public void trainOnSamples(RecommenderContext aContext, List<GazeteerEntry> aSamples)
+        throws RecommendationException
     {
         // Pre-load the gazeteers into the model
         if (gazeteerService != null) {
@@ -169,27 +215,12 @@ public class StringMatchingRecommender
 
         Trie<DictEntry> dict = aContext.get(KEY_MODEL).orElseGet(this::createTrie);
 
-        for (CAS cas : aCasses) {
-            Type predictedType = getPredictedType(cas);
-            Feature predictedFeature = getPredictedFeature(cas);
-            boolean isStringMultiValue = CAS.TYPE_NAME_STRING_ARRAY
-                    .equals(predictedFeature.getRange().getName());
-
-            for (AnnotationFS ann : select(cas, predictedType)) {
-                if (isStringMultiValue) {
-                    for (String label : FSUtil.getFeature(ann, predictedFeature, String[].class)) {
-                        learn(dict, ann.getCoveredText(), label);
-                    }
-                }
-                else {
-                    learn(dict, ann.getCoveredText(),
-                            ann.getFeatureValueAsString(predictedFeature));
-                }
-            }
+        for (GazeteerEntry sample : aSamples) {
+            learn(dict, sample.text, sample.label);
         }
 
-        aContext.info("Learned dictionary model with %d entries on %d documents", dict.size(),
-                aCasses.size());
+        aContext.info("Learned dictionary model with %d entries from %d annotations", dict.size(),
+                aSamples.size());
 
         aContext.put(KEY_MODEL, dict);
     }
@@ -47,6 +47,28 @@ public interface LearningRecordService
      */
     List<LearningRecord> listRecords(String aUser, AnnotationLayer aLayer, int aLimit);
 
+    /**
+     * @return the learning records for the given user and layer which refer to the given position
+     *         and label in the given document, newest first. Learning records with the action
+     *         {@link LearningRecordType#SHOWN} are <b>not</b> returned by this method. Other than
+     *         {@link #listRecords}, this method is backed by an in-memory index and is meant to be
+     *         called for every suggestion that is checked against the learning history.
+     * @param aUser
+     *            the annotator user
+     * @param aLayer
+     *            the layer
+     * @param aDocumentName
+     *            the name of the document
+     * @param aBegin
+     *            the begin offset
+     * @param aEnd
+     *            the end offset
+     * @param aLabel
+     *            the label
+     */
+    List<LearningRecord> findRecords(String aUser, AnnotationLayer aLayer, String aDocumentName,
+            int aBegin, int aEnd, String aLabel);
+
     void deleteRecords(SourceDocument document, String user);
 
     LearningRecord getRecordById(long recordId);
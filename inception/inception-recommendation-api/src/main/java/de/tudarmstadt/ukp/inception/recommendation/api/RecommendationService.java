@@ -124,7 +124,9 @@ public interface RecommendationService
     boolean switchPredictions(User aUser, Project aProject);
 
     /**
-     * Returns the {@code RecommenderContext} for the given recommender if it exists.
+     * Returns the {@code RecommenderContext} for the given recommender if it exists. If the
+     * recommender uses a {@link Recommender#isSharedModel() shared model}, the context is the same
+     * for all users.
      *
      * @param aUser
      *            The owner of the context
@@ -135,7 +137,8 @@ public interface RecommendationService
     Optional<RecommenderContext> getContext(User aUser, Recommender aRecommender);
 
     /**
-     * Publishes a new context for the given recommender.
+     * Publishes a new context for the given recommender. If the recommender uses a
+     * {@link Recommender#isSharedModel() shared model}, the context is published for all users.
      *
      * @param aUser
      *            The owner of the context.
@@ -146,6 +149,29 @@ public interface RecommendationService
      */
     void putContext(User aUser, Recommender aRecommender, RecommenderContext aContext);
 
+    /**
+     * Checks if the shared model of the given recommender needs to be trained because no model has
+     * been trained yet or because annotations in the project have changed since. If so, the
+     * training is claimed by the caller, so the training runs of other users skip the recommender
+     * while it is being trained. The model only counts as trained once the caller has published
+     * the new context using {@link #putContext}. If the training fails or produces no context, the
+     * caller must {@link #releaseSharedModelTraining release} the claim.
+     *
+     * @param aRecommender
+     *            a recommender using a {@link Recommender#isSharedModel() shared model}.
+     * @return whether the caller should train the shared model.
+     */
+    boolean claimSharedModelTraining(Recommender aRecommender);
+
+    /**
+     * Releases a claim obtained via {@link #claimSharedModelTraining} without publishing a new
+     * context, so the next training run trains the shared model again.
+     *
+     * @param aRecommender
+     *            a recommender using a {@link Recommender#isSharedModel() shared model}.
+     */
+    void releaseSharedModelTraining(Recommender aRecommender);
+
     /**
      * Uses the given annotation suggestion to create a new annotation or to update a feature in an
      * existing annotation.
@@ -18,25 +18,27 @@
 package de.tudarmstadt.ukp.inception.recommendation.api.model;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
 import static java.util.Collections.newSetFromMap;
-import static java.util.stream.Collectors.toList;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import org.apache.commons.lang3.Validate;
 
-import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
-import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
@@ -50,35 +52,34 @@ import de.tudarmstadt.ukp.inception.rendering.vmodel.VID;
  * 
  * If the prediction task has run it stores the predicted annotations for an annotation layer in the
  * predictions map.
+ * <p>
+ * The predictions are indexed by document, recommender and position. Since a recommender always
+ * predicts for a single layer, this also makes it cheap to look up the predictions for a layer in
+ * a document without having to look at the predictions for other documents or layers.
+ * </p>
  */
 public class Predictions
     implements Serializable
 {
     private static final long serialVersionUID = -1598768729246662885L;
 
-    private Map<ExtendedId, AnnotationSuggestion> predictions = new ConcurrentHashMap<>();
-    private Set<String> seenDocumentsForPrediction = newSetFromMap(new ConcurrentHashMap<>());
+    // document name -> recommender ID -> predictions of the recommender in the document
+    private final Map<String, Map<Long, RecommenderPredictions>> predictions = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Set<String> seenDocumentsForPrediction = newSetFromMap(
+            new ConcurrentHashMap<>());
 
     private final Project project;
     private final User user;
     private final List<LogMessage> log = new ArrayList<>();
 
-    public Predictions(Project aProject, User aUser, Map<ExtendedId, SpanSuggestion> aPredictions)
+    public Predictions(User aUser, Project aProject)
     {
         Validate.notNull(aProject, "Project must be specified");
         Validate.notNull(aUser, "User must be specified");
 
         project = aProject;
         user = aUser;
-
-        if (aPredictions != null) {
-            predictions = new ConcurrentHashMap<>(aPredictions);
-        }
-    }
-
-    public Predictions(User aUser, Project aProject)
-    {
-        this(aProject, aUser, null);
     }
 
     /**
@@ -86,28 +87,29 @@ public class Predictions
      *            the suggestion type
      * @param aLayer
      *            the layer
-     * @param aDocumentService
-     *            the document service for obtaining documents
      * @param <T>
      *            the suggestion type
-     * @return the predictions of a given window for each document, where the outer list is a list
-     *         of tokens and the inner list is a list of predictions for a token. The method filters
-     *         all tokens which already have an annotation and don't need further recommendation.
+     * @return the predictions for each document, where the outer list is a list of tokens and the
+     *         inner list is a list of predictions for a token. The method filters all tokens which
+     *         already have an annotation and don't need further recommendation.
      */
     public <T extends AnnotationSuggestion> Map<String, SuggestionDocumentGroup<T>> getPredictionsForWholeProject(
-            Class<T> type, AnnotationLayer aLayer, DocumentService aDocumentService)
+            Class<T> type, AnnotationLayer aLayer)
     {
-        Map<String, SuggestionDocumentGroup<T>> result = new HashMap<>();
-
-        List<AnnotationDocument> docs = aDocumentService.listAnnotationDocuments(project, user);
+        List<String> documentNames;
+        lock.readLock().lock();
+        try {
+            documentNames = new ArrayList<>(predictions.keySet());
+        }
+        finally {
+            lock.readLock().unlock();
+        }
 
-        for (AnnotationDocument doc : docs) {
+        Map<String, SuggestionDocumentGroup<T>> result = new HashMap<>();
+        for (String documentName : documentNames) {
             // TODO #176 use the document Id once it it available in the CAS
-            SuggestionDocumentGroup<T> p = getGroupedPredictions(type, doc.getName(), aLayer, -1,
-                    -1);
-            result.put(doc.getName(), p);
+            result.put(documentName, getGroupedPredictions(type, documentName, aLayer, -1, -1));
         }
-
         return result;
     }
 
@@ -145,22 +147,34 @@ public class Predictions
      * {@code aWindowBegin} and {@code aWindowEnd} are {@code -1}, then they are ignored
      * respectively. This is useful when all suggestions should be fetched.
      */
-    @SuppressWarnings({ "rawtypes", "unchecked" })
     private <T extends AnnotationSuggestion> List<T> getFlattenedPredictions(Class<T> type,
             String aDocumentName, AnnotationLayer aLayer, int aWindowBegin, int aWindowEnd)
     {
-        return predictions.entrySet().stream().filter(f -> type.isInstance(f.getValue()))
-                .map(f -> (Entry<ExtendedId, T>) (Entry) f)
-                .filter(f -> f.getKey().getDocumentName().equals(aDocumentName))
-                .filter(f -> f.getKey().getLayerId() == aLayer.getId())
-                // .filter(f -> overlapping(f.getValue().getWindowBegin(),
-                // f.getValue().getWindowEnd(),
-                // aWindowBegin == -1 ? 0 : aWindowBegin,
-                // aWindowEnd == -1 ? MAX_VALUE : aWindowEnd))
-                .filter(f -> aWindowBegin == -1 || (f.getValue().getWindowBegin() >= aWindowBegin))
-                .filter(f -> aWindowEnd == -1 || (f.getValue().getWindowEnd() <= aWindowEnd))
-                .sorted(Comparator.comparingInt(e2 -> e2.getValue().getWindowBegin()))
-                .map(Map.Entry::getValue).collect(toList());
+        List<T> result = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            for (RecommenderPredictions recPredictions : getRecommenderPredictions(
+                    aDocumentName)) {
+                if (recPredictions.layerId != aLayer.getId()) {
+                    continue;
+                }
+
+                recPredictions.forEach(suggestion -> {
+                    if (type.isInstance(suggestion)
+                            && (aWindowBegin == -1 || suggestion.getWindowBegin() >= aWindowBegin)
+                            && (aWindowEnd == -1 || suggestion.getWindowEnd() <= aWindowEnd)) {
+                        result.add(type.cast(suggestion));
+                    }
+                });
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+
+        result.sort(Comparator.comparingInt(AnnotationSuggestion::getWindowBegin));
+        return result;
     }
 
     /**
@@ -173,22 +187,42 @@ public class Predictions
      */
     public Optional<AnnotationSuggestion> getPredictionByVID(SourceDocument aDocument, VID aVID)
     {
-        return predictions.values().stream()
-                .filter(f -> f.getDocumentName().equals(aDocument.getName()))
-                .filter(f -> f.getId() == aVID.getSubId())
-                .filter(f -> f.getRecommenderId() == aVID.getId()).findFirst();
+        lock.readLock().lock();
+        try {
+            RecommenderPredictions recPredictions = predictions
+                    .getOrDefault(aDocument.getName(), emptyMap()).get((long) aVID.getId());
+            if (recPredictions == null) {
+                return Optional.empty();
+            }
+
+            return recPredictions.find(suggestion -> suggestion.getId() == aVID.getSubId());
+        }
+        finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
+     * Adds the given predictions. A prediction replaces any prediction already present for the
+     * same document, recommender, position and ID.
+     * 
      * @param aPredictions
      *            list of sentences containing recommendations
      */
     public void putPredictions(List<AnnotationSuggestion> aPredictions)
     {
-        aPredictions.forEach(prediction -> predictions.put(new ExtendedId(user.getUsername(),
-                project.getId(), prediction.getDocumentName(), prediction.getLayerId(),
-                prediction.getPosition(), prediction.getRecommenderId(), prediction.getId(), -1),
-                prediction));
+        lock.writeLock().lock();
+        try {
+            for (AnnotationSuggestion prediction : aPredictions) {
+                predictions.computeIfAbsent(prediction.getDocumentName(), k -> new HashMap<>())
+                        .computeIfAbsent(prediction.getRecommenderId(),
+                                k -> new RecommenderPredictions(prediction.getLayerId()))
+                        .put(prediction);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
     }
 
     public Project getProject()
@@ -198,23 +232,39 @@ public class Predictions
 
     public boolean hasPredictions()
     {
-        return !predictions.isEmpty();
-    }
-
-    public Map<ExtendedId, AnnotationSuggestion> getGroupedPredictions()
-    {
-        return predictions;
+        lock.readLock().lock();
+        try {
+            return !predictions.isEmpty();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
     }
 
     public void clearPredictions()
     {
-        predictions.clear();
-        seenDocumentsForPrediction.clear();
+        lock.writeLock().lock();
+        try {
+            predictions.clear();
+            seenDocumentsForPrediction.clear();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
     }
 
     public void removePredictions(Long recommenderId)
     {
-        predictions.entrySet().removeIf((p) -> p.getKey().getRecommenderId() == recommenderId);
+        lock.writeLock().lock();
+        try {
+            predictions.values().removeIf(byRecommender -> {
+                byRecommender.remove(recommenderId);
+                return byRecommender.isEmpty();
+            });
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -234,34 +284,76 @@ public class Predictions
      *            the given annotation feature name
      * @return the annotation suggestions
      */
-    @SuppressWarnings({ "rawtypes", "unchecked" })
     public List<SpanSuggestion> getPredictionsByTokenAndFeature(String aDocumentName,
             AnnotationLayer aLayer, int aBegin, int aEnd, String aFeature)
     {
-        return predictions.entrySet().stream().filter(f -> f.getValue() instanceof SpanSuggestion)
-                .map(f -> (Entry<ExtendedId, SpanSuggestion>) (Entry) f)
-                .filter(f -> f.getKey().getDocumentName().equals(aDocumentName))
-                .filter(f -> f.getKey().getLayerId() == aLayer.getId())
-                .filter(f -> f.getValue().getBegin() == aBegin)
-                .filter(f -> f.getValue().getEnd() == aEnd)
-                .filter(f -> f.getValue().getFeature().equals(aFeature)).map(Map.Entry::getValue)
-                .collect(Collectors.toList());
+        Offset position = new Offset(aBegin, aEnd);
+        List<SpanSuggestion> result = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            for (RecommenderPredictions recPredictions : getRecommenderPredictions(
+                    aDocumentName)) {
+                if (recPredictions.layerId != aLayer.getId()) {
+                    continue;
+                }
+
+                for (AnnotationSuggestion suggestion : recPredictions.get(position)) {
+                    if (suggestion instanceof SpanSuggestion
+                            && suggestion.getFeature().equals(aFeature)) {
+                        result.add((SpanSuggestion) suggestion);
+                    }
+                }
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+
+        return result;
     }
 
     public List<AnnotationSuggestion> getPredictionsByRecommenderAndDocument(
             Recommender aRecommender, String aDocument)
     {
-        return predictions.entrySet().stream()
-                .filter(f -> f.getKey().getRecommenderId() == (long) aRecommender.getId()
-                        && f.getKey().getDocumentName().equals(aDocument))
-                .map(Map.Entry::getValue).collect(Collectors.toList());
+        List<AnnotationSuggestion> result = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            RecommenderPredictions recPredictions = predictions
+                    .getOrDefault(aDocument, emptyMap()).get(aRecommender.getId());
+            if (recPredictions != null) {
+                recPredictions.forEach(result::add);
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+
+        return result;
     }
 
     public List<AnnotationSuggestion> getPredictionsByDocument(String aDocument)
     {
-        return predictions.entrySet().stream()
-                .filter(f -> f.getKey().getDocumentName().equals(aDocument))
-                .map(Map.Entry::getValue).collect(Collectors.toList());
+        List<AnnotationSuggestion> result = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            for (RecommenderPredictions recPredictions : getRecommenderPredictions(aDocument)) {
+                recPredictions.forEach(result::add);
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+
+        return result;
+    }
+
+    private Iterable<RecommenderPredictions> getRecommenderPredictions(String aDocumentName)
+    {
+        Map<Long, RecommenderPredictions> byRecommender = predictions.get(aDocumentName);
+        return byRecommender != null ? byRecommender.values() : emptyList();
     }
 
     public void markDocumentAsPredictionCompleted(SourceDocument aDocument)
@@ -297,4 +389,61 @@ public class Predictions
             return asList(log.stream().toArray(LogMessage[]::new));
         }
     }
+
+    /**
+     * The predictions of a single recommender in a single document grouped by position. Usually,
+     * there is only a single prediction per position and ID, but the ID alone is not unique since
+     * predictions inherited from a previous run may share an ID with a new prediction.
+     */
+    private static class RecommenderPredictions
+        implements Serializable
+    {
+        private static final long serialVersionUID = 1802467271282384447L;
+
+        private final long layerId;
+        private final Map<Position, List<AnnotationSuggestion>> byPosition = //
+                new LinkedHashMap<>();
+
+        RecommenderPredictions(long aLayerId)
+        {
+            layerId = aLayerId;
+        }
+
+        void put(AnnotationSuggestion aSuggestion)
+        {
+            List<AnnotationSuggestion> suggestions = byPosition
+                    .computeIfAbsent(aSuggestion.getPosition(), k -> new ArrayList<>(1));
+            for (int i = 0; i < suggestions.size(); i++) {
+                if (suggestions.get(i).getId() == aSuggestion.getId()) {
+                    suggestions.set(i, aSuggestion);
+                    return;
+                }
+            }
+            suggestions.add(aSuggestion);
+        }
+
+        List<AnnotationSuggestion> get(Position aPosition)
+        {
+            return byPosition.getOrDefault(aPosition, emptyList());
+        }
+
+        Optional<AnnotationSuggestion> find(Predicate<AnnotationSuggestion> aFilter)
+        {
+            for (List<AnnotationSuggestion> suggestions : byPosition.values()) {
+                for (AnnotationSuggestion suggestion : suggestions) {
+                    if (aFilter.test(suggestion)) {
+                        return Optional.of(suggestion);
+                    }
+                }
+            }
+            return Optional.empty();
+        }
+
+        void forEach(Consumer<AnnotationSuggestion> aAction)
+        {
+            for (List<AnnotationSuggestion> suggestions : byPosition.values()) {
+                suggestions.forEach(aAction);
+            }
+        }
+    }
 }
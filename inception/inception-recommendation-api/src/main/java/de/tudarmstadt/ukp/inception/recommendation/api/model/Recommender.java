@@ -86,6 +86,12 @@ public class Recommender
 
     private int maxRecommendations;
 
+    /**
+     * If set, a single model is trained on the annotations of all users and shared by them instead
+     * of training a model for every user.
+     */
+    private boolean sharedModel;
+
     /**
      * Only documents that have an annotation state not contained in this list are used for
      * training.
@@ -222,6 +228,16 @@ public class Recommender
         maxRecommendations = aMaxRecommendations;
     }
 
+    public boolean isSharedModel()
+    {
+        return sharedModel;
+    }
+
+    public void setSharedModel(boolean aSharedModel)
+    {
+        sharedModel = aSharedModel;
+    }
+
     public Set<AnnotationDocumentState> getStatesIgnoredForTraining()
     {
         return statesIgnoredForTraining;
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.api.recommender;
+
+import java.util.List;
+
+import de.tudarmstadt.ukp.inception.rendering.model.Range;
+
+/**
+ * Optional capability of a {@link RecommendationEngine} which can predict annotations for several
+ * documents at once. Such engines can amortize the cost of invoking a model or of calling a remote
+ * service across documents. When predictions are computed for all documents, the documents are
+ * passed to such engines in batches instead of one by one.
+ */
+public interface BatchPredictionSupport
+{
+    /**
+     * Predicts annotations for several documents. Calling this method must be equivalent to
+     * calling {@link RecommendationEngine#predict(RecommenderContext, org.apache.uima.cas.CAS, int,
+     * int)} for each of the units.
+     * 
+     * @param aContext
+     *            the recommender context.
+     * @param aUnits
+     *            the documents and the ranges in which predictions should be generated.
+     * @return for each unit (in the same order), the range in which the recommender generated
+     *         predictions.
+     * @throws RecommendationException
+     *             if there was a problem during prediction.
+     */
+    List<Range> predict(RecommenderContext aContext, List<PredictionUnit> aUnits)
+        throws RecommendationException;
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.api.recommender;
+
+import java.util.List;
+
+import org.apache.uima.cas.CAS;
+
+/**
+ * Optional capability of a {@link RecommendationEngine} which extracts its training samples from
+ * each document independently of the other documents. For such engines, the samples extracted
+ * from a document are kept until the document changes, so a training run only needs to read and
+ * process the documents which have changed since the last run.
+ * 
+ * @param <S>
+ *            the type of the training samples. Samples are kept in memory between training runs,
+ *            so they should be compact and must not refer to the CAS they were extracted from.
+ */
+public interface IncrementalTrainingSupport<S>
+{
+    /**
+     * @param aCas
+     *            a document to extract training samples from.
+     * @return the training samples contained in the given document.
+     */
+    List<S> extractTrainingSamples(CAS aCas);
+
+    /**
+     * @param aSample
+     *            a training sample.
+     * @return a rough estimate of the memory used by the given sample in bytes. It is used to limit
+     *         the memory used for keeping samples between training runs.
+     */
+    long estimateSampleSize(S aSample);
+
+    /**
+     * Trains the model on the given samples. Calling this method with the samples extracted from a
+     * list of CASes must be equivalent to calling {@link RecommendationEngine#train} with that
+     * list.
+     * 
+     * @param aContext
+     *            the recommender context.
+     * @param aSamples
+     *            the training samples of all documents used for training.
+     * @throws RecommendationException
+     *             if there was a problem during training.
+     */
+    void trainOnSamples(RecommenderContext aContext, List<S> aSamples)
+        throws RecommendationException;
+}
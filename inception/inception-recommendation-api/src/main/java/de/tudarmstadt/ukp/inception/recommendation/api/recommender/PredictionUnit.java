@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.api.recommender;
+
+import org.apache.uima.cas.CAS;
+
+/**
+ * A document and the range within the document in which predictions should be generated.
+ * 
+ * @see BatchPredictionSupport
+ */
+public class PredictionUnit
+{
+    private final CAS cas;
+    private final int begin;
+    private final int end;
+
+    public PredictionUnit(CAS aCas, int aBegin, int aEnd)
+    {
+        cas = aCas;
+        begin = aBegin;
+        end = aEnd;
+    }
+
+    public CAS getCas()
+    {
+        return cas;
+    }
+
+    public int getBegin()
+    {
+        return begin;
+    }
+
+    public int getEnd()
+    {
+        return end;
+    }
+}
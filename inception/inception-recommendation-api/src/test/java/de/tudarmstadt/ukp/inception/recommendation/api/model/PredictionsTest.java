@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.api.model;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
+
+public class PredictionsTest
+{
+    private AnnotationLayer layer1;
+    private AnnotationLayer layer2;
+    private Recommender rec1;
+    private Predictions sut;
+
+    @BeforeEach
+    public void setup()
+    {
+        layer1 = new AnnotationLayer();
+        layer1.setId(1l);
+        layer2 = new AnnotationLayer();
+        layer2.setId(2l);
+
+        rec1 = new Recommender("rec1", layer1);
+        rec1.setId(1l);
+
+        sut = new Predictions(new User("user"), new Project("project"));
+    }
+
+    @Test
+    public void thatPredictionsCanBeLookedUpByDocumentLayerAndRecommender()
+    {
+        var rec1Doc1 = new SpanSuggestion(1, 1, "rec1", 1, "value", "doc1", 5, 6, "a", "A", "#A",
+                0.1, "E1");
+        var rec1Doc2 = new SpanSuggestion(2, 1, "rec1", 1, "value", "doc2", 0, 1, "b", "B", "#B",
+                0.2, "E2");
+        var rec2Doc1 = new SpanSuggestion(3, 2, "rec2", 2, "value", "doc1", 0, 1, "c", "C", "#C",
+                0.1, "E1");
+        var rec1Doc1Early = new SpanSuggestion(4, 1, "rec1", 1, "value", "doc1", 0, 1, "d", "D",
+                "#D", 0.3, "E3");
+
+        sut.putPredictions(asList(rec1Doc1, rec1Doc2, rec2Doc1, rec1Doc1Early));
+
+        assertThat(sut.getGroupedPredictions(SpanSuggestion.class, "doc1", layer1, -1, -1)
+                .stream().flatMap(SuggestionGroup::stream)) //
+                        .containsExactly(rec1Doc1Early, rec1Doc1);
+        assertThat(sut.getGroupedPredictions(SpanSuggestion.class, "doc1", layer1, 2, 10)
+                .stream().flatMap(SuggestionGroup::stream)) //
+                        .containsExactly(rec1Doc1);
+        assertThat(sut.getPredictionsByDocument("doc1")) //
+                .containsExactlyInAnyOrder(rec1Doc1, rec2Doc1, rec1Doc1Early);
+        assertThat(sut.getPredictionsByRecommenderAndDocument(rec1, "doc1")) //
+                .containsExactlyInAnyOrder(rec1Doc1, rec1Doc1Early);
+        assertThat(sut.getPredictionsByTokenAndFeature("doc1", layer2, 0, 1, "value")) //
+                .containsExactly(rec2Doc1);
+        assertThat(sut.getPredictionsForWholeProject(SpanSuggestion.class, layer1)) //
+                .containsOnlyKeys("doc1", "doc2");
+    }
+
+    @Test
+    public void thatPredictionsAreReplacedOnlyAtTheSamePosition()
+    {
+        var original = new SpanSuggestion(1, 1, "rec1", 1, "value", "doc1", 0, 1, "a", "A", "#A",
+                0.1, "E1");
+        var replacement = new SpanSuggestion(1, 1, "rec1", 1, "value", "doc1", 0, 1, "a", "B",
+                "#B", 0.1, "E1");
+        var sameIdOtherPosition = new SpanSuggestion(1, 1, "rec1", 1, "value", "doc1", 2, 3, "a",
+                "A", "#A", 0.1, "E1");
+
+        sut.putPredictions(asList(original));
+        sut.putPredictions(asList(replacement, sameIdOtherPosition));
+
+        assertThat(sut.getPredictionsByDocument("doc1")) //
+                .usingElementComparator((a, b) -> a == b ? 0 : 1) //
+                .containsExactlyInAnyOrder(replacement, sameIdOtherPosition);
+    }
+
+    @Test
+    public void thatPredictionsOfRecommenderCanBeRemoved()
+    {
+        sut.putPredictions(asList(
+                new SpanSuggestion(1, 1, "rec1", 1, "value", "doc1", 0, 1, "a", "A", "#A", 0.1,
+                        "E1"),
+                new SpanSuggestion(2, 2, "rec2", 2, "value", "doc2", 0, 1, "b", "B", "#B", 0.1,
+                        "E1")));
+
+        sut.removePredictions(2l);
+
+        assertThat(sut.getPredictionsByDocument("doc1")).hasSize(1);
+        assertThat(sut.getPredictionsByDocument("doc2")).isEmpty();
+        assertThat(sut.hasPredictions()).isTrue();
+
+        sut.removePredictions(1l);
+
+        assertThat(sut.hasPredictions()).isFalse();
+    }
+}
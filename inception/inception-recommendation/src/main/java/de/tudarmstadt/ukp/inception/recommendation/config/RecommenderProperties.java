@@ -17,9 +17,29 @@
  */
 package de.tudarmstadt.ukp.inception.recommendation.config;
 
+import org.springframework.util.unit.DataSize;
+
 public interface RecommenderProperties
 {
     boolean isActionButtonsEnabled();
 
     boolean isEnabled();
+
+    /**
+     * @return maximum number of threads used to train recommenders and to compute predictions
+     *         concurrently.
+     */
+    int getWorkerThreads();
+
+    /**
+     * @return maximum number of documents passed at once to recommenders which support batch
+     *         prediction when predicting for all documents.
+     */
+    int getPredictionBatchSize();
+
+    /**
+     * @return maximum estimated memory used for keeping the training samples extracted from
+     *         documents between training runs.
+     */
+    DataSize getTrainingSampleCacheMemory();
 }
@@ -18,6 +18,7 @@
 package de.tudarmstadt.ukp.inception.recommendation.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
 /**
  * <p>
@@ -30,6 +31,9 @@ public class RecommenderPropertiesImpl
 {
     private boolean enabled;
     private boolean actionButtonsEnabled;
+    private int workerThreads = Runtime.getRuntime().availableProcessors();
+    private int predictionBatchSize = 16;
+    private DataSize trainingSampleCacheMemory = DataSize.ofMegabytes(256);
 
     @Override
     public boolean isEnabled()
@@ -52,4 +56,37 @@ public class RecommenderPropertiesImpl
     {
         actionButtonsEnabled = aActionButtonsEnabled;
     }
+
+    @Override
+    public int getWorkerThreads()
+    {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int aWorkerThreads)
+    {
+        workerThreads = aWorkerThreads;
+    }
+
+    @Override
+    public int getPredictionBatchSize()
+    {
+        return predictionBatchSize;
+    }
+
+    public void setPredictionBatchSize(int aPredictionBatchSize)
+    {
+        predictionBatchSize = aPredictionBatchSize;
+    }
+
+    @Override
+    public DataSize getTrainingSampleCacheMemory()
+    {
+        return trainingSampleCacheMemory;
+    }
+
+    public void setTrainingSampleCacheMemory(DataSize aTrainingSampleCacheMemory)
+    {
+        trainingSampleCacheMemory = aTrainingSampleCacheMemory;
+    }
 }
@@ -55,6 +55,8 @@ import de.tudarmstadt.ukp.inception.recommendation.render.RecommendationRenderer
 import de.tudarmstadt.ukp.inception.recommendation.service.LearningRecordServiceImpl;
 import de.tudarmstadt.ukp.inception.recommendation.service.RecommendationServiceImpl;
 import de.tudarmstadt.ukp.inception.recommendation.service.RecommenderFactoryRegistryImpl;
+import de.tudarmstadt.ukp.inception.recommendation.service.RecommenderWorkerPool;
+import de.tudarmstadt.ukp.inception.recommendation.service.TrainingSampleStore;
 import de.tudarmstadt.ukp.inception.recommendation.sidebar.RecommendationSidebarFactory;
 import de.tudarmstadt.ukp.inception.scheduling.SchedulingService;
 import de.tudarmstadt.ukp.inception.schema.AnnotationSchemaService;
@@ -77,11 +79,13 @@ public class RecommenderServiceAutoConfiguration
             RecommenderFactoryRegistry aRecommenderFactoryRegistry,
             SchedulingService aSchedulingService, AnnotationSchemaService aAnnoService,
             DocumentService aDocumentService, LearningRecordService aLearningRecordService,
-            ProjectService aProjectService, ApplicationEventPublisher aApplicationEventPublisher)
+            ProjectService aProjectService, ApplicationEventPublisher aApplicationEventPublisher,
+            RecommenderWorkerPool aRecommenderWorkerPool, RecommenderProperties aProperties)
     {
         return new RecommendationServiceImpl(aPreferencesService, aSessionRegistry, aUserRepository,
                 aRecommenderFactoryRegistry, aSchedulingService, aAnnoService, aDocumentService,
-                aLearningRecordService, aProjectService, entityManager, aApplicationEventPublisher);
+                aLearningRecordService, aProjectService, entityManager, aApplicationEventPublisher,
+                aRecommenderWorkerPool, aProperties);
     }
 
     @Bean
@@ -90,6 +94,18 @@ public class RecommenderServiceAutoConfiguration
         return new LearningRecordServiceImpl(entityManager);
     }
 
+    @Bean
+    public TrainingSampleStore trainingSampleStore(RecommenderProperties aProperties)
+    {
+        return new TrainingSampleStore(aProperties);
+    }
+
+    @Bean
+    public RecommenderWorkerPool recommenderWorkerPool(RecommenderProperties aProperties)
+    {
+        return new RecommenderWorkerPool(aProperties.getWorkerThreads());
+    }
+
     @ConditionalOnWebApplication
     @ConditionalOnProperty(prefix = "recommender.evaluation-page", //
             name = "enabled", havingValue = "true", matchIfMissing = true)
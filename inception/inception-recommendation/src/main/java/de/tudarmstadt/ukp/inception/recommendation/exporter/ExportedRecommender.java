@@ -56,6 +56,9 @@ public class ExportedRecommender
     @JsonProperty("maxRecommendations")
     private int maxRecommendations;
 
+    @JsonProperty("sharedModel")
+    private boolean sharedModel;
+
     @JsonProperty("statesIgnoredForTraining")
     private Set<AnnotationDocumentState> statesIgnoredForTraining;
 
@@ -152,6 +155,16 @@ public class ExportedRecommender
         maxRecommendations = aMaxRecommendations;
     }
 
+    public boolean isSharedModel()
+    {
+        return sharedModel;
+    }
+
+    public void setSharedModel(boolean aSharedModel)
+    {
+        sharedModel = aSharedModel;
+    }
+
     public Set<AnnotationDocumentState> getStatesIgnoredForTraining()
     {
         return statesIgnoredForTraining;
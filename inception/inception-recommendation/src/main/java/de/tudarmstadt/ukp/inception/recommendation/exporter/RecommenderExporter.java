@@ -97,6 +97,7 @@ public class RecommenderExporter
             exportedRecommender.setTool(recommender.getTool());
             exportedRecommender.setSkipEvaluation(recommender.isSkipEvaluation());
             exportedRecommender.setMaxRecommendations(recommender.getMaxRecommendations());
+            exportedRecommender.setSharedModel(recommender.isSharedModel());
             exportedRecommender
                     .setStatesIgnoredForTraining(recommender.getStatesIgnoredForTraining());
             exportedRecommender.setTraits(recommender.getTraits());
@@ -124,6 +125,7 @@ public class RecommenderExporter
             recommender.setTool(exportedRecommender.getTool());
             recommender.setSkipEvaluation(exportedRecommender.isSkipEvaluation());
             recommender.setMaxRecommendations(exportedRecommender.getMaxRecommendations());
+            recommender.setSharedModel(exportedRecommender.isSharedModel());
             recommender
                     .setStatesIgnoredForTraining(exportedRecommender.getStatesIgnoredForTraining());
             recommender.setTraits(exportedRecommender.getTraits());
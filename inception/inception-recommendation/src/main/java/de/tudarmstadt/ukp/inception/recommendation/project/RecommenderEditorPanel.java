@@ -90,6 +90,7 @@ public class RecommenderEditorPanel
     private static final String MID_FEATURE = "feature";
     private static final String MID_LAYER = "layer";
     private static final String MID_ENABLED = "enabled";
+    private static final String MID_SHARED_MODEL = "sharedModel";
     private static final String MID_AUTO_GENERATED_NAME = "autoGenerateName";
     private static final String MID_ALWAYS_SELECTED = "alwaysSelected";
     private static final String MID_TOOL = "tool";
@@ -148,6 +149,8 @@ public class RecommenderEditorPanel
 
         form.add(new CheckBox(MID_ENABLED).setOutputMarkupId(true));
 
+        form.add(new CheckBox(MID_SHARED_MODEL).setOutputMarkupId(true));
+
         layerChoice = new DropDownChoice<>(MID_LAYER, this::listLayers);
         layerChoice.setChoiceRenderer(new ChoiceRenderer<>("uiName"));
         layerChoice.setRequired(true);
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.service;
+
+import static java.util.Collections.emptyList;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import de.tudarmstadt.ukp.inception.recommendation.api.model.LearningRecord;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.LearningRecordType;
+
+/**
+ * In-memory index of the learning records of a user on a layer. The records are indexed by
+ * document name, offsets and label so that the records relevant to a suggestion can be looked up
+ * without scanning the whole learning history. Within a position, the records are ordered newest
+ * first. Records with the action {@link LearningRecordType#SHOWN} are not indexed.
+ */
+class LearningRecordIndex
+{
+    private final Map<Key, List<LearningRecord>> records = new HashMap<>();
+
+    /**
+     * @param aRecords
+     *            the records to index, ordered newest first.
+     */
+    LearningRecordIndex(List<LearningRecord> aRecords)
+    {
+        for (LearningRecord record : aRecords) {
+            if (record.getUserAction() != LearningRecordType.SHOWN) {
+                records.computeIfAbsent(Key.of(record), k -> new ArrayList<>()).add(record);
+            }
+        }
+    }
+
+    synchronized List<LearningRecord> find(String aDocumentName, int aBegin, int aEnd,
+            String aLabel)
+    {
+        List<LearningRecord> result = records.get(new Key(aDocumentName, aBegin, aEnd, aLabel));
+        return result != null ? new ArrayList<>(result) : emptyList();
+    }
+
+    synchronized void add(LearningRecord aRecord)
+    {
+        if (aRecord.getUserAction() == LearningRecordType.SHOWN) {
+            return;
+        }
+
+        List<LearningRecord> recordsAtPosition = records.computeIfAbsent(Key.of(aRecord),
+                k -> new ArrayList<>());
+        // The record may already have been added if the index was loaded after it was committed
+        if (aRecord.getId() != null) {
+            recordsAtPosition.removeIf(r -> Objects.equals(r.getId(), aRecord.getId()));
+        }
+        recordsAtPosition.add(0, aRecord);
+    }
+
+    /**
+     * Removes the records at the position and with the label of the given record which match the
+     * given filter.
+     */
+    synchronized void removeAt(LearningRecord aRecord, Predicate<LearningRecord> aFilter)
+    {
+        Key key = Key.of(aRecord);
+        List<LearningRecord> recordsAtPosition = records.get(key);
+        if (recordsAtPosition != null) {
+            recordsAtPosition.removeIf(aFilter);
+            if (recordsAtPosition.isEmpty()) {
+                records.remove(key);
+            }
+        }
+    }
+
+    synchronized void removeIf(Predicate<LearningRecord> aFilter)
+    {
+        records.values().removeIf(recordsAtPosition -> {
+            recordsAtPosition.removeIf(aFilter);
+            return recordsAtPosition.isEmpty();
+        });
+    }
+
+    private static final class Key
+    {
+        private final String documentName;
+        private final int begin;
+        private final int end;
+        private final String label;
+
+        private Key(String aDocumentName, int aBegin, int aEnd, String aLabel)
+        {
+            documentName = aDocumentName;
+            begin = aBegin;
+            end = aEnd;
+            label = aLabel;
+        }
+
+        private static Key of(LearningRecord aRecord)
+        {
+            return new Key(aRecord.getSourceDocument().getName(), aRecord.getOffsetBegin(),
+                    aRecord.getOffsetEnd(), aRecord.getAnnotation());
+        }
+
+        @Override
+        public boolean equals(Object aOther)
+        {
+            if (this == aOther) {
+                return true;
+            }
+
+            if (!(aOther instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) aOther;
+            return begin == other.begin && end == other.end
+                    && Objects.equals(documentName, other.documentName)
+                    && Objects.equals(label, other.label);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(documentName, begin, end, label);
+        }
+    }
+}
@@ -19,16 +19,33 @@ package de.tudarmstadt.ukp.inception.recommendation.service;
 
 import static de.tudarmstadt.ukp.inception.recommendation.api.model.SuggestionType.RELATION;
 import static de.tudarmstadt.ukp.inception.recommendation.api.model.SuggestionType.SPAN;
+import static java.lang.Boolean.TRUE;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.bindResource;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.hasResource;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.isSynchronizationActive;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.registerSynchronization;
+import static org.springframework.transaction.support.TransactionSynchronizationManager.unbindResourceIfPossible;
 
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
 
 import org.springframework.context.event.EventListener;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 
 import de.tudarmstadt.ukp.clarin.webanno.api.event.AfterDocumentResetEvent;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.BeforeDocumentRemovedEvent;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
 import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
@@ -54,6 +71,27 @@ public class LearningRecordServiceImpl
 {
     private final EntityManager entityManager;
 
+    /**
+     * Learning record indexes by user and layer ID. The indexes are maintained incrementally as
+     * records are logged or deleted through this service. Changes are only applied to the indexes
+     * once the transaction making them has been committed.
+     */
+    private final Cache<List<Object>, LearningRecordIndex> indexes = Caffeine.newBuilder() //
+            .expireAfterAccess(30, MINUTES) //
+            .maximumSize(1000) //
+            .build();
+
+    /**
+     * Counts the changes to the learning records. An index is only cached if no change has been
+     * made while it was loaded because the load may or may not have seen the change.
+     */
+    private final AtomicLong indexChanges = new AtomicLong();
+
+    /**
+     * Transaction resource key marking that the current transaction has changed learning records.
+     */
+    private final Object uncommittedChanges = new Object();
+
     public LearningRecordServiceImpl(EntityManager aEntityManager)
     {
         entityManager = aEntityManager;
@@ -68,6 +106,16 @@ public class LearningRecordServiceImpl
         deleteRecords(currentDocument, currentUser);
     }
 
+    @EventListener
+    public void beforeDocumentRemoved(BeforeDocumentRemovedEvent aEvent)
+    {
+        // The records are removed from the database by cascading, but we need to drop them from
+        // the indexes - otherwise they would apply to a new document with the same name
+        Long documentId = aEvent.getDocument().getId();
+        updateIndexes(key -> true, index -> index.removeIf(
+                record -> Objects.equals(record.getSourceDocument().getId(), documentId)));
+    }
+
     @Transactional
     @Override
     public void logSpanRecord(SourceDocument aDocument, String aUsername,
@@ -124,17 +172,18 @@ public class LearningRecordServiceImpl
         // matter since there should basically be only one action in the log for any suggestion,
         // irrespective of what that action is.
         String query = String.join("\n", //
-                "DELETE FROM LearningRecord WHERE", "user = :user AND", //
-                "sourceDocument = :sourceDocument AND", //
-                "offsetBegin = :offsetBegin AND", //
-                "offsetEnd = :offsetEnd AND", //
-                "offsetBegin2 = :offsetBegin2 AND", //
-                "offsetEnd2 = :offsetEnd2 AND", //
-                "layer = :layer AND", //
-                "annotationFeature = :annotationFeature AND", //
-                "suggestionType = :suggestionType AND", //
-                "annotation = :annotation");
-        entityManager.createQuery(query) //
+                "SELECT l.id FROM LearningRecord l WHERE", //
+                "l.user = :user AND", //
+                "l.sourceDocument = :sourceDocument AND", //
+                "l.offsetBegin = :offsetBegin AND", //
+                "l.offsetEnd = :offsetEnd AND", //
+                "l.offsetBegin2 = :offsetBegin2 AND", //
+                "l.offsetEnd2 = :offsetEnd2 AND", //
+                "l.layer = :layer AND", //
+                "l.annotationFeature = :annotationFeature AND", //
+                "l.suggestionType = :suggestionType AND", //
+                "l.annotation = :annotation");
+        deleteRecordsById(entityManager.createQuery(query, Long.class) //
                 .setParameter("user", aUsername) //
                 .setParameter("sourceDocument", aSourceDocument) //
                 .setParameter("offsetBegin", aOffsetBegin) //
@@ -145,7 +194,7 @@ public class LearningRecordServiceImpl
                 .setParameter("annotationFeature", aFeature) //
                 .setParameter("suggestionType", aSuggestionType) //
                 .setParameter("annotation", aLabel) //
-                .executeUpdate();
+                .getResultList());
 
         LearningRecord record = new LearningRecord();
         record.setUser(aUsername);
@@ -162,6 +211,11 @@ public class LearningRecordServiceImpl
         record.setChangeLocation(aLocation);
         record.setAnnotationFeature(aFeature);
 
+        updateIndex(aUsername, aLayer, index -> index.removeAt(record,
+                r -> r.getOffsetBegin2() == aOffset2Begin && r.getOffsetEnd2() == aOffset2End
+                        && Objects.equals(r.getAnnotationFeature(), aFeature)
+                        && r.getSuggestionType() == aSuggestionType));
+
         create(record);
     }
 
@@ -192,6 +246,101 @@ public class LearningRecordServiceImpl
         return listRecords(aUsername, aLayer, 0);
     }
 
+    @Transactional
+    @Override
+    public List<LearningRecord> findRecords(String aUsername, AnnotationLayer aLayer,
+            String aDocumentName, int aBegin, int aEnd, String aLabel)
+    {
+        return getIndex(aUsername, aLayer).find(aDocumentName, aBegin, aEnd, aLabel);
+    }
+
+    private LearningRecordIndex getIndex(String aUsername, AnnotationLayer aLayer)
+    {
+        // The cached indexes do not contain the changes of the current transaction until it has
+        // been committed and an index containing them must not be cached
+        if (isSynchronizationActive() && hasResource(uncommittedChanges)) {
+            return new LearningRecordIndex(listRecords(aUsername, aLayer));
+        }
+
+        List<Object> key = asList(aUsername, aLayer.getId());
+
+        LearningRecordIndex index = indexes.getIfPresent(key);
+        if (index != null) {
+            return index;
+        }
+
+        long changes = indexChanges.get();
+
+        LearningRecordIndex loaded = new LearningRecordIndex(listRecords(aUsername, aLayer));
+
+        index = indexes.asMap().putIfAbsent(key, loaded);
+        if (index != null) {
+            return index;
+        }
+
+        // If a change has been committed while the index was loaded, the load may not have seen
+        // it and the change may not have been applied to the index because it was not cached yet
+        if (indexChanges.get() != changes) {
+            indexes.asMap().remove(key, loaded);
+        }
+
+        return loaded;
+    }
+
+    private void updateIndex(String aUsername, AnnotationLayer aLayer,
+            Consumer<LearningRecordIndex> aChange)
+    {
+        List<Object> indexKey = asList(aUsername, aLayer.getId());
+        updateIndexes(indexKey::equals, aChange);
+    }
+
+    /**
+     * Applies a change to the cached indexes once the current transaction has been committed. If
+     * there is no transaction, the change is applied immediately. The changes must be idempotent
+     * because an index loaded concurrently may already contain them.
+     */
+    private void updateIndexes(Predicate<List<Object>> aKeyFilter,
+            Consumer<LearningRecordIndex> aChange)
+    {
+        Runnable apply = () -> {
+            indexChanges.incrementAndGet();
+            for (List<Object> key : indexes.asMap().keySet()) {
+                if (aKeyFilter.test(key)) {
+                    indexes.asMap().computeIfPresent(key, (k, index) -> {
+                        aChange.accept(index);
+                        return index;
+                    });
+                }
+            }
+        };
+
+        if (!isSynchronizationActive()) {
+            apply.run();
+            return;
+        }
+
+        if (!hasResource(uncommittedChanges)) {
+            bindResource(uncommittedChanges, TRUE);
+            registerSynchronization(new TransactionSynchronization()
+            {
+                @Override
+                public void afterCompletion(int aStatus)
+                {
+                    unbindResourceIfPossible(uncommittedChanges);
+                }
+            });
+        }
+
+        registerSynchronization(new TransactionSynchronization()
+        {
+            @Override
+            public void afterCommit()
+            {
+                apply.run();
+            }
+        });
+    }
+
     @Transactional
     @Override
     public LearningRecord getRecordById(long recordId)
@@ -207,10 +356,13 @@ public class LearningRecordServiceImpl
     @Override
     public void deleteRecords(SourceDocument document, String user)
     {
-        String sql = "DELETE FROM LearningRecord l where l.sourceDocument = :document and l.user "
-                + "= :user";
-        entityManager.createQuery(sql).setParameter("document", document).setParameter("user", user)
-                .executeUpdate();
+        String sql = "SELECT l.id FROM LearningRecord l where l.sourceDocument = :document "
+                + "and l.user = :user";
+        deleteRecordsById(entityManager.createQuery(sql, Long.class)
+                .setParameter("document", document).setParameter("user", user).getResultList());
+
+        updateIndexes(key -> key.get(0).equals(user), index -> index.removeIf(
+                record -> Objects.equals(record.getSourceDocument().getId(), document.getId())));
     }
 
     @Override
@@ -219,6 +371,9 @@ public class LearningRecordServiceImpl
     {
         entityManager.persist(learningRecord);
         entityManager.flush();
+
+        updateIndex(learningRecord.getUser(), learningRecord.getLayer(),
+                index -> index.add(learningRecord));
     }
 
     @Override
@@ -227,6 +382,12 @@ public class LearningRecordServiceImpl
     {
         entityManager.merge(learningRecord);
         entityManager.flush();
+
+        updateIndex(learningRecord.getUser(), learningRecord.getLayer(), index -> {
+            // The position or label of the record may have changed, so we cannot use removeAt
+            index.removeIf(r -> Objects.equals(r.getId(), learningRecord.getId()));
+            index.add(learningRecord);
+        });
     }
 
     @Override
@@ -235,6 +396,9 @@ public class LearningRecordServiceImpl
     {
         entityManager.remove(entityManager.contains(learningRecord) ? learningRecord
                 : entityManager.merge(learningRecord));
+
+        updateIndex(learningRecord.getUser(), learningRecord.getLayer(), index -> index
+                .removeIf(r -> Objects.equals(r.getId(), learningRecord.getId())));
     }
 
     @Override
@@ -269,14 +433,33 @@ public class LearningRecordServiceImpl
     public void deleteSkippedSuggestions(User aUser, AnnotationLayer aLayer)
     {
         String sql = String.join("\n", //
-                "DELETE FROM LearningRecord WHERE", //
-                "user = :user AND", //
-                "layer = :layer AND", //
-                "userAction = :action");
-        entityManager.createQuery(sql) //
+                "SELECT l.id FROM LearningRecord l WHERE", //
+                "l.user = :user AND", //
+                "l.layer = :layer AND", //
+                "l.userAction = :action");
+        deleteRecordsById(entityManager.createQuery(sql, Long.class) //
                 .setParameter("user", aUser.getUsername()) //
                 .setParameter("layer", aLayer) //
                 .setParameter("action", LearningRecordType.SKIPPED) //
+                .getResultList());
+
+        updateIndex(aUser.getUsername(), aLayer, index -> index
+                .removeIf(record -> record.getUserAction() == LearningRecordType.SKIPPED));
+    }
+
+    /**
+     * Deletes the learning records with the given IDs. The records to delete are selected by a
+     * separate query because in a bulk delete, some databases (e.g. H2) resolve the unqualified
+     * {@code user} column to the name of the database user and the delete has no effect.
+     */
+    private void deleteRecordsById(List<Long> aIds)
+    {
+        if (aIds.isEmpty()) {
+            return;
+        }
+
+        entityManager.createQuery("DELETE FROM LearningRecord WHERE id IN (:ids)") //
+                .setParameter("ids", aIds) //
                 .executeUpdate();
     }
 }
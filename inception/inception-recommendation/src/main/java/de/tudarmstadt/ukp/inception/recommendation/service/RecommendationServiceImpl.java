@@ -47,11 +47,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
@@ -141,10 +145,14 @@ import de.tudarmstadt.ukp.inception.recommendation.api.model.RelationPosition;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.RelationSuggestion;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.SpanSuggestion;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.SuggestionGroup;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.BatchPredictionSupport;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.PredictionUnit;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngine;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngineFactory;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationException;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
+import de.tudarmstadt.ukp.inception.recommendation.config.RecommenderProperties;
+import de.tudarmstadt.ukp.inception.recommendation.config.RecommenderPropertiesImpl;
 import de.tudarmstadt.ukp.inception.recommendation.config.RecommenderServiceAutoConfiguration;
 import de.tudarmstadt.ukp.inception.recommendation.event.RecommenderDeletedEvent;
 import de.tudarmstadt.ukp.inception.recommendation.event.RecommenderTaskEvent;
@@ -191,9 +199,14 @@ public class RecommendationServiceImpl
     private final ProjectService projectService;
     private final ApplicationEventPublisher applicationEventPublisher;
     private final PreferencesService preferencesService;
+    private final RecommenderWorkerPool workerPool;
+    private final RecommenderProperties properties;
 
     private final ConcurrentMap<RecommendationStateKey, AtomicInteger> trainingTaskCounter;
     private final ConcurrentMap<RecommendationStateKey, RecommendationState> states;
+    private final ConcurrentMap<Recommender, SharedModel> sharedModels;
+    // project ID -> counter which is incremented whenever annotations in the project are written
+    private final ConcurrentMap<Long, AtomicLong> annotationVersions;
 
     /*
      * Marks user/projects to which annotations were added during this request.
@@ -220,7 +233,8 @@ public class RecommendationServiceImpl
             SchedulingService aSchedulingService, AnnotationSchemaService aAnnoService,
             DocumentService aDocumentService, LearningRecordService aLearningRecordService,
             ProjectService aProjectService, EntityManager aEntityManager,
-            ApplicationEventPublisher aApplicationEventPublisher)
+            ApplicationEventPublisher aApplicationEventPublisher,
+            RecommenderWorkerPool aWorkerPool, RecommenderProperties aProperties)
     {
         preferencesService = aPreferencesService;
         sessionRegistry = aSessionRegistry;
@@ -233,9 +247,13 @@ public class RecommendationServiceImpl
         projectService = aProjectService;
         entityManager = aEntityManager;
         applicationEventPublisher = aApplicationEventPublisher;
+        workerPool = aWorkerPool;
+        properties = aProperties;
 
         trainingTaskCounter = new ConcurrentHashMap<>();
         states = new ConcurrentHashMap<>();
+        sharedModels = new ConcurrentHashMap<>();
+        annotationVersions = new ConcurrentHashMap<>();
     }
 
     public RecommendationServiceImpl(PreferencesService aPreferencesService,
@@ -247,7 +265,8 @@ public class RecommendationServiceImpl
     {
         this(aPreferencesService, aSessionRegistry, aUserRepository, aRecommenderFactoryRegistry,
                 aSchedulingService, aAnnoService, aDocumentService, aLearningRecordService,
-                (ProjectService) null, aEntityManager, null);
+                (ProjectService) null, aEntityManager, null, new RecommenderWorkerPool(1),
+                new RecommenderPropertiesImpl());
     }
 
     @Override
@@ -575,6 +594,10 @@ public class RecommendationServiceImpl
     @EventListener
     public void onAfterCasWritten(AfterCasWrittenEvent aEvent)
     {
+        // Shared models need to be re-trained no matter which user changed the annotations
+        annotationVersions.computeIfAbsent(aEvent.getDocument().getProject().getId(),
+                key -> new AtomicLong()).incrementAndGet();
+
         RequestCycle requestCycle = RequestCycle.get();
 
         if (requestCycle == null) {
@@ -845,6 +868,8 @@ public class RecommendationServiceImpl
             states.keySet().removeIf(key -> Objects.equals(aProject.getId(), key.getProjectId()));
             trainingTaskCounter.keySet()
                     .removeIf(key -> Objects.equals(aProject.getId(), key.getProjectId()));
+            sharedModels.keySet().removeIf(
+                    rec -> Objects.equals(aProject.getId(), rec.getProject().getId()));
         }
     }
 
@@ -857,6 +882,7 @@ public class RecommendationServiceImpl
                     .filter(entry -> Objects.equals(aRecommender.getProject().getId(),
                             entry.getKey().getProjectId()))
                     .forEach(entry -> entry.getValue().removePredictions(aRecommender));
+            sharedModels.remove(aRecommender);
         }
     }
 
@@ -872,6 +898,11 @@ public class RecommendationServiceImpl
     @Override
     public Optional<RecommenderContext> getContext(User aUser, Recommender aRecommender)
     {
+        if (aRecommender.isSharedModel()) {
+            SharedModel sharedModel = sharedModels.get(aRecommender);
+            return Optional.ofNullable(sharedModel != null ? sharedModel.context : null);
+        }
+
         RecommendationState state = getState(aUser.getUsername(), aRecommender.getProject());
         synchronized (state) {
             return state.getContext(aRecommender);
@@ -881,12 +912,65 @@ public class RecommendationServiceImpl
     @Override
     public void putContext(User aUser, Recommender aRecommender, RecommenderContext aContext)
     {
+        if (aRecommender.isSharedModel()) {
+            Validate.notNull(aContext, "Context must be specified");
+            Validate.isTrue(aContext.isClosed(), "Context must be closed");
+
+            SharedModel sharedModel = sharedModels.computeIfAbsent(aRecommender,
+                    key -> new SharedModel());
+            synchronized (sharedModel) {
+                sharedModel.context = aContext;
+                // Only now that the model is available, it counts as trained for the claimed version
+                if (sharedModel.trainingClaimed) {
+                    sharedModel.trainedVersion = sharedModel.claimedVersion;
+                    sharedModel.trainingClaimed = false;
+                }
+            }
+            return;
+        }
+
         RecommendationState state = getState(aUser.getUsername(), aRecommender.getProject());
         synchronized (state) {
             state.putContext(aRecommender, aContext);
         }
     }
 
+    @Override
+    public boolean claimSharedModelTraining(Recommender aRecommender)
+    {
+        Validate.isTrue(aRecommender.isSharedModel(), "Recommender must use a shared model");
+
+        long version = annotationVersions.computeIfAbsent(aRecommender.getProject().getId(),
+                key -> new AtomicLong()).get();
+
+        SharedModel sharedModel = sharedModels.computeIfAbsent(aRecommender,
+                key -> new SharedModel());
+        synchronized (sharedModel) {
+            if (sharedModel.trainingClaimed || sharedModel.trainedVersion == version) {
+                return false;
+            }
+
+            sharedModel.trainingClaimed = true;
+            sharedModel.claimedVersion = version;
+            return true;
+        }
+    }
+
+    @Override
+    public void releaseSharedModelTraining(Recommender aRecommender)
+    {
+        Validate.isTrue(aRecommender.isSharedModel(), "Recommender must use a shared model");
+
+        SharedModel sharedModel = sharedModels.get(aRecommender);
+        if (sharedModel == null) {
+            return;
+        }
+
+        synchronized (sharedModel) {
+            sharedModel.trainingClaimed = false;
+        }
+    }
+
     @Override
     public int upsertSpanFeature(AnnotationSchemaService annotationService,
             SourceDocument aDocument, String aUsername, CAS aCas, AnnotationLayer aLayer,
@@ -1093,6 +1177,19 @@ public class RecommendationServiceImpl
         }
     }
 
+    /**
+     * Model of a recommender which is trained on the annotations of all users and shared by them.
+     */
+    private static class SharedModel
+    {
+        private volatile RecommenderContext context;
+        // Annotation version of the project the model was last trained for, -1 if never trained
+        private long trainedVersion = -1;
+        // Whether a training run is currently training the model for the claimed version
+        private boolean trainingClaimed;
+        private long claimedVersion;
+    }
+
     /**
      * We are assuming that the user is actively working on one project at a time. Otherwise, the
      * RecommendationUserState might take up a lot of memory.
@@ -1286,57 +1383,61 @@ public class RecommendationServiceImpl
         }
     }
 
-    private void computePredictions(LazyCas aOriginalCas,
-            EvaluatedRecommender aEvaluatedRecommender, Predictions predictions, CAS predictionCas,
-            SourceDocument aDocument, User aUser, int aPredictionBegin, int aPredictionEnd)
-        throws IOException
+    /**
+     * Checks if the given recommender can be applied and obtains its current configuration, its
+     * context and its factory. If the recommender cannot be applied, the reason is logged.
+     * 
+     * @return the prepared recommender or nothing if the recommender is to be skipped.
+     */
+    private Optional<PreparedRecommender> prepareRecommender(Predictions aPredictions,
+            EvaluatedRecommender aEvaluatedRecommender, User aUser, Project aProject)
     {
-        Project project = aDocument.getProject();
-        Predictions activePredictions = getPredictions(aUser, project);
-        int predictionBegin = aPredictionBegin;
-        int predictionEnd = aPredictionEnd;
-
         // Make sure we have the latest recommender config from the DB - the one
         // from the active recommenders list may be outdated
         Recommender recommender = aEvaluatedRecommender.getRecommender();
+        String name = recommender.getName();
         try {
             recommender = getRecommender(recommender.getId());
         }
         catch (NoResultException e) {
-            predictions.log(LogMessage.info(recommender.getName(),
-                    "Recommender no longer available... skipping"));
-            log.info("{}[{}]: Recommender no longer available... skipping", aUser,
-                    recommender.getName());
-            return;
+            recommender = null;
+        }
+
+        if (recommender == null) {
+            aPredictions.log(LogMessage.info(name, "Recommender no longer available... skipping"));
+            log.info("{}[{}]: Recommender no longer available... skipping", aUser, name);
+            return Optional.empty();
         }
 
         if (!recommender.isEnabled()) {
-            predictions.log(
+            aPredictions.log(
                     LogMessage.info(recommender.getName(), "Recommender disabled... skipping"));
             log.debug("{}[{}]: Disabled - skipping", aUser, recommender.getName());
-            return;
+            return Optional.empty();
         }
 
         Optional<RecommenderContext> context = getContext(aUser, recommender);
 
         if (!context.isPresent()) {
-            predictions.log(LogMessage.info(recommender.getName(),
+            aPredictions.log(LogMessage.info(recommender.getName(),
                     "Recommender has no context... skipping"));
-            log.info("No context available for recommender {} for user {} on document {} in " //
-                    + "project {} - skipping recommender", recommender, aUser, aDocument,
-                    aDocument.getProject());
-            return;
+            log.info("No context available for recommender {} for user {} in project {} - " //
+                    + "skipping recommender", recommender, aUser, aProject);
+            return Optional.empty();
         }
 
         RecommenderContext ctx = context.get();
-        ctx.setUser(aUser);
+        // A shared context is used by all users concurrently, so it is not bound to any of them
+        if (!recommender.isSharedModel()) {
+            ctx.setUser(aUser);
+        }
 
         Optional<RecommendationEngineFactory<?>> maybeFactory = getRecommenderFactory(recommender);
 
         if (maybeFactory.isEmpty()) {
             log.warn("{}[{}]: No factory found - skipping recommender", aUser,
                     recommender.getName());
-            return;
+            return Optional.empty();
         }
 
         RecommendationEngineFactory<?> factory = maybeFactory.get();
@@ -1344,12 +1445,42 @@ public class RecommendationServiceImpl
         // Check that configured layer and feature are accepted
         // by this type of recommender
         if (!factory.accepts(recommender.getLayer(), recommender.getFeature())) {
-            predictions.log(LogMessage.info(recommender.getName(),
+            aPredictions.log(LogMessage.info(recommender.getName(),
                     "Recommender configured with invalid layer or feature... skipping"));
             log.info("{}[{}]: Recommender configured with invalid layer or feature "
                     + "- skipping recommender", aUser, recommender.getName());
-            return;
+            return Optional.empty();
+        }
+
+        return Optional.of(new PreparedRecommender(recommender, ctx, factory));
+    }
+
+    private void computePredictions(LazyCas aOriginalCas,
+            EvaluatedRecommender aEvaluatedRecommender, Predictions predictions, CAS predictionCas,
+            SourceDocument aDocument, User aUser, int aPredictionBegin, int aPredictionEnd)
+        throws IOException
+    {
+        Optional<PreparedRecommender> preparedRecommender = prepareRecommender(predictions,
+                aEvaluatedRecommender, aUser, aDocument.getProject());
+
+        if (preparedRecommender.isPresent()) {
+            computePredictions(aOriginalCas, preparedRecommender.get(), predictions,
+                    predictionCas, aDocument, aUser, aPredictionBegin, aPredictionEnd);
         }
+    }
+
+    private void computePredictions(LazyCas aOriginalCas, PreparedRecommender aRecommender,
+            Predictions predictions, CAS predictionCas, SourceDocument aDocument, User aUser,
+            int aPredictionBegin, int aPredictionEnd)
+        throws IOException
+    {
+        Project project = aDocument.getProject();
+        Predictions activePredictions = getPredictions(aUser, project);
+        int predictionBegin = aPredictionBegin;
+        int predictionEnd = aPredictionEnd;
+        Recommender recommender = aRecommender.recommender;
+        RecommenderContext ctx = aRecommender.context;
+        RecommendationEngineFactory<?> factory = aRecommender.factory;
 
         // We lazily load the CAS only at this point because that allows us to skip
         // loading the CAS entirely if there is no enabled layer or recommender.
@@ -1434,33 +1565,70 @@ public class RecommendationServiceImpl
     private void computePredictions(Predictions aPredictions, CAS aPredictionCas,
             SourceDocument aDocument, User aUser, int aPredictionBegin, int aPredictionEnd)
     {
-        try {
-            List<EvaluatedRecommender> recommenders = getActiveRecommenders(aUser,
-                    aDocument.getProject());
-            if (recommenders.isEmpty()) {
-                aPredictions.log(LogMessage.info(this, "No active recommenders"));
-                log.trace("[{}]: No active recommenders", aUser);
-                return;
-            }
+        List<EvaluatedRecommender> recommenders = listRecommendersForPrediction(aPredictions,
+                aDocument, aUser);
 
-            LazyCas originalCas = new LazyCas(aDocument, aUser);
+        LazyCas originalCas = new LazyCas(aDocument, aUser);
+        try {
             for (EvaluatedRecommender r : recommenders) {
-                AnnotationLayer layer = annoService.getLayer(r.getRecommender().getLayer().getId());
-                if (!layer.isEnabled()) {
-                    continue;
-                }
-
                 computePredictions(originalCas, r, aPredictions, aPredictionCas, aDocument, aUser,
                         aPredictionBegin, aPredictionEnd);
             }
         }
         catch (IOException e) {
-            aPredictions.log(LogMessage.error(this, "Cannot read annotation CAS... skipping"));
-            log.error(
-                    "Cannot read annotation CAS for user {} of document "
-                            + "[{}]({}) in project [{}]({}) - skipping document",
-                    aUser, aDocument.getName(), aDocument.getId(), aDocument.getProject().getName(),
-                    aDocument.getProject().getId(), e);
+            logCannotReadCas(aPredictions, aDocument, aUser, e);
+            return;
+        }
+
+        // When all recommenders have completed on the document, we mark it as "complete"
+        aPredictions.markDocumentAsPredictionCompleted(aDocument);
+    }
+
+    /**
+     * Computes the predictions of all recommenders for a single document concurrently. Each
+     * recommender uses its own prediction CAS while the original CAS is shared between them.
+     * 
+     * @see #computePredictions(Predictions, CAS, SourceDocument, User, int, int)
+     */
+    private void computePredictionsConcurrently(Predictions aPredictions,
+            SourceDocument aDocument, User aUser, int aPredictionBegin, int aPredictionEnd)
+        throws InterruptedException
+    {
+        List<EvaluatedRecommender> recommenders = listRecommendersForPrediction(aPredictions,
+                aDocument, aUser);
+
+        if (recommenders.isEmpty()) {
+            aPredictions.markDocumentAsPredictionCompleted(aDocument);
+            return;
+        }
+
+        // The original CAS is loaded up-front on the calling thread so it is not bound to the
+        // CAS storage session of any of the workers
+        LazyCas originalCas = new LazyCas(aDocument, aUser);
+        try {
+            originalCas.get();
+        }
+        catch (IOException e) {
+            logCannotReadCas(aPredictions, aDocument, aUser, e);
+            return;
+        }
+
+        List<Callable<Boolean>> work = new ArrayList<>();
+        for (EvaluatedRecommender r : recommenders) {
+            work.add(() -> {
+                try (var casHolder = new PredictionCasHolder()) {
+                    computePredictions(originalCas, r, aPredictions, casHolder.cas, aDocument,
+                            aUser, aPredictionBegin, aPredictionEnd);
+                    return true;
+                }
+                catch (ResourceInitializationException e) {
+                    logCannotCreatePredictionCas(aPredictions);
+                    return false;
+                }
+            });
+        }
+
+        if (workerPool.invokeAll(work).contains(false)) {
             return;
         }
 
@@ -1468,29 +1636,282 @@ public class RecommendationServiceImpl
         aPredictions.markDocumentAsPredictionCompleted(aDocument);
     }
 
+    private List<EvaluatedRecommender> listRecommendersForPrediction(Predictions aPredictions,
+            SourceDocument aDocument, User aUser)
+    {
+        List<EvaluatedRecommender> recommenders = getActiveRecommenders(aUser,
+                aDocument.getProject());
+        if (recommenders.isEmpty()) {
+            aPredictions.log(LogMessage.info(this, "No active recommenders"));
+            log.trace("[{}]: No active recommenders", aUser);
+            return recommenders;
+        }
+
+        List<EvaluatedRecommender> result = new ArrayList<>();
+        for (EvaluatedRecommender r : recommenders) {
+            AnnotationLayer layer = annoService.getLayer(r.getRecommender().getLayer().getId());
+            if (layer.isEnabled()) {
+                result.add(r);
+            }
+        }
+        return result;
+    }
+
+    private static List<SourceDocument> pollBatch(Queue<SourceDocument> aQueue, int aBatchSize)
+    {
+        List<SourceDocument> batch = new ArrayList<>(aBatchSize);
+        SourceDocument document;
+        while (batch.size() < aBatchSize && (document = aQueue.poll()) != null) {
+            batch.add(document);
+        }
+        return batch;
+    }
+
+    /**
+     * Computes the predictions for a batch of documents. Recommenders supporting batch prediction
+     * are called once for the whole batch, all other recommenders are called for each document
+     * separately.
+     * 
+     * @see #computePredictions(Predictions, CAS, SourceDocument, User, int, int)
+     */
+    private void computePredictions(Predictions aPredictions, CAS aPredictionCas,
+            List<SourceDocument> aDocuments, User aUser)
+    {
+        List<EvaluatedRecommender> recommenders = listRecommendersForPrediction(aPredictions,
+                aDocuments.get(0), aUser);
+
+        // Recommenders which are to be skipped are only logged once for the whole batch
+        List<BatchPrediction> batchPredictions = new ArrayList<>();
+        List<PreparedRecommender> documentRecommenders = new ArrayList<>();
+        for (EvaluatedRecommender r : recommenders) {
+            Optional<PreparedRecommender> preparedRecommender = prepareRecommender(aPredictions,
+                    r, aUser, aDocuments.get(0).getProject());
+            if (preparedRecommender.isEmpty()) {
+                continue;
+            }
+
+            Optional<BatchPrediction> batchPrediction = aDocuments.size() > 1
+                    ? prepareBatchPrediction(preparedRecommender.get(), aUser)
+                    : Optional.empty();
+            if (batchPrediction.isPresent()) {
+                batchPredictions.add(batchPrediction.get());
+            }
+            else {
+                documentRecommenders.add(preparedRecommender.get());
+            }
+        }
+
+        Map<SourceDocument, LazyCas> originalCasses = new LinkedHashMap<>();
+        for (SourceDocument document : aDocuments) {
+            LazyCas originalCas = new LazyCas(document, aUser);
+            try {
+                for (PreparedRecommender r : documentRecommenders) {
+                    computePredictions(originalCas, r, aPredictions, aPredictionCas, document,
+                            aUser, -1, -1);
+                }
+
+                if (!batchPredictions.isEmpty()) {
+                    originalCas.get();
+                }
+
+                originalCasses.put(document, originalCas);
+            }
+            catch (IOException e) {
+                logCannotReadCas(aPredictions, document, aUser, e);
+            }
+        }
+
+        for (BatchPrediction batchPrediction : batchPredictions) {
+            computePredictions(aPredictions, batchPrediction, originalCasses, aUser);
+        }
+
+        // When all recommenders have completed on the documents, we mark them as "complete"
+        originalCasses.keySet().forEach(aPredictions::markDocumentAsPredictionCompleted);
+    }
+
+    /**
+     * @return the engine and context of the given recommender if the engine supports batch
+     *         prediction and is ready for prediction. Otherwise, the recommender is applied to
+     *         each document separately which also takes care of logging why a recommender is
+     *         not ready or of inheriting its suggestions.
+     */
+    private Optional<BatchPrediction> prepareBatchPrediction(PreparedRecommender aRecommender,
+            User aUser)
+    {
+        try {
+            RecommendationEngine engine = aRecommender.factory.build(aRecommender.recommender);
+            if (engine instanceof BatchPredictionSupport
+                    && engine.isReadyForPrediction(aRecommender.context)) {
+                return Optional.of(new BatchPrediction(engine, aRecommender.context));
+            }
+        }
+        catch (Exception e) {
+            log.warn("{}[{}]: Unable to prepare batch prediction - predicting documents "
+                    + "separately", aUser, aRecommender.recommender.getName(), e);
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * Applies a recommender supporting batch prediction to all given documents at once.
+     */
+    private void computePredictions(Predictions aPredictions, BatchPrediction aBatchPrediction,
+            Map<SourceDocument, LazyCas> aOriginalCasses, User aUser)
+    {
+        RecommendationEngine engine = aBatchPrediction.engine;
+        Recommender recommender = engine.getRecommender();
+        Project project = recommender.getProject();
+        Predictions activePredictions = getPredictions(aUser, project);
+
+        List<SourceDocument> documents = new ArrayList<>();
+        List<CAS> originalCasses = new ArrayList<>();
+        List<PredictionUnit> units = new ArrayList<>();
+        List<PredictionCasHolder> casHolders = new ArrayList<>();
+        int completed = 0;
+        try {
+            for (var entry : aOriginalCasses.entrySet()) {
+                SourceDocument document = entry.getKey();
+                CAS originalCas = entry.getValue().get();
+
+                // If the recommender is not trainable and not sensitive to annotations,
+                // we can actually re-use the predictions.
+                if (TRAINING_NOT_SUPPORTED == engine.getTrainingCapability()
+                        && activePredictions != null
+                        && activePredictions.hasRunPredictionOnDocument(document)) {
+                    inheritSuggestionsAtRecommenderLevel(aPredictions, originalCas, recommender,
+                            activePredictions, document, aUser);
+                    continue;
+                }
+
+                // Each document needs its own prediction CAS and these must not replace each
+                // other in the CAS storage session
+                var casHolder = new PredictionCasHolder(PREDICTION_CAS + "-" + units.size());
+                casHolders.add(casHolder);
+                cloneAndMonkeyPatchCAS(project, originalCas, casHolder.cas);
+
+                documents.add(document);
+                originalCasses.add(originalCas);
+                units.add(new PredictionUnit(casHolder.cas, 0,
+                        originalCas.getDocumentText().length()));
+            }
+
+            if (units.isEmpty()) {
+                return;
+            }
+
+            aPredictions.log(LogMessage.info(recommender.getName(),
+                    "Generating predictions for layer [%s] on [%d] documents...",
+                    recommender.getLayer().getUiName(), units.size()));
+            log.trace("{}[{}]: Generating predictions for layer [{}] on [{}] documents", aUser,
+                    recommender.getName(), recommender.getLayer().getUiName(), units.size());
+
+            List<Range> predictedRanges = ((BatchPredictionSupport) engine)
+                    .predict(aBatchPrediction.context, units);
+
+            for (; completed < units.size(); completed++) {
+                addSuggestions(aPredictions, recommender, activePredictions,
+                        documents.get(completed), originalCasses.get(completed),
+                        units.get(completed).getCas(), aUser, predictedRanges.get(completed));
+            }
+        }
+        // Catching Throwable is intentional here as we want to continue the
+        // execution even if a particular recommender fails.
+        catch (Throwable e) {
+            aPredictions.log(
+                    LogMessage.error(recommender.getName(), "Failed: %s", e.getMessage()));
+            log.error("Error applying recommender {} for user {} to {} documents in project {} "
+                    + "- skipping recommender", recommender, aUser, aOriginalCasses.size(),
+                    project, e);
+
+            applicationEventPublisher.publishEvent(new RecommenderTaskEvent(this,
+                    aUser.getUsername(), e.getMessage(), recommender));
+
+            // If there was a previous successful run of the recommender, inherit
+            // its suggestions to avoid that all the suggestions of the recommender
+            // simply disappear.
+            if (activePredictions != null) {
+                for (int i = completed; i < documents.size(); i++) {
+                    inheritSuggestionsAtRecommenderLevel(aPredictions, originalCasses.get(i),
+                            recommender, activePredictions, documents.get(i), aUser);
+                }
+            }
+        }
+        finally {
+            casHolders.forEach(PredictionCasHolder::close);
+        }
+    }
+
+    private void logCannotReadCas(Predictions aPredictions, SourceDocument aDocument, User aUser,
+            IOException aException)
+    {
+        aPredictions.log(LogMessage.error(this, "Cannot read annotation CAS... skipping"));
+        log.error(
+                "Cannot read annotation CAS for user {} of document "
+                        + "[{}]({}) in project [{}]({}) - skipping document",
+                aUser, aDocument.getName(), aDocument.getId(), aDocument.getProject().getName(),
+                aDocument.getProject().getId(), aException);
+    }
+
+    private void logCannotCreatePredictionCas(Predictions aPredictions)
+    {
+        aPredictions.log(
+                LogMessage.error(this, "Cannot create prediction CAS, stopping predictions!"));
+        log.error("Cannot create prediction CAS, stopping predictions!");
+    }
+
     @Override
     public Predictions computePredictions(User aUser, Project aProject,
             List<SourceDocument> aDocuments)
     {
-        try (var casHolder = new PredictionCasHolder()) {
-            Predictions predictions = new Predictions(aUser, aProject);
-            // Generate new predictions or inherit at the recommender level
-            for (SourceDocument document : aDocuments) {
-                computePredictions(predictions, casHolder.cas, document, aUser, -1, -1);
-            }
+        Predictions predictions = new Predictions(aUser, aProject);
 
-            predictions.log(LogMessage.info(this, "Prediction complete"));
-            log.debug("Prediction complete");
+        // Documents are processed in batches so that recommenders supporting batch prediction can
+        // process several documents at once. The batches are kept small enough that all workers
+        // get something to do.
+        int workerCount = Math.min(workerPool.getThreads(), Math.max(1, aDocuments.size()));
+        int batchSize = Math.max(1, Math.min(properties.getPredictionBatchSize(),
+                (aDocuments.size() + workerCount - 1) / workerCount));
+
+        // Every worker takes batches of documents from the queue until it is empty and re-uses its
+        // own prediction CAS for all of them
+        Queue<SourceDocument> queue = new ConcurrentLinkedQueue<>(aDocuments);
+        List<Callable<Boolean>> work = new ArrayList<>();
+        for (int i = 0; i < workerCount; i++) {
+            work.add(() -> {
+                try (var casHolder = new PredictionCasHolder()) {
+                    // Generate new predictions or inherit at the recommender level
+                    List<SourceDocument> batch;
+                    while (!(batch = pollBatch(queue, batchSize)).isEmpty()) {
+                        computePredictions(predictions, casHolder.cas, batch, aUser);
+                    }
+                    return true;
+                }
+                catch (ResourceInitializationException e) {
+                    // Make sure the other workers stop as well
+                    queue.clear();
+                    logCannotCreatePredictionCas(predictions);
+                    return false;
+                }
+            });
+        }
 
-            return predictions;
+        try {
+            if (workerPool.invokeAll(work).contains(false)) {
+                return predictions;
+            }
         }
-        catch (ResourceInitializationException e) {
-            Predictions predictions = new Predictions(aUser, aProject);
-            predictions.log(
-                    LogMessage.error(this, "Cannot create prediction CAS, stopping predictions!"));
-            log.error("Cannot create prediction CAS, stopping predictions!");
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            predictions.log(LogMessage.info(this, "Prediction interrupted"));
+            log.debug("Prediction interrupted");
             return predictions;
         }
+
+        predictions.log(LogMessage.info(this, "Prediction complete"));
+        log.debug("Prediction complete");
+
+        return predictions;
     }
 
     @Override
@@ -1510,22 +1931,33 @@ public class RecommendationServiceImpl
             }
         }
 
-        try (var casHolder = new PredictionCasHolder()) {
-            final CAS predictionCas = casHolder.cas;
-
-            // Generate new predictions or inherit at the recommender level
-            computePredictions(predictions, predictionCas, aCurrentDocument, aUser,
-                    aPredictionBegin, aPredictionEnd);
-
-            predictions.log(LogMessage.info(this, "Prediction complete"));
-            log.debug("Prediction complete");
+        // Generate new predictions or inherit at the recommender level
+        try {
+            if (workerPool.getThreads() > 1) {
+                computePredictionsConcurrently(predictions, aCurrentDocument, aUser,
+                        aPredictionBegin, aPredictionEnd);
+            }
+            else {
+                try (var casHolder = new PredictionCasHolder()) {
+                    computePredictions(predictions, casHolder.cas, aCurrentDocument, aUser,
+                            aPredictionBegin, aPredictionEnd);
+                }
+            }
         }
         catch (ResourceInitializationException e) {
-            predictions.log(
-                    LogMessage.error(this, "Cannot create prediction CAS, stopping predictions!"));
-            log.error("Cannot create prediction CAS, stopping predictions!");
+            logCannotCreatePredictionCas(predictions);
+            return predictions;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            predictions.log(LogMessage.info(this, "Prediction interrupted"));
+            log.debug("Prediction interrupted");
+            return predictions;
         }
 
+        predictions.log(LogMessage.info(this, "Prediction complete"));
+        log.debug("Prediction complete");
+
         return predictions;
     }
 
@@ -1601,28 +2033,42 @@ public class RecommendationServiceImpl
         Range predictedRange = aEngine.predict(aCtx, aPredictionCas, aPredictionBegin,
                 aPredictionEnd);
 
+        addSuggestions(aPredictions, recommender, aActivePredictions, aDocument, aOriginalCas,
+                aPredictionCas, aUser, predictedRange);
+    }
+
+    /**
+     * Extracts the suggestions which a recommender has written into the prediction CAS, inherits
+     * the suggestions outside the predicted range from the previous run and adds them to the
+     * predictions.
+     */
+    private void addSuggestions(Predictions aPredictions, Recommender aRecommender,
+            Predictions aActivePredictions, SourceDocument aDocument, CAS aOriginalCas,
+            CAS aPredictionCas, User aUser, Range aPredictedRange)
+    {
         // Extract the suggestions from the data which the recommender has written into the CAS
-        var suggestions = extractSuggestions(aOriginalCas, aPredictionCas, aDocument, recommender);
+        var suggestions = extractSuggestions(aOriginalCas, aPredictionCas, aDocument,
+                aRecommender);
 
         log.debug(
                 "{} for user {} on document {} in project {} generated {} predictions within range {}",
-                recommender, aUser, aDocument, recommender.getProject(), suggestions.size(),
-                predictedRange);
-        aPredictions.log(LogMessage.info(recommender.getName(), //
-                "Generated [%d] predictions within range %s", suggestions.size(), predictedRange));
+                aRecommender, aUser, aDocument, aRecommender.getProject(), suggestions.size(),
+                aPredictedRange);
+        aPredictions.log(LogMessage.info(aRecommender.getName(), //
+                "Generated [%d] predictions within range %s", suggestions.size(), aPredictedRange));
 
         if (aActivePredictions != null) {
             // Inherit annotations that are outside the range which was predicted. Note that the
             // engine might actually predict a different range from what was requested.
             List<AnnotationSuggestion> inheritableSuggestions = aActivePredictions
-                    .getPredictionsByRecommenderAndDocument(recommender, aDocument.getName())
-                    .stream().filter(s -> !s.coveredBy(predictedRange)) //
+                    .getPredictionsByRecommenderAndDocument(aRecommender, aDocument.getName())
+                    .stream().filter(s -> !s.coveredBy(aPredictedRange)) //
                     .collect(toList());
 
             log.debug("{} for user {} on document {} in project {} inherited {} " //
-                    + "predictions", recommender, aUser, aDocument, recommender.getProject(),
+                    + "predictions", aRecommender, aUser, aDocument, aRecommender.getProject(),
                     inheritableSuggestions.size());
-            aPredictions.log(LogMessage.info(recommender.getName(),
+            aPredictions.log(LogMessage.info(aRecommender.getName(),
                     "Inherited [%d] predictions from previous run", inheritableSuggestions.size()));
 
             suggestions.addAll(inheritableSuggestions);
@@ -1632,7 +2078,7 @@ public class RecommendationServiceImpl
         // contains only the manually created annotations and *not* the suggestions.
         var groupedSuggestions = groupsOfType(SpanSuggestion.class, suggestions);
         calculateSpanSuggestionVisibility(aOriginalCas, aUser.getUsername(),
-                aEngine.getRecommender().getLayer(), groupedSuggestions, 0,
+                aRecommender.getLayer(), groupedSuggestions, 0,
                 aOriginalCas.getDocumentText().length());
 
         aPredictions.putPredictions(suggestions);
@@ -1864,9 +2310,6 @@ public class RecommendationServiceImpl
                 }) //
                 .collect(toList());
 
-        // Get all the skipped/rejected entries for the current layer
-        List<LearningRecord> recordedAnnotations = learningRecordService.listRecords(aUser, aLayer);
-
         for (AnnotationFeature feature : annoService.listSupportedFeatures(aLayer)) {
             Feature feat = type.getFeatureByBaseName(feature.getName());
 
@@ -1896,8 +2339,8 @@ public class RecommendationServiceImpl
             suggestions.values().stream() //
                     .flatMap(SuggestionGroup::stream) //
                     .filter(AnnotationSuggestion::isVisible) //
-                    .forEach(suggestion -> hideSuggestionsRejectedOrSkipped(suggestion,
-                            recordedAnnotations));
+                    .forEach(suggestion -> hideSuggestionsRejectedOrSkipped(suggestion, aUser,
+                            aLayer));
         }
     }
 
@@ -2106,17 +2549,15 @@ public class RecommendationServiceImpl
         }
     }
 
-    private void hideSuggestionsRejectedOrSkipped(SpanSuggestion aSuggestion,
-            List<LearningRecord> aRecordedRecommendations)
+    private void hideSuggestionsRejectedOrSkipped(SpanSuggestion aSuggestion, String aUser,
+            AnnotationLayer aLayer)
     {
-        // If it was rejected or skipped, hide it
-        for (LearningRecord record : aRecordedRecommendations) {
-            boolean isAtTheSamePlace = record.getOffsetBegin() == aSuggestion.getBegin()
-                    && record.getOffsetEnd() == aSuggestion.getEnd();
-            if (isAtTheSamePlace && aSuggestion.labelEquals(record.getAnnotation())) {
-                hideSuggestion(aSuggestion, record.getUserAction());
-                return;
-            }
+        // If it was rejected or skipped, hide it - the most recent record decides
+        List<LearningRecord> records = learningRecordService.findRecords(aUser, aLayer,
+                aSuggestion.getDocumentName(), aSuggestion.getBegin(), aSuggestion.getEnd(),
+                aSuggestion.getLabel());
+        if (!records.isEmpty()) {
+            hideSuggestion(aSuggestion, records.get(0).getUserAction());
         }
     }
 
@@ -2292,7 +2733,7 @@ public class RecommendationServiceImpl
             user = aUser;
         }
 
-        public CAS get() throws IOException
+        public synchronized CAS get() throws IOException
         {
             if (originalCas == null) {
                 originalCas = documentService.readAnnotationCas(document, user.getUsername(),
@@ -2310,9 +2751,14 @@ public class RecommendationServiceImpl
         private final CAS cas;
 
         public PredictionCasHolder() throws ResourceInitializationException
+        {
+            this(PREDICTION_CAS);
+        }
+
+        public PredictionCasHolder(String aPurpose) throws ResourceInitializationException
         {
             cas = WebAnnoCasUtil.createCas();
-            CasStorageSession.get().add(PREDICTION_CAS, EXCLUSIVE_WRITE_ACCESS, cas);
+            CasStorageSession.get().add(aPurpose, EXCLUSIVE_WRITE_ACCESS, cas);
         }
 
         @Override
@@ -2321,4 +2767,31 @@ public class RecommendationServiceImpl
             CasStorageSession.get().remove(cas);
         }
     }
+
+    private static class PreparedRecommender
+    {
+        private final Recommender recommender;
+        private final RecommenderContext context;
+        private final RecommendationEngineFactory<?> factory;
+
+        public PreparedRecommender(Recommender aRecommender, RecommenderContext aContext,
+                RecommendationEngineFactory<?> aFactory)
+        {
+            recommender = aRecommender;
+            context = aContext;
+            factory = aFactory;
+        }
+    }
+
+    private static class BatchPrediction
+    {
+        private final RecommendationEngine engine;
+        private final RecommenderContext context;
+
+        public BatchPrediction(RecommendationEngine aEngine, RecommenderContext aContext)
+        {
+            engine = aEngine;
+            context = aContext;
+        }
+    }
 }
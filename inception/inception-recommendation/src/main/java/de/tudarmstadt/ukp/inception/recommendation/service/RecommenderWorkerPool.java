@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.service;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import de.tudarmstadt.ukp.inception.annotation.storage.CasStorageSession;
+import de.tudarmstadt.ukp.inception.recommendation.config.RecommenderServiceAutoConfiguration;
+
+/**
+ * Bounded pool of threads on which independent recommenders are trained and on which predictions
+ * are computed concurrently. The pool is shared by all users - the scheduling service still makes
+ * sure that only a single training or prediction task runs per user and project.
+ * <p>
+ * Every unit of work runs in its own CAS storage session, so it can read CASes and register its
+ * own prediction CAS. If the pool is configured with a single thread, all work is performed
+ * sequentially on the calling thread.
+ * </p>
+ * <p>
+ * This class is exposed as a Spring Component via
+ * {@link RecommenderServiceAutoConfiguration#recommenderWorkerPool}.
+ * </p>
+ */
+public class RecommenderWorkerPool
+    implements DisposableBean
+{
+    private final int threads;
+    private final ExecutorService executor;
+
+    public RecommenderWorkerPool(int aThreads)
+    {
+        threads = Math.max(1, aThreads);
+
+        if (threads > 1) {
+            var pool = new ThreadPoolExecutor(threads, threads, 1, MINUTES,
+                    new LinkedBlockingQueue<>(), new BasicThreadFactory.Builder()
+                            .namingPattern("recommender-worker-%d").daemon(true).build());
+            // Release the threads while no training or prediction is running
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        else {
+            executor = null;
+        }
+    }
+
+    /**
+     * @return the maximum number of units of work which run concurrently.
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * Runs the given units of work and waits for all of them to complete. The units of work are
+     * expected to handle their own failures - if one of them fails nevertheless, the failure is
+     * re-thrown after all units of work have completed.
+     *
+     * @param aTasks
+     *            the units of work.
+     * @return the results of the units of work in the order of the given units of work.
+     * @throws InterruptedException
+     *             if the calling thread was interrupted while waiting. Units of work which have
+     *             not completed yet are cancelled.
+     */
+    public <T> List<T> invokeAll(List<? extends Callable<T>> aTasks) throws InterruptedException
+    {
+        List<T> results = new ArrayList<>();
+
+        if (executor == null || aTasks.size() < 2) {
+            for (Callable<T> task : aTasks) {
+                results.add(call(task));
+            }
+            return results;
+        }
+
+        List<Future<T>> futures = new ArrayList<>();
+        try {
+            for (Callable<T> task : aTasks) {
+                futures.add(executor.submit(() -> {
+                    try (var session = CasStorageSession.openNested()) {
+                        return task.call();
+                    }
+                }));
+            }
+
+            RuntimeException failure = null;
+            for (Future<T> future : futures) {
+                try {
+                    results.add(future.get());
+                }
+                catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = new IllegalStateException(e.getCause());
+                    }
+                    results.add(null);
+                }
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+
+            return results;
+        }
+        finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private static <T> T call(Callable<T> aTask)
+    {
+        try {
+            return aTask.call();
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void destroy()
+    {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
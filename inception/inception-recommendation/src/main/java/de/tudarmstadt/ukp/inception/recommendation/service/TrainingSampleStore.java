@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.service;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import org.springframework.context.event.EventListener;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.event.AfterCasWrittenEvent;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.BeforeDocumentRemovedEvent;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.LayerConfigurationChangedEvent;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.IncrementalTrainingSupport;
+import de.tudarmstadt.ukp.inception.recommendation.config.RecommenderProperties;
+import de.tudarmstadt.ukp.inception.recommendation.config.RecommenderServiceAutoConfiguration;
+import de.tudarmstadt.ukp.inception.recommendation.event.RecommenderDeletedEvent;
+import de.tudarmstadt.ukp.inception.recommendation.event.RecommenderUpdatedEvent;
+
+/**
+ * Keeps the training samples which engines supporting {@link IncrementalTrainingSupport} have
+ * extracted from the documents of a user. The samples of a document are discarded as soon as the
+ * annotations of the user in the document are written, so they are only extracted again from
+ * documents which have actually changed. The memory used by the samples is limited by their
+ * estimated size.
+ * <p>
+ * To avoid keeping samples which were extracted from a CAS that has been written while the samples
+ * were being extracted, every write is assigned a new version. Samples are only kept if they were
+ * extracted at a version not older than the last write of the document. The version of a document
+ * is dropped together with its samples. Afterwards, samples are only kept if they were extracted
+ * at a version not older than that of any dropped document.
+ * </p>
+ * <p>
+ * This class is exposed as a Spring Component via
+ * {@link RecommenderServiceAutoConfiguration#trainingSampleStore}.
+ * </p>
+ */
+public class TrainingSampleStore
+{
+    // Rough estimate of the memory used by an entry in addition to the samples
+    private static final int ENTRY_OVERHEAD = 256;
+
+    // (user, document ID) -> samples extracted from the user's annotations in the document
+    private final Cache<List<Object>, DocumentEntry> entries;
+
+    // Source of the versions - incremented on every write of a document
+    private final AtomicLong lastVersion = new AtomicLong();
+
+    // Highest version of all entries which have been dropped
+    private final AtomicLong droppedVersion = new AtomicLong();
+
+    public TrainingSampleStore(RecommenderProperties aProperties)
+    {
+        entries = Caffeine.newBuilder() //
+                .expireAfterAccess(30, MINUTES) //
+                .maximumWeight(aProperties.getTrainingSampleCacheMemory().toBytes()) //
+                .weigher((List<Object> key, DocumentEntry entry) -> entry.weight) //
+                .evictionListener((List<Object> key, DocumentEntry entry,
+                        RemovalCause cause) -> onEntryDropped(entry)) //
+                .build();
+    }
+
+    /**
+     * @return the current version. This must be obtained <b>before</b> reading the CAS from which
+     *         samples are extracted.
+     */
+    public long getVersion()
+    {
+        return lastVersion.get();
+    }
+
+    /**
+     * @return the samples extracted for the given recommender from the given document or
+     *         {@code null} if there are no samples for the current version of the document.
+     */
+    @SuppressWarnings("unchecked")
+    public <S> DocumentSamples<S> getSamples(String aUsername, Recommender aRecommender,
+            SourceDocument aDocument)
+    {
+        DocumentEntry entry = entries.getIfPresent(asList(aUsername, aDocument.getId()));
+        if (entry == null) {
+            return null;
+        }
+
+        return (DocumentSamples<S>) entry.byRecommender.get(aRecommender.getId());
+    }
+
+    /**
+     * Keeps the given samples unless the document has been written since the version at which the
+     * samples were extracted.
+     */
+    public void putSamples(String aUsername, Recommender aRecommender, SourceDocument aDocument,
+            DocumentSamples<?> aSamples)
+    {
+        entries.asMap().compute(asList(aUsername, aDocument.getId()), (key, entry) -> {
+            DocumentEntry current = entry != null ? entry
+                    : new DocumentEntry(aDocument.getProject().getId(), droppedVersion.get());
+            if (aSamples.version < current.version) {
+                return entry;
+            }
+
+            return current.withSamples(aRecommender.getId(), aSamples);
+        });
+    }
+
+    /**
+     * Drops the samples of the given recommender from all documents of the given user except for
+     * the given ones, e.g. because the other documents no longer exist.
+     */
+    public void retainDocuments(String aUsername, Recommender aRecommender, Set<Long> aDocumentIds)
+    {
+        updateEntries(
+                key -> Objects.equals(key.get(0), aUsername)
+                        && !aDocumentIds.contains(key.get(1)),
+                entry -> entry.withoutSamples(aRecommender.getId()));
+    }
+
+    @EventListener
+    public void onAfterCasWritten(AfterCasWrittenEvent aEvent)
+    {
+        SourceDocument document = aEvent.getDocument().getDocument();
+
+        // Replacing the entry drops all samples extracted from the previous version
+        long version = lastVersion.incrementAndGet();
+        entries.asMap().compute(asList(aEvent.getDocument().getUser(), document.getId()),
+                (key, entry) -> new DocumentEntry(document.getProject().getId(), version));
+    }
+
+    @EventListener
+    public void onBeforeDocumentRemoved(BeforeDocumentRemovedEvent aEvent)
+    {
+        Long documentId = aEvent.getDocument().getId();
+        updateEntries(key -> Objects.equals(key.get(1), documentId), entry -> null);
+    }
+
+    @EventListener
+    public void onRecommenderUpdated(RecommenderUpdatedEvent aEvent)
+    {
+        invalidateRecommender(aEvent.getRecommender());
+    }
+
+    @EventListener
+    public void onRecommenderDeleted(RecommenderDeletedEvent aEvent)
+    {
+        invalidateRecommender(aEvent.getRecommender());
+    }
+
+    @EventListener
+    public void onLayerConfigurationChanged(LayerConfigurationChangedEvent aEvent)
+    {
+        // The samples may depend on the layer and feature configuration, e.g. on the feature type
+        Long projectId = aEvent.getProject().getId();
+        updateEntries(key -> true,
+                entry -> Objects.equals(entry.projectId, projectId) ? null : entry);
+    }
+
+    private void invalidateRecommender(Recommender aRecommender)
+    {
+        updateEntries(key -> true, entry -> entry.withoutSamples(aRecommender.getId()));
+    }
+
+    /**
+     * Applies the given update to all entries whose keys match the given filter. If the update
+     * returns {@code null} or an entry without samples, the entry is dropped.
+     */
+    private void updateEntries(Predicate<List<Object>> aKeyFilter,
+            UnaryOperator<DocumentEntry> aUpdate)
+    {
+        for (List<Object> key : entries.asMap().keySet()) {
+            if (!aKeyFilter.test(key)) {
+                continue;
+            }
+
+            entries.asMap().computeIfPresent(key, (k, entry) -> {
+                DocumentEntry updated = aUpdate.apply(entry);
+                if (updated == entry) {
+                    return entry;
+                }
+
+                if (updated == null || updated.byRecommender.isEmpty()) {
+                    onEntryDropped(entry);
+                    return null;
+                }
+
+                return updated;
+            });
+        }
+    }
+
+    /**
+     * Performs pending evictions immediately - mainly for testing.
+     */
+    void cleanUp()
+    {
+        entries.cleanUp();
+    }
+
+    private void onEntryDropped(DocumentEntry aEntry)
+    {
+        droppedVersion.accumulateAndGet(aEntry.version, Math::max);
+    }
+
+    /**
+     * The training samples extracted from a single document.
+     */
+    public static class DocumentSamples<S>
+    {
+        private final long version;
+        private final boolean containsTrainingData;
+        private final List<S> samples;
+        private final long size;
+
+        /**
+         * @param aVersion
+         *            the version at which the samples were extracted.
+         * @param aContainsTrainingData
+         *            whether the document contains annotations of the recommender's layer and
+         *            feature at all.
+         * @param aSamples
+         *            the samples.
+         * @param aSize
+         *            the estimated memory used by the samples in bytes (cf.
+         *            {@link IncrementalTrainingSupport#estimateSampleSize}).
+         */
+        public DocumentSamples(long aVersion, boolean aContainsTrainingData, List<S> aSamples,
+                long aSize)
+        {
+            version = aVersion;
+            containsTrainingData = aContainsTrainingData;
+            samples = aSamples;
+            size = aSize;
+        }
+
+        public boolean containsTrainingData()
+        {
+            return containsTrainingData;
+        }
+
+        public List<S> getSamples()
+        {
+            return samples;
+        }
+    }
+
+    /**
+     * The samples of all recommenders extracted from the annotations of a user in a document. Entries
+     * are immutable, so the cache can re-calculate their weight whenever they are replaced.
+     */
+    private static class DocumentEntry
+    {
+        private final Long projectId;
+        private final long version;
+        private final Map<Long, DocumentSamples<?>> byRecommender;
+        private final int weight;
+
+        private DocumentEntry(Long aProjectId, long aVersion)
+        {
+            this(aProjectId, aVersion, Map.of());
+        }
+
+        private DocumentEntry(Long aProjectId, long aVersion,
+                Map<Long, DocumentSamples<?>> aByRecommender)
+        {
+            projectId = aProjectId;
+            version = aVersion;
+            byRecommender = aByRecommender;
+
+            long size = ENTRY_OVERHEAD;
+            for (DocumentSamples<?> samples : aByRecommender.values()) {
+                size += samples.size;
+            }
+            weight = (int) Math.min(size, Integer.MAX_VALUE);
+        }
+
+        private DocumentEntry withSamples(Long aRecommenderId, DocumentSamples<?> aSamples)
+        {
+            Map<Long, DocumentSamples<?>> byRec = new HashMap<>(byRecommender);
+            byRec.put(aRecommenderId, aSamples);
+            return new DocumentEntry(projectId, version, byRec);
+        }
+
+        private DocumentEntry withoutSamples(Long aRecommenderId)
+        {
+            if (!byRecommender.containsKey(aRecommenderId)) {
+                return this;
+            }
+
+            Map<Long, DocumentSamples<?>> byRec = new HashMap<>(byRecommender);
+            byRec.remove(aRecommenderId);
+            return new DocumentEntry(projectId, version, byRec);
+        }
+    }
+}
@@ -33,6 +33,7 @@ import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
 import de.tudarmstadt.ukp.inception.annotation.storage.CasStorageSession;
 import de.tudarmstadt.ukp.inception.recommendation.api.RecommendationService;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Predictions;
+import de.tudarmstadt.ukp.inception.scheduling.TaskClass;
 
 /**
  * This consumer predicts new annotations for a given annotation layer, if a classification tool for
@@ -64,6 +65,12 @@ public class PredictionTask
         predictionEnd = aEnd;
     }
 
+    @Override
+    public TaskClass getTaskClass()
+    {
+        return TaskClass.PREDICTION;
+    }
+
     @Override
     public void execute()
     {
@@ -17,6 +17,7 @@
  */
 package de.tudarmstadt.ukp.inception.recommendation.tasks;
 
+import static java.util.Collections.synchronizedList;
 import static java.util.Collections.unmodifiableList;
 
 import java.util.ArrayList;
@@ -30,7 +31,8 @@ import de.tudarmstadt.ukp.inception.scheduling.Task;
 public abstract class RecommendationTask_ImplBase
     extends Task
 {
-    private final List<LogMessage> logMessages = new ArrayList<>();
+    // Recommenders may be trained concurrently and log to the same task
+    private final List<LogMessage> logMessages = synchronizedList(new ArrayList<>());
 
     public RecommendationTask_ImplBase(Project aProject, String aTrigger)
     {
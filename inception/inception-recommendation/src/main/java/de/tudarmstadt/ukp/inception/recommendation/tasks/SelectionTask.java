@@ -54,6 +54,7 @@ import de.tudarmstadt.ukp.inception.recommendation.api.recommender.Recommendatio
 import de.tudarmstadt.ukp.inception.recommendation.event.RecommenderEvaluationResultEvent;
 import de.tudarmstadt.ukp.inception.recommendation.event.SelectionTaskEvent;
 import de.tudarmstadt.ukp.inception.scheduling.SchedulingService;
+import de.tudarmstadt.ukp.inception.scheduling.TaskClass;
 import de.tudarmstadt.ukp.inception.schema.AnnotationSchemaService;
 
 /**
@@ -81,6 +82,12 @@ public class SelectionTask
         currentDocument = aCurrentDocument;
     }
 
+    @Override
+    public TaskClass getTaskClass()
+    {
+        return TaskClass.TRAINING;
+    }
+
     @Override
     public void execute()
     {
@@ -21,17 +21,24 @@ import static de.tudarmstadt.ukp.clarin.webanno.api.CasUpgradeMode.AUTO_CAS_UPGR
 import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.SHARED_READ_ONLY_ACCESS;
 import static de.tudarmstadt.ukp.inception.recommendation.api.recommender.TrainingCapability.TRAINING_NOT_SUPPORTED;
 import static de.tudarmstadt.ukp.inception.recommendation.api.recommender.TrainingCapability.TRAINING_REQUIRED;
+import static java.util.Collections.emptyList;
 import static java.util.stream.Collectors.toList;
 import static org.apache.commons.lang3.exception.ExceptionUtils.getRootCauseMessage;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.persistence.NoResultException;
 
+import org.apache.commons.lang3.concurrent.ConcurrentException;
 import org.apache.commons.lang3.concurrent.LazyInitializer;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.Type;
@@ -52,12 +59,18 @@ import de.tudarmstadt.ukp.inception.annotation.storage.CasStorageSession;
 import de.tudarmstadt.ukp.inception.recommendation.api.RecommendationService;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.EvaluatedRecommender;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.IncrementalTrainingSupport;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngine;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngineFactory;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationException;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
 import de.tudarmstadt.ukp.inception.recommendation.api.recommender.TrainingCapability;
 import de.tudarmstadt.ukp.inception.recommendation.event.RecommenderTaskEvent;
+import de.tudarmstadt.ukp.inception.recommendation.service.RecommenderWorkerPool;
+import de.tudarmstadt.ukp.inception.recommendation.service.TrainingSampleStore;
+import de.tudarmstadt.ukp.inception.recommendation.service.TrainingSampleStore.DocumentSamples;
 import de.tudarmstadt.ukp.inception.scheduling.SchedulingService;
+import de.tudarmstadt.ukp.inception.scheduling.TaskClass;
 import de.tudarmstadt.ukp.inception.schema.AnnotationSchemaService;
 
 /**
@@ -73,6 +86,8 @@ public class TrainingTask
     private @Autowired RecommendationService recommendationService;
     private @Autowired SchedulingService schedulingService;
     private @Autowired ApplicationEventPublisher appEventPublisher;
+    private @Autowired TrainingSampleStore trainingSampleStore;
+    private @Autowired RecommenderWorkerPool recommenderWorkerPool;
 
     private final SourceDocument currentDocument;
 
@@ -83,6 +98,12 @@ public class TrainingTask
         currentDocument = aCurrentDocument;
     }
 
+    @Override
+    public TaskClass getTaskClass()
+    {
+        return TaskClass.TRAINING;
+    }
+
     @Override
     public void execute()
     {
@@ -94,21 +115,59 @@ public class TrainingTask
                     user.getUsername(), project, getTrigger());
             info("Starting training triggered by [%s]...", getTrigger());
 
+            // List the documents only when they are accessed the first time. This allows us to skip
+            // this in case that no layer / recommender is available.
+            var documents = new LazyInitializer<List<TrainingSource>>()
+            {
+                @Override
+                protected List<TrainingSource> initialize()
+                {
+                    return listTrainingSources(project, user);
+                }
+            };
+
+            // Recommenders using a shared model are trained on the documents of all users
+            var sharedDocuments = new LazyInitializer<List<TrainingSource>>()
+            {
+                @Override
+                protected List<TrainingSource> initialize() throws ConcurrentException
+                {
+                    return listSharedTrainingSources(project, user, documents.get());
+                }
+            };
+
             // Read the CASes only when they are accessed the first time. This allows us to skip
-            // reading the CASes in case that no layer / recommender is available or if no
-            // recommender requires evaluation.
-            LazyInitializer<List<TrainingDocument>> casses = new LazyInitializer<List<TrainingDocument>>()
+            // reading the CASes in case that no layer / recommender is available or if all
+            // recommenders support incremental training.
+            var casses = new LazyInitializer<List<TrainingDocument>>()
+            {
+                @Override
+                protected List<TrainingDocument> initialize() throws ConcurrentException
+                {
+                    return readCasses(documents.get());
+                }
+            };
+
+            var sharedCasses = new LazyInitializer<List<TrainingDocument>>()
             {
                 @Override
-                protected List<TrainingDocument> initialize()
+                protected List<TrainingDocument> initialize() throws ConcurrentException
                 {
-                    return readCasses(project, user);
+                    return readCasses(sharedDocuments.get());
                 }
             };
 
             boolean seenSuccessfulTraining = false;
             boolean seenNonTrainingRecommender = false;
 
+            // Shared models claimed by this run which have not been trained successfully (yet)
+            Set<Recommender> claimedSharedModels = ConcurrentHashMap.newKeySet();
+
+            // Preparing the training data may require reading the CASes which is bound to the CAS
+            // storage session of this thread. Only the training of the models which is independent
+            // for every recommender runs concurrently.
+            List<Callable<Boolean>> trainings = new ArrayList<>();
+
             for (AnnotationLayer layer : annoService.listAnnotationLayer(project)) {
                 if (!layer.isEnabled()) {
                     continue;
@@ -178,7 +237,10 @@ public class TrainingTask
                         RecommenderContext ctx = recommendationEngine
                                 .newContext(recommendationService.getContext(user, recommender)
                                         .orElse(RecommenderContext.EMPTY_CONTEXT));
-                        ctx.setUser(user);
+                        // A shared model is not bound to the user who happens to train it
+                        if (!recommender.isSharedModel()) {
+                            ctx.setUser(user);
+                        }
 
                         TrainingCapability capability = recommendationEngine
                                 .getTrainingCapability();
@@ -194,15 +256,39 @@ public class TrainingTask
                             continue;
                         }
 
-                        List<CAS> cassesForTraining = casses.get().stream() //
-                                .filter(e -> !recommender.getStatesIgnoredForTraining()
-                                        .contains(e.state))
-                                .filter(e -> containsTargetTypeAndFeature(recommender, e.cas))
-                                .map(e -> e.cas).collect(toList());
+                        if (recommender.isSharedModel()) {
+                            if (!recommendationService.claimSharedModelTraining(recommender)) {
+                                log.debug("[{}][{}][{}]: Shared model is up to date or being "
+                                        + "trained - skipping", getId(), user.getUsername(),
+                                        recommender.getName());
+                                // Predictions are still needed if there is a shared model already
+                                if (recommendationService.getContext(user, recommender)
+                                        .isPresent()) {
+                                    seenSuccessfulTraining = true;
+                                }
+                                continue;
+                            }
+
+                            claimedSharedModels.add(recommender);
+                        }
+
+                        TrainingData trainingData;
+                        if (recommendationEngine instanceof IncrementalTrainingSupport) {
+                            trainingData = collectTrainingSamples(recommender,
+                                    (IncrementalTrainingSupport<?>) recommendationEngine,
+                                    recommender.isSharedModel() ? sharedDocuments.get()
+                                            : documents.get());
+                        }
+                        else {
+                            trainingData = collectTrainingCasses(recommender,
+                                    recommendationEngine, recommender.isSharedModel()
+                                            ? sharedCasses.get() : casses.get());
+                        }
 
                         // If no data for training is available, but the engine requires training,
                         // do not mark as ready
-                        if (cassesForTraining.isEmpty() && capability == TRAINING_REQUIRED) {
+                        if (trainingData.trainingDocumentCount == 0
+                                && capability == TRAINING_REQUIRED) {
                             log.debug(
                                     "[{}][{}][{}]: There are no annotations available to train on",
                                     getId(), user.getUsername(), recommender.getName());
@@ -216,62 +302,39 @@ public class TrainingTask
                             continue;
                         }
 
-                        log.debug("[{}][{}][{}]: Training model on [{}] out of [{}] documents ...",
-                                getId(), user.getUsername(), recommender.getName(),
-                                cassesForTraining.size(), casses.get().size());
-                        info("Training model for [%s] on [%d] out of [%d] documents ...",
-                                layer.getUiName(), cassesForTraining.size(), casses.get().size());
-
-                        recommendationEngine.train(ctx, cassesForTraining);
-                        inheritLog(ctx.getMessages());
-
-                        long duration = System.currentTimeMillis() - startTime;
-
-                        if (!recommendationEngine.isReadyForPrediction(ctx)) {
-                            int docNum = casses.get().size();
-                            int trainDocNum = cassesForTraining.size();
-                            log.debug(
-                                    "[{}][{}][{}]: Training on [{}] out of [{}] documents not successful ({} ms)",
-                                    getId(), user.getUsername(), recommender.getName(), trainDocNum,
-                                    docNum, duration);
-                            info("Training not successful (%d ms).", duration);
-                            // The recommender may decide for legitimate reasons not to train and
-                            // then this event is annoying
-                            // appEventPublisher.publishEvent(new RecommenderTaskEvent(this,
-                            // user.getUsername(),
-                            // format("Training on %d out of %d documents not successful (%d ms)",
-                            // trainDocNum, docNum, duration),
-                            // recommender));
-                            continue;
-                        }
-
-                        log.debug(
-                                "[{}][{}][{}]: Training successful on [{}] out of [{}] documents ({} ms)",
-                                getId(), user.getUsername(), recommender.getName(),
-                                cassesForTraining.size(), casses.get().size(), duration);
-                        info("Training successful on [%d] out of [%d] documents (%d ms)",
-                                cassesForTraining.size(), casses.get().size(), duration);
-                        seenSuccessfulTraining = true;
-
-                        ctx.close();
-                        recommendationService.putContext(user, recommender, ctx);
+                        trainings.add(() -> {
+                            boolean success = train(user, layer, recommender,
+                                    recommendationEngine, ctx, trainingData);
+                            if (success) {
+                                claimedSharedModels.remove(recommender);
+                            }
+                            return success;
+                        });
                     }
                     // Catching Throwable is intentional here as we want to continue the execution
                     // even if a particular recommender fails.
                     catch (Throwable e) {
-                        long duration = System.currentTimeMillis() - startTime;
-                        log.error("[{}][{}][{}]: Training failed ({} ms)", getId(),
-                                user.getUsername(), recommender.getName(),
-                                (System.currentTimeMillis() - startTime), e);
-                        error("Training failed (%d ms): %s", duration, getRootCauseMessage(e));
-                        appEventPublisher.publishEvent(new RecommenderTaskEvent(this,
-                                user.getUsername(), String.format("Training failed (%d ms) with %s",
-                                        duration, e.getMessage()),
-                                recommender));
+                        handleTrainingFailure(user, recommender, startTime, e);
                     }
                 }
             }
 
+            try {
+                if (recommenderWorkerPool.invokeAll(trainings).contains(true)) {
+                    seenSuccessfulTraining = true;
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.debug("[{}][{}]: Training interrupted", getId(), user.getUsername());
+                return;
+            }
+            finally {
+                // If the training of a shared model failed or did not happen, the next run needs
+                // to train it again
+                claimedSharedModels.forEach(recommendationService::releaseSharedModelTraining);
+            }
+
             if (!seenSuccessfulTraining && !seenNonTrainingRecommender) {
                 log.debug(
                         "[{}][{}]: No recommenders trained successfully and no non-training "
@@ -287,32 +350,200 @@ public class TrainingTask
         }
     }
 
-    private List<TrainingDocument> readCasses(Project aProject, User aUser)
+    private boolean train(User aUser, AnnotationLayer aLayer, Recommender aRecommender,
+            RecommendationEngine aEngine, RecommenderContext aContext, TrainingData aTrainingData)
     {
-        List<TrainingDocument> casses = new ArrayList<>();
-        Map<SourceDocument, AnnotationDocument> allDocuments = documentService
-                .listAllDocuments(aProject, aUser);
-        for (Map.Entry<SourceDocument, AnnotationDocument> entry : allDocuments.entrySet()) {
-            try {
-                SourceDocument sourceDocument = entry.getKey();
-                AnnotationDocument annotationDocument = entry.getValue();
-                AnnotationDocumentState state = annotationDocument != null
-                        ? annotationDocument.getState()
-                        : AnnotationDocumentState.NEW;
-
-                // During training, we should not have to modify the CASes... right? Fingers
-                // crossed.
-                CAS cas = documentService.readAnnotationCas(sourceDocument, aUser.getUsername(),
-                        AUTO_CAS_UPGRADE, SHARED_READ_ONLY_ACCESS);
-                casses.add(new TrainingDocument(cas, state));
+        long startTime = System.currentTimeMillis();
+
+        try {
+            log.debug("[{}][{}][{}]: Training model on [{}] out of [{}] documents ...", getId(),
+                    aUser.getUsername(), aRecommender.getName(),
+                    aTrainingData.trainingDocumentCount, aTrainingData.documentCount);
+            info("Training model for [%s] on [%d] out of [%d] documents ...", aLayer.getUiName(),
+                    aTrainingData.trainingDocumentCount, aTrainingData.documentCount);
+
+            aTrainingData.trainer.train(aContext);
+            inheritLog(aContext.getMessages());
+
+            long duration = System.currentTimeMillis() - startTime;
+
+            if (!aEngine.isReadyForPrediction(aContext)) {
+                int docNum = aTrainingData.documentCount;
+                int trainDocNum = aTrainingData.trainingDocumentCount;
+                log.debug(
+                        "[{}][{}][{}]: Training on [{}] out of [{}] documents not successful ({} ms)",
+                        getId(), aUser.getUsername(), aRecommender.getName(), trainDocNum, docNum,
+                        duration);
+                info("Training not successful (%d ms).", duration);
+                // The recommender may decide for legitimate reasons not to train and
+                // then this event is annoying
+                // appEventPublisher.publishEvent(new RecommenderTaskEvent(this,
+                // user.getUsername(),
+                // format("Training on %d out of %d documents not successful (%d ms)",
+                // trainDocNum, docNum, duration),
+                // recommender));
+                return false;
             }
-            catch (IOException e) {
-                log.error("Cannot read annotation CAS.", e);
+
+            log.debug("[{}][{}][{}]: Training successful on [{}] out of [{}] documents ({} ms)",
+                    getId(), aUser.getUsername(), aRecommender.getName(),
+                    aTrainingData.trainingDocumentCount, aTrainingData.documentCount, duration);
+            info("Training successful on [%d] out of [%d] documents (%d ms)",
+                    aTrainingData.trainingDocumentCount, aTrainingData.documentCount, duration);
+
+            aContext.close();
+            recommendationService.putContext(aUser, aRecommender, aContext);
+            return true;
+        }
+        // Catching Throwable is intentional here as we want to continue the execution even if a
+        // particular recommender fails.
+        catch (Throwable e) {
+            handleTrainingFailure(aUser, aRecommender, startTime, e);
+            return false;
+        }
+    }
+
+    private void handleTrainingFailure(User aUser, Recommender aRecommender, long aStartTime,
+            Throwable aException)
+    {
+        long duration = System.currentTimeMillis() - aStartTime;
+        log.error("[{}][{}][{}]: Training failed ({} ms)", getId(), aUser.getUsername(),
+                aRecommender.getName(), duration, aException);
+        error("Training failed (%d ms): %s", duration, getRootCauseMessage(aException));
+        appEventPublisher.publishEvent(new RecommenderTaskEvent(this, aUser.getUsername(),
+                String.format("Training failed (%d ms) with %s", duration,
+                        aException.getMessage()),
+                aRecommender));
+    }
+
+    private TrainingData collectTrainingCasses(Recommender aRecommender,
+            RecommendationEngine aEngine, List<TrainingDocument> aCasses)
+    {
+        List<CAS> cassesForTraining = aCasses.stream() //
+                .filter(e -> !aRecommender.getStatesIgnoredForTraining().contains(e.state))
+                .filter(e -> containsTargetTypeAndFeature(aRecommender, e.cas)) //
+                .map(e -> e.cas) //
+                .collect(toList());
+
+        return new TrainingData(aCasses.size(), cassesForTraining.size(),
+                ctx -> aEngine.train(ctx, cassesForTraining));
+    }
+
+    /**
+     * Collects the training samples for an engine supporting incremental training. Samples are
+     * only extracted from documents which have changed since the samples were last extracted -
+     * for all other documents, the samples from the {@link TrainingSampleStore} are used.
+     */
+    private <S> TrainingData collectTrainingSamples(Recommender aRecommender,
+            IncrementalTrainingSupport<S> aEngine, List<TrainingSource> aDocuments)
+    {
+        List<S> samples = new ArrayList<>();
+        Map<String, Set<Long>> documentIds = new HashMap<>();
+        int documentCount = 0;
+        int trainingDocumentCount = 0;
+        int extractedDocumentCount = 0;
+
+        for (TrainingSource source : aDocuments) {
+            documentIds.computeIfAbsent(source.username, key -> new HashSet<>())
+                    .add(source.document.getId());
+
+            DocumentSamples<S> docSamples = trainingSampleStore.getSamples(source.username,
+                    aRecommender, source.document);
+            if (docSamples == null) {
+                // The version must be obtained before reading the CAS - if the CAS is written
+                // while we extract the samples, they are discarded on the next run
+                long version = trainingSampleStore.getVersion();
+                Optional<CAS> cas = readCas(source);
+                if (cas.isEmpty()) {
+                    continue;
+                }
+
+                boolean containsTrainingData = containsTargetTypeAndFeature(aRecommender,
+                        cas.get());
+                List<S> extracted = containsTrainingData
+                        ? aEngine.extractTrainingSamples(cas.get())
+                        : emptyList();
+                docSamples = new DocumentSamples<>(version, containsTrainingData, extracted,
+                        extracted.stream().mapToLong(aEngine::estimateSampleSize).sum());
+                trainingSampleStore.putSamples(source.username, aRecommender, source.document,
+                        docSamples);
+                extractedDocumentCount++;
+            }
+
+            documentCount++;
+
+            if (aRecommender.getStatesIgnoredForTraining().contains(source.state)
+                    || !docSamples.containsTrainingData()) {
+                continue;
+            }
+
+            samples.addAll(docSamples.getSamples());
+            trainingDocumentCount++;
+        }
+
+        documentIds.forEach((username, ids) -> trainingSampleStore.retainDocuments(username,
+                aRecommender, ids));
+
+        log.debug("[{}][{}]: Extracted samples from [{}] changed documents, re-used samples "
+                + "from [{}] documents", getId(), aRecommender.getName(), extractedDocumentCount,
+                documentCount - extractedDocumentCount);
+
+        return new TrainingData(documentCount, trainingDocumentCount,
+                ctx -> aEngine.trainOnSamples(ctx, samples));
+    }
+
+    private List<TrainingSource> listTrainingSources(Project aProject, User aUser)
+    {
+        List<TrainingSource> sources = new ArrayList<>();
+        for (var entry : documentService.listAllDocuments(aProject, aUser).entrySet()) {
+            AnnotationDocumentState state = entry.getValue() != null
+                    ? entry.getValue().getState()
+                    : AnnotationDocumentState.NEW;
+            sources.add(new TrainingSource(aUser.getUsername(), entry.getKey(), state));
+        }
+        return sources;
+    }
+
+    /**
+     * @return the documents of the given user plus the annotation documents of all other users in
+     *         the project.
+     */
+    private List<TrainingSource> listSharedTrainingSources(Project aProject, User aUser,
+            List<TrainingSource> aUserDocuments)
+    {
+        List<TrainingSource> sources = new ArrayList<>(aUserDocuments);
+        for (AnnotationDocument annDoc : documentService.listAnnotationDocuments(aProject)) {
+            if (!aUser.getUsername().equals(annDoc.getUser())) {
+                sources.add(new TrainingSource(annDoc.getUser(), annDoc.getDocument(),
+                        annDoc.getState()));
             }
         }
+        return sources;
+    }
+
+    private List<TrainingDocument> readCasses(List<TrainingSource> aDocuments)
+    {
+        List<TrainingDocument> casses = new ArrayList<>();
+        for (TrainingSource source : aDocuments) {
+            readCas(source).ifPresent(cas -> casses.add(new TrainingDocument(cas, source.state)));
+        }
         return casses;
     }
 
+    private Optional<CAS> readCas(TrainingSource aSource)
+    {
+        try {
+            // During training, we should not have to modify the CASes... right? Fingers
+            // crossed.
+            return Optional.of(documentService.readAnnotationCas(aSource.document,
+                    aSource.username, AUTO_CAS_UPGRADE, SHARED_READ_ONLY_ACCESS));
+        }
+        catch (IOException e) {
+            log.error("Cannot read annotation CAS.", e);
+            return Optional.empty();
+        }
+    }
+
     private boolean containsTargetTypeAndFeature(Recommender aRecommender, CAS aCas)
     {
         Type type;
@@ -334,6 +565,44 @@ public class TrainingTask
         return CasUtil.iterator(aCas, type).hasNext();
     }
 
+    @FunctionalInterface
+    private interface Trainer
+    {
+        void train(RecommenderContext aContext) throws RecommendationException;
+    }
+
+    private static class TrainingData
+    {
+        private final int documentCount;
+        private final int trainingDocumentCount;
+        private final Trainer trainer;
+
+        private TrainingData(int aDocumentCount, int aTrainingDocumentCount, Trainer aTrainer)
+        {
+            documentCount = aDocumentCount;
+            trainingDocumentCount = aTrainingDocumentCount;
+            trainer = aTrainer;
+        }
+    }
+
+    /**
+     * A document of a particular user which can be used for training.
+     */
+    private static class TrainingSource
+    {
+        private final String username;
+        private final SourceDocument document;
+        private final AnnotationDocumentState state;
+
+        private TrainingSource(String aUsername, SourceDocument aDocument,
+                AnnotationDocumentState aState)
+        {
+            username = aUsername;
+            document = aDocument;
+            state = aState;
+        }
+    }
+
     private static class TrainingDocument
     {
         private final CAS cas;
@@ -181,6 +181,7 @@ public class RecommenderExporterTest
         recommender2.setThreshold(.2);
         recommender2.setSkipEvaluation(false);
         recommender2.setMaxRecommendations(4);
+        recommender2.setSharedModel(true);
         recommender2.setStatesIgnoredForTraining(asSet(NEW, IN_PROGRESS));
 
         Recommender recommender3 = buildRecommender("3");
@@ -197,6 +198,7 @@ public class RecommenderExporterTest
         recommender4.setThreshold(.4);
         recommender4.setSkipEvaluation(true);
         recommender4.setMaxRecommendations(6);
+        recommender4.setSharedModel(true);
         recommender4.setStatesIgnoredForTraining(asSet());
 
         return asList(recommender1, recommender2, recommender3, recommender4);
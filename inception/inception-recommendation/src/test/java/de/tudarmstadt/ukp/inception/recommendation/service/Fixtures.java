@@ -34,7 +34,7 @@ public class Fixtures
     // AnnotationSuggestion
     private final static long RECOMMENDER_ID = 1;
     private final static String RECOMMENDER_NAME = "TestEntityRecommender";
-    private final static String DOC_NAME = "TestDocument";
+    final static String DOC_NAME = "TestDocument";
     private final static String UI_LABEL = "TestUiLabel";
     private final static double CONFIDENCE = 0.2;
     private final static String CONFIDENCE_EXPLANATION = "Predictor A: 0.05 | Predictor B: 0.15";
@@ -20,9 +20,16 @@ package de.tudarmstadt.ukp.inception.recommendation.service;
 
 import static de.tudarmstadt.ukp.inception.recommendation.api.model.LearningRecordChangeLocation.DETAIL_EDITOR;
 import static de.tudarmstadt.ukp.inception.recommendation.api.model.LearningRecordChangeLocation.MAIN_EDITOR;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.transaction.annotation.Propagation.NOT_SUPPORTED;
 
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 
 import org.apache.uima.cas.CAS;
 import org.junit.jupiter.api.AfterEach;
@@ -32,7 +39,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.liquibase.LiquibaseAutoConfiguration;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
@@ -53,19 +62,21 @@ public class LearningRecordServiceImplIntegrationTest
     private static final String FEATURE_NAME = "testFeature";
 
     private @Autowired TestEntityManager testEntityManager;
+    private @Autowired PlatformTransactionManager transactionManager;
+    private @PersistenceContext EntityManager entityManager;
 
     private LearningRecordService sut;
 
     @BeforeEach
     public void setUp() throws Exception
     {
-        sut = new LearningRecordServiceImpl(testEntityManager.getEntityManager());
+        sut = new LearningRecordServiceImpl(entityManager);
     }
 
     @AfterEach
     public void tearDown()
     {
-        testEntityManager.clear();
+        entityManager.clear();
     }
 
     @Test
@@ -141,8 +152,179 @@ public class LearningRecordServiceImplIntegrationTest
                 .hasFieldOrPropertyWithValue("suggestionType", SuggestionType.RELATION);
     }
 
+    @Test
+    public void thatRecordsCanBeFoundByPositionAndLabel()
+    {
+        SourceDocument sourceDoc = createSourceDocument();
+        AnnotationLayer layer = createAnnotationLayer();
+        AnnotationFeature feature = createAnnotationFeature(layer, FEATURE_NAME);
+
+        sut.logSpanRecord(sourceDoc, USER_NAME, createSpanSuggestion(sourceDoc, layer, feature, 7,
+                14, "testLabel"), layer, feature, LearningRecordType.REJECTED, MAIN_EDITOR);
+        sut.logSpanRecord(sourceDoc, USER_NAME, createSpanSuggestion(sourceDoc, layer, feature, 7,
+                14, "otherLabel"), layer, feature, LearningRecordType.SKIPPED, MAIN_EDITOR);
+
+        assertThat(sut.findRecords(USER_NAME, layer, sourceDoc.getName(), 7, 14, "testLabel"))
+                .extracting(LearningRecord::getUserAction) //
+                .containsExactly(LearningRecordType.REJECTED);
+        assertThat(sut.findRecords(USER_NAME, layer, sourceDoc.getName(), 7, 14, "otherLabel"))
+                .extracting(LearningRecord::getUserAction) //
+                .containsExactly(LearningRecordType.SKIPPED);
+        assertThat(sut.findRecords(USER_NAME, layer, sourceDoc.getName(), 7, 15, "testLabel"))
+                .isEmpty();
+        assertThat(sut.findRecords(USER_NAME, layer, "otherDocument", 7, 14, "testLabel"))
+                .isEmpty();
+    }
+
+    @Test
+    public void thatIndexIsUpdatedWhenRecordsChange()
+    {
+        SourceDocument sourceDoc = createSourceDocument();
+        AnnotationLayer layer = createAnnotationLayer();
+        AnnotationFeature feature = createAnnotationFeature(layer, FEATURE_NAME);
+        SpanSuggestion suggestion = createSpanSuggestion(sourceDoc, layer, feature, 7, 14,
+                "testLabel");
+
+        // Load the index before any records are written
+        assertThat(sut.findRecords(USER_NAME, layer, sourceDoc.getName(), 7, 14, "testLabel"))
+                .isEmpty();
+
+        sut.logSpanRecord(sourceDoc, USER_NAME, suggestion, layer, feature,
+                LearningRecordType.SKIPPED, MAIN_EDITOR);
+        assertThat(sut.findRecords(USER_NAME, layer, sourceDoc.getName(), 7, 14, "testLabel"))
+                .extracting(LearningRecord::getUserAction) //
+                .containsExactly(LearningRecordType.SKIPPED);
+
+        // Logging the same suggestion again replaces the previous record
+        sut.logSpanRecord(sourceDoc, USER_NAME, suggestion, layer, feature,
+                LearningRecordType.REJECTED, MAIN_EDITOR);
+        assertThat(sut.findRecords(USER_NAME, layer, sourceDoc.getName(), 7, 14, "testLabel"))
+                .extracting(LearningRecord::getUserAction) //
+                .containsExactly(LearningRecordType.REJECTED);
+
+        sut.deleteRecords(sourceDoc, USER_NAME);
+        assertThat(sut.findRecords(USER_NAME, layer, sourceDoc.getName(), 7, 14, "testLabel"))
+                .isEmpty();
+    }
+
+    @Test
+    @Transactional(propagation = NOT_SUPPORTED)
+    public void thatRolledBackChangesAreNotAppliedToIndex()
+    {
+        var tx = new TransactionTemplate(transactionManager);
+        SourceDocument sourceDoc = tx.execute(status -> createSourceDocument());
+        AnnotationFeature feature = tx
+                .execute(status -> createAnnotationFeature(createAnnotationLayer(), FEATURE_NAME));
+        AnnotationLayer layer = feature.getLayer();
+        SpanSuggestion suggestion = createSpanSuggestion(sourceDoc, layer, feature, 7, 14,
+                "testLabel");
+
+        try {
+            // Load the index before any records are written
+            assertThat(sut.findRecords(USER_NAME, layer, sourceDoc.getName(), 7, 14, "testLabel"))
+                    .isEmpty();
+
+            tx.executeWithoutResult(status -> {
+                sut.logSpanRecord(sourceDoc, USER_NAME, suggestion, layer, feature,
+                        LearningRecordType.SKIPPED, MAIN_EDITOR);
+                status.setRollbackOnly();
+            });
+            assertThat(sut.findRecords(USER_NAME, layer, sourceDoc.getName(), 7, 14, "testLabel"))
+                    .isEmpty();
+
+            tx.executeWithoutResult(status -> sut.logSpanRecord(sourceDoc, USER_NAME, suggestion,
+                    layer, feature, LearningRecordType.REJECTED, MAIN_EDITOR));
+            assertThat(sut.findRecords(USER_NAME, layer, sourceDoc.getName(), 7, 14, "testLabel"))
+                    .extracting(LearningRecord::getUserAction) //
+                    .containsExactly(LearningRecordType.REJECTED);
+        }
+        finally {
+            deleteCommitted(tx, sourceDoc, feature);
+        }
+    }
+
+    @Test
+    @Transactional(propagation = NOT_SUPPORTED)
+    public void thatChangesCommittedWhileIndexIsLoadedAreNotLost() throws Exception
+    {
+        var tx = new TransactionTemplate(transactionManager);
+        SourceDocument sourceDoc = tx.execute(status -> createSourceDocument());
+        AnnotationFeature feature = tx
+                .execute(status -> createAnnotationFeature(createAnnotationLayer(), FEATURE_NAME));
+        AnnotationLayer layer = feature.getLayer();
+        SpanSuggestion suggestion = createSpanSuggestion(sourceDoc, layer, feature, 7, 14,
+                "testLabel");
+
+        var indexLoaded = new CountDownLatch(1);
+        var recordCommitted = new CountDownLatch(1);
+        var racingSut = new LearningRecordServiceImpl(entityManager)
+        {
+            @Override
+            public List<LearningRecord> listRecords(String aUsername, AnnotationLayer aLayer)
+            {
+                var records = super.listRecords(aUsername, aLayer);
+                if (indexLoaded.getCount() > 0) {
+                    indexLoaded.countDown();
+                    awaitLatch(recordCommitted);
+                }
+                return records;
+            }
+        };
+
+        try {
+            // Load the index and commit a record after the records have been read from the DB
+            // but before the index has been cached
+            var reader = supplyAsync(() -> racingSut.findRecords(USER_NAME, layer,
+                    sourceDoc.getName(), 7, 14, "testLabel"));
+            awaitLatch(indexLoaded);
+            tx.executeWithoutResult(status -> racingSut.logSpanRecord(sourceDoc, USER_NAME,
+                    suggestion, layer, feature, LearningRecordType.REJECTED, MAIN_EDITOR));
+            recordCommitted.countDown();
+            assertThat(reader.get(10, SECONDS)).isEmpty();
+
+            assertThat(racingSut.findRecords(USER_NAME, layer, sourceDoc.getName(), 7, 14,
+                    "testLabel")) //
+                            .extracting(LearningRecord::getUserAction) //
+                            .containsExactly(LearningRecordType.REJECTED);
+        }
+        finally {
+            recordCommitted.countDown();
+            deleteCommitted(tx, sourceDoc, feature);
+        }
+    }
+
     // Helper
 
+    private void deleteCommitted(TransactionTemplate aTx, SourceDocument aDocument,
+            AnnotationFeature aFeature)
+    {
+        aTx.executeWithoutResult(status -> {
+            sut.deleteRecords(aDocument, USER_NAME);
+            testEntityManager.remove(testEntityManager.merge(aFeature));
+            testEntityManager.remove(testEntityManager.merge(aFeature.getLayer()));
+            testEntityManager.remove(testEntityManager.merge(aDocument));
+        });
+    }
+
+    private static void awaitLatch(CountDownLatch aLatch)
+    {
+        try {
+            assertThat(aLatch.await(10, SECONDS)).isTrue();
+        }
+        catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private SpanSuggestion createSpanSuggestion(SourceDocument aDocument, AnnotationLayer aLayer,
+            AnnotationFeature aFeature, int aBegin, int aEnd, String aLabel)
+    {
+        return new SpanSuggestion(42, 1337, "testRecommender", aLayer.getId(), aFeature.getName(),
+                aDocument.getName(), aBegin, aEnd, "aCoveredText", aLabel, aLabel, 0.42,
+                "Test confidence");
+    }
+
     private SourceDocument createSourceDocument()
     {
         SourceDocument doc = new SourceDocument();
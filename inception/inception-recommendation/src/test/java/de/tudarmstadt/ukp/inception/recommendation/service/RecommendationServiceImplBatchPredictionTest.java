@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.service;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.CasUpgradeMode.AUTO_CAS_UPGRADE;
+import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.SHARED_READ_ONLY_ACCESS;
+import static java.util.Arrays.asList;
+import static org.apache.uima.util.TypeSystemUtil.typeSystem2TypeSystemDescription;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
+import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
+import de.tudarmstadt.ukp.inception.annotation.storage.CasStorageSession;
+import de.tudarmstadt.ukp.inception.recommendation.api.RecommenderFactoryRegistry;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.AnnotationSuggestion;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.EvaluatedRecommender;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.Offset;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.Predictions;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.SpanSuggestion;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.BatchPredictionSupport;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.PredictionUnit;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngine;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngineFactory;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
+import de.tudarmstadt.ukp.inception.recommendation.config.RecommenderPropertiesImpl;
+import de.tudarmstadt.ukp.inception.rendering.model.Range;
+import de.tudarmstadt.ukp.inception.schema.service.AnnotationSchemaServiceImpl;
+
+public class RecommendationServiceImplBatchPredictionTest
+{
+    private static final String TEXT = "This is a test.";
+
+    private AnnotationSchemaServiceImpl annoService;
+    private DocumentService documentService;
+    private EntityManager entityManager;
+    private RecommenderFactoryRegistry recommenderFactoryRegistry;
+    private RecommenderPropertiesImpl properties;
+
+    private Project project;
+    private AnnotationLayer layer;
+    private User user;
+    private List<SourceDocument> documents;
+    private Recommender batchRecommender;
+    private Recommender documentRecommender;
+    private RecommendationEngine batchEngine;
+    private RecommendationEngine documentEngine;
+    private CasStorageSession session;
+    private RecommendationServiceImpl sut;
+
+    @BeforeEach
+    public void setup() throws Exception
+    {
+        project = new Project();
+        project.setId(1l);
+        project.setName("Test Project");
+
+        layer = new AnnotationLayer();
+        layer.setId(1l);
+        layer.setEnabled(true);
+        layer.setName(NamedEntity.class.getName());
+        layer.setType(NamedEntity.class.getName());
+        layer.setUiName("Named entity");
+        layer.setProject(project);
+
+        AnnotationFeature feature = new AnnotationFeature();
+        feature.setLayer(layer);
+        feature.setName("value");
+        feature.setType(CAS.TYPE_NAME_STRING);
+
+        user = new User("user");
+
+        documents = new ArrayList<>();
+        for (long id = 1; id <= 3; id++) {
+            SourceDocument document = new SourceDocument("doc" + id, project, "text");
+            document.setId(id);
+            documents.add(document);
+        }
+
+        JCas jcas = JCasFactory.createJCas();
+        annoService = mock(AnnotationSchemaServiceImpl.class);
+        when(annoService.getLayer(layer.getId())).thenReturn(layer);
+        when(annoService.listAnnotationLayer(project)).thenReturn(asList(layer));
+        when(annoService.getFullProjectTypeSystem(project))
+                .thenAnswer(call -> typeSystem2TypeSystemDescription(jcas.getTypeSystem()));
+        doCallRealMethod().when(annoService).upgradeCas(any(CAS.class), any(CAS.class),
+                any(TypeSystemDescription.class));
+
+        documentService = mock(DocumentService.class);
+        when(documentService.readAnnotationCas(any(SourceDocument.class), eq(user.getUsername()),
+                eq(AUTO_CAS_UPGRADE), eq(SHARED_READ_ONLY_ACCESS)))
+                        .thenAnswer(call -> JCasFactory.createText(TEXT).getCas());
+
+        entityManager = mock(EntityManager.class);
+        recommenderFactoryRegistry = mock(RecommenderFactoryRegistry.class);
+
+        properties = new RecommenderPropertiesImpl();
+        properties.setPredictionBatchSize(2);
+
+        sut = new RecommendationServiceImpl(null, null, null, recommenderFactoryRegistry, null,
+                annoService, documentService, null, null, entityManager,
+                mock(ApplicationEventPublisher.class), new RecommenderWorkerPool(1), properties);
+
+        batchRecommender = addRecommender(1l, feature);
+        batchEngine = mock(RecommendationEngine.class,
+                withSettings().extraInterfaces(BatchPredictionSupport.class));
+        addEngine(batchRecommender, batchEngine);
+
+        documentRecommender = addRecommender(2l, feature);
+        documentEngine = mock(RecommendationEngine.class);
+        addEngine(documentRecommender, documentEngine);
+
+        sut.setEvaluatedRecommenders(user, layer,
+                asList(EvaluatedRecommender.makeActiveWithoutEvaluation(batchRecommender),
+                        EvaluatedRecommender.makeActiveWithoutEvaluation(documentRecommender)));
+
+        session = CasStorageSession.open();
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        session.close();
+    }
+
+    @Test
+    public void thatDocumentsArePassedToBatchEnginesInBatches() throws Exception
+    {
+        List<Integer> batchSizes = new ArrayList<>();
+        when(((BatchPredictionSupport) batchEngine).predict(any(), anyList())).thenAnswer(call -> {
+            List<PredictionUnit> units = call.getArgument(1);
+            batchSizes.add(units.size());
+            return wholeDocumentRanges(units);
+        });
+
+        Predictions predictions = sut.computePredictions(user, project, documents);
+
+        // Three documents with a batch size of two make a batch of two documents and a batch of a
+        // single document which is predicted like any other document
+        assertThat(batchSizes).containsExactly(2);
+        verify(batchEngine, times(1)).predict(any(), any(CAS.class), anyInt(), anyInt());
+        verify(documentEngine, times(3)).predict(any(), any(CAS.class), anyInt(), anyInt());
+
+        assertThat(documents) //
+                .allMatch(predictions::hasRunPredictionOnDocument);
+    }
+
+    @Test
+    public void thatDocumentsNotCompletedInFailedBatchInheritSuggestions() throws Exception
+    {
+        Predictions previousPredictions = new Predictions(user, project);
+        previousPredictions.putPredictions(asList(suggestion(documents.get(0)),
+                suggestion(documents.get(1))));
+        sut.putIncomingPredictions(user, project, previousPredictions);
+        sut.switchPredictions(user, project);
+
+        // Only a result for the first document of the batch is returned, so adding the
+        // suggestions for the second document fails
+        when(((BatchPredictionSupport) batchEngine).predict(any(), anyList()))
+                .thenAnswer(call -> wholeDocumentRanges(call.getArgument(1)).subList(0, 1));
+
+        Predictions predictions = sut.computePredictions(user, project,
+                asList(documents.get(0), documents.get(1)));
+
+        assertThat(predictions.getPredictionsByRecommenderAndDocument(batchRecommender,
+                documents.get(0).getName())) //
+                        .as("Suggestion is replaced by the new (empty) prediction") //
+                        .isEmpty();
+        assertThat(predictions.getPredictionsByRecommenderAndDocument(batchRecommender,
+                documents.get(1).getName())) //
+                        .as("Suggestion is inherited from the previous run") //
+                        .hasSize(1);
+        verify(documentEngine, times(2)).predict(any(), any(CAS.class), anyInt(), anyInt());
+    }
+
+    private Recommender addRecommender(long aId, AnnotationFeature aFeature)
+    {
+        Recommender recommender = new Recommender();
+        recommender.setId(aId);
+        recommender.setName("recommender" + aId);
+        recommender.setTool("tool" + aId);
+        recommender.setProject(project);
+        recommender.setLayer(layer);
+        recommender.setFeature(aFeature);
+        recommender.setEnabled(true);
+        when(entityManager.find(Recommender.class, aId)).thenReturn(recommender);
+
+        RecommenderContext context = new RecommenderContext();
+        context.close();
+        sut.putContext(user, recommender, context);
+
+        return recommender;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void addEngine(Recommender aRecommender, RecommendationEngine aEngine)
+        throws Exception
+    {
+        when(aEngine.getRecommender()).thenReturn(aRecommender);
+        when(aEngine.isReadyForPrediction(any())).thenReturn(true);
+        when(aEngine.predict(any(), any(CAS.class), anyInt(), anyInt()))
+                .thenAnswer(call -> new Range(call.getArgument(2), call.getArgument(3)));
+
+        RecommendationEngineFactory factory = mock(RecommendationEngineFactory.class);
+        when(factory.accepts(any(), any())).thenReturn(true);
+        when(factory.build(aRecommender)).thenReturn(aEngine);
+        when(recommenderFactoryRegistry.getFactory(aRecommender.getTool())).thenReturn(factory);
+    }
+
+    private AnnotationSuggestion suggestion(SourceDocument aDocument)
+    {
+        return new SpanSuggestion(1, batchRecommender, layer.getId(), "value",
+                aDocument.getName(), new Offset(0, 4), "This", "label", "label", 1.0, null);
+    }
+
+    private static List<Range> wholeDocumentRanges(List<PredictionUnit> aUnits)
+    {
+        List<Range> ranges = new ArrayList<>();
+        for (PredictionUnit unit : aUnits) {
+            ranges.add(new Range(unit.getBegin(), unit.getEnd()));
+        }
+        return ranges;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.event.AfterCasWrittenEvent;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
+
+public class RecommendationServiceImplSharedModelTest
+{
+    private Project project;
+    private Recommender recommender;
+    private User user1;
+    private User user2;
+    private RecommendationServiceImpl sut;
+
+    @BeforeEach
+    public void setup()
+    {
+        project = new Project();
+        project.setId(1l);
+        project.setName("Test Project");
+
+        recommender = new Recommender();
+        recommender.setId(1l);
+        recommender.setName("recommender");
+        recommender.setProject(project);
+        recommender.setSharedModel(true);
+
+        user1 = new User("user1");
+        user2 = new User("user2");
+
+        sut = new RecommendationServiceImpl(null, null, null, null, null, null, null, null,
+                (EntityManager) null);
+    }
+
+    @Test
+    public void thatSharedModelIsTrainedOncePerAnnotationVersion()
+    {
+        assertThat(sut.claimSharedModelTraining(recommender)).isTrue();
+        assertThat(sut.claimSharedModelTraining(recommender))
+                .as("Training is in progress") //
+                .isFalse();
+
+        RecommenderContext context = closedContext();
+        sut.putContext(user1, recommender, context);
+
+        assertThat(sut.claimSharedModelTraining(recommender))
+                .as("Model is up to date") //
+                .isFalse();
+        assertThat(sut.getContext(user2, recommender)).containsSame(context);
+
+        writeCas(user2);
+
+        assertThat(sut.claimSharedModelTraining(recommender))
+                .as("Annotations have changed") //
+                .isTrue();
+    }
+
+    @Test
+    public void thatReleasedClaimIsTrainedAgain()
+    {
+        assertThat(sut.claimSharedModelTraining(recommender)).isTrue();
+
+        sut.releaseSharedModelTraining(recommender);
+
+        assertThat(sut.claimSharedModelTraining(recommender))
+                .as("Failed training is retried without waiting for annotation changes") //
+                .isTrue();
+        assertThat(sut.getContext(user1, recommender)).isEmpty();
+    }
+
+    @Test
+    public void thatModelTrainedForOutdatedVersionIsTrainedAgain()
+    {
+        assertThat(sut.claimSharedModelTraining(recommender)).isTrue();
+
+        // Annotations change while the model is being trained
+        writeCas(user2);
+
+        sut.putContext(user1, recommender, closedContext());
+
+        assertThat(sut.claimSharedModelTraining(recommender)).isTrue();
+    }
+
+    private void writeCas(User aUser)
+    {
+        SourceDocument doc = new SourceDocument("doc", project, "text");
+        AnnotationDocument annDoc = new AnnotationDocument(aUser.getUsername(), doc);
+        sut.onAfterCasWritten(new AfterCasWrittenEvent(this, annDoc, null));
+    }
+
+    private static RecommenderContext closedContext()
+    {
+        RecommenderContext context = new RecommenderContext();
+        context.close();
+        return context;
+    }
+}
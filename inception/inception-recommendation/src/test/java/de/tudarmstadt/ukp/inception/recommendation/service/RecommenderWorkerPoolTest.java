@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import de.tudarmstadt.ukp.inception.annotation.storage.CasStorageSession;
+
+public class RecommenderWorkerPoolTest
+{
+    private RecommenderWorkerPool sut;
+
+    @AfterEach
+    public void tearDown()
+    {
+        sut.destroy();
+    }
+
+    @Test
+    public void thatResultsAreReturnedInOrder() throws Exception
+    {
+        sut = new RecommenderWorkerPool(4);
+
+        List<Callable<Integer>> work = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int n = i;
+            work.add(() -> n * n);
+        }
+
+        assertThat(sut.invokeAll(work)) //
+                .hasSize(20) //
+                .startsWith(0, 1, 4, 9) //
+                .endsWith(361);
+    }
+
+    @Test
+    public void thatWorkRunsConcurrentlyInOwnSession() throws Exception
+    {
+        sut = new RecommenderWorkerPool(2);
+
+        // Each unit of work waits for the other one - this only completes if both run at once
+        var latch = new CountDownLatch(2);
+        Callable<Boolean> work = () -> {
+            latch.countDown();
+            latch.await();
+            return CasStorageSession.get() != null;
+        };
+
+        assertThat(sut.invokeAll(List.of(work, work))).containsExactly(true, true);
+    }
+
+    @Test
+    public void thatSingleThreadRunsOnCallingThread() throws Exception
+    {
+        sut = new RecommenderWorkerPool(1);
+
+        Thread caller = Thread.currentThread();
+        Callable<Boolean> work = () -> Thread.currentThread() == caller;
+
+        assertThat(sut.invokeAll(List.of(work, work))).containsExactly(true, true);
+    }
+
+    @Test
+    public void thatFailuresArePropagated()
+    {
+        sut = new RecommenderWorkerPool(2);
+
+        Callable<Boolean> ok = () -> true;
+        Callable<Boolean> failing = () -> {
+            throw new IllegalArgumentException("boom");
+        };
+
+        assertThatThrownBy(() -> sut.invokeAll(List.of(ok, failing))) //
+                .isInstanceOf(IllegalStateException.class) //
+                .hasRootCauseInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -48,6 +48,7 @@ import de.tudarmstadt.ukp.inception.recommendation.api.LearningRecordService;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.AnnotationSuggestion;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.RelationSuggestion;
 import de.tudarmstadt.ukp.inception.recommendation.api.model.SuggestionDocumentGroup;
+import de.tudarmstadt.ukp.inception.recommendation.config.RecommenderPropertiesImpl;
 import de.tudarmstadt.ukp.inception.schema.AnnotationSchemaService;
 
 @ExtendWith(MockitoExtension.class)
@@ -82,7 +83,8 @@ public class RelationSuggestionVisibilityCalculationTest
         when(annoService.listSupportedFeatures(layer)).thenReturn(featureList);
 
         sut = new RecommendationServiceImpl(null, null, null, null, null, annoService, null,
-                recordService, null, (EntityManager) null, null);
+                recordService, null, (EntityManager) null, null, new RecommenderWorkerPool(1),
+                new RecommenderPropertiesImpl());
     }
 
     @Test
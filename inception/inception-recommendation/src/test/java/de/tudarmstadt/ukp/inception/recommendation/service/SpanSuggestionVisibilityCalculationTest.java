@@ -17,6 +17,7 @@
  */
 package de.tudarmstadt.ukp.inception.recommendation.service;
 
+import static de.tudarmstadt.ukp.inception.recommendation.service.Fixtures.DOC_NAME;
 import static de.tudarmstadt.ukp.inception.recommendation.service.Fixtures.getInvisibleSuggestions;
 import static de.tudarmstadt.ukp.inception.recommendation.service.Fixtures.getVisibleSuggestions;
 import static de.tudarmstadt.ukp.inception.recommendation.service.Fixtures.makeSpanSuggestionGroup;
@@ -88,8 +89,6 @@ public class SpanSuggestionVisibilityCalculationTest
     @Test
     public void testCalculateVisibilityNoRecordsAllHidden() throws Exception
     {
-        when(recordService.listRecords(user, layer)).thenReturn(new ArrayList<>());
-
         CAS cas = getTestCas();
         SuggestionDocumentGroup<SpanSuggestion> suggestions = makeSpanSuggestionGroup(layerId,
                 NamedEntity._FeatName_value, new int[][] { { 1, 0, 3 }, { 2, 13, 20 } });
@@ -114,8 +113,6 @@ public class SpanSuggestionVisibilityCalculationTest
     @Test
     public void testCalculateVisibilityNoRecordsNotHidden() throws Exception
     {
-        when(recordService.listRecords(user, layer)).thenReturn(new ArrayList<>());
-
         CAS cas = getTestCas();
         SuggestionDocumentGroup<SpanSuggestion> suggestions = makeSpanSuggestionGroup(layerId,
                 NamedEntity._FeatName_value, new int[][] { { 1, 5, 10 } });
@@ -138,7 +135,7 @@ public class SpanSuggestionVisibilityCalculationTest
         rejectedRecord.setOffsetBegin(5);
         rejectedRecord.setOffsetEnd(10);
         records.add(rejectedRecord);
-        when(recordService.listRecords(user, layer)).thenReturn(records);
+        when(recordService.findRecords(user, layer, DOC_NAME, 5, 10, null)).thenReturn(records);
 
         CAS cas = getTestCas();
         SuggestionDocumentGroup<SpanSuggestion> suggestions = makeSpanSuggestionGroup(layerId,
@@ -160,8 +157,6 @@ public class SpanSuggestionVisibilityCalculationTest
     @Test
     public void thatVisibilityIsRestoredWhenOverlappingAnnotationIsRemoved() throws Exception
     {
-        when(recordService.listRecords(user, layer)).thenReturn(new ArrayList<>());
-
         CAS cas = getTestCas();
         SuggestionDocumentGroup<SpanSuggestion> suggestions = makeSpanSuggestionGroup(layerId,
                 NamedEntity._FeatName_value, new int[][] { { 1, 0, 3 }, { 2, 13, 20 } });
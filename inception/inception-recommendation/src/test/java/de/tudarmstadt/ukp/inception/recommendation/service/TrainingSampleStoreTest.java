@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.event.AfterCasWrittenEvent;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.BeforeDocumentRemovedEvent;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.LayerConfigurationChangedEvent;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.config.RecommenderPropertiesImpl;
+import de.tudarmstadt.ukp.inception.recommendation.event.RecommenderUpdatedEvent;
+import de.tudarmstadt.ukp.inception.recommendation.service.TrainingSampleStore.DocumentSamples;
+
+public class TrainingSampleStoreTest
+{
+    private static final String USER = "user";
+
+    private RecommenderPropertiesImpl properties;
+    private TrainingSampleStore sut;
+    private Project project;
+    private Recommender recommender;
+    private SourceDocument doc1;
+    private SourceDocument doc2;
+
+    @BeforeEach
+    public void setup()
+    {
+        properties = new RecommenderPropertiesImpl();
+        sut = new TrainingSampleStore(properties);
+
+        project = new Project("project");
+        project.setId(1l);
+
+        recommender = new Recommender("recommender", new AnnotationLayer());
+        recommender.setId(1l);
+        recommender.setProject(project);
+
+        doc1 = new SourceDocument("doc1", project, "text");
+        doc1.setId(1l);
+        doc2 = new SourceDocument("doc2", project, "text");
+        doc2.setId(2l);
+    }
+
+    @Test
+    public void thatSamplesAreReusedUntilDocumentIsWritten()
+    {
+        var samples = samples(sut.getVersion(), "a", "b");
+        sut.putSamples(USER, recommender, doc1, samples);
+
+        assertThat(sut.<String> getSamples(USER, recommender, doc1)).isSameAs(samples);
+        assertThat(sut.<String> getSamples(USER, recommender, doc2)).isNull();
+        assertThat(sut.<String> getSamples("other", recommender, doc1)).isNull();
+
+        written(USER, doc1);
+
+        assertThat(sut.<String> getSamples(USER, recommender, doc1)).isNull();
+    }
+
+    @Test
+    public void thatWriteOfOtherUserDoesNotInvalidateSamples()
+    {
+        var samples = samples(sut.getVersion(), "a");
+        sut.putSamples(USER, recommender, doc1, samples);
+
+        written("other", doc1);
+
+        assertThat(sut.<String> getSamples(USER, recommender, doc1)).isSameAs(samples);
+    }
+
+    @Test
+    public void thatSamplesExtractedBeforeWriteAreNotKept()
+    {
+        long version = sut.getVersion();
+        written(USER, doc1);
+
+        sut.putSamples(USER, recommender, doc1, samples(version, "a"));
+
+        assertThat(sut.<String> getSamples(USER, recommender, doc1)).isNull();
+
+        var samples = samples(sut.getVersion(), "a");
+        sut.putSamples(USER, recommender, doc1, samples);
+
+        assertThat(sut.<String> getSamples(USER, recommender, doc1)).isSameAs(samples);
+    }
+
+    @Test
+    public void thatSamplesExtractedBeforeWriteAreNotKeptAfterVersionWasDropped()
+    {
+        long version = sut.getVersion();
+        written(USER, doc1);
+
+        // Drops the version of the document which has been recorded by the write
+        sut.onLayerConfigurationChanged(new LayerConfigurationChangedEvent(this, project));
+
+        sut.putSamples(USER, recommender, doc1, samples(version, "a"));
+
+        assertThat(sut.<String> getSamples(USER, recommender, doc1)).isNull();
+    }
+
+    @Test
+    public void thatRetainDocumentsDropsSamplesOfOtherDocuments()
+    {
+        var samples1 = samples(sut.getVersion(), "a");
+        sut.putSamples(USER, recommender, doc1, samples1);
+        sut.putSamples(USER, recommender, doc2, samples(sut.getVersion(), "b"));
+        var otherUserSamples = samples(sut.getVersion(), "c");
+        sut.putSamples("other", recommender, doc2, otherUserSamples);
+
+        sut.retainDocuments(USER, recommender, Set.of(doc1.getId()));
+
+        assertThat(sut.<String> getSamples(USER, recommender, doc1)).isSameAs(samples1);
+        assertThat(sut.<String> getSamples(USER, recommender, doc2)).isNull();
+        assertThat(sut.<String> getSamples("other", recommender, doc2)).isSameAs(otherUserSamples);
+    }
+
+    @Test
+    public void thatSamplesAreDroppedWithDocumentAndRecommender()
+    {
+        sut.putSamples(USER, recommender, doc1, samples(sut.getVersion(), "a"));
+        sut.putSamples(USER, recommender, doc2, samples(sut.getVersion(), "b"));
+
+        sut.onBeforeDocumentRemoved(new BeforeDocumentRemovedEvent(this, doc1));
+
+        assertThat(sut.<String> getSamples(USER, recommender, doc1)).isNull();
+        assertThat(sut.<String> getSamples(USER, recommender, doc2)).isNotNull();
+
+        sut.onRecommenderUpdated(new RecommenderUpdatedEvent(this, recommender));
+
+        assertThat(sut.<String> getSamples(USER, recommender, doc2)).isNull();
+    }
+
+    @Test
+    public void thatMemoryIsLimitedByEstimatedSampleSize()
+    {
+        properties.setTrainingSampleCacheMemory(DataSize.ofKilobytes(10));
+        sut = new TrainingSampleStore(properties);
+
+        sut.putSamples(USER, recommender, doc1,
+                new DocumentSamples<>(sut.getVersion(), true, List.of("a"), 6 * 1024));
+        sut.putSamples(USER, recommender, doc2,
+                new DocumentSamples<>(sut.getVersion(), true, List.of("b"), 6 * 1024));
+        sut.cleanUp();
+
+        assertThat(List.of(doc1, doc2)) //
+                .filteredOn(doc -> sut.getSamples(USER, recommender, doc) != null) //
+                .hasSize(1);
+    }
+
+    private void written(String aUser, SourceDocument aDocument)
+    {
+        sut.onAfterCasWritten(
+                new AfterCasWrittenEvent(this, new AnnotationDocument(aUser, aDocument), null));
+    }
+
+    private static DocumentSamples<String> samples(long aVersion, String... aSamples)
+    {
+        List<String> samples = List.of(aSamples);
+        return new DocumentSamples<>(aVersion, true, samples, 16l * samples.size());
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.recommendation.tasks;
+
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.FINISHED;
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.IN_PROGRESS;
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.NEW;
+import static de.tudarmstadt.ukp.inception.recommendation.api.model.EvaluatedRecommender.makeActiveWithoutEvaluation;
+import static de.tudarmstadt.ukp.inception.recommendation.api.recommender.TrainingCapability.TRAINING_REQUIRED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
+import de.tudarmstadt.ukp.clarin.webanno.api.config.RepositoryProperties;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.AfterCasWrittenEvent;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
+import de.tudarmstadt.ukp.dkpro.core.api.ner.type.NamedEntity;
+import de.tudarmstadt.ukp.inception.recommendation.api.RecommendationService;
+import de.tudarmstadt.ukp.inception.recommendation.api.model.Recommender;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.IncrementalTrainingSupport;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngine;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationEngineFactory;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommendationException;
+import de.tudarmstadt.ukp.inception.recommendation.api.recommender.RecommenderContext;
+import de.tudarmstadt.ukp.inception.recommendation.config.RecommenderPropertiesImpl;
+import de.tudarmstadt.ukp.inception.recommendation.service.RecommenderWorkerPool;
+import de.tudarmstadt.ukp.inception.recommendation.service.TrainingSampleStore;
+import de.tudarmstadt.ukp.inception.scheduling.SchedulingService;
+import de.tudarmstadt.ukp.inception.schema.AnnotationSchemaService;
+
+@ExtendWith(MockitoExtension.class)
+public class TrainingTaskTest
+{
+    private @Mock AnnotationSchemaService annoService;
+    private @Mock DocumentService documentService;
+    private @Mock RecommendationService recommendationService;
+    private @Mock SchedulingService schedulingService;
+    private @Mock ApplicationEventPublisher appEventPublisher;
+    private @Mock RecommendationEngineFactory<Object> factory;
+    private @Mock RecommendationEngine engine;
+    @Mock(extraInterfaces = IncrementalTrainingSupport.class)
+    private RecommendationEngine incrementalEngine;
+
+    private AnnotationConfigApplicationContext context;
+    private TrainingSampleStore trainingSampleStore;
+    private RecommenderWorkerPool workerPool;
+    private Project project;
+    private Recommender recommender;
+    private User user1;
+    private User user2;
+    private SourceDocument doc1;
+    private SourceDocument doc2;
+    private Map<String, CAS> casses;
+
+    @BeforeEach
+    public void setup() throws Exception
+    {
+        workerPool = new RecommenderWorkerPool(1);
+        trainingSampleStore = new TrainingSampleStore(new RecommenderPropertiesImpl());
+
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(AnnotationSchemaService.class, () -> annoService);
+        context.registerBean(DocumentService.class, () -> documentService);
+        context.registerBean(RecommendationService.class, () -> recommendationService);
+        context.registerBean(SchedulingService.class, () -> schedulingService);
+        context.registerBean(ApplicationEventPublisher.class, () -> appEventPublisher);
+        context.registerBean(TrainingSampleStore.class, () -> trainingSampleStore);
+        context.registerBean(RecommenderWorkerPool.class, () -> workerPool);
+        context.registerBean(RepositoryProperties.class, RepositoryProperties::new);
+        context.refresh();
+
+        project = new Project("project");
+        project.setId(1l);
+
+        AnnotationLayer layer = new AnnotationLayer();
+        layer.setId(1l);
+        layer.setName(NamedEntity._TypeName);
+        layer.setUiName("Named entity");
+        layer.setEnabled(true);
+        layer.setProject(project);
+
+        AnnotationFeature feature = new AnnotationFeature();
+        feature.setName(NamedEntity._FeatName_value);
+        feature.setLayer(layer);
+
+        recommender = new Recommender("recommender", layer);
+        recommender.setId(1l);
+        recommender.setProject(project);
+        recommender.setFeature(feature);
+        recommender.setEnabled(true);
+        recommender.setSharedModel(true);
+        recommender.setStatesIgnoredForTraining(Set.of(NEW));
+
+        user1 = new User("user1");
+        user2 = new User("user2");
+        doc1 = new SourceDocument("doc1", project, "text");
+        doc1.setId(1l);
+        doc2 = new SourceDocument("doc2", project, "text");
+        doc2.setId(2l);
+
+        // The ignored states are checked against the state of the document of each user
+        var user1Doc1 = annotationDocument(user1, doc1, FINISHED);
+        var user1Doc2 = annotationDocument(user1, doc2, NEW);
+        var user2Doc1 = annotationDocument(user2, doc1, NEW);
+        var user2Doc2 = annotationDocument(user2, doc2, IN_PROGRESS);
+
+        Map<SourceDocument, AnnotationDocument> user1Documents = new LinkedHashMap<>();
+        user1Documents.put(doc1, user1Doc1);
+        user1Documents.put(doc2, user1Doc2);
+        lenient().when(documentService.listAllDocuments(project, user1))
+                .thenReturn(user1Documents);
+        lenient().when(documentService.listAnnotationDocuments(project))
+                .thenReturn(List.of(user1Doc1, user1Doc2, user2Doc1, user2Doc2));
+
+        casses = new HashMap<>();
+        lenient().when(documentService.readAnnotationCas(any(SourceDocument.class), any(String.class),
+                any(), any())).thenAnswer(call -> casses.computeIfAbsent(
+                        call.getArgument(1) + "/" + ((SourceDocument) call.getArgument(0))
+                                .getName(),
+                        key -> createCasWithNamedEntity()));
+
+        when(annoService.listAnnotationLayer(project)).thenReturn(List.of(layer));
+        when(recommendationService.getActiveRecommenders(user1, layer))
+                .thenReturn(List.of(makeActiveWithoutEvaluation(recommender)));
+        when(recommendationService.getRecommender(recommender.getId())).thenReturn(recommender);
+        doReturn(Optional.of(factory)).when(recommendationService)
+                .getRecommenderFactory(recommender);
+        when(factory.accepts(layer, feature)).thenReturn(true);
+        // The incremental training tests use a different engine
+        lenient().doReturn(engine).when(factory).build(recommender);
+        lenient().when(engine.newContext(any())).thenAnswer(call -> new RecommenderContext());
+        lenient().when(engine.getTrainingCapability()).thenReturn(TRAINING_REQUIRED);
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        context.close();
+        workerPool.destroy();
+    }
+
+    @Test
+    public void thatSharedModelIsTrainedOnDocumentsOfAllUsers() throws Exception
+    {
+        when(recommendationService.claimSharedModelTraining(recommender)).thenReturn(true);
+        when(engine.isReadyForPrediction(any())).thenReturn(true);
+
+        List<CAS> trainedCasses = new ArrayList<>();
+        doAnswer(call -> trainedCasses.addAll(call.getArgument(1))).when(engine).train(any(),
+                anyList());
+
+        runTrainingTask();
+
+        assertThat(trainedCasses).containsExactlyInAnyOrder(casses.get("user1/doc1"),
+                casses.get("user2/doc2"));
+        verify(recommendationService).putContext(eq(user1), eq(recommender), any());
+        verify(recommendationService, never()).releaseSharedModelTraining(recommender);
+        verify(schedulingService).enqueue(any(PredictionTask.class));
+    }
+
+    @Test
+    public void thatClaimIsReleasedWhenTrainingFails() throws Exception
+    {
+        when(recommendationService.claimSharedModelTraining(recommender)).thenReturn(true);
+        doThrow(new RecommendationException("boom")).when(engine).train(any(), anyList());
+
+        runTrainingTask();
+
+        verify(recommendationService, never()).putContext(any(), any(), any());
+        verify(recommendationService).releaseSharedModelTraining(recommender);
+        verify(schedulingService, never()).enqueue(any());
+    }
+
+    @Test
+    public void thatClaimedModelIsUsedForPredictionIfAvailable() throws Exception
+    {
+        when(recommendationService.claimSharedModelTraining(recommender)).thenReturn(false);
+        when(recommendationService.getContext(user1, recommender))
+                .thenReturn(Optional.of(new RecommenderContext()));
+
+        runTrainingTask();
+
+        verify(engine, never()).train(any(), anyList());
+        verify(schedulingService).enqueue(any(PredictionTask.class));
+    }
+
+    @Test
+    public void thatNoPredictionIsRunWithoutSharedModel() throws Exception
+    {
+        when(recommendationService.claimSharedModelTraining(recommender)).thenReturn(false);
+        when(recommendationService.getContext(user1, recommender)).thenReturn(Optional.empty());
+
+        runTrainingTask();
+
+        verify(engine, never()).train(any(), anyList());
+        verify(schedulingService, never()).enqueue(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void thatSamplesAreOnlyExtractedFromChangedDocuments() throws Exception
+    {
+        var incrementalSupport = useIncrementalEngine();
+
+        runTrainingTask();
+
+        verify(incrementalSupport, times(4)).extractTrainingSamples(any());
+        verify(incrementalSupport).trainOnSamples(any(), eq(List.of(casses.get("user1/doc1"),
+                casses.get("user2/doc2"))));
+
+        // Nothing has changed, so the samples of all documents are re-used
+        runTrainingTask();
+
+        verify(incrementalSupport, times(4)).extractTrainingSamples(any());
+        verify(incrementalSupport, times(2)).trainOnSamples(any(),
+                eq(List.of(casses.get("user1/doc1"), casses.get("user2/doc2"))));
+
+        // Only the samples of the written document are extracted again
+        trainingSampleStore.onAfterCasWritten(new AfterCasWrittenEvent(this,
+                new AnnotationDocument(user2.getUsername(), doc2), casses.get("user2/doc2")));
+
+        runTrainingTask();
+
+        verify(incrementalSupport, times(5)).extractTrainingSamples(any());
+        verify(incrementalSupport).extractTrainingSamples(casses.get("user1/doc1"));
+        verify(incrementalSupport, times(2)).extractTrainingSamples(casses.get("user2/doc2"));
+    }
+
+    @Test
+    public void thatSamplesOfRemovedDocumentsAreDropped() throws Exception
+    {
+        useIncrementalEngine();
+
+        runTrainingTask();
+
+        assertThat(trainingSampleStore.<Object> getSamples(user2.getUsername(), recommender,
+                doc2)).isNotNull();
+
+        // The annotation document of user2 in doc2 no longer exists
+        when(documentService.listAnnotationDocuments(project))
+                .thenReturn(List.of(annotationDocument(user1, doc1, FINISHED),
+                        annotationDocument(user1, doc2, NEW),
+                        annotationDocument(user2, doc1, NEW)));
+
+        runTrainingTask();
+
+        assertThat(trainingSampleStore.<Object> getSamples(user2.getUsername(), recommender,
+                doc1)).isNotNull();
+        assertThat(trainingSampleStore.<Object> getSamples(user2.getUsername(), recommender,
+                doc2)).isNull();
+    }
+
+    @SuppressWarnings("unchecked")
+    private IncrementalTrainingSupport<Object> useIncrementalEngine()
+    {
+        var incrementalSupport = (IncrementalTrainingSupport<Object>) incrementalEngine;
+
+        when(recommendationService.claimSharedModelTraining(recommender)).thenReturn(true);
+        doReturn(incrementalEngine).when(factory).build(recommender);
+        when(incrementalEngine.newContext(any())).thenAnswer(call -> new RecommenderContext());
+        when(incrementalEngine.getTrainingCapability()).thenReturn(TRAINING_REQUIRED);
+        // Each document yields its CAS as the only sample
+        when(incrementalSupport.extractTrainingSamples(any()))
+                .thenAnswer(call -> List.of(call.<CAS> getArgument(0)));
+
+        return incrementalSupport;
+    }
+
+    private void runTrainingTask()
+    {
+        var sut = new TrainingTask(user1, project, "test", doc1);
+        context.getAutowireCapableBeanFactory().autowireBean(sut);
+        sut.execute();
+    }
+
+    private static AnnotationDocument annotationDocument(User aUser, SourceDocument aDocument,
+            AnnotationDocumentState aState)
+    {
+        var annDoc = new AnnotationDocument(aUser.getUsername(), aDocument);
+        annDoc.setState(aState);
+        return annDoc;
+    }
+
+    private static CAS createCasWithNamedEntity()
+    {
+        try {
+            var jcas = JCasFactory.createText("John Smith");
+            new NamedEntity(jcas, 0, 10).addToIndexes();
+            return jcas.getCas();
+        }
+        catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -49,4 +49,10 @@ public abstract class DebouncingTask
     {
         return System.currentTimeMillis() > runnableAfter;
     }
+
+    @Override
+    public long getTimeUntilReadyToStart()
+    {
+        return Math.max(0, runnableAfter + 1 - System.currentTimeMillis());
+    }
 }
@@ -17,6 +17,12 @@
  */
 package de.tudarmstadt.ukp.inception.scheduling;
 
+import java.util.Collection;
+
+/**
+ * A task which decides itself whether it is a duplicate of another task. A task can only match
+ * tasks from the same project.
+ */
 public interface MatchableTask
 {
     /**
@@ -28,4 +34,17 @@ public interface MatchableTask
      * @return whether the given task matches this one
      */
     MatchResult matches(Task aTask);
+
+    /**
+     * Used to avoid comparing the task to every other task known to the scheduler. The scheduler
+     * only calls {@link #matches(Task)} for tasks whose {@link Task#getMatchKey() match key} is
+     * one of the keys returned here.
+     * 
+     * @return the match keys of all tasks which this task may match or {@code null} if the task
+     *         needs to be compared to all tasks of the same project.
+     */
+    default Collection<Object> getMatchCandidateKeys()
+    {
+        return null;
+    }
 }
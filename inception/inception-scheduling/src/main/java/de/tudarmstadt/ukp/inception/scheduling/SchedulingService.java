@@ -18,6 +18,7 @@
 package de.tudarmstadt.ukp.inception.scheduling;
 
 import java.util.List;
+import java.util.Map;
 import java.util.function.Predicate;
 
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
@@ -78,4 +79,10 @@ public interface SchedulingService
     void stopAllTasksForProject(Project aProject);
 
     void executeSync(Task aTask);
+
+    /**
+     * @return the queue depth, the number of running tasks and the wait times for each
+     *         {@link TaskClass}.
+     */
+    Map<TaskClass, TaskClassStatistics> getTaskClassStatistics();
 }
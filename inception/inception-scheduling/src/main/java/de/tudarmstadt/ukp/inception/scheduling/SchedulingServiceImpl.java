@@ -19,17 +19,22 @@ package de.tudarmstadt.ukp.inception.scheduling;
 
 import static de.tudarmstadt.ukp.inception.scheduling.MatchResult.NO_MATCH;
 import static de.tudarmstadt.ukp.inception.scheduling.MatchResult.UNQUEUE_EXISTING_AND_QUEUE_THIS;
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.function.Predicate;
@@ -60,6 +65,14 @@ import de.tudarmstadt.ukp.inception.scheduling.config.SchedulingServiceAutoConfi
  * This class is exposed as a Spring Component via
  * {@link SchedulingServiceAutoConfiguration#schedulingService}.
  * </p>
+ * <p>
+ * Tasks that are ready to start are not handed to the executor in the order in which they arrive.
+ * Instead, whenever a thread becomes available, the scheduler picks the next task by its
+ * {@link TaskClass} and then round-robin across projects and users. This ensures that e.g. a
+ * large re-indexing task or many training tasks from one project cannot delay the predictions a
+ * user in another project is waiting for. Additionally, the number of tasks of a particular class
+ * that may run concurrently can be limited.
+ * </p>
  */
 public class SchedulingServiceImpl
     implements SchedulingService, DisposableBean
@@ -67,32 +80,56 @@ public class SchedulingServiceImpl
     private static final Logger log = LoggerFactory.getLogger(SchedulingService.class);
 
     private final ApplicationContext applicationContext;
+    private final SchedulingProperties config;
     private final ThreadPoolExecutor executor;
     private final ScheduledExecutorService watchdog;
     private final SessionRegistry sessionRegistry;
 
     private final List<Task> runningTasks;
-    private final List<Task> enqueuedTasks;
+    private final TaskIndex enqueuedTasks;
+    private final TaskIndex pendingTasks;
+    private final TaskIndex dispatchedTasks;
     private final Set<Project> deletionPending;
 
+    // The following fields are guarded by the monitor of this service
+    private final Map<TaskClass, Integer> dispatchedTasksPerClass;
+    private final Map<Project, Long> lastDispatchPerProject;
+    private final Map<String, Long> lastDispatchPerUser;
+    private long dispatchCounter;
+
+    private final Map<TaskClass, WaitTimeCounter> waitTimeCounters;
+
     @Autowired
     public SchedulingServiceImpl(ApplicationContext aApplicationContext,
             SchedulingProperties aConfig, SessionRegistry aSessionRegistry)
     {
         sessionRegistry = aSessionRegistry;
         applicationContext = aApplicationContext;
+        config = aConfig;
         executor = new InspectableThreadPoolExecutor(aConfig.getNumberOfThreads(),
                 aConfig.getQueueSize(), this::beforeExecute, this::afterExecute);
         runningTasks = Collections.synchronizedList(new ArrayList<>());
-        enqueuedTasks = Collections.synchronizedList(new ArrayList<>());
+        enqueuedTasks = new TaskIndex();
+        pendingTasks = new TaskIndex();
+        dispatchedTasks = new TaskIndex();
         deletionPending = Collections.synchronizedSet(new LinkedHashSet<>());
+        dispatchedTasksPerClass = new EnumMap<>(TaskClass.class);
+        lastDispatchPerProject = new HashMap<>();
+        lastDispatchPerUser = new HashMap<>();
+        waitTimeCounters = new EnumMap<>(TaskClass.class);
+        for (TaskClass taskClass : TaskClass.values()) {
+            waitTimeCounters.put(taskClass, new WaitTimeCounter());
+        }
         watchdog = Executors.newScheduledThreadPool(1);
         watchdog.scheduleAtFixedRate(this::scheduleEligibleTasks, 5, 5, SECONDS);
     }
 
     private void beforeExecute(Thread aThread, Runnable aRunnable)
     {
-        runningTasks.add((Task) aRunnable);
+        Task task = (Task) aRunnable;
+        runningTasks.add(task);
+        waitTimeCounters.get(task.getTaskClass())
+                .record(currentTimeMillis() - task.getEnqueueTime());
         log.debug("Starting task [{}]", aRunnable);
     }
 
@@ -100,6 +137,9 @@ public class SchedulingServiceImpl
     {
         runningTasks.remove(aRunnable);
         log.debug("Completed task [{}]", aRunnable);
+        synchronized (this) {
+            releaseDispatchSlot((Task) aRunnable);
+        }
         scheduleEligibleTasks();
     }
 
@@ -111,7 +151,7 @@ public class SchedulingServiceImpl
     {
         // We return copy here, as else the list the receiver sees might be updated
         // when new tasks are running or existing ones stopped.
-        return new ArrayList<>(enqueuedTasks);
+        return enqueuedTasks.list();
     }
 
     /**
@@ -120,7 +160,7 @@ public class SchedulingServiceImpl
     @Override
     public List<Task> getScheduledTasks()
     {
-        List<Task> result = new ArrayList<>();
+        List<Task> result = pendingTasks.list();
         executor.getQueue().forEach(r -> result.add((Task) r));
         return result;
     }
@@ -172,6 +212,10 @@ public class SchedulingServiceImpl
     @Override
     public synchronized void enqueue(Task aTask)
     {
+        if (aTask.getEnqueueTime() == 0) {
+            aTask.setEnqueueTime(currentTimeMillis());
+        }
+
         if (aTask.getProject() != null && deletionPending.contains(aTask.getProject())) {
             log.debug("Not enqueuing task [{}] for project {} pending deletion", aTask,
                     aTask.getProject());
@@ -179,7 +223,7 @@ public class SchedulingServiceImpl
         }
 
         List<Task> tasksToUnqueue = new ArrayList<>();
-        for (Task enqueuedTask : enqueuedTasks) {
+        for (Task enqueuedTask : enqueuedTasks.getMatchCandidates(aTask)) {
             switch (matchTask(aTask, enqueuedTask)) {
             case DISCARD_OR_QUEUE_THIS:
                 // Check if the incoming task should be discarded
@@ -201,15 +245,16 @@ public class SchedulingServiceImpl
             log.debug("Matching task already queued - unqueuing exsting: [{}] in favor of "
                     + "incoming [{}]", taskToUnqueue, aTask);
             enqueuedTasks.remove(taskToUnqueue);
+            aTask.supersede(taskToUnqueue);
         }
 
-        if (containsMatchingTask(getScheduledTasks(), aTask)) {
+        if (containsMatchingTask(pendingTasks, aTask)) {
             log.debug("Matching task already scheduled - adding to queue: [{}]", aTask);
             enqueuedTasks.add(aTask);
             return;
         }
 
-        if (containsMatchingTask(getRunningTasks(), aTask)) {
+        if (containsMatchingTask(dispatchedTasks, aTask)) {
             log.debug("Matching task already running - adding to queue: [{}]", aTask);
             enqueuedTasks.add(aTask);
             return;
@@ -218,6 +263,13 @@ public class SchedulingServiceImpl
         if (!aTask.isReadyToStart()) {
             log.debug("Task not yet ready to start - adding to queue: [{}]", aTask);
             enqueuedTasks.add(aTask);
+            scheduleEligibleTasksLater(aTask.getTimeUntilReadyToStart());
+            return;
+        }
+
+        if (pendingTasks.size() >= config.getQueueSize()) {
+            log.debug("Too many tasks waiting for execution - adding to queue: [{}]", aTask);
+            enqueuedTasks.add(aTask);
             return;
         }
 
@@ -226,6 +278,25 @@ public class SchedulingServiceImpl
         logState();
     }
 
+    /**
+     * Checks for eligible tasks once the given time has passed instead of waiting for the next
+     * periodic check, so that tasks which become ready to start are not delayed any further.
+     */
+    private void scheduleEligibleTasksLater(long aDelay)
+    {
+        if (aDelay <= 0) {
+            return;
+        }
+
+        try {
+            watchdog.schedule(this::scheduleEligibleTasks, aDelay, MILLISECONDS);
+        }
+        catch (RejectedExecutionException e) {
+            // Watchdog is shutting down
+            log.debug("Watchdog rejected check for eligible tasks");
+        }
+    }
+
     private MatchResult matchTask(Task aTask, Task aEnqueueTask)
     {
         if (aTask instanceof MatchableTask) {
@@ -235,13 +306,14 @@ public class SchedulingServiceImpl
         return aTask.equals(aEnqueueTask) ? UNQUEUE_EXISTING_AND_QUEUE_THIS : NO_MATCH;
     }
 
-    private boolean containsMatchingTask(Collection<Task> aTasks, Task aTask)
+    private boolean containsMatchingTask(TaskIndex aTasks, Task aTask)
     {
         if (aTask instanceof MatchableTask) {
-            return aTasks.stream().anyMatch(t -> ((MatchableTask) aTask).matches(t) != NO_MATCH);
+            return aTasks.getMatchCandidates(aTask).stream()
+                    .anyMatch(t -> ((MatchableTask) aTask).matches(t) != NO_MATCH);
         }
 
-        return aTasks.contains(aTask);
+        return aTasks.containsEqual(aTask);
     }
 
     /**
@@ -259,24 +331,124 @@ public class SchedulingServiceImpl
         factory.autowireBean(aTask);
         factory.initializeBean(aTask, "transientTask");
 
-        executor.execute(aTask);
+        pendingTasks.add(aTask);
+
+        dispatchTasks();
     }
 
     private synchronized void scheduleEligibleTasks()
     {
-        Iterator<Task> i = enqueuedTasks.iterator();
-
-        while (i.hasNext()) {
-            Task t = i.next();
-            if (!getScheduledAndRunningTasks().contains(t) && t.isReadyToStart()) {
-                i.remove();
+        int capacity = config.getQueueSize() - pendingTasks.size();
+        if (capacity > 0) {
+            List<Task> eligibleTasks = enqueuedTasks.poll(t -> !pendingTasks.containsEqual(t)
+                    && !dispatchedTasks.containsEqual(t) && t.isReadyToStart(), capacity);
+            for (Task t : eligibleTasks) {
                 schedule(t);
             }
         }
 
+        dispatchTasks();
+
         logState();
     }
 
+    /**
+     * Hands scheduled tasks to the executor as long as there are threads available to run them.
+     */
+    private synchronized void dispatchTasks()
+    {
+        while (dispatchedTasks.size() < config.getNumberOfThreads()) {
+            Task task = selectNextTask();
+            if (task == null) {
+                return;
+            }
+
+            pendingTasks.remove(task);
+            dispatchedTasks.add(task);
+            dispatchedTasksPerClass.merge(task.getTaskClass(), 1, Integer::sum);
+            dispatchCounter++;
+            lastDispatchPerProject.put(task.getProject(), dispatchCounter);
+            lastDispatchPerUser.put(getUsername(task), dispatchCounter);
+
+            try {
+                executor.execute(task);
+            }
+            catch (RejectedExecutionException e) {
+                // Executor is shutting down
+                log.debug("Executor rejected task [{}]", task);
+                releaseDispatchSlot(task);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Selects the next task to run. Tasks of a more important {@link TaskClass} are preferred.
+     * Within a class, the project and then the user which have not been served for the longest
+     * time are preferred. Otherwise, tasks run in the order in which they were scheduled.
+     */
+    private Task selectNextTask()
+    {
+        Comparator<Task> order = Comparator.comparing(Task::getTaskClass) //
+                .thenComparing(t -> lastDispatchPerProject.getOrDefault(t.getProject(), 0l)) //
+                .thenComparing(t -> lastDispatchPerUser.getOrDefault(getUsername(t), 0l));
+
+        Task next = null;
+        for (Task task : pendingTasks.list()) {
+            if (getDispatchedTasks(task.getTaskClass()) >= config
+                    .getMaxConcurrentTasks(task.getTaskClass())) {
+                continue;
+            }
+
+            if (next == null || order.compare(task, next) < 0) {
+                next = task;
+            }
+        }
+
+        return next;
+    }
+
+    private void releaseDispatchSlot(Task aTask)
+    {
+        dispatchedTasks.remove(aTask);
+        dispatchedTasksPerClass.merge(aTask.getTaskClass(), -1, Integer::sum);
+    }
+
+    private int getDispatchedTasks(TaskClass aTaskClass)
+    {
+        return dispatchedTasksPerClass.getOrDefault(aTaskClass, 0);
+    }
+
+    private static String getUsername(Task aTask)
+    {
+        return aTask.getUser().map(User::getUsername).orElse(null);
+    }
+
+    @Override
+    public synchronized Map<TaskClass, TaskClassStatistics> getTaskClassStatistics()
+    {
+        Map<TaskClass, Integer> queueDepth = new EnumMap<>(TaskClass.class);
+        for (Task task : enqueuedTasks.list()) {
+            queueDepth.merge(task.getTaskClass(), 1, Integer::sum);
+        }
+        for (Task task : getScheduledTasks()) {
+            queueDepth.merge(task.getTaskClass(), 1, Integer::sum);
+        }
+
+        Map<TaskClass, Integer> running = new EnumMap<>(TaskClass.class);
+        for (Task task : getRunningTasks()) {
+            running.merge(task.getTaskClass(), 1, Integer::sum);
+        }
+
+        Map<TaskClass, TaskClassStatistics> result = new EnumMap<>(TaskClass.class);
+        for (TaskClass taskClass : TaskClass.values()) {
+            result.put(taskClass, waitTimeCounters.get(taskClass).toStatistics(taskClass,
+                    queueDepth.getOrDefault(taskClass, 0), running.getOrDefault(taskClass, 0),
+                    config.getMaxConcurrentTasks(taskClass)));
+        }
+        return result;
+    }
+
     /**
      * Removes all task for the user with name {@code aUsername} from the scheduler's queue.
      * 
@@ -310,7 +482,14 @@ public class SchedulingServiceImpl
     public synchronized void stopAllTasksMatching(Predicate<Task> aPredicate)
     {
         enqueuedTasks.removeIf(aPredicate);
-        executor.getQueue().removeIf(runnable -> aPredicate.test((Task) runnable));
+        pendingTasks.removeIf(aPredicate);
+        executor.getQueue().removeIf(runnable -> {
+            if (aPredicate.test((Task) runnable)) {
+                releaseDispatchSlot((Task) runnable);
+                return true;
+            }
+            return false;
+        });
 
         // TODO: Stop the running tasks as well
     }
@@ -327,6 +506,9 @@ public class SchedulingServiceImpl
     {
         stopAllTasksForProject(aEvent.getProject());
         deletionPending.remove(aEvent.getProject());
+        synchronized (this) {
+            lastDispatchPerProject.remove(aEvent.getProject());
+        }
     }
 
     @EventListener
@@ -350,6 +532,9 @@ public class SchedulingServiceImpl
 
         if (username != null) {
             stopAllTasksForUser(username);
+            synchronized (this) {
+                lastDispatchPerUser.remove(username);
+            }
         }
     }
 
@@ -358,6 +543,7 @@ public class SchedulingServiceImpl
     {
         log.info("Shutting down scheduling service!");
         enqueuedTasks.clear();
+        pendingTasks.clear();
         executor.getQueue().clear();
         watchdog.shutdownNow();
         executor.shutdownNow();
@@ -365,9 +551,16 @@ public class SchedulingServiceImpl
 
     private void logState()
     {
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+
         getEnqueuedTasks().forEach(t -> log.debug("Queued   : {}", t));
         getScheduledTasks().forEach(t -> log.debug("Scheduled: {}", t));
         getRunningTasks().forEach(t -> log.debug("Running  : {}", t));
+        if (log.isTraceEnabled()) {
+            getTaskClassStatistics().values().forEach(s -> log.trace("Statistics: {}", s));
+        }
     }
 
     @Override
@@ -378,4 +571,25 @@ public class SchedulingServiceImpl
         factory.initializeBean(aTask, "transientTask");
         aTask.execute(); // Execute synchronously - blocking
     }
+
+    private static class WaitTimeCounter
+    {
+        private long startedTasks;
+        private long totalWaitTime;
+        private long maxWaitTime;
+
+        public synchronized void record(long aWaitTime)
+        {
+            startedTasks++;
+            totalWaitTime += aWaitTime;
+            maxWaitTime = Math.max(maxWaitTime, aWaitTime);
+        }
+
+        public synchronized TaskClassStatistics toStatistics(TaskClass aTaskClass,
+                int aQueueDepth, int aRunningTasks, int aMaxConcurrentTasks)
+        {
+            return new TaskClassStatistics(aTaskClass, aQueueDepth, aRunningTasks,
+                    aMaxConcurrentTasks, startedTasks, totalWaitTime, maxWaitTime);
+        }
+    }
 }
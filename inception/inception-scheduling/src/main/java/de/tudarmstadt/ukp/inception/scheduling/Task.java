@@ -22,6 +22,7 @@ import static de.tudarmstadt.ukp.clarin.webanno.support.logging.Logging.KEY_REPO
 import static de.tudarmstadt.ukp.clarin.webanno.support.logging.Logging.KEY_USERNAME;
 import static org.apache.commons.lang3.Validate.notNull;
 
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -45,6 +46,8 @@ public abstract class Task
     private final String trigger;
     private final int id;
 
+    private volatile long enqueueTime;
+
     public Task(Project aProject, String aTrigger)
     {
         this(null, aProject, aTrigger);
@@ -91,6 +94,65 @@ public abstract class Task
         return true;
     }
 
+    /**
+     * @return the time in milliseconds until the task becomes {@link #isReadyToStart() ready to
+     *         start} or {@code 0} if this is not known in advance. The scheduler checks the task
+     *         again once this time has passed. Otherwise, it is only checked periodically.
+     */
+    public long getTimeUntilReadyToStart()
+    {
+        return 0;
+    }
+
+    /**
+     * Called by the scheduler when this task replaces the given task which has been enqueued but
+     * not yet been started. This allows the task to take over state from the replaced task.
+     * 
+     * @param aTask
+     *            the replaced task.
+     */
+    public void supersede(Task aTask)
+    {
+        // Nothing to do by default
+    }
+
+    /**
+     * @return the class of the task which determines its priority and concurrency limits. Tasks
+     *         that a user is actively waiting for should override this to return a class with a
+     *         higher priority.
+     */
+    public TaskClass getTaskClass()
+    {
+        return TaskClass.DEFAULT;
+    }
+
+    /**
+     * The scheduler indexes tasks by this key so it can find equivalent tasks quickly. Tasks which
+     * are {@link #equals equal} must have equal keys. By default, tasks of the same class in the
+     * same project have the same key. Subclasses that can be told apart more specifically should
+     * override this to return a more specific key.
+     * 
+     * @return the key under which the task is indexed.
+     * @see MatchableTask#getMatchCandidateKeys()
+     */
+    public Object getMatchKey()
+    {
+        return Arrays.asList(getClass(), project);
+    }
+
+    /**
+     * @return time in milliseconds at which the task was first handed to the scheduler.
+     */
+    long getEnqueueTime()
+    {
+        return enqueueTime;
+    }
+
+    void setEnqueueTime(long aEnqueueTime)
+    {
+        enqueueTime = aEnqueueTime;
+    }
+
     @Override
     public void run()
     {
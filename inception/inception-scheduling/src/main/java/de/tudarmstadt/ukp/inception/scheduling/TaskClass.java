@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.scheduling;
+
+/**
+ * Classes of tasks. The scheduler prefers tasks of a class declared earlier over tasks of a class
+ * declared later. Additionally, the number of tasks of a class that may run concurrently can be
+ * limited.
+ */
+public enum TaskClass
+{
+    /**
+     * Latency-sensitive tasks that a user is actively waiting for, e.g. generating predictions.
+     */
+    PREDICTION,
+
+    /**
+     * Tasks that do not declare a specific class.
+     */
+    DEFAULT,
+
+    /**
+     * Tasks building or updating search indexes.
+     */
+    INDEXING,
+
+    /**
+     * Tasks training or evaluating models.
+     */
+    TRAINING;
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.scheduling;
+
+import java.io.Serializable;
+
+/**
+ * Snapshot of the scheduler state for a particular {@link TaskClass}.
+ */
+public class TaskClassStatistics
+    implements Serializable
+{
+    private static final long serialVersionUID = -3013442069290391497L;
+
+    private final TaskClass taskClass;
+    private final int queueDepth;
+    private final int runningTasks;
+    private final int maxConcurrentTasks;
+    private final long startedTasks;
+    private final long totalWaitTime;
+    private final long maxWaitTime;
+
+    public TaskClassStatistics(TaskClass aTaskClass, int aQueueDepth, int aRunningTasks,
+            int aMaxConcurrentTasks, long aStartedTasks, long aTotalWaitTime, long aMaxWaitTime)
+    {
+        taskClass = aTaskClass;
+        queueDepth = aQueueDepth;
+        runningTasks = aRunningTasks;
+        maxConcurrentTasks = aMaxConcurrentTasks;
+        startedTasks = aStartedTasks;
+        totalWaitTime = aTotalWaitTime;
+        maxWaitTime = aMaxWaitTime;
+    }
+
+    public TaskClass getTaskClass()
+    {
+        return taskClass;
+    }
+
+    /**
+     * @return number of tasks which are waiting to be started.
+     */
+    public int getQueueDepth()
+    {
+        return queueDepth;
+    }
+
+    public int getRunningTasks()
+    {
+        return runningTasks;
+    }
+
+    public int getMaxConcurrentTasks()
+    {
+        return maxConcurrentTasks;
+    }
+
+    /**
+     * @return number of tasks which have been started since the scheduler was started.
+     */
+    public long getStartedTasks()
+    {
+        return startedTasks;
+    }
+
+    /**
+     * @return average time in milliseconds that tasks waited from being enqueued until they were
+     *         started.
+     */
+    public long getAverageWaitTime()
+    {
+        return startedTasks > 0 ? totalWaitTime / startedTasks : 0;
+    }
+
+    /**
+     * @return longest time in milliseconds that a task waited from being enqueued until it was
+     *         started.
+     */
+    public long getMaxWaitTime()
+    {
+        return maxWaitTime;
+    }
+
+    @Override
+    public String toString()
+    {
+        return taskClass + "{queued=" + queueDepth + ", running=" + runningTasks + "/"
+                + maxConcurrentTasks + ", started=" + startedTasks + ", avgWait="
+                + getAverageWaitTime() + "ms, maxWait=" + maxWaitTime + "ms}";
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.scheduling;
+
+import static java.util.Collections.emptyList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+
+/**
+ * Set of tasks which maintains the order in which the tasks were added and which is indexed by
+ * {@link Task#getMatchKey() match key} and by project. This allows finding the tasks which an
+ * incoming task may match without having to compare the incoming task to every known task.
+ * <p>
+ * Tasks are identified by their {@link Task#getId() ID}, so distinct tasks which are
+ * {@link Task#equals equal} can be contained at the same time.
+ */
+class TaskIndex
+{
+    private final Map<Integer, Task> tasks = new LinkedHashMap<>();
+    private final Map<Object, Map<Integer, Task>> tasksByMatchKey = new HashMap<>();
+    private final Map<Project, Map<Integer, Task>> tasksByProject = new HashMap<>();
+
+    public synchronized void add(Task aTask)
+    {
+        if (tasks.putIfAbsent(aTask.getId(), aTask) != null) {
+            return;
+        }
+
+        tasksByMatchKey.computeIfAbsent(aTask.getMatchKey(), k -> new LinkedHashMap<>())
+                .put(aTask.getId(), aTask);
+        tasksByProject.computeIfAbsent(aTask.getProject(), k -> new LinkedHashMap<>())
+                .put(aTask.getId(), aTask);
+    }
+
+    public synchronized boolean remove(Task aTask)
+    {
+        if (tasks.remove(aTask.getId()) == null) {
+            return false;
+        }
+
+        unindex(tasksByMatchKey, aTask.getMatchKey(), aTask);
+        unindex(tasksByProject, aTask.getProject(), aTask);
+        return true;
+    }
+
+    private static <K> void unindex(Map<K, Map<Integer, Task>> aIndex, K aKey, Task aTask)
+    {
+        Map<Integer, Task> bucket = aIndex.get(aKey);
+        if (bucket != null) {
+            bucket.remove(aTask.getId());
+            if (bucket.isEmpty()) {
+                aIndex.remove(aKey);
+            }
+        }
+    }
+
+    /**
+     * @return the tasks which the given task may match. If the given task is a
+     *         {@link MatchableTask}, these are the tasks indexed under any of its
+     *         {@link MatchableTask#getMatchCandidateKeys() candidate keys} or all tasks of the same
+     *         project if it does not declare any. Otherwise, these are the tasks with the same
+     *         {@link Task#getMatchKey() match key}.
+     */
+    public synchronized List<Task> getMatchCandidates(Task aTask)
+    {
+        if (aTask instanceof MatchableTask) {
+            Collection<Object> keys = ((MatchableTask) aTask).getMatchCandidateKeys();
+            if (keys == null) {
+                return values(tasksByProject.get(aTask.getProject()));
+            }
+
+            List<Task> candidates = new ArrayList<>();
+            for (Object key : keys) {
+                candidates.addAll(values(tasksByMatchKey.get(key)));
+            }
+            return candidates;
+        }
+
+        return values(tasksByMatchKey.get(aTask.getMatchKey()));
+    }
+
+    /**
+     * @return whether the index contains a task that is {@link Task#equals equal} to the given
+     *         task.
+     */
+    public synchronized boolean containsEqual(Task aTask)
+    {
+        Map<Integer, Task> bucket = tasksByMatchKey.get(aTask.getMatchKey());
+        if (bucket == null) {
+            return false;
+        }
+
+        for (Task task : bucket.values()) {
+            if (task.equals(aTask)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes and returns up to the given number of tasks which satisfy the given predicate in the
+     * order in which they were added.
+     */
+    public synchronized List<Task> poll(Predicate<Task> aPredicate, int aLimit)
+    {
+        List<Task> result = new ArrayList<>();
+        Iterator<Task> i = tasks.values().iterator();
+        while (i.hasNext() && result.size() < aLimit) {
+            Task task = i.next();
+            if (aPredicate.test(task)) {
+                i.remove();
+                unindex(tasksByMatchKey, task.getMatchKey(), task);
+                unindex(tasksByProject, task.getProject(), task);
+                result.add(task);
+            }
+        }
+        return result;
+    }
+
+    public synchronized List<Task> removeIf(Predicate<Task> aPredicate)
+    {
+        return poll(aPredicate, Integer.MAX_VALUE);
+    }
+
+    public synchronized void clear()
+    {
+        tasks.clear();
+        tasksByMatchKey.clear();
+        tasksByProject.clear();
+    }
+
+    public synchronized int size()
+    {
+        return tasks.size();
+    }
+
+    /**
+     * @return a copy of the tasks in the order in which they were added.
+     */
+    public synchronized List<Task> list()
+    {
+        return new ArrayList<>(tasks.values());
+    }
+
+    private static List<Task> values(Map<Integer, Task> aBucket)
+    {
+        return aBucket != null ? new ArrayList<>(aBucket.values()) : emptyList();
+    }
+}
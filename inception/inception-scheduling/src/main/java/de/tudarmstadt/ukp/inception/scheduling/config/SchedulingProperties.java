@@ -17,13 +17,22 @@
  */
 package de.tudarmstadt.ukp.inception.scheduling.config;
 
+import static de.tudarmstadt.ukp.inception.scheduling.TaskClass.INDEXING;
+import static de.tudarmstadt.ukp.inception.scheduling.TaskClass.TRAINING;
+
+import java.util.EnumMap;
+import java.util.Map;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import de.tudarmstadt.ukp.inception.scheduling.TaskClass;
+
 @ConfigurationProperties("inception.scheduling")
 public class SchedulingProperties
 {
     private int numberOfThreads = 4;
     private int queueSize = 100;
+    private Map<TaskClass, Integer> maxConcurrentTasks = new EnumMap<>(TaskClass.class);
 
     public int getNumberOfThreads()
     {
@@ -44,4 +53,33 @@ public class SchedulingProperties
     {
         queueSize = aQueueSize;
     }
+
+    public Map<TaskClass, Integer> getMaxConcurrentTasks()
+    {
+        return maxConcurrentTasks;
+    }
+
+    public void setMaxConcurrentTasks(Map<TaskClass, Integer> aMaxConcurrentTasks)
+    {
+        maxConcurrentTasks = aMaxConcurrentTasks;
+    }
+
+    /**
+     * @return the maximum number of tasks of the given class that may run at the same time. Unless
+     *         configured otherwise, long-running indexing and training tasks may not occupy all
+     *         threads, so there is always a thread left for other tasks.
+     */
+    public int getMaxConcurrentTasks(TaskClass aTaskClass)
+    {
+        Integer limit = maxConcurrentTasks.get(aTaskClass);
+        if (limit != null && limit > 0) {
+            return Math.min(limit, numberOfThreads);
+        }
+
+        if (aTaskClass == INDEXING || aTaskClass == TRAINING) {
+            return Math.max(1, numberOfThreads - 1);
+        }
+
+        return numberOfThreads;
+    }
 }
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.scheduling;
+
+import static de.tudarmstadt.ukp.inception.scheduling.MatchResult.NO_MATCH;
+import static de.tudarmstadt.ukp.inception.scheduling.MatchResult.UNQUEUE_EXISTING_AND_QUEUE_THIS;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.GenericApplicationContext;
+
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
+import de.tudarmstadt.ukp.inception.scheduling.config.SchedulingProperties;
+
+/**
+ * Measures how long it takes to enqueue a large number of tasks, e.g. during a bulk import of
+ * documents. Run via {@link #main(String[])} from the IDE or after building the test classes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SchedulingServiceBenchmark
+{
+    private @Param({ "100000" }) int taskCount;
+    private @Param({ "10" }) int projectCount;
+
+    private GenericApplicationContext context;
+    private SchedulingServiceImpl sut;
+    private List<Task> tasks;
+
+    @Setup(Level.Invocation)
+    public void setUp()
+    {
+        context = new GenericApplicationContext();
+        context.refresh();
+        sut = new SchedulingServiceImpl(context, new SchedulingProperties(), null);
+
+        List<Project> projects = new ArrayList<>();
+        for (int i = 0; i < projectCount; i++) {
+            Project project = new Project();
+            project.setId((long) i);
+            project.setSlug("project" + i);
+            project.setName("project" + i);
+            projects.add(project);
+        }
+
+        // Every tenth task is a duplicate of an earlier task for the same document
+        tasks = new ArrayList<>(taskCount);
+        User user = new User("user");
+        for (int i = 0; i < taskCount; i++) {
+            long documentId = i % 10 == 9 ? i - 5 : i;
+            tasks.add(new DocumentTask(user, projects.get((int) (documentId % projectCount)),
+                    documentId));
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown()
+    {
+        sut.destroy();
+        context.close();
+    }
+
+    @Benchmark
+    public int enqueue()
+    {
+        for (Task task : tasks) {
+            sut.enqueue(task);
+        }
+
+        return sut.getEnqueuedTasks().size();
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder() //
+                .include(SchedulingServiceBenchmark.class.getSimpleName()) //
+                .build()).run();
+    }
+
+    /**
+     * Task that is specific to a document similar to the tasks indexing individual documents.
+     */
+    private static class DocumentTask
+        extends Task
+        implements MatchableTask
+    {
+        private final long documentId;
+
+        DocumentTask(User aUser, Project aProject, long aDocumentId)
+        {
+            super(aUser, aProject, "Benchmark");
+            documentId = aDocumentId;
+        }
+
+        @Override
+        public Object getMatchKey()
+        {
+            return asList(DocumentTask.class, documentId);
+        }
+
+        @Override
+        public Collection<Object> getMatchCandidateKeys()
+        {
+            return asList(getMatchKey());
+        }
+
+        @Override
+        public MatchResult matches(Task aTask)
+        {
+            if (aTask instanceof DocumentTask
+                    && ((DocumentTask) aTask).documentId == documentId) {
+                return UNQUEUE_EXISTING_AND_QUEUE_THIS;
+            }
+
+            return NO_MATCH;
+        }
+
+        @Override
+        public void execute()
+        {
+            // Nothing to do
+        }
+
+        @Override
+        public boolean equals(Object aOther)
+        {
+            return super.equals(aOther) && ((DocumentTask) aOther).documentId == documentId;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(super.hashCode(), documentId);
+        }
+    }
+}
@@ -17,14 +17,21 @@
  */
 package de.tudarmstadt.ukp.inception.scheduling;
 
+import static de.tudarmstadt.ukp.inception.scheduling.MatchResult.NO_MATCH;
+import static de.tudarmstadt.ukp.inception.scheduling.MatchResult.UNQUEUE_EXISTING_AND_QUEUE_THIS;
 import static java.util.Arrays.asList;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -49,7 +56,7 @@ public class SchedulingServiceTest
     @BeforeEach
     public void setUp()
     {
-        when(mockContext.getAutowireCapableBeanFactory())
+        lenient().when(mockContext.getAutowireCapableBeanFactory())
                 .thenReturn(mock(AutowireCapableBeanFactory.class));
 
         sut = new SchedulingServiceImpl(mockContext, new SchedulingProperties(), null);
@@ -112,6 +119,105 @@ public class SchedulingServiceTest
                 .doesNotContain(tasksToRemove);
     }
 
+    @Test
+    public void thatTasksAreStartedByClassAndRoundRobinAcrossProjects() throws Exception
+    {
+        var config = new SchedulingProperties();
+        config.setNumberOfThreads(1);
+        sut.destroy();
+        sut = new SchedulingServiceImpl(mockContext, config, null);
+
+        var blocker = new CountDownLatch(1);
+        var order = Collections.synchronizedList(new ArrayList<String>());
+        sut.enqueue(new RecordingTask(buildUser("user0"), buildProject("project0"),
+                TaskClass.DEFAULT, "blocker", order, blocker));
+        await().atMost(15, SECONDS).until(() -> sut.getRunningTasks().size() == 1);
+
+        sut.enqueue(new RecordingTask(buildUser("user1"), buildProject("project1"),
+                TaskClass.TRAINING, "training1a", order, null));
+        sut.enqueue(new RecordingTask(buildUser("user2"), buildProject("project1"),
+                TaskClass.TRAINING, "training1b", order, null));
+        sut.enqueue(new RecordingTask(buildUser("user3"), buildProject("project2"),
+                TaskClass.TRAINING, "training2", order, null));
+        sut.enqueue(new RecordingTask(buildUser("user4"), buildProject("project3"),
+                TaskClass.PREDICTION, "prediction", order, null));
+
+        assertThat(sut.getTaskClassStatistics().get(TaskClass.TRAINING).getQueueDepth())
+                .isEqualTo(3);
+
+        blocker.countDown();
+        await().atMost(15, SECONDS).until(() -> order.size() == 5);
+
+        assertThat(order).containsExactly("blocker", "prediction", "training1a", "training2",
+                "training1b");
+        assertThat(sut.getTaskClassStatistics().get(TaskClass.TRAINING).getStartedTasks())
+                .isEqualTo(3);
+    }
+
+    @Test
+    public void thatConcurrencyIsLimitedPerTaskClass()
+    {
+        var config = new SchedulingProperties();
+        config.getMaxConcurrentTasks().put(TaskClass.TRAINING, 1);
+        sut.destroy();
+        sut = new SchedulingServiceImpl(mockContext, config, null);
+
+        List<Task> tasks = asList( //
+                new DummyTask(buildUser("user1"), buildProject("project1"), TaskClass.TRAINING),
+                new DummyTask(buildUser("user2"), buildProject("project2"), TaskClass.TRAINING),
+                new DummyTask(buildUser("user3"), buildProject("project3"), TaskClass.DEFAULT));
+
+        for (Task task : tasks) {
+            sut.enqueue(task);
+        }
+
+        await().atMost(15, SECONDS).until(() -> sut.getRunningTasks().size() == 2);
+
+        assertThat(sut.getRunningTasks()).containsExactlyInAnyOrder(tasks.get(0), tasks.get(2));
+        assertThat(sut.getScheduledTasks()).containsExactly(tasks.get(1));
+    }
+
+    @Test
+    public void thatMatchingEnqueuedTasksAreReplaced()
+    {
+        Project project1 = buildProject("project1");
+        Project project2 = buildProject("project2");
+        User user = buildUser("user");
+
+        var doc1a = new DocumentTask(user, project1, 1l);
+        var doc1b = new DocumentTask(user, project1, 1l);
+        var doc2 = new DocumentTask(user, project1, 2l);
+        var doc3 = new DocumentTask(user, project2, 3l);
+        sut.enqueue(doc1a);
+        sut.enqueue(doc2);
+        sut.enqueue(doc1b);
+        sut.enqueue(doc3);
+
+        assertThat(sut.getEnqueuedTasks()) //
+                .as("Task for the same document replaces the enqueued task")
+                .containsExactly(doc2, doc1b, doc3);
+        assertThat(doc1b.superseded).containsExactly(doc1a);
+
+        var projectTask = new ProjectTask(user, project1);
+        sut.enqueue(projectTask);
+
+        assertThat(sut.getEnqueuedTasks()) //
+                .as("Project-wide task replaces all document tasks of the project")
+                .containsExactly(doc3, projectTask);
+    }
+
+    @Test
+    public void thatDelayedTaskStartsOnceReady()
+    {
+        List<String> record = new CopyOnWriteArrayList<>();
+        sut.enqueue(new DelayedTask(buildUser("user"), buildProject("project"), record, 200));
+
+        assertThat(record).isEmpty();
+
+        // The scheduler checks periodically only every few seconds
+        await().atMost(2, SECONDS).until(() -> record.contains("delayed"));
+    }
+
     private User buildUser(String aUsername)
     {
         return new User(aUsername);
@@ -137,9 +243,23 @@ public class SchedulingServiceTest
     private static class DummyTask
         extends Task
     {
+        private final TaskClass taskClass;
+
         DummyTask(User aUser, Project aProject)
+        {
+            this(aUser, aProject, TaskClass.DEFAULT);
+        }
+
+        DummyTask(User aUser, Project aProject, TaskClass aTaskClass)
         {
             super(aUser, aProject, "JUnit");
+            taskClass = aTaskClass;
+        }
+
+        @Override
+        public TaskClass getTaskClass()
+        {
+            return taskClass;
         }
 
         @Override
@@ -155,4 +275,159 @@ public class SchedulingServiceTest
             }
         }
     }
+
+    /**
+     * RecordingTask records its name when it is executed. If a latch is given, it waits for the
+     * latch before completing.
+     */
+    private static class RecordingTask
+        extends Task
+    {
+        private final TaskClass taskClass;
+        private final String name;
+        private final List<String> record;
+        private final CountDownLatch latch;
+
+        RecordingTask(User aUser, Project aProject, TaskClass aTaskClass, String aName,
+                List<String> aRecord, CountDownLatch aLatch)
+        {
+            super(aUser, aProject, "JUnit");
+            taskClass = aTaskClass;
+            name = aName;
+            record = aRecord;
+            latch = aLatch;
+        }
+
+        @Override
+        public TaskClass getTaskClass()
+        {
+            return taskClass;
+        }
+
+        @Override
+        public void execute()
+        {
+            record.add(name);
+
+            if (latch != null) {
+                try {
+                    latch.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * DelayedTask records that it has been executed. It becomes ready to start after a delay.
+     */
+    private static class DelayedTask
+        extends DebouncingTask
+    {
+        private final List<String> record;
+
+        DelayedTask(User aUser, Project aProject, List<String> aRecord, long aDelay)
+        {
+            super(aUser, aProject, "JUnit", aDelay);
+            record = aRecord;
+        }
+
+        @Override
+        public void execute()
+        {
+            record.add("delayed");
+        }
+    }
+
+    /**
+     * DocumentTask is never ready to start and replaces enqueued tasks for the same document.
+     */
+    private static class DocumentTask
+        extends Task
+        implements MatchableTask
+    {
+        private final long documentId;
+        private final List<Task> superseded = new ArrayList<>();
+
+        DocumentTask(User aUser, Project aProject, long aDocumentId)
+        {
+            super(aUser, aProject, "JUnit");
+            documentId = aDocumentId;
+        }
+
+        @Override
+        public boolean isReadyToStart()
+        {
+            return false;
+        }
+
+        @Override
+        public Object getMatchKey()
+        {
+            return asList(DocumentTask.class, documentId);
+        }
+
+        @Override
+        public Collection<Object> getMatchCandidateKeys()
+        {
+            return asList(getMatchKey());
+        }
+
+        @Override
+        public void supersede(Task aTask)
+        {
+            superseded.add(aTask);
+        }
+
+        @Override
+        public MatchResult matches(Task aTask)
+        {
+            if (aTask instanceof DocumentTask
+                    && ((DocumentTask) aTask).documentId == documentId) {
+                return UNQUEUE_EXISTING_AND_QUEUE_THIS;
+            }
+
+            return NO_MATCH;
+        }
+
+        @Override
+        public void execute()
+        {
+            // Never runs
+        }
+    }
+
+    /**
+     * ProjectTask is never ready to start and replaces all enqueued tasks of its project.
+     */
+    private static class ProjectTask
+        extends Task
+        implements MatchableTask
+    {
+        ProjectTask(User aUser, Project aProject)
+        {
+            super(aUser, aProject, "JUnit");
+        }
+
+        @Override
+        public boolean isReadyToStart()
+        {
+            return false;
+        }
+
+        @Override
+        public MatchResult matches(Task aTask)
+        {
+            return aTask.getProject().equals(getProject()) ? UNQUEUE_EXISTING_AND_QUEUE_THIS
+                    : NO_MATCH;
+        }
+
+        @Override
+        public void execute()
+        {
+            // Never runs
+        }
+    }
 }
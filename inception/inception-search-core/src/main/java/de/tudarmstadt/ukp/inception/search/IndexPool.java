@@ -0,0 +1,363 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.search;
+
+import static java.lang.System.currentTimeMillis;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.ukp.inception.search.model.Index;
+
+/**
+ * The indexes of the projects. Each index has its own lock and reference count, so accessing the
+ * index of one project never blocks access to the indexes of other projects.
+ */
+class IndexPool
+{
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final ConcurrentMap<Long, PooledIndex> indexes = new ConcurrentHashMap<>();
+
+    private final LongFunction<Index> loader;
+
+    /**
+     * @param aLoader
+     *            loads the index state of a project and activates its physical index. May return
+     *            {@code null} if there is no suitable index factory.
+     */
+    IndexPool(LongFunction<Index> aLoader)
+    {
+        loader = aLoader;
+    }
+
+    /**
+     * Borrows the index of the given project, loading it if necessary. The index must be returned
+     * to the pool by closing it.
+     * 
+     * @param aProjectId
+     *            the project ID
+     * @return the borrowed index.
+     */
+    PooledIndex acquire(long aProjectId)
+    {
+        while (true) {
+            PooledIndex pooledIndex = indexes.computeIfAbsent(aProjectId, PooledIndex::new);
+
+            if (pooledIndex.isTombstone()) {
+                throw new IllegalStateException("Project [" + aProjectId
+                        + "] is being deleted, index no longer accessible.");
+            }
+
+            // If the index needs to be recycled, we need to wait for exclusive access and then
+            // recycle it
+            if (pooledIndex.isForceRecycle()) {
+                log.trace("Index recycle is forced but index is not idle - waiting...");
+                pooledIndex.awaitIdle();
+                unloadIfIdle(pooledIndex);
+                continue; // Reload
+            }
+
+            if (!pooledIndex.tryBorrow()) {
+                // The index has been unloaded concurrently - make sure it is no longer in the map
+                // and load it again
+                indexes.remove(aProjectId, pooledIndex);
+                continue;
+            }
+
+            try {
+                pooledIndex.load();
+            }
+            catch (RuntimeException e) {
+                pooledIndex.close();
+                throw e;
+            }
+
+            return pooledIndex;
+        }
+    }
+
+    /**
+     * @param aProjectId
+     *            the project ID
+     * @return the index of the given project if it is in the pool, otherwise {@code null}. The
+     *         index is not borrowed.
+     */
+    PooledIndex peek(long aProjectId)
+    {
+        return indexes.get(aProjectId);
+    }
+
+    /**
+     * Unloads all indexes which are not in use and which have not been used for the given time or
+     * which need to be recycled.
+     * 
+     * @param aKeepOpenTime
+     *            how long an unused index is kept open.
+     */
+    void closeIdle(Duration aKeepOpenTime)
+    {
+        long now = currentTimeMillis();
+        long idleAllowed = aKeepOpenTime.toMillis();
+
+        for (PooledIndex pooledIndex : indexes.values()) {
+            if (pooledIndex.isTombstone()) {
+                continue;
+            }
+
+            if (pooledIndex.isForceRecycle()
+                    || now - pooledIndex.getLastAccess() > idleAllowed) {
+                // Indexes which are still in use are not unloaded here. A forced recycle is then
+                // completed by the last user or by the next run of this method.
+                unloadIfIdle(pooledIndex);
+            }
+        }
+    }
+
+    /**
+     * Unloads all indexes even if they are still in use.
+     */
+    void unloadAll()
+    {
+        for (PooledIndex pooledIndex : indexes.values()) {
+            unload(pooledIndex);
+        }
+        indexes.clear();
+    }
+
+    /**
+     * Removes the index of the given project from the pool without unloading it. Used to clean up
+     * the tombstones of deleted projects.
+     * 
+     * @param aProjectId
+     *            the project ID
+     */
+    void remove(long aProjectId)
+    {
+        indexes.remove(aProjectId);
+    }
+
+    /**
+     * Unloads the index state and deactivates/closes the underlying physical index even if it is
+     * still in use.
+     */
+    void unload(PooledIndex aIndex)
+    {
+        if (aIndex.kill()) {
+            closeIndex(aIndex);
+        }
+    }
+
+    /**
+     * Unloads the index state and deactivates/closes the underlying physical index if it is not in
+     * use.
+     * 
+     * @return whether the index has been unloaded.
+     */
+    boolean unloadIfIdle(PooledIndex aIndex)
+    {
+        if (aIndex.killIfIdle()) {
+            closeIndex(aIndex);
+            return true;
+        }
+
+        return false;
+    }
+
+    private void closeIndex(PooledIndex aIndex)
+    {
+        log.trace("Unloading index for project {}", aIndex.getProjectId());
+
+        if (!aIndex.isTombstone()) {
+            // We need to leave tombstones in the map - they get cleaned up once the project
+            // is fully deleted.
+            indexes.remove(aIndex.getProjectId(), aIndex);
+        }
+
+        try {
+            aIndex.unload();
+        }
+        catch (Throwable e) {
+            log.error("Exception while tying to unload index for project {}",
+                    aIndex.getProjectId(), e);
+        }
+    }
+
+    /**
+     * The index of a project with its lifecycle. The index is loaded lazily by the first user. A
+     * reference count tracks the users of the index. Once the index has been unloaded, the
+     * reference count is negative and the index can no longer be borrowed - it is then replaced by
+     * a new instance in the pool.
+     */
+    class PooledIndex
+        implements AutoCloseable
+    {
+        private static final int DEAD = -1;
+
+        private final long projectId;
+        private final AtomicInteger refCount;
+        private final AtomicLong lastAccess;
+        private final AtomicBoolean forceRecycle;
+        private final AtomicBoolean tombstone;
+
+        private volatile Index delegate;
+
+        public PooledIndex(long aProjectId)
+        {
+            projectId = aProjectId;
+            refCount = new AtomicInteger(0);
+            lastAccess = new AtomicLong(currentTimeMillis());
+            forceRecycle = new AtomicBoolean(false);
+            tombstone = new AtomicBoolean(false);
+        }
+
+        public long getProjectId()
+        {
+            return projectId;
+        }
+
+        public Index get()
+        {
+            return delegate;
+        }
+
+        /**
+         * Loads the index unless it has already been loaded. Only users of the index of the same
+         * project have to wait for the index to be loaded.
+         */
+        public synchronized void load()
+        {
+            if (delegate == null) {
+                delegate = loader.apply(projectId);
+            }
+        }
+
+        /**
+         * Closes the physical index. Must only be called after the index has been killed.
+         */
+        public synchronized void unload()
+        {
+            if (delegate != null && delegate.getPhysicalIndex() != null) {
+                delegate.getPhysicalIndex().close();
+            }
+        }
+
+        /**
+         * @return whether the index could be borrowed. Fails if the index has been unloaded.
+         */
+        public boolean tryBorrow()
+        {
+            while (true) {
+                int count = refCount.get();
+                if (count < 0) {
+                    return false;
+                }
+
+                if (refCount.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            refCount.getAndUpdate(count -> count > 0 ? count - 1 : count);
+            lastAccess.set(currentTimeMillis());
+
+            synchronized (refCount) {
+                refCount.notifyAll();
+            }
+        }
+
+        /**
+         * Waits until the index is no longer in use or has been unloaded.
+         */
+        public void awaitIdle()
+        {
+            synchronized (refCount) {
+                while (refCount.get() > 0) {
+                    try {
+                        refCount.wait(1000);
+                    }
+                    catch (InterruptedException e) {
+                        // Ignore
+                    }
+                }
+            }
+        }
+
+        /**
+         * Marks the index as unloaded if nobody is using it.
+         * 
+         * @return whether the index has been marked as unloaded by this call.
+         */
+        public boolean killIfIdle()
+        {
+            return refCount.compareAndSet(0, DEAD);
+        }
+
+        /**
+         * Marks the index as unloaded even if it is still in use.
+         * 
+         * @return whether the index has been marked as unloaded by this call.
+         */
+        public boolean kill()
+        {
+            return refCount.getAndSet(DEAD) >= 0;
+        }
+
+        public void forceRecycle()
+        {
+            forceRecycle.set(true);
+        }
+
+        public boolean isForceRecycle()
+        {
+            return forceRecycle.get();
+        }
+
+        public long getLastAccess()
+        {
+            return lastAccess.get();
+        }
+
+        public boolean isDead()
+        {
+            return refCount.get() < 0;
+        }
+
+        public void tombstone()
+        {
+            tombstone.set(true);
+        }
+
+        public boolean isTombstone()
+        {
+            return tombstone.get();
+        }
+    }
+}
@@ -23,6 +23,9 @@ import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.UNM
 import static de.tudarmstadt.ukp.inception.search.SearchCasUtils.casToByteArray;
 import static de.tudarmstadt.ukp.inception.search.model.AnnotationSearchState.KEY_SEARCH_STATE;
 import static java.lang.System.currentTimeMillis;
+import static java.util.Collections.emptyMap;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toUnmodifiableSet;
@@ -35,19 +38,31 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.lang3.function.FailableConsumer;
+import org.apache.commons.lang3.function.FailableSupplier;
+import org.apache.uima.cas.CAS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
@@ -68,10 +83,12 @@ import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
 import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
 import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
+import de.tudarmstadt.ukp.clarin.webanno.support.logging.MDCContext;
 import de.tudarmstadt.ukp.inception.annotation.storage.CasStorageSession;
 import de.tudarmstadt.ukp.inception.preferences.PreferencesService;
 import de.tudarmstadt.ukp.inception.scheduling.SchedulingService;
 import de.tudarmstadt.ukp.inception.schema.AnnotationSchemaService;
+import de.tudarmstadt.ukp.inception.search.IndexPool.PooledIndex;
 import de.tudarmstadt.ukp.inception.search.config.SearchServiceAutoConfiguration;
 import de.tudarmstadt.ukp.inception.search.config.SearchServiceProperties;
 import de.tudarmstadt.ukp.inception.search.index.IndexRebuildRequiredException;
@@ -109,10 +126,14 @@ public class SearchServiceImpl
     private final SearchServiceProperties properties;
     private final ScheduledExecutorService indexClosingScheduler;
     private final PreferencesService preferencesService;
+    private final ExecutorService reindexLoaderExecutor;
+    private final ExecutorService reindexIndexerExecutor;
 
     // In fact - the only factory we have at the moment...
     private final String DEFAULT_PHSYICAL_INDEX_FACTORY = "mtasDocumentIndexFactory";
 
+    private final IndexPool indexPool = new IndexPool(this::loadIndex);
+
     private boolean shutdown = false;
 
     @Autowired
@@ -133,28 +154,27 @@ public class SearchServiceImpl
 
         indexClosingScheduler = new ScheduledThreadPoolExecutor(0);
         indexClosingScheduler.scheduleWithFixedDelay(this::closeIdleIndexes, 10, 10, SECONDS);
+
+        reindexLoaderExecutor = newReindexExecutor("search-reindex-loader-%d",
+                properties.getReindexLoaderThreads());
+        reindexIndexerExecutor = newReindexExecutor("search-reindex-indexer-%d",
+                properties.getReindexIndexerThreads());
     }
 
-    private void closeIdleIndexes()
+    private static ExecutorService newReindexExecutor(String aNamingPattern, int aThreads)
     {
-        long now = System.currentTimeMillis();
-        long idleAllowed = properties.getIndexKeepOpenTime().toMillis();
-
-        List<PooledIndex> pooledIndexesSnapshot;
-        synchronized (indexes) {
-            pooledIndexesSnapshot = new ArrayList<>(indexes.values());
-
-            for (PooledIndex pooledIndex : pooledIndexesSnapshot) {
-                if (pooledIndex.isTombstone()) {
-                    continue;
-                }
+        int threads = Math.max(1, aThreads);
+        var executor = new ThreadPoolExecutor(threads, threads, 1, MINUTES,
+                new LinkedBlockingQueue<>(), new BasicThreadFactory.Builder()
+                        .namingPattern(aNamingPattern).daemon(true).build());
+        // Release the threads while no re-indexing is running
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 
-                if (pooledIndex.isIdle() && (now - pooledIndex.getLastAccess() > idleAllowed)
-                        || pooledIndex.isForceRecycle()) {
-                    unloadIndex(pooledIndex);
-                }
-            }
-        }
+    private void closeIdleIndexes()
+    {
+        indexPool.closeIdle(properties.getIndexKeepOpenTime());
     }
 
     @Override
@@ -165,6 +185,8 @@ public class SearchServiceImpl
         shutdown = true;
 
         indexClosingScheduler.shutdown();
+        reindexLoaderExecutor.shutdown();
+        reindexIndexerExecutor.shutdown();
 
         // We'll just wait a bit for any running indexing tasks to finish up before we close
         // all the indexes
@@ -179,49 +201,7 @@ public class SearchServiceImpl
             }
         }
 
-        while (!indexes.isEmpty()) {
-            synchronized (indexes) {
-                List<PooledIndex> pooledIndexesSnapshot = new ArrayList<>(indexes.values());
-
-                for (PooledIndex pooledIndex : pooledIndexesSnapshot) {
-                    unloadIndex(pooledIndex);
-                }
-            }
-        }
-    }
-
-    /**
-     * Unloads the index state and deactivates/closes the underlying physical index.
-     */
-    private synchronized void unloadIndex(PooledIndex aIndex)
-    {
-        if (aIndex.isDead()) {
-            return;
-        }
-
-        aIndex.dead();
-
-        Index index = aIndex.get();
-
-        log.trace("Unloading index for project {}", index.getProject());
-
-        synchronized (indexes) {
-            try {
-                if (!aIndex.isTombstone()) {
-                    // We need to leave tombstones in the map - they get cleaned up once the project
-                    // is fully deleted.
-                    indexes.remove(index.getProject().getId());
-                }
-
-                if (index.getPhysicalIndex() != null) {
-                    index.getPhysicalIndex().close();
-                }
-            }
-            catch (Throwable e) {
-                log.error("Exception while tying to unload index for project {}",
-                        index.getProject(), e);
-            }
-        }
+        indexPool.unloadAll();
     }
 
     /**
@@ -232,7 +212,7 @@ public class SearchServiceImpl
      *            the project ID
      * @return the index or {@code null} if there is no suitable index factory.
      */
-    private synchronized Index loadIndex(long aProjectId)
+    private Index loadIndex(long aProjectId)
     {
         Project aProject = projectService.getProject(aProjectId);
 
@@ -287,11 +267,11 @@ public class SearchServiceImpl
 
         log.trace("Removing index for project {} because project is being removed", project);
 
-        try (PooledIndex pooledIndex = acquireIndex(project.getId())) {
+        try (PooledIndex pooledIndex = indexPool.acquire(project.getId())) {
             pooledIndex.tombstone();
 
             // Remove the index entry from the memory map
-            unloadIndex(pooledIndex);
+            indexPool.unload(pooledIndex);
 
             // Physical index exists, drop it
             Index index = pooledIndex.get();
@@ -308,55 +288,18 @@ public class SearchServiceImpl
     @EventListener
     public void afterProjectRemove(AfterProjectRemovedEvent aEvent) throws IOException
     {
-        synchronized (indexes) {
-            indexes.remove(aEvent.getProject().getId());
-        }
-    }
-
-    private final Map<Long, PooledIndex> indexes = new HashMap<>();
-
-    private PooledIndex acquireIndex(long aProjectId)
-    {
-        synchronized (indexes) {
-            PooledIndex pooledIndex = indexes.get(aProjectId);
-
-            if (pooledIndex != null && pooledIndex.isTombstone()) {
-                throw new IllegalStateException("Project [" + aProjectId
-                        + "] is being deleted, index no longer accessible.");
-            }
-
-            // If the index needs to be recycled, we need to wait for exclusive access and then
-            // recycle it
-            if (pooledIndex != null) {
-                if (pooledIndex.isForceRecycle() || pooledIndex.isDead()) {
-                    while (!pooledIndex.isIdle() && !pooledIndex.isDead()) {
-                        try {
-                            log.trace("Index recycle is forced but index is not idle - waiting...");
-                            // Thread.sleep(1000);
-                            indexes.wait(1000);
-                        }
-                        catch (InterruptedException e) {
-                            // Ignore
-                        }
-                    }
-
-                    unloadIndex(pooledIndex);
-                    pooledIndex = null; // Reload below
-                }
-            }
-
-            if (pooledIndex == null) {
-                Index index = loadIndex(aProjectId);
-                pooledIndex = new PooledIndex(index);
-                indexes.put(aProjectId, pooledIndex);
-            }
+        indexedSchemaFingerprints.remove(aEvent.getProject().getId());
 
-            pooledIndex.borrow();
-
-            return pooledIndex;
-        }
+        indexPool.remove(aEvent.getProject().getId());
     }
 
+    /**
+     * Fingerprints of the layers and features that were indexed by the last complete re-indexing of
+     * a project.
+     */
+    private final Map<Long, List<List<Object>>> indexedSchemaFingerprints = //
+            new ConcurrentHashMap<>();
+
     @EventListener
     public void beforeDocumentRemove(BeforeDocumentRemovedEvent aEvent) throws IOException
     {
@@ -367,7 +310,7 @@ public class SearchServiceImpl
                 "Removing document {} from index for project {} because document is being removed",
                 document, project);
 
-        try (PooledIndex pooledIndex = acquireIndex(project.getId())) {
+        try (PooledIndex pooledIndex = indexPool.acquire(project.getId())) {
             Index index = pooledIndex.get();
             // If the index has not been created yet, there is nothing to do
             if (!index.getPhysicalIndex().isCreated()) {
@@ -413,7 +356,17 @@ public class SearchServiceImpl
 
         Project project = aEvent.getProject();
 
-        try (PooledIndex pooledIndex = acquireIndex(project.getId())) {
+        // Many changes to the layer configuration (e.g. colors, validation, tagsets) do not
+        // affect what goes into the index. In that case, we can keep the index.
+        var fingerprint = BulkIndexingContext.create(project, schemaService, false, null)
+                .getSchemaFingerprint();
+        if (fingerprint.equals(indexedSchemaFingerprints.get(project.getId()))) {
+            log.debug("Layer configuration change in project {} does not affect the index",
+                    project);
+            return;
+        }
+
+        try (PooledIndex pooledIndex = indexPool.acquire(project.getId())) {
             pooledIndex.forceRecycle();
             Index index = pooledIndex.get();
             index.setInvalid(true);
@@ -427,7 +380,7 @@ public class SearchServiceImpl
     @Override
     public void indexDocument(SourceDocument aSourceDocument, byte[] aBinaryCas)
     {
-        try (PooledIndex pooledIndex = acquireIndex(aSourceDocument.getProject().getId())) {
+        try (PooledIndex pooledIndex = indexPool.acquire(aSourceDocument.getProject().getId())) {
             indexDocument(pooledIndex, aSourceDocument, aBinaryCas);
         }
     }
@@ -450,9 +403,6 @@ public class SearchServiceImpl
             return;
         }
 
-        // FIXME: This can probably be pulled out of the synchronized block to allow multiple
-        // threads to update the index concurrently. The underlying index code should hopefully
-        // be thread-safe...
         try {
             index.getPhysicalIndex().indexDocument(aSourceDocument, aBinaryCas);
         }
@@ -470,7 +420,7 @@ public class SearchServiceImpl
     {
         Project project = aAnnotationDocument.getProject();
 
-        try (PooledIndex pooledIndex = acquireIndex(project.getId())) {
+        try (PooledIndex pooledIndex = indexPool.acquire(project.getId())) {
             indexDocument(pooledIndex, aAnnotationDocument, "indexDocument", aBinaryCas);
         }
     }
@@ -557,7 +507,7 @@ public class SearchServiceImpl
     {
         log.trace("Query [{}] for user {} in project {}", aQuery, aUser, aProject);
 
-        try (PooledIndex pooledIndex = acquireIndex(aProject.getId())) {
+        try (PooledIndex pooledIndex = indexPool.acquire(aProject.getId())) {
             Index index = pooledIndex.get();
             ensureIndexIsCreatedAndValid(aProject, index);
 
@@ -572,7 +522,7 @@ public class SearchServiceImpl
             int aMaxTokenPerDoc, Set<AnnotationFeature> aFeatures)
         throws IOException, ExecutionException
     {
-        try (PooledIndex pooledIndex = acquireIndex(aProject.getId())) {
+        try (PooledIndex pooledIndex = indexPool.acquire(aProject.getId())) {
             Index index = pooledIndex.get();
             ensureIndexIsCreatedAndValid(aProject, index);
 
@@ -587,7 +537,7 @@ public class SearchServiceImpl
             int aMinTokenPerDoc, int aMaxTokenPerDoc, Set<AnnotationFeature> aFeatures)
         throws ExecutionException, IOException
     {
-        try (PooledIndex pooledIndex = acquireIndex(aProject.getId())) {
+        try (PooledIndex pooledIndex = indexPool.acquire(aProject.getId())) {
             Index index = pooledIndex.get();
             ensureIndexIsCreatedAndValid(aProject, index);
             PhysicalIndex physicalIndex = index.getPhysicalIndex();
@@ -609,7 +559,8 @@ public class SearchServiceImpl
     }
 
     /**
-     * Re-index the project. If there is no physical index, create a new one.
+     * Re-index the project. If there is no physical index, create a new one. The documents are
+     * loaded and added to the index in parallel using a {@link ReindexPipeline}.
      */
     @Override
     @Transactional
@@ -619,7 +570,7 @@ public class SearchServiceImpl
 
         Monitor monitor = aMonitor != null ? aMonitor : new Monitor();
 
-        try (PooledIndex pooledIndex = acquireIndex(aProject.getId())) {
+        try (PooledIndex pooledIndex = indexPool.acquire(aProject.getId())) {
             if (isPerformNoMoreActions(pooledIndex)) {
                 return;
             }
@@ -627,6 +578,10 @@ public class SearchServiceImpl
             Index index = pooledIndex.get();
             index.setInvalid(true);
 
+            // Until the re-indexing is complete, any change to the layer configuration must
+            // trigger another re-indexing
+            indexedSchemaFingerprints.remove(aProject.getId());
+
             // Clear the index
             try {
                 index.getPhysicalIndex().clear();
@@ -662,39 +617,44 @@ public class SearchServiceImpl
             var prefs = preferencesService.loadDefaultTraitsForProject(KEY_SEARCH_STATE, aProject);
             try (var indexContext = BulkIndexingContext.init(aProject, schemaService, true,
                     prefs)) {
+                var physicalIndex = index.getPhysicalIndex();
+                var pipeline = new ReindexPipeline(pooledIndex, indexContext, monitor);
+
                 // Index all the source documents
                 for (SourceDocument doc : sourceDocuments) {
-                    if (isPerformNoMoreActions(pooledIndex)) {
-                        return;
+                    var submitted = pipeline.submit( //
+                            () -> documentService.createOrReadInitialCas(doc, casUpgradeMode,
+                                    accessModeInitialCas), //
+                            bytes -> physicalIndex.indexDocument(doc, bytes));
+                    if (!submitted) {
+                        break;
                     }
-
-                    try (CasStorageSession session = CasStorageSession.openNested()) {
-                        byte[] casAsByteArray = casToByteArray(documentService
-                                .createOrReadInitialCas(doc, casUpgradeMode, accessModeInitialCas));
-                        indexDocument(pooledIndex, doc, casAsByteArray);
-                    }
-
-                    monitor.incDone();
                 }
 
                 // Index all the annotation documents
                 for (AnnotationDocument doc : annotationDocuments) {
-                    if (isPerformNoMoreActions(pooledIndex)) {
-                        return;
+                    var submitted = pipeline.submit( //
+                            () -> documentService.readAnnotationCas(doc.getDocument(),
+                                    doc.getUser(), casUpgradeMode, accessModeAnnotationCas), //
+                            bytes -> physicalIndex.indexDocument(doc, bytes));
+                    if (!submitted) {
+                        break;
                     }
+                }
 
-                    try (CasStorageSession session = CasStorageSession.openNested()) {
-                        byte[] casAsByteArray = casToByteArray(
-                                documentService.readAnnotationCas(doc.getDocument(), doc.getUser(),
-                                        casUpgradeMode, accessModeAnnotationCas));
-                        indexDocument(pooledIndex, doc, "reindex", casAsByteArray);
-                    }
-                    catch (FileNotFoundException e) {
-                        // Ignore it if a annotation CAS does not exist yet
-                    }
+                pipeline.awaitCompletion();
+
+                if (pipeline.isRebuildRequired()) {
+                    invalidateIndexAndForceIndexRebuild(aProject, index, "reindex[error]");
+                    return;
+                }
 
-                    monitor.incDone();
+                if (isPerformNoMoreActions(pooledIndex)) {
+                    return;
                 }
+
+                indexedSchemaFingerprints.put(aProject.getId(),
+                        indexContext.getSchemaFingerprint());
             }
 
             // After re-indexing, reset the invalid flag
@@ -711,15 +671,13 @@ public class SearchServiceImpl
     @Override
     public boolean isIndexValid(Project aProject)
     {
-        synchronized (indexes) {
-            PooledIndex pooledIndex = indexes.get(aProject.getId());
+        PooledIndex pooledIndex = indexPool.peek(aProject.getId());
 
-            if (pooledIndex == null) {
-                return false;
-            }
-
-            return !pooledIndex.get().getInvalid();
+        if (pooledIndex == null || pooledIndex.get() == null) {
+            return false;
         }
+
+        return !pooledIndex.get().getInvalid();
     }
 
     @Override
@@ -757,7 +715,7 @@ public class SearchServiceImpl
         log.trace("Count results for query [{}] for user {} in project {}", aQuery, aUser,
                 aProject);
 
-        try (PooledIndex pooledIndex = acquireIndex(aProject.getId())) {
+        try (PooledIndex pooledIndex = indexPool.acquire(aProject.getId())) {
             Index index = pooledIndex.get();
 
             ensureIndexIsCreatedAndValid(aProject, index);
@@ -832,7 +790,8 @@ public class SearchServiceImpl
 
     private void enqueueIndexDocument(AnnotationDocument aAnnotationDocument, String aTrigger)
     {
-        enqueue(new IndexAnnotationDocumentTask(aAnnotationDocument, aTrigger));
+        enqueue(new IndexAnnotationDocumentTask(aAnnotationDocument, aTrigger,
+                properties.getIndexUpdateDelay()));
     }
 
     /**
@@ -857,82 +816,161 @@ public class SearchServiceImpl
                 .anyMatch(task -> task instanceof IndexingTask_ImplBase);
     }
 
-    private class PooledIndex
-        implements AutoCloseable
-    {
-        private final Index delegate;
-        private final AtomicInteger refCount;
-        private final AtomicLong lastAccess;
+    /**
+     * Pipeline used to re-index a project. The CASes are loaded and serialized by the loader
+     * threads. The indexer threads then tokenize them and add them to the index. The Lucene index
+     * writer is thread-safe, so the indexer threads can feed it concurrently. The number of
+     * documents which have been loaded but not yet indexed is limited, so the loaders cannot run
+     * arbitrarily far ahead of the indexers.
+     */
+    private class ReindexPipeline
+    {
+        private final PooledIndex pooledIndex;
+        private final BulkIndexingContext indexingContext;
+        private final Monitor monitor;
+        private final Map<String, String> callerMdc;
+        private final Semaphore inFlight;
+        private final List<CompletableFuture<Void>> documents = new ArrayList<>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final AtomicBoolean rebuildRequired = new AtomicBoolean(false);
+
+        public ReindexPipeline(PooledIndex aPooledIndex, BulkIndexingContext aIndexingContext,
+                Monitor aMonitor)
+        {
+            pooledIndex = aPooledIndex;
+            indexingContext = aIndexingContext;
+            monitor = aMonitor;
+            callerMdc = MDC.getCopyOfContextMap();
+            inFlight = new Semaphore(Math.max(1, properties.getReindexQueueSize()));
+        }
+
+        /**
+         * Adds a document to the pipeline. Blocks while the maximum number of documents is in
+         * flight.
+         * 
+         * @return {@code false} if the re-indexing has been cancelled or has failed and no more
+         *         documents should be submitted.
+         */
+        public boolean submit(FailableSupplier<CAS, IOException> aLoader,
+                FailableConsumer<byte[], IOException> aIndexer)
+        {
+            if (isCancelled()) {
+                return false;
+            }
 
-        private AtomicBoolean forceRecycle;
-        private AtomicBoolean dead;
-        private AtomicBoolean tombstone;
+            try {
+                inFlight.acquire();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, e);
+                return false;
+            }
 
-        public PooledIndex(Index aDelegate)
-        {
-            delegate = aDelegate;
-            refCount = new AtomicInteger(0);
-            lastAccess = new AtomicLong(currentTimeMillis());
-            forceRecycle = new AtomicBoolean(false);
-            dead = new AtomicBoolean(false);
-            tombstone = new AtomicBoolean(false);
-        }
+            documents.add(supplyAsync(() -> load(aLoader), reindexLoaderExecutor) //
+                    .thenAcceptAsync(bytes -> index(bytes, aIndexer), reindexIndexerExecutor) //
+                    .whenComplete((v, e) -> {
+                        inFlight.release();
+                        monitor.incDone();
+                        if (e != null) {
+                            failure.compareAndSet(null,
+                                    e instanceof CompletionException ? e.getCause() : e);
+                        }
+                    }));
 
-        public Index get()
-        {
-            return delegate;
+            return true;
         }
 
-        public void borrow()
+        /**
+         * The workers need the logging context of the caller, e.g. the storage layer relies on it
+         * to find the repository.
+         */
+        private MDCContext withCallerMdc()
         {
-            refCount.incrementAndGet();
+            var context = MDCContext.open();
+            MDC.setContextMap(callerMdc != null ? callerMdc : emptyMap());
+            return context;
         }
 
-        @Override
-        public void close()
+        private byte[] load(FailableSupplier<CAS, IOException> aLoader)
         {
-            refCount.decrementAndGet();
-            lastAccess.set(currentTimeMillis());
-        }
+            if (isCancelled()) {
+                return null;
+            }
 
-        public void forceRecycle()
-        {
-            forceRecycle.set(true);
+            try (var mdc = withCallerMdc();
+                    CasStorageSession session = CasStorageSession.openNested()) {
+                return casToByteArray(aLoader.get());
+            }
+            catch (FileNotFoundException e) {
+                // Ignore it if a annotation CAS does not exist yet
+                return null;
+            }
+            catch (IOException e) {
+                failure.compareAndSet(null, e);
+                return null;
+            }
         }
 
-        public boolean isForceRecycle()
+        private void index(byte[] aBinaryCas, FailableConsumer<byte[], IOException> aIndexer)
         {
-            return forceRecycle.get();
-        }
+            if (aBinaryCas == null || isCancelled()) {
+                return;
+            }
 
-        public long getLastAccess()
-        {
-            return lastAccess.get();
+            // The MTAS parser picks up the layers and features to index from the context
+            BulkIndexingContext.bind(indexingContext);
+            try (var mdc = withCallerMdc()) {
+                aIndexer.accept(aBinaryCas);
+            }
+            catch (IndexRebuildRequiredException e) {
+                rebuildRequired.set(true);
+            }
+            catch (IOException e) {
+                failure.compareAndSet(null, e);
+            }
+            finally {
+                BulkIndexingContext.clear();
+            }
         }
 
-        public boolean isIdle()
+        private boolean isCancelled()
         {
-            return refCount.get() == 0;
+            return isPerformNoMoreActions(pooledIndex) || rebuildRequired.get()
+                    || failure.get() != null;
         }
 
-        public void dead()
+        public boolean isRebuildRequired()
         {
-            dead.set(true);
+            return rebuildRequired.get();
         }
 
-        public boolean isDead()
+        /**
+         * Waits for all submitted documents to leave the pipeline.
+         * 
+         * @throws IOException
+         *             if a document could not be loaded or indexed.
+         */
+        public void awaitCompletion() throws IOException
         {
-            return dead.get();
-        }
+            for (var document : documents) {
+                try {
+                    document.join();
+                }
+                catch (CompletionException | CancellationException e) {
+                    // Already recorded by the pipeline
+                }
+            }
 
-        public void tombstone()
-        {
-            tombstone.set(true);
-        }
+            Throwable e = failure.get();
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
 
-        public boolean isTombstone()
-        {
-            return tombstone.get();
+            if (e != null) {
+                throw new IOException("Unable to re-index project " + indexingContext.getProject(),
+                        e);
+            }
         }
     }
 }
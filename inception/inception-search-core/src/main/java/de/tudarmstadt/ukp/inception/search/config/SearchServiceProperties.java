@@ -27,4 +27,26 @@ public interface SearchServiceProperties
      * @return time to keep an index open after it has last been used.
      */
     Duration getIndexKeepOpenTime();
+
+    /**
+     * @return time to wait for further changes to an annotation document before updating it in the
+     *         index.
+     */
+    Duration getIndexUpdateDelay();
+
+    /**
+     * @return number of threads loading annotation data while re-indexing a project.
+     */
+    int getReindexLoaderThreads();
+
+    /**
+     * @return number of threads adding documents to the index while re-indexing a project.
+     */
+    int getReindexIndexerThreads();
+
+    /**
+     * @return maximum number of documents that have been loaded but not yet been added to the
+     *         index while re-indexing a project.
+     */
+    int getReindexQueueSize();
 }
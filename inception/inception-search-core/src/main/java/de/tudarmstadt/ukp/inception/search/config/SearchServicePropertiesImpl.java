@@ -29,6 +29,15 @@ public class SearchServicePropertiesImpl
 
     private Duration indexKeepOpenTime = Duration.ofMinutes(10);
 
+    private Duration indexUpdateDelay = Duration.ofSeconds(2);
+
+    private int reindexLoaderThreads = 2;
+
+    private int reindexIndexerThreads = Math.max(1,
+            Runtime.getRuntime().availableProcessors() / 2);
+
+    private int reindexQueueSize = 32;
+
     @Override
     public boolean isEnabled()
     {
@@ -50,4 +59,48 @@ public class SearchServicePropertiesImpl
     {
         indexKeepOpenTime = aIndexKeepOpenTime;
     }
+
+    @Override
+    public Duration getIndexUpdateDelay()
+    {
+        return indexUpdateDelay;
+    }
+
+    public void setIndexUpdateDelay(Duration aIndexUpdateDelay)
+    {
+        indexUpdateDelay = aIndexUpdateDelay;
+    }
+
+    @Override
+    public int getReindexLoaderThreads()
+    {
+        return reindexLoaderThreads;
+    }
+
+    public void setReindexLoaderThreads(int aReindexLoaderThreads)
+    {
+        reindexLoaderThreads = aReindexLoaderThreads;
+    }
+
+    @Override
+    public int getReindexIndexerThreads()
+    {
+        return reindexIndexerThreads;
+    }
+
+    public void setReindexIndexerThreads(int aReindexIndexerThreads)
+    {
+        reindexIndexerThreads = aReindexIndexerThreads;
+    }
+
+    @Override
+    public int getReindexQueueSize()
+    {
+        return reindexQueueSize;
+    }
+
+    public void setReindexQueueSize(int aReindexQueueSize)
+    {
+        reindexQueueSize = aReindexQueueSize;
+    }
 }
@@ -17,6 +17,9 @@
  */
 package de.tudarmstadt.ukp.inception.search.model;
 
+import static java.util.Arrays.asList;
+
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -77,8 +80,44 @@ public class BulkIndexingContext
         clear();
     }
 
+    /**
+     * @return a fingerprint of the layers and features that are indexed. If the fingerprint does
+     *         not change, the layer configuration can be changed without rebuilding the index.
+     */
+    public List<List<Object>> getSchemaFingerprint()
+    {
+        var fingerprint = new ArrayList<List<Object>>();
+
+        for (var layer : layers) {
+            fingerprint.add(asList(layer.getId(), layer.getName(), layer.getUiName(),
+                    layer.getType(),
+                    layer.getAttachType() != null ? layer.getAttachType().getId() : null,
+                    layer.getAttachFeature() != null ? layer.getAttachFeature().getId() : null));
+        }
+
+        for (var feature : features) {
+            fingerprint.add(asList(feature.getId(), feature.getLayer().getId(), feature.getName(),
+                    feature.getUiName(), feature.getType(), feature.getLinkMode(),
+                    feature.getMultiValueMode(), feature.getTraits()));
+        }
+
+        return fingerprint;
+    }
+
     public static BulkIndexingContext init(Project aProject, AnnotationSchemaService aSchemaService,
             boolean aFullReindex, AnnotationSearchState aPrefs)
+    {
+        var indexingContext = create(aProject, aSchemaService, aFullReindex, aPrefs);
+        INSTANCE.set(indexingContext);
+        return indexingContext;
+    }
+
+    /**
+     * Creates a context without making it available to the current thread.
+     */
+    public static BulkIndexingContext create(Project aProject,
+            AnnotationSchemaService aSchemaService, boolean aFullReindex,
+            AnnotationSearchState aPrefs)
     {
         var features = aSchemaService.listSupportedFeatures(aProject);
         features.removeIf(f -> !f.isEnabled() || !f.getLayer().isEnabled());
@@ -86,10 +125,20 @@ public class BulkIndexingContext
         var layers = aSchemaService.listSupportedLayers(aProject);
         layers.removeIf(l -> !l.isEnabled());
 
-        var indexingContext = new BulkIndexingContext(aProject, layers, features, aFullReindex,
-                aPrefs);
-        INSTANCE.set(indexingContext);
-        return indexingContext;
+        return new BulkIndexingContext(aProject, layers, features, aFullReindex, aPrefs);
+    }
+
+    /**
+     * Makes the given context available to the current thread. This is used by worker threads
+     * which help performing a bulk indexing operation started on another thread. Call
+     * {@link #clear()} when the worker is done.
+     * 
+     * @param aContext
+     *            the context.
+     */
+    public static void bind(BulkIndexingContext aContext)
+    {
+        INSTANCE.set(aContext);
     }
 
     public static Optional<BulkIndexingContext> get()
@@ -27,8 +27,12 @@ import static de.tudarmstadt.ukp.inception.scheduling.MatchResult.DISCARD_OR_QUE
 import static de.tudarmstadt.ukp.inception.scheduling.MatchResult.NO_MATCH;
 import static de.tudarmstadt.ukp.inception.scheduling.MatchResult.UNQUEUE_EXISTING_AND_QUEUE_THIS;
 import static de.tudarmstadt.ukp.inception.search.SearchCasUtils.casToByteArray;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Arrays.asList;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.Objects;
 
 import org.slf4j.Logger;
@@ -54,11 +58,64 @@ public class IndexAnnotationDocumentTask
     private @Autowired SearchService searchService;
     private @Autowired DocumentService documentService;
 
+    /**
+     * If the document keeps changing, it is indexed at the latest after this many times the
+     * update delay.
+     */
+    private static final int MAX_DELAY_FACTOR = 5;
+
+    private final long delay;
+    private final long requested;
+    private long firstRequested;
+
     private int done = 0;
 
     public IndexAnnotationDocumentTask(AnnotationDocument aAnnotationDocument, String aTrigger)
+    {
+        this(aAnnotationDocument, aTrigger, Duration.ZERO);
+    }
+
+    /**
+     * @param aAnnotationDocument
+     *            the document to index.
+     * @param aTrigger
+     *            the trigger.
+     * @param aDelay
+     *            time to wait for further changes to the document before indexing it. Changes
+     *            within this time are coalesced into a single update of the index.
+     */
+    public IndexAnnotationDocumentTask(AnnotationDocument aAnnotationDocument, String aTrigger,
+            Duration aDelay)
     {
         super(aAnnotationDocument, aTrigger);
+
+        delay = aDelay.toMillis();
+        requested = currentTimeMillis();
+        firstRequested = requested;
+    }
+
+    @Override
+    public boolean isReadyToStart()
+    {
+        return getTimeUntilReadyToStart() == 0;
+    }
+
+    @Override
+    public long getTimeUntilReadyToStart()
+    {
+        long readyAt = Math.min(requested + delay, firstRequested + delay * MAX_DELAY_FACTOR);
+        return Math.max(0, readyAt - currentTimeMillis());
+    }
+
+    @Override
+    public void supersede(Task aTask)
+    {
+        // This task must not be delayed beyond the point at which the superseded one would have
+        // run at the latest
+        if (aTask instanceof IndexAnnotationDocumentTask) {
+            firstRequested = Math.min(firstRequested,
+                    ((IndexAnnotationDocumentTask) aTask).firstRequested);
+        }
     }
 
     @Override
@@ -83,6 +140,18 @@ public class IndexAnnotationDocumentTask
         return new Progress(done, 1);
     }
 
+    @Override
+    public Object getMatchKey()
+    {
+        return asList(IndexAnnotationDocumentTask.class, getAnnotationDocument().getId());
+    }
+
+    @Override
+    public Collection<Object> getMatchCandidateKeys()
+    {
+        return asList(asList(ReindexTask.class, getProject()), getMatchKey());
+    }
+
     @Override
     public MatchResult matches(Task aTask)
     {
@@ -96,8 +165,9 @@ public class IndexAnnotationDocumentTask
         }
 
         if (aTask instanceof IndexAnnotationDocumentTask) {
+            var other = (IndexAnnotationDocumentTask) aTask;
             if (Objects.equals(getAnnotationDocument().getId(),
-                    ((IndexAnnotationDocumentTask) aTask).getAnnotationDocument().getId())) {
+                    other.getAnnotationDocument().getId())) {
                 return UNQUEUE_EXISTING_AND_QUEUE_THIS;
             }
         }
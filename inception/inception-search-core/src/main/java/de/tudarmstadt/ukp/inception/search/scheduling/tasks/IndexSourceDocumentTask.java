@@ -27,8 +27,10 @@ import static de.tudarmstadt.ukp.inception.scheduling.MatchResult.DISCARD_OR_QUE
 import static de.tudarmstadt.ukp.inception.scheduling.MatchResult.NO_MATCH;
 import static de.tudarmstadt.ukp.inception.scheduling.MatchResult.UNQUEUE_EXISTING_AND_QUEUE_THIS;
 import static de.tudarmstadt.ukp.inception.search.SearchCasUtils.casToByteArray;
+import static java.util.Arrays.asList;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Objects;
 
 import org.slf4j.Logger;
@@ -82,6 +84,18 @@ public class IndexSourceDocumentTask
         return new Progress(done, 1);
     }
 
+    @Override
+    public Object getMatchKey()
+    {
+        return asList(IndexSourceDocumentTask.class, getSourceDocument().getId());
+    }
+
+    @Override
+    public Collection<Object> getMatchCandidateKeys()
+    {
+        return asList(asList(ReindexTask.class, getProject()), getMatchKey());
+    }
+
     @Override
     public MatchResult matches(Task aTask)
     {
@@ -25,6 +25,7 @@ import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
 import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
 import de.tudarmstadt.ukp.inception.scheduling.MatchableTask;
 import de.tudarmstadt.ukp.inception.scheduling.Task;
+import de.tudarmstadt.ukp.inception.scheduling.TaskClass;
 import de.tudarmstadt.ukp.inception.search.model.Progress;
 
 /**
@@ -71,6 +72,12 @@ public abstract class IndexingTask_ImplBase
         return annotationDocument;
     }
 
+    @Override
+    public TaskClass getTaskClass()
+    {
+        return TaskClass.INDEXING;
+    }
+
     public abstract Progress getProgress();
 
     @Override
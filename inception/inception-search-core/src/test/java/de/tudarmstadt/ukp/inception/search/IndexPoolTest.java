@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.search;
+
+import static java.time.Duration.ZERO;
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.tudarmstadt.ukp.inception.search.IndexPool.PooledIndex;
+import de.tudarmstadt.ukp.inception.search.index.PhysicalIndex;
+import de.tudarmstadt.ukp.inception.search.model.Index;
+
+public class IndexPoolTest
+{
+    private static final long PROJECT_ID = 1L;
+
+    private List<Index> loadedIndexes;
+    private Map<PhysicalIndex, AtomicInteger> closeCounts;
+    private AtomicBoolean failLoading;
+
+    private ExecutorService executor;
+
+    private IndexPool sut;
+
+    @BeforeEach
+    public void setup()
+    {
+        executor = newCachedThreadPool();
+        loadedIndexes = new CopyOnWriteArrayList<>();
+        closeCounts = new ConcurrentHashMap<>();
+        failLoading = new AtomicBoolean(false);
+
+        sut = new IndexPool(this::loadIndex);
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void thatConcurrentUsersShareTheLoadedIndex() throws Exception
+    {
+        var threads = 8;
+        var start = new CountDownLatch(1);
+        var allBorrowed = new CountDownLatch(threads);
+        var futures = new ArrayList<CompletableFuture<Index>>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(supplyAsync(() -> {
+                awaitLatch(start);
+                try (var pooledIndex = sut.acquire(PROJECT_ID)) {
+                    allBorrowed.countDown();
+                    awaitLatch(allBorrowed);
+                    return pooledIndex.get();
+                }
+            }, executor));
+        }
+
+        start.countDown();
+
+        for (var future : futures) {
+            assertThat(future.get(10, SECONDS)).isSameAs(loadedIndexes.get(0));
+        }
+        assertThat(loadedIndexes).hasSize(1);
+    }
+
+    @Test
+    public void thatIndexIsOnlyClosedWhenIdle() throws Exception
+    {
+        var pooledIndex = sut.acquire(PROJECT_ID);
+        var index = pooledIndex.get();
+
+        sut.closeIdle(ZERO);
+        assertThat(sut.unloadIfIdle(pooledIndex)).isFalse();
+        assertThat(sut.peek(PROJECT_ID)).isSameAs(pooledIndex);
+        assertThat(closeCount(index)).isZero();
+
+        pooledIndex.close();
+
+        await().atMost(5, SECONDS).until(() -> {
+            sut.closeIdle(ZERO);
+            return sut.peek(PROJECT_ID) == null;
+        });
+        assertThat(pooledIndex.isDead()).isTrue();
+        assertThat(closeCount(index)).isOne();
+
+        try (var reloaded = sut.acquire(PROJECT_ID)) {
+            assertThat(reloaded).isNotSameAs(pooledIndex);
+            assertThat(reloaded.get()).isNotSameAs(index);
+        }
+        assertThat(loadedIndexes).hasSize(2);
+    }
+
+    @Test
+    public void thatForcedRecycleWaitsUntilIndexIsIdle() throws Exception
+    {
+        var pooledIndex = sut.acquire(PROJECT_ID);
+        var index = pooledIndex.get();
+        pooledIndex.forceRecycle();
+
+        var recycled = supplyAsync(() -> sut.acquire(PROJECT_ID), executor);
+
+        // The index is still in use, so it can be neither recycled nor used by anybody else
+        assertThatThrownBy(() -> recycled.get(500, MILLISECONDS)) //
+                .isInstanceOf(TimeoutException.class);
+        assertThat(closeCount(index)).isZero();
+
+        pooledIndex.close();
+
+        try (var reloaded = recycled.get(10, SECONDS)) {
+            assertThat(reloaded.isForceRecycle()).isFalse();
+            assertThat(reloaded.get()).isNotSameAs(index);
+        }
+        assertThat(closeCount(index)).isOne();
+    }
+
+    @Test
+    public void thatBorrowedIndexIsNeverClosedByConcurrentUnloading() throws Exception
+    {
+        var errors = new ConcurrentLinkedQueue<Throwable>();
+        var stop = new AtomicBoolean(false);
+
+        var unloader = runAsync(() -> {
+            while (!stop.get()) {
+                sut.closeIdle(ZERO);
+            }
+        }, executor);
+
+        var borrowers = new ArrayList<CompletableFuture<Void>>();
+        for (int t = 0; t < 4; t++) {
+            borrowers.add(runAsync(() -> {
+                for (int i = 0; i < 500; i++) {
+                    try (var pooledIndex = sut.acquire(PROJECT_ID)) {
+                        checkNotClosed(pooledIndex, errors);
+                        if (i % 50 == 0) {
+                            pooledIndex.forceRecycle();
+                        }
+                        Thread.yield();
+                        checkNotClosed(pooledIndex, errors);
+                    }
+                    catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            }, executor));
+        }
+
+        CompletableFuture.allOf(borrowers.toArray(CompletableFuture[]::new)).get(60, SECONDS);
+        stop.set(true);
+        unloader.get(10, SECONDS);
+
+        sut.unloadAll();
+
+        assertThat(errors).isEmpty();
+        // The forced recycles must have caused the index to be reloaded
+        assertThat(loadedIndexes).hasSizeGreaterThan(1);
+        assertThat(loadedIndexes).allSatisfy(index -> assertThat(closeCount(index)).isOne());
+    }
+
+    @Test
+    public void thatTombstonedIndexCannotBeAcquired() throws Exception
+    {
+        try (var pooledIndex = sut.acquire(PROJECT_ID)) {
+            pooledIndex.tombstone();
+            sut.unload(pooledIndex);
+
+            assertThat(pooledIndex.isDead()).isTrue();
+            assertThat(closeCount(pooledIndex.get())).isOne();
+        }
+
+        assertThatThrownBy(() -> sut.acquire(PROJECT_ID)) //
+                .isInstanceOf(IllegalStateException.class);
+
+        // Tombstones are only cleaned up once the project has been removed
+        sut.closeIdle(ZERO);
+        assertThat(sut.peek(PROJECT_ID).isTombstone()).isTrue();
+
+        sut.remove(PROJECT_ID);
+        try (var pooledIndex = sut.acquire(PROJECT_ID)) {
+            assertThat(pooledIndex.isTombstone()).isFalse();
+        }
+    }
+
+    @Test
+    public void thatFailedLoadIsRetried() throws Exception
+    {
+        failLoading.set(true);
+
+        assertThatThrownBy(() -> sut.acquire(PROJECT_ID)) //
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(sut.peek(PROJECT_ID).get()).isNull();
+
+        failLoading.set(false);
+
+        try (var pooledIndex = sut.acquire(PROJECT_ID)) {
+            assertThat(pooledIndex.get()).isSameAs(loadedIndexes.get(0));
+        }
+    }
+
+    private Index loadIndex(long aProjectId)
+    {
+        if (failLoading.get()) {
+            throw new IllegalStateException("Loading failed");
+        }
+
+        var physicalIndex = mock(PhysicalIndex.class);
+        var closeCount = new AtomicInteger();
+        doAnswer(call -> closeCount.incrementAndGet()).when(physicalIndex).close();
+        closeCounts.put(physicalIndex, closeCount);
+
+        var index = new Index();
+        index.setPhysicalIndex(physicalIndex);
+        loadedIndexes.add(index);
+        return index;
+    }
+
+    private int closeCount(Index aIndex)
+    {
+        return closeCounts.get(aIndex.getPhysicalIndex()).get();
+    }
+
+    private void checkNotClosed(PooledIndex aPooledIndex, Queue<Throwable> aErrors)
+    {
+        if (aPooledIndex.isDead() || closeCount(aPooledIndex.get()) > 0) {
+            aErrors.add(new IllegalStateException("Borrowed index has been closed"));
+        }
+    }
+
+    private static void awaitLatch(CountDownLatch aLatch)
+    {
+        try {
+            aLatch.await();
+        }
+        catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.search.index.mtas;
+
+import static de.tudarmstadt.ukp.inception.search.index.mtas.MtasUtils.bytesToChars;
+
+import java.io.Reader;
+
+/**
+ * Carries a binary CAS through the Lucene analysis chain to the {@link MtasUimaParser}. The parser
+ * picks up the binary CAS directly via {@link #getBinaryCas()}. This avoids encoding the binary
+ * CAS as characters just to decode it again in the parser. If the reader is consumed as a regular
+ * reader, it produces the character encoding of the binary CAS as created by
+ * {@link MtasUtils#bytesToChars(byte[])}.
+ */
+public class BinaryCasReader
+    extends Reader
+{
+    private final byte[] binaryCas;
+
+    private char[] chars;
+    private int position;
+
+    public BinaryCasReader(byte[] aBinaryCas)
+    {
+        binaryCas = aBinaryCas;
+    }
+
+    public byte[] getBinaryCas()
+    {
+        return binaryCas;
+    }
+
+    @Override
+    public int read(char[] aBuffer, int aOffset, int aLength)
+    {
+        if (chars == null) {
+            chars = bytesToChars(binaryCas);
+        }
+
+        if (position >= chars.length) {
+            return -1;
+        }
+
+        int count = Math.min(aLength, chars.length - position);
+        System.arraycopy(chars, position, aBuffer, aOffset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close()
+    {
+        chars = null;
+    }
+}
@@ -679,7 +679,9 @@ public class MtasDocumentIndex
     {
         log.debug("Executing query [{}] on index [{}]", aRequest, getIndexDir());
 
-        ensureAllIsCommitted();
+        // The searcher is opened on the index writer, so it sees all changes after a refresh even
+        // if they have not been committed yet. Committing here would serialize concurrent queries.
+        getSearcherManager().maybeRefreshBlocking();
 
         final MtasSpanQuery mtasSpanQuery;
         try {
@@ -1237,9 +1239,6 @@ public class MtasDocumentIndex
 
         IndexWriter indexWriter = getIndexWriter();
 
-        // Prepare bytearray with document content to be indexed
-        String encodedCAS = new String(MtasUtils.bytesToChars(aBinaryCas));
-
         // Create new Lucene document
         Document doc = new Document();
 
@@ -1254,7 +1253,8 @@ public class MtasDocumentIndex
         doc.add(new StringField(FIELD_TITLE, aDocumentTitle, Field.Store.YES));
         doc.add(new StringField(FIELD_USER, aUser, Field.Store.YES));
         doc.add(new StringField(FIELD_TIMESTAMP, timestamp, Field.Store.YES));
-        doc.add(new TextField(FIELD_CONTENT, encodedCAS, Field.Store.NO));
+        // The binary CAS is passed on to the MtasUimaParser as-is
+        doc.add(new TextField(FIELD_CONTENT, new BinaryCasReader(aBinaryCas)));
 
         // Add document to the Lucene index
         indexWriter.addDocument(doc);
@@ -233,7 +233,12 @@ public class MtasUimaParser
     {
         CAS cas = createCas();
 
-        try (InputStream in = new ByteArrayInputStream(charsToBytes(toCharArray(aReader)))) {
+        // If the binary CAS is available directly, we do not need to decode it from the characters
+        byte[] binaryCas = aReader instanceof BinaryCasReader
+                ? ((BinaryCasReader) aReader).getBinaryCas()
+                : charsToBytes(toCharArray(aReader));
+
+        try (InputStream in = new ByteArrayInputStream(binaryCas)) {
             CasIOUtils.load(in, getRealCas(cas));
         }
 
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.search.index.mtas;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.createCas;
+import static de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil.getRealCas;
+import static de.tudarmstadt.ukp.inception.search.SearchCasUtils.casToByteArray;
+import static de.tudarmstadt.ukp.inception.search.index.mtas.MtasUtils.bytesToChars;
+import static de.tudarmstadt.ukp.inception.search.index.mtas.MtasUtils.charsToBytes;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static org.apache.commons.io.IOUtils.toCharArray;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.testing.factory.TokenBuilder;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.util.CasIOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+
+/**
+ * Compares the memory allocated while handing a binary CAS to the {@link MtasUimaParser} via the
+ * character encoding and via the {@link BinaryCasReader}. Run via {@link #main(String[])} from
+ * the IDE or after building the test classes. The bytes allocated per indexed document are
+ * reported as {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinaryCasReaderBenchmark
+{
+    private @Param({ "10000" }) int tokenCount;
+
+    private byte[] binaryCas;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < tokenCount; i++) {
+            text.append("token").append(i);
+            text.append(i % 20 == 19 ? " .\n" : " ");
+        }
+
+        JCas jcas = JCasFactory.createJCas();
+        new TokenBuilder<>(Token.class, Sentence.class).buildTokens(jcas, text.toString());
+        binaryCas = casToByteArray(jcas.getCas());
+    }
+
+    /**
+     * The binary CAS is encoded as characters for the Lucene field and decoded again by the parser.
+     */
+    @Benchmark
+    public CAS viaCharEncoding() throws Exception
+    {
+        Reader reader = new StringReader(new String(bytesToChars(binaryCas)));
+        return readCas(charsToBytes(toCharArray(reader)));
+    }
+
+    /**
+     * The binary CAS is handed to the parser as-is.
+     */
+    @Benchmark
+    public CAS viaBinaryCasReader() throws Exception
+    {
+        try (BinaryCasReader reader = new BinaryCasReader(binaryCas)) {
+            return readCas(reader.getBinaryCas());
+        }
+    }
+
+    private static CAS readCas(byte[] aBinaryCas) throws Exception
+    {
+        CAS cas = createCas();
+        try (InputStream in = new ByteArrayInputStream(aBinaryCas)) {
+            CasIOUtils.load(in, getRealCas(cas));
+        }
+        return cas;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder() //
+                .include(BinaryCasReaderBenchmark.class.getSimpleName()) //
+                .addProfiler(GCProfiler.class) //
+                .build()).run();
+    }
+}
@@ -19,6 +19,7 @@ package de.tudarmstadt.ukp.inception.search.index.mtas;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.awaitility.Awaitility.await;
 
@@ -31,6 +32,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.uima.fit.factory.JCasBuilder;
@@ -51,6 +53,7 @@ import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.boot.autoconfigure.liquibase.LiquibaseAutoConfiguration;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
 import org.springframework.transaction.annotation.Propagation;
@@ -60,6 +63,7 @@ import org.springframework.util.FileSystemUtils;
 import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
 import de.tudarmstadt.ukp.clarin.webanno.api.ProjectService;
 import de.tudarmstadt.ukp.clarin.webanno.api.config.RepositoryAutoConfiguration;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.LayerConfigurationChangedEvent;
 import de.tudarmstadt.ukp.clarin.webanno.conll.config.ConllFormatsAutoConfiguration;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
@@ -85,6 +89,7 @@ import de.tudarmstadt.ukp.inception.kb.config.KnowledgeBaseServiceAutoConfigurat
 import de.tudarmstadt.ukp.inception.preferences.config.PreferencesServiceAutoConfig;
 import de.tudarmstadt.ukp.inception.scheduling.config.SchedulingServiceAutoConfiguration;
 import de.tudarmstadt.ukp.inception.schema.config.AnnotationSchemaServiceAutoConfiguration;
+import de.tudarmstadt.ukp.inception.search.ExecutionException;
 import de.tudarmstadt.ukp.inception.search.LayerStatistics;
 import de.tudarmstadt.ukp.inception.search.SearchResult;
 import de.tudarmstadt.ukp.inception.search.SearchService;
@@ -105,6 +110,9 @@ import de.tudarmstadt.ukp.inception.search.index.mtas.config.MtasDocumentIndexAu
         showSql = false, //
         properties = { //
                 "spring.main.banner-mode=off", //
+                "search.reindex-loader-threads=2", //
+                "search.reindex-indexer-threads=2", //
+                "search.reindex-queue-size=4", //
                 "repository.path=" + MtasDocumentIndexTest.TEST_OUTPUT_FOLDER })
 // REC: Not particularly clear why Propagation.NEVER is required, but if it is not there, the test
 // waits forever for the indexing to complete...
@@ -135,6 +143,7 @@ public class MtasDocumentIndexTest
     private @Autowired ProjectService projectService;
     private @Autowired DocumentService documentService;
     private @Autowired SearchService searchService;
+    private @Autowired ApplicationEventPublisher applicationEventPublisher;
 
     private User user;
 
@@ -349,6 +358,110 @@ public class MtasDocumentIndexTest
         assertThat(results).containsExactly(expectedResult);
     }
 
+    @Test
+    public void thatReindexingFindsAllDocuments() throws Exception
+    {
+        Project project = new Project("reindexing-finds-all-documents");
+
+        createProject(project);
+
+        @SuppressWarnings("unchecked")
+        Pair<SourceDocument, String>[] documents = new Pair[20];
+        for (int i = 0; i < documents.length; i++) {
+            documents[i] = Pair.of(new SourceDocument("Document " + i, project, "text"),
+                    "The capital of Galicia is Santiago de Compostela.");
+        }
+
+        uploadDocument(documents);
+
+        searchService.enqueueReindexTask(project, "test");
+
+        await("Waiting for re-indexing to complete") //
+                .atMost(60, SECONDS) //
+                .pollInterval(5, SECONDS) //
+                .until(() -> searchService.isIndexValid(project)
+                        && searchService.getIndexProgress(project).isEmpty());
+
+        List<SearchResult> results = searchService.query(user, project, "Galicia");
+
+        assertThat(results) //
+                .extracting(SearchResult::getDocumentTitle) //
+                .containsExactlyInAnyOrderElementsOf(Stream.of(documents) //
+                        .map(doc -> doc.getKey().getName()) //
+                        .collect(toList()));
+    }
+
+    @Test
+    public void thatQueriesDuringReindexingDoNotFail() throws Exception
+    {
+        Project project = new Project("queries-during-reindexing");
+
+        createProject(project);
+
+        @SuppressWarnings("unchecked")
+        Pair<SourceDocument, String>[] documents = new Pair[20];
+        for (int i = 0; i < documents.length; i++) {
+            documents[i] = Pair.of(new SourceDocument("Document " + i, project, "text"),
+                    "The capital of Galicia is Santiago de Compostela.");
+        }
+
+        uploadDocument(documents);
+
+        List<String> documentNames = Stream.of(documents) //
+                .map(doc -> doc.getKey().getName()) //
+                .collect(toList());
+
+        searchService.enqueueReindexTask(project, "test");
+
+        // While the index is being rebuilt, queries are either rejected or see a part of the
+        // documents, but they never fail otherwise
+        long deadline = System.currentTimeMillis() + 60_000;
+        int queries = 0;
+        int rejected = 0;
+        do {
+            queries++;
+            try {
+                assertThat(searchService.query(user, project, "Galicia")) //
+                        .extracting(SearchResult::getDocumentTitle) //
+                        .isSubsetOf(documentNames);
+            }
+            catch (ExecutionException e) {
+                rejected++;
+            }
+        }
+        while (!(searchService.isIndexValid(project)
+                && searchService.getIndexProgress(project).isEmpty())
+                && System.currentTimeMillis() < deadline);
+
+        log.info("Ran {} queries during re-indexing, {} were rejected", queries, rejected);
+
+        await("Waiting for re-indexing to complete") //
+                .atMost(60, SECONDS) //
+                .pollInterval(5, SECONDS) //
+                .until(() -> searchService.isIndexValid(project)
+                        && searchService.getIndexProgress(project).isEmpty());
+
+        assertThat(searchService.query(user, project, "Galicia")) //
+                .extracting(SearchResult::getDocumentTitle) //
+                .containsExactlyInAnyOrderElementsOf(documentNames);
+    }
+
+    @Test
+    public void thatLayerConfigurationChangeNotAffectingIndexKeepsIndex() throws Exception
+    {
+        Project project = new Project("layer-configuration-change-keeps-index");
+
+        createProject(project);
+
+        uploadDocument(Pair.of(new SourceDocument("Raw text document", project, "text"),
+                "The capital of Galicia is Santiago de Compostela."));
+
+        applicationEventPublisher.publishEvent(new LayerConfigurationChangedEvent(this, project));
+
+        assertThat(searchService.isIndexValid(project)).isTrue();
+        assertThat(searchService.getIndexProgress(project)).isEmpty();
+    }
+
     @Test
     public void thatLastTokenInDocumentCanBeFound() throws Exception
     {
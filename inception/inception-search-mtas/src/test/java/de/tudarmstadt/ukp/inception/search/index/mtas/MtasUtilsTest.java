@@ -19,6 +19,7 @@ package de.tudarmstadt.ukp.inception.search.index.mtas;
 
 import static de.tudarmstadt.ukp.inception.search.index.mtas.MtasUtils.bytesToChars;
 import static de.tudarmstadt.ukp.inception.search.index.mtas.MtasUtils.charsToBytes;
+import static org.apache.commons.io.IOUtils.toCharArray;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.security.NoSuchAlgorithmException;
@@ -51,4 +52,18 @@ public class MtasUtilsTest
 
         assertThat(output).isEqualTo(input);
     }
+
+    @Test
+    public void binaryCasReaderProducesCharEncoding() throws Exception
+    {
+        byte[] input = new byte[65535];
+
+        rnd.nextBytes(input);
+
+        try (BinaryCasReader reader = new BinaryCasReader(input)) {
+            byte[] output = charsToBytes(toCharArray(reader));
+
+            assertThat(output).isEqualTo(input);
+        }
+    }
 }
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.support.uima;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.apache.uima.cas.CAS;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Cache for data derived from a CAS, e.g. indexes over its annotations.
+ * <p>
+ * The cache of a CAS is created by the component managing the lifecycle of the CAS (usually the CAS
+ * storage) which keeps the returned object for as long as it keeps the CAS. The cached data is
+ * reachable only through that object, so it is dropped together with the CAS and may reference the
+ * CAS without keeping it in memory any longer. For CASes that have no cache, nothing is cached and
+ * the data is derived anew on every access.
+ */
+public final class CasScopedCache
+{
+    private static final Cache<CAS, CasScopedCache> CACHES = Caffeine.newBuilder() //
+            .weakKeys() //
+            .weakValues() //
+            .build();
+
+    private final Map<Object, Object> entries = new ConcurrentHashMap<>();
+
+    private CasScopedCache()
+    {
+        // Only created via create()
+    }
+
+    /**
+     * Creates a cache for the given CAS replacing any previous cache of the CAS.
+     * 
+     * @param aCas
+     *            the CAS (not a proxy wrapping it).
+     * @return the cache. The caller must hold on to it for as long as data derived from the CAS
+     *         should be cached.
+     */
+    public static CasScopedCache create(CAS aCas)
+    {
+        CasScopedCache cache = new CasScopedCache();
+        CACHES.put(aCas, cache);
+        return cache;
+    }
+
+    /**
+     * Obtains the data cached for the given CAS under the given key, creating it if necessary.
+     * 
+     * @param aCas
+     *            the CAS (not a proxy wrapping it).
+     * @param aKey
+     *            the key identifying the data, e.g. the class deriving it.
+     * @param aFactory
+     *            creates the data if it is not cached yet.
+     * @return the data. If the CAS has no cache, the data is created anew.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> V get(CAS aCas, K aKey, Function<? super K, ? extends V> aFactory)
+    {
+        CasScopedCache cache = CACHES.getIfPresent(aCas);
+        if (cache == null) {
+            return aFactory.apply(aKey);
+        }
+
+        return (V) cache.entries.computeIfAbsent(aKey, key -> aFactory.apply(aKey));
+    }
+
+    /**
+     * Drops all data cached for the CAS.
+     */
+    public void clear()
+    {
+        entries.clear();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.clarin.webanno.support.uima;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.fit.factory.CasFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class CasScopedCacheTest
+{
+    private CAS cas;
+
+    @BeforeEach
+    public void setup() throws Exception
+    {
+        cas = CasFactory.createCas();
+    }
+
+    @Test
+    public void thatNothingIsCachedForCasWithoutCache()
+    {
+        Object first = CasScopedCache.get(cas, "key", key -> new Object());
+        Object second = CasScopedCache.get(cas, "key", key -> new Object());
+
+        assertThat(second).isNotSameAs(first);
+    }
+
+    @Test
+    public void thatDataIsCachedWhileCacheIsHeld()
+    {
+        CasScopedCache cache = CasScopedCache.create(cas);
+
+        Object first = CasScopedCache.get(cas, "key", key -> new Object());
+        Object second = CasScopedCache.get(cas, "key", key -> new Object());
+        Object other = CasScopedCache.get(cas, "other", key -> new Object());
+
+        assertThat(second).isSameAs(first);
+        assertThat(other).isNotSameAs(first);
+
+        cache.clear();
+        Object third = CasScopedCache.get(cas, "key", key -> new Object());
+        assertThat(third).isNotSameAs(first);
+    }
+
+    @Test
+    public void thatNewCacheReplacesPreviousCache()
+    {
+        CasScopedCache cache1 = CasScopedCache.create(cas);
+        Object first = CasScopedCache.get(cas, "key", key -> new Object());
+
+        CasScopedCache cache2 = CasScopedCache.create(cas);
+        Object second = CasScopedCache.get(cas, "key", key -> new Object());
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(cache2).isNotSameAs(cache1);
+    }
+}
@@ -24,6 +24,7 @@ import static de.tudarmstadt.ukp.clarin.webanno.model.PermissionLevel.ANNOTATOR;
 import static de.tudarmstadt.ukp.clarin.webanno.model.PermissionLevel.CURATOR;
 import static de.tudarmstadt.ukp.clarin.webanno.model.PermissionLevel.MANAGER;
 import static de.tudarmstadt.ukp.clarin.webanno.support.lambda.LambdaBehavior.enabledWhen;
+import static de.tudarmstadt.ukp.clarin.webanno.support.lambda.LambdaBehavior.visibleWhen;
 import static de.tudarmstadt.ukp.clarin.webanno.ui.core.page.ProjectPageBase.NS_PROJECT;
 import static de.tudarmstadt.ukp.clarin.webanno.ui.core.page.ProjectPageBase.PAGE_PARAM_PROJECT;
 
@@ -58,6 +59,9 @@ import org.apache.wicket.spring.injection.annot.SpringBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wicketstuff.annotation.mount.MountPath;
+import org.wicketstuff.progressbar.ProgressBar;
+import org.wicketstuff.progressbar.Progression;
+import org.wicketstuff.progressbar.ProgressionModel;
 
 import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.AgreementMeasure;
 import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.AgreementMeasureSupport;
@@ -78,6 +82,7 @@ import de.tudarmstadt.ukp.clarin.webanno.support.lambda.LambdaAjaxFormComponentU
 import de.tudarmstadt.ukp.clarin.webanno.support.lambda.LambdaChoiceRenderer;
 import de.tudarmstadt.ukp.clarin.webanno.ui.core.page.ProjectPageBase;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.tudarmstadt.ukp.inception.scheduling.SchedulingService;
 import de.tudarmstadt.ukp.inception.schema.AnnotationSchemaService;
 import de.tudarmstadt.ukp.inception.support.help.DocLink;
 
@@ -98,10 +103,16 @@ public class AgreementPage
     private @SpringBean AnnotationSchemaService annotationService;
     private @SpringBean UserDao userRepository;
     private @SpringBean AgreementMeasureSupportRegistry agreementRegistry;
+    private @SpringBean SchedulingService schedulingService;
 
     private AgreementForm agreementForm;
     private WebMarkupContainer resultsContainer;
 
+    // The task is not serializable and only lives as long as the page is not serialized. If it is
+    // lost, the calculation is reported as interrupted and the user can simply start it again.
+    private transient AgreementTask agreementTask;
+    private String agreementTaskMeasureId;
+
     public AgreementPage(final PageParameters aPageParameters)
     {
         super(aPageParameters);
@@ -134,6 +145,8 @@ public class AgreementPage
 
         private final LambdaAjaxButton<Void> runCalculationsButton;
 
+        private final ProgressBar progressBar;
+
         private final WebMarkupContainer traitsContainer;
 
         public AgreementForm(String id, IModel<AgreementFormModel> aModel)
@@ -193,7 +206,20 @@ public class AgreementPage
             measureDropDown.add(new LambdaAjaxFormComponentUpdatingBehavior("change",
                     _target -> _target.add(runCalculationsButton, traitsContainer)));
 
-            runCalculationsButton.add(enabledWhen(() -> measureDropDown.getModelObject() != null));
+            runCalculationsButton.add(enabledWhen(
+                    () -> measureDropDown.getModelObject() != null && agreementTask == null));
+
+            add(progressBar = new ProgressBar("progress", new AgreementProgressModel())
+            {
+                private static final long serialVersionUID = 7580219410372829813L;
+
+                @Override
+                protected void onFinished(AjaxRequestTarget aTarget)
+                {
+                    actionCalculationComplete(aTarget);
+                }
+            });
+            progressBar.add(visibleWhen(() -> agreementTask != null));
         }
 
         private void actionSelectFeature(AjaxRequestTarget aTarget)
@@ -230,19 +256,46 @@ public class AgreementPage
                     (DefaultAgreementTraits) traitsContainer.get(MID_TRAITS)
                             .getDefaultModelObject());
 
-            Map<String, List<CAS>> casMap = getCasMap();
+            DefaultAgreementTraits traits = (DefaultAgreementTraits) traitsContainer
+                    .get(MID_TRAITS).getDefaultModelObject();
 
-            if (casMap.values().stream().allMatch(list -> list == null || list.isEmpty())) {
-                error("No documents with annotations were found.");
-                aTarget.addChildren(getPage(), IFeedback.class);
+            // The CASes of all annotators for all documents may not fit into memory at the same
+            // time, so we calculate the agreement document by document in the background instead
+            // of within the request.
+            agreementTask = new AgreementTask(userRepository.getCurrentUser(), getProject(),
+                    measure, traits.isLimitToFinishedDocuments());
+            agreementTaskMeasureId = measureHandle.getKey();
+            schedulingService.enqueue(agreementTask);
+
+            resultsContainer.addOrReplace(new EmptyPanel(MID_RESULTS));
+            aTarget.add(resultsContainer, this);
+            progressBar.start(aTarget);
+        }
+
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        private void actionCalculationComplete(AjaxRequestTarget aTarget)
+        {
+            AgreementTask task = agreementTask;
+            agreementTask = null;
+
+            aTarget.add(this);
+            aTarget.addChildren(getPage(), IFeedback.class);
+
+            if (task == null) {
+                error("Agreement calculation was interrupted - please start it again.");
+                return;
             }
-            else {
-                Serializable result = measure.getAgreement(casMap);
+
+            task.getMessages().forEach(m -> m.toWicket(this));
+
+            Serializable result = task.getResult();
+            if (result != null) {
+                AgreementMeasureSupport ams = agreementRegistry
+                        .getAgreementMeasureSupport(agreementTaskMeasureId);
                 resultsContainer.addOrReplace(ams.createResultsPanel(MID_RESULTS, Model.of(result),
                         AgreementPage.this::getCasMap));
                 aTarget.add(resultsContainer);
             }
-
         }
 
         List<Pair<String, String>> listMeasures()
@@ -281,14 +334,37 @@ public class AgreementPage
         Pair<String, String> measure;
     }
 
-    // The CASes cannot be serialized, so we make them transient here. However, it does not matter
-    // as we do not access the field directly but via getCases() which will re-load them if
-    // necessary, e.g. if the transient field is empty after a session is restored from a
-    // persisted state.
-    private transient Map<String, List<CAS>> cachedCASes;
-    private transient Project cachedProject;
-    private transient boolean cachedLimitToFinishedDocuments;
+    private class AgreementProgressModel
+        extends ProgressionModel
+    {
+        private static final long serialVersionUID = -5093467231487127574L;
+
+        @Override
+        protected Progression getProgression()
+        {
+            AgreementTask task = agreementTask;
+
+            if (task == null || task.isDone()) {
+                return new Progression(100);
+            }
+
+            if (task.getMaxProgress() == 0) {
+                return new Progression(0, "Waiting for calculation to start...");
+            }
+
+            // Do not report completion before the task is done - the agreement over the
+            // accumulated documents is only calculated at the very end
+            return new Progression(Math.min(99, task.getProgress() * 100 / task.getMaxProgress()),
+                    String.format("Processed %d of %d documents", task.getProgress(),
+                            task.getMaxProgress()));
+        }
+    }
 
+    /**
+     * Loads the CASes of all annotators for all documents. Since this requires all CASes to be in
+     * memory at the same time, it is only used when exporting the diff for a pair of annotators.
+     * The agreement itself is calculated document by document by the {@link AgreementTask}.
+     */
     public Map<String, List<CAS>> getCasMap()
     {
         if (agreementForm.featureList.getModelObject() == null) {
@@ -300,17 +376,11 @@ public class AgreementPage
         DefaultAgreementTraits traits = (DefaultAgreementTraits) agreementForm.traitsContainer
                 .get(MID_TRAITS).getDefaultModelObject();
 
-        // Avoid reloading the CASes when switching features within the same project
-        if (cachedCASes != null && project.equals(cachedProject)
-                && cachedLimitToFinishedDocuments == traits.isLimitToFinishedDocuments()) {
-            return cachedCASes;
-        }
-
         List<User> users = projectService.listProjectUsersWithPermissions(project, ANNOTATOR);
 
         List<SourceDocument> sourceDocuments = documentService.listSourceDocuments(project);
 
-        cachedCASes = new LinkedHashMap<>();
+        Map<String, List<CAS>> casMap = new LinkedHashMap<>();
         for (User user : users) {
             List<CAS> cases = new ArrayList<>();
 
@@ -362,12 +432,9 @@ public class AgreementPage
                 cases.add(cas);
             }
 
-            cachedCASes.put(user.getUsername(), cases);
+            casMap.put(user.getUsername(), cases);
         }
 
-        cachedProject = project;
-        cachedLimitToFinishedDocuments = traits.isLimitToFinishedDocuments();
-
-        return cachedCASes;
+        return casMap;
     }
 }
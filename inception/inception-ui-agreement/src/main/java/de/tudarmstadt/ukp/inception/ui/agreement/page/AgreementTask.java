@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.ui.agreement.page;
+
+import static de.tudarmstadt.ukp.clarin.webanno.api.CasUpgradeMode.AUTO_CAS_UPGRADE;
+import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.SHARED_READ_ONLY_ACCESS;
+import static de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocumentState.FINISHED;
+import static de.tudarmstadt.ukp.clarin.webanno.model.PermissionLevel.ANNOTATOR;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.fit.util.FSUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.AgreementAccumulator;
+import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.AgreementMeasure;
+import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
+import de.tudarmstadt.ukp.clarin.webanno.api.ProjectService;
+import de.tudarmstadt.ukp.clarin.webanno.api.annotation.util.WebAnnoCasUtil;
+import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationDocument;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
+import de.tudarmstadt.ukp.clarin.webanno.support.logging.LogMessage;
+import de.tudarmstadt.ukp.inception.annotation.storage.CasStorageSession;
+import de.tudarmstadt.ukp.inception.scheduling.Task;
+
+/**
+ * Calculates the agreement between the annotators of a project in the background. The documents
+ * are processed one at a time, so only the CASes of a single document need to be held in memory.
+ */
+public class AgreementTask
+    extends Task
+{
+    private static final Logger LOG = LoggerFactory.getLogger(AgreementTask.class);
+
+    private @Autowired DocumentService documentService;
+    private @Autowired ProjectService projectService;
+
+    private final AgreementMeasure<?> measure;
+    private final boolean limitToFinishedDocuments;
+
+    private final Queue<LogMessage> messages = new ConcurrentLinkedQueue<>();
+
+    private volatile int progress;
+    private volatile int maxProgress;
+    private volatile boolean done;
+    private volatile Serializable result;
+
+    public AgreementTask(User aUser, Project aProject, AgreementMeasure<?> aMeasure,
+            boolean aLimitToFinishedDocuments)
+    {
+        super(aUser, aProject, "User request");
+        measure = aMeasure;
+        limitToFinishedDocuments = aLimitToFinishedDocuments;
+    }
+
+    @Override
+    public void execute()
+    {
+        try {
+            result = calculateAgreement();
+        }
+        catch (Exception e) {
+            messages.add(LogMessage.error(this, "Unable to calculate agreement: %s",
+                    ExceptionUtils.getRootCauseMessage(e)));
+            LOG.error("Unable to calculate agreement", e);
+        }
+        finally {
+            done = true;
+        }
+    }
+
+    private Serializable calculateAgreement()
+    {
+        List<User> users = projectService.listProjectUsersWithPermissions(getProject(), ANNOTATOR);
+        List<SourceDocument> sourceDocuments = documentService.listSourceDocuments(getProject());
+
+        if (users.isEmpty() || sourceDocuments.isEmpty()) {
+            messages.add(LogMessage.error(this, "No documents with annotations were found."));
+            return null;
+        }
+
+        // Bulk-fetch the annotation documents of all users which is faster then fetching them
+        // individually for every document
+        Map<String, Map<SourceDocument, AnnotationDocument>> annDocsByUser = new LinkedHashMap<>();
+        for (User user : users) {
+            annDocsByUser.put(user.getUsername(),
+                    documentService.listAnnotationDocuments(getProject(), user).stream()
+                            .collect(toMap(AnnotationDocument::getDocument, identity(),
+                                    (a, b) -> a)));
+        }
+
+        maxProgress = sourceDocuments.size();
+
+        AgreementAccumulator<?> accumulator = measure.createAccumulator(annDocsByUser.keySet());
+        for (SourceDocument document : sourceDocuments) {
+            // The task runs outside of any request, so it needs its own session to read the
+            // CASes. Using one session per document releases the CASes right after the document
+            // has been added to the accumulator.
+            try (CasStorageSession session = CasStorageSession.openNested()) {
+                Map<String, CAS> casByUser = new LinkedHashMap<>();
+                for (User user : users) {
+                    casByUser.put(user.getUsername(), readCas(document, user,
+                            annDocsByUser.get(user.getUsername()).get(document)));
+                }
+
+                accumulator.addDocument(casByUser);
+            }
+            progress++;
+        }
+
+        return accumulator.getResult();
+    }
+
+    private CAS readCas(SourceDocument aDocument, User aUser, AnnotationDocument aAnnDoc)
+    {
+        if (limitToFinishedDocuments && aAnnDoc != null && !aAnnDoc.getState().equals(FINISHED)) {
+            // A skip marker (null) indicates that the user has not worked on the document
+            return null;
+        }
+
+        CAS cas;
+        try {
+            // Reads the user's annotation document or the initial source document - depending on
+            // what is available
+            cas = documentService.readAnnotationCas(aDocument, aUser.getUsername(),
+                    AUTO_CAS_UPGRADE, SHARED_READ_ONLY_ACCESS);
+        }
+        catch (Exception e) {
+            messages.add(LogMessage.error(this, "Unable to load data: %s",
+                    ExceptionUtils.getRootCauseMessage(e)));
+            LOG.error("Unable to load data", e);
+            return null;
+        }
+
+        // Set the CAS name in the DocumentMetaData so that we can pick it up in the Diff position
+        // for the purpose of debugging / transparency.
+        FeatureStructure dmd = WebAnnoCasUtil.getDocumentMetadata(cas);
+        FSUtil.setFeature(dmd, "documentId", aDocument.getName());
+        FSUtil.setFeature(dmd, "collectionId", aDocument.getProject().getName());
+
+        return cas;
+    }
+
+    /**
+     * @return the number of documents processed so far.
+     */
+    public int getProgress()
+    {
+        return progress;
+    }
+
+    /**
+     * @return the number of documents to process.
+     */
+    public int getMaxProgress()
+    {
+        return maxProgress;
+    }
+
+    public boolean isDone()
+    {
+        return done;
+    }
+
+    /**
+     * @return the agreement or {@code null} if the task is not done yet or has failed.
+     */
+    public Serializable getResult()
+    {
+        return result;
+    }
+
+    public Queue<LogMessage> getMessages()
+    {
+        return messages;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Technische Universität Darmstadt under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The Technische Universität Darmstadt 
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.
+ *  
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.tudarmstadt.ukp.inception.ui.agreement.page;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.fit.factory.CasFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.AgreementAccumulator;
+import de.tudarmstadt.ukp.clarin.webanno.agreement.measures.AgreementMeasure;
+import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
+import de.tudarmstadt.ukp.clarin.webanno.api.ProjectService;
+import de.tudarmstadt.ukp.clarin.webanno.api.config.RepositoryProperties;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
+import de.tudarmstadt.ukp.clarin.webanno.model.SourceDocument;
+import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
+import de.tudarmstadt.ukp.inception.annotation.storage.CasStorageSession;
+
+@ExtendWith(MockitoExtension.class)
+public class AgreementTaskTest
+{
+    private @Mock DocumentService documentService;
+    private @Mock ProjectService projectService;
+    private @Mock AgreementMeasure<Serializable> measure;
+    private @Mock AgreementAccumulator<Serializable> accumulator;
+
+    private AnnotationConfigApplicationContext context;
+    private Project project;
+    private List<User> users;
+    private List<SourceDocument> documents;
+
+    @BeforeEach
+    public void setup()
+    {
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(DocumentService.class, () -> documentService);
+        context.registerBean(ProjectService.class, () -> projectService);
+        context.registerBean(RepositoryProperties.class, RepositoryProperties::new);
+        context.refresh();
+
+        project = new Project("project");
+        users = List.of(new User("user1"), new User("user2"));
+        documents = List.of(new SourceDocument("doc1", project, "text"),
+                new SourceDocument("doc2", project, "text"));
+
+        when(projectService.listProjectUsersWithPermissions(any(), any())).thenReturn(users);
+        when(documentService.listSourceDocuments(project)).thenReturn(documents);
+        when(measure.createAccumulator(any())).thenReturn(accumulator);
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        context.close();
+    }
+
+    @Test
+    public void thatCassesAreReadInOneSessionPerDocument() throws Exception
+    {
+        // Like the real CAS storage, reading a CAS requires a session
+        List<CasStorageSession> readSessions = new ArrayList<>();
+        when(documentService.readAnnotationCas(any(), any(), any(), any())).thenAnswer(call -> {
+            readSessions.add(CasStorageSession.get());
+            return CasFactory.createCas();
+        });
+
+        List<Map<String, CAS>> addedDocuments = new ArrayList<>();
+        List<Boolean> sessionOpenWhenAdded = new ArrayList<>();
+        doAnswer(call -> {
+            addedDocuments.add(call.getArgument(0));
+            sessionOpenWhenAdded.add(!CasStorageSession.get().isClosed());
+            return null;
+        }).when(accumulator).addDocument(any());
+        when(accumulator.getResult()).thenReturn("agreement");
+
+        var sut = new AgreementTask(users.get(0), project, measure, false);
+        context.getAutowireCapableBeanFactory().autowireBean(sut);
+        sut.execute();
+
+        assertThat(sut.getMessages()).isEmpty();
+        assertThat(sut.isDone()).isTrue();
+        assertThat(sut.getResult()).isEqualTo("agreement");
+        assertThat(sut.getProgress()).isEqualTo(documents.size());
+
+        assertThat(addedDocuments).hasSize(documents.size());
+        assertThat(addedDocuments).allSatisfy(casByUser -> assertThat(casByUser) //
+                .containsOnlyKeys("user1", "user2") //
+                .doesNotContainValue(null));
+        assertThat(sessionOpenWhenAdded).containsOnly(true);
+
+        // Both CASes of a document share a session, every document has its own session and
+        // all of them are closed once the task is done
+        assertThat(readSessions).hasSize(users.size() * documents.size());
+        assertThat(readSessions.get(0)).isSameAs(readSessions.get(1));
+        assertThat(readSessions.get(2)).isSameAs(readSessions.get(3));
+        assertThat(readSessions.get(0)).isNotSameAs(readSessions.get(2));
+        assertThat(readSessions).allMatch(CasStorageSession::isClosed);
+    }
+}
@@ -17,20 +17,23 @@
  */
 package de.tudarmstadt.ukp.inception.ui.curation.sidebar.render;
 
+import static de.tudarmstadt.ukp.clarin.webanno.api.casstorage.CasAccessMode.SHARED_READ_ONLY_ACCESS;
 import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.doDiffSingle;
 import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.getDiffAdapters;
 import static de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.LinkCompareBehavior.LINK_ROLE_AS_LABEL;
-import static java.util.function.Function.identity;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toMap;
 
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.apache.uima.cas.CAS;
@@ -38,19 +41,24 @@ import org.apache.uima.cas.FeatureStructure;
 import org.apache.uima.cas.text.AnnotationFS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.annotation.Order;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
 import de.tudarmstadt.ukp.clarin.webanno.api.DocumentService;
-import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.AfterCasWrittenEvent;
+import de.tudarmstadt.ukp.clarin.webanno.api.event.LayerConfigurationChangedEvent;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.Configuration;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.ConfigurationSet;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.CasDiff.DiffResult;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.api.DiffAdapter;
-import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.api.Position;
 import de.tudarmstadt.ukp.clarin.webanno.curation.casdiff.internal.AID;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationFeature;
 import de.tudarmstadt.ukp.clarin.webanno.model.AnnotationLayer;
 import de.tudarmstadt.ukp.clarin.webanno.model.Mode;
+import de.tudarmstadt.ukp.clarin.webanno.model.Project;
 import de.tudarmstadt.ukp.clarin.webanno.security.UserDao;
 import de.tudarmstadt.ukp.clarin.webanno.security.model.User;
 import de.tudarmstadt.ukp.inception.rendering.Renderer;
@@ -69,6 +77,11 @@ import de.tudarmstadt.ukp.inception.ui.curation.sidebar.CurationSidebarService;
 import de.tudarmstadt.ukp.inception.ui.curation.sidebar.config.CurationSidebarAutoConfiguration;
 
 /**
+ * Renders the annotations of the annotators which differ from the curator's annotations. The diff
+ * is calculated for the visible window and its result is cached per document, curator, window and
+ * visible layers, so re-rendering e.g. after a selection change or after scrolling back to a
+ * previous window does not need to calculate the diff again. The cached diffs of a document are
+ * dropped when the annotations of any user of the document are written.
  * <p>
  * This class is exposed as a Spring Component via
  * {@link CurationSidebarAutoConfiguration#curationRenderer}.
@@ -87,6 +100,11 @@ public class CurationRenderer
     private final UserDao userRepository;
     private final AnnotationSchemaService annotationService;
 
+    private final Cache<List<Object>, CachedCurationDiff> diffCache = Caffeine.newBuilder() //
+            .expireAfterAccess(5, MINUTES) //
+            .maximumSize(256) //
+            .build();
+
     public CurationRenderer(CurationSidebarService aCurationService,
             LayerSupportRegistry aLayerSupportRegistry, DocumentService aDocumentService,
             UserDao aUserRepository, AnnotationSchemaService aAnnotationService)
@@ -121,16 +139,16 @@ public class CurationRenderer
             return;
         }
 
-        Map<String, CAS> casses = new LinkedHashMap<>();
-
         // This is the CAS that the user can actively edit
-        casses.put(aRequest.getAnnotationUser().getUsername(), aRequest.getCas());
+        String curator = aRequest.getAnnotationUser().getUsername();
+        Map<String, CAS> casses = new LinkedHashMap<>();
+        casses.put(curator, aRequest.getCas());
 
         for (User user : selectedUsers) {
             try {
-                CAS userCas = documentService.readAnnotationCas(aRequest.getSourceDocument(),
-                        user.getUsername());
-                casses.put(user.getUsername(), userCas);
+                casses.put(user.getUsername(),
+                        documentService.readAnnotationCas(aRequest.getSourceDocument(),
+                                user.getUsername(), SHARED_READ_ONLY_ACCESS));
             }
             catch (IOException e) {
                 log.error("Could not retrieve CAS for user [{}] and project {}", user.getUsername(),
@@ -138,25 +156,30 @@ public class CurationRenderer
             }
         }
 
-        List<DiffAdapter> adapters = getDiffAdapters(annotationService,
-                aRequest.getVisibleLayers());
-        CasDiff casDiff = doDiffSingle(adapters, LINK_ROLE_AS_LABEL, casses,
-                aRequest.getWindowBeginOffset(), aRequest.getWindowEndOffset());
-        DiffResult diff = casDiff.toResult();
-
-        // Listing the features once is faster than repeatedly hitting the DB to list features for
-        // every layer.
-        List<AnnotationFeature> supportedFeatures = annotationService
-                .listSupportedFeatures(aRequest.getProject());
-        List<AnnotationFeature> allFeatures = annotationService
-                .listAnnotationFeature(aRequest.getProject());
-
-        // Set up a cache for resolving type to layer to avoid hammering the DB as we process each
-        // position
-        Map<String, AnnotationLayer> type2layer = diff.getPositions().stream()
-                .map(Position::getType).distinct()
-                .map(type -> annotationService.findLayer(aRequest.getProject(), type))
-                .collect(toMap(AnnotationLayer::getName, identity()));
+        int windowBegin = aRequest.getWindowBeginOffset();
+        int windowEnd = aRequest.getWindowEndOffset();
+        List<Long> visibleLayers = aRequest.getVisibleLayers() != null
+                ? aRequest.getVisibleLayers().stream().map(AnnotationLayer::getId).collect(toList())
+                : null;
+
+        CachedCurationDiff cached = diffCache.get(asList(aRequest.getSourceDocument().getId(),
+                curator, windowBegin, windowEnd, visibleLayers),
+                key -> new CachedCurationDiff(aRequest.getProject()));
+
+        DiffResult diff;
+        synchronized (cached) {
+            if (cached.diff == null || !cached.casGroupIds.equals(casses.keySet())) {
+                List<DiffAdapter> adapters = getDiffAdapters(annotationService,
+                        aRequest.getVisibleLayers());
+                cached.diff = doDiffSingle(adapters, LINK_ROLE_AS_LABEL, casses, windowBegin,
+                        windowEnd).toResult();
+                cached.casGroupIds = new LinkedHashSet<>(casses.keySet());
+            }
+            diff = cached.diff;
+        }
+
+        Map<String, List<CAS>> casMap = new LinkedHashMap<>();
+        casses.forEach((user, cas) -> casMap.put(user, asList(cas)));
 
         Set<VID> generatedCurationVids = new HashSet<>();
         boolean showAll = curationService.isShowAll(currentUsername, aRequest.getProject().getId());
@@ -168,17 +191,13 @@ public class CurationRenderer
                 continue;
             }
 
-            AnnotationLayer layer = type2layer.get(cfgSet.getPosition().getType());
+            AnnotationLayer layer = cached.getLayer(cfgSet.getPosition().getType());
 
-            List<AnnotationFeature> layerSupportedFeatures = supportedFeatures.stream() //
-                    .filter(feature -> feature.getLayer().equals(layer)) //
-                    .collect(toList());
-            List<AnnotationFeature> layerAllFeatures = allFeatures.stream() //
-                    .filter(feature -> feature.getLayer().equals(layer)) //
-                    .collect(toList());
+            List<AnnotationFeature> layerSupportedFeatures = cached.getSupportedFeatures(layer);
+            List<AnnotationFeature> layerAllFeatures = cached.getAllFeatures(layer);
 
             for (Configuration cfg : cfgSet.getConfigurations()) {
-                FeatureStructure fs = cfg.getRepresentative(casDiff.getCasMap());
+                FeatureStructure fs = cfg.getRepresentative(casMap);
                 String user = cfg.getRepresentativeCasGroupId();
 
                 // We need to pass in *all* the annotation features here because we also to that in
@@ -188,8 +207,7 @@ public class CurationRenderer
                 Renderer renderer = layerSupport.createRenderer(layer, () -> layerAllFeatures);
 
                 List<VObject> objects = renderer.render(aVdoc, (AnnotationFS) fs,
-                        layerSupportedFeatures, aRequest.getWindowBeginOffset(),
-                        aRequest.getWindowEndOffset());
+                        layerSupportedFeatures, windowBegin, windowEnd);
 
                 for (VObject object : objects) {
                     VID curationVid = new CurationVID(user, object.getVid());
@@ -225,6 +243,67 @@ public class CurationRenderer
         }
     }
 
+    @EventListener
+    public void onAfterCasWritten(AfterCasWrittenEvent aEvent)
+    {
+        // A change by any user may affect the diffs of all curators of the document
+        long documentId = aEvent.getDocument().getDocument().getId();
+        diffCache.asMap().keySet().removeIf(key -> key.get(0).equals(documentId));
+    }
+
+    @EventListener
+    public void onLayerConfigurationChanged(LayerConfigurationChangedEvent aEvent)
+    {
+        diffCache.asMap().values()
+                .removeIf(cached -> cached.project.equals(aEvent.getProject()));
+    }
+
+    /**
+     * The diff between the curator and the annotators in a window of a document along with the
+     * layer information needed to render it. Only the positions and configurations of the diff are
+     * kept - the CASes are obtained from the CAS storage on every render.
+     */
+    private class CachedCurationDiff
+    {
+        private final Project project;
+        private final Map<String, AnnotationLayer> type2layer = new ConcurrentHashMap<>();
+        private final List<AnnotationFeature> supportedFeatures;
+        private final List<AnnotationFeature> allFeatures;
+
+        private Set<String> casGroupIds;
+        private DiffResult diff;
+
+        public CachedCurationDiff(Project aProject)
+        {
+            project = aProject;
+
+            // Listing the features once is faster than repeatedly hitting the DB to list features
+            // for every layer.
+            supportedFeatures = annotationService.listSupportedFeatures(project);
+            allFeatures = annotationService.listAnnotationFeature(project);
+        }
+
+        private AnnotationLayer getLayer(String aType)
+        {
+            return type2layer.computeIfAbsent(aType,
+                    type -> annotationService.findLayer(project, type));
+        }
+
+        private List<AnnotationFeature> getSupportedFeatures(AnnotationLayer aLayer)
+        {
+            return supportedFeatures.stream() //
+                    .filter(feature -> feature.getLayer().equals(aLayer)) //
+                    .collect(toList());
+        }
+
+        private List<AnnotationFeature> getAllFeatures(AnnotationLayer aLayer)
+        {
+            return allFeatures.stream() //
+                    .filter(feature -> feature.getLayer().equals(aLayer)) //
+                    .collect(toList());
+        }
+    }
+
     /**
      * Find and return the rendered VID which is equivalent to the given VID. E.g. if the given VID
      * belongs to an already curated annotation, then locate the VID for the rendered annotation of